@@ -0,0 +1,28 @@
+package kg.musabaev.megalabnews.aspect;
+
+import kg.musabaev.megalabnews.replica.CacheLoads;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Значения для кэшей читаются только с реплик, которые почти не отстают
+ * ({@code app.replicas.cache-load-max-lag}), иначе с основной БД. Кэш сбрасывается сразу после коммита,
+ * и сильно отстающая реплика вернула бы прежнее значение, которое жило бы в кэше до истечения срока.
+ * Выполняется между кэшированием и транзакцией, т.е. только при промахе кэша
+ */
+@Component
+@Aspect
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+@ConditionalOnExpression("${app.replicas.enabled:false} == true")
+public class CacheLoadRoutingAspect {
+
+	@Around("@annotation(org.springframework.cache.annotation.Cacheable)")
+	Object loadFromUpToDateSource(ProceedingJoinPoint joinPoint) throws Throwable {
+		return CacheLoads.call(joinPoint::proceed);
+	}
+}
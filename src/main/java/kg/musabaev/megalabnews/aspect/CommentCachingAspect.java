@@ -1,35 +1,31 @@
 package kg.musabaev.megalabnews.aspect;
 
+import kg.musabaev.megalabnews.cache.CacheInvalidationStats;
+import kg.musabaev.megalabnews.cache.ManagedCacheManager;
 import kg.musabaev.megalabnews.dto.NewOrUpdateCommentResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.commons.lang3.tuple.Triple;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
-import org.springframework.cache.CacheManager;
-import org.springframework.cache.concurrent.ConcurrentMapCache;
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.ConcurrentMap;
-
 import static kg.musabaev.megalabnews.service.impl.SimpleCommentService.CHILD_COMMENTS_CACHE_NAME;
+import static kg.musabaev.megalabnews.service.impl.SimpleCommentService.COMMENT_TREE_CACHE_NAME;
 import static kg.musabaev.megalabnews.service.impl.SimpleCommentService.ROOT_COMMENTS_CACHE_NAME;
 
 @Component
 @Aspect
 @RequiredArgsConstructor
 @Log4j2
-@ConditionalOnExpression("${app.cache-enabled} == true")
 public class CommentCachingAspect {
 
-	public static final String CACHE_DELETED_BY_KEY = "Удалено значение у кэша {} по ключу {}";
+	public static final String CACHE_DELETED_BY_OWNER = "Удалено {} значений у кэша {} по владельцу {}";
 
-	private final CacheManager cacheManager;
+	private final ManagedCacheManager cacheManager;
+	private final CacheInvalidationStats invalidationStats;
 
 	@Pointcut("within(kg.musabaev.megalabnews.service.impl.SimpleCommentService)")
 	void targetPackage() {
@@ -39,64 +35,48 @@ public class CommentCachingAspect {
 			value = "targetPackage() && execution(* save(..)) ||" +
 					"targetPackage() && execution(* update(..))",
 			returning = "dto")
-	void onSaveCommentDeleteCache(NewOrUpdateCommentResponse dto) {
+	void onSaveCommentDeleteCache(JoinPoint jp, NewOrUpdateCommentResponse dto) {
 		Long postId = dto.postId();
 		Long parentId = dto.parentId();
+		String source = jp.getSignature().toShortString();
 
-		if (parentId == null) deleteRootCommentsCacheByPostId(postId);
-		else deleteChildCommentsCacheByPostIdAndParentCommentId(postId, parentId);
+		if (parentId == null) deleteRootCommentsCacheByPostId(source, postId);
+		else deleteChildCommentsCacheByPostIdAndParentCommentId(source, postId, parentId);
+		deleteCommentTreesCacheByPostId(source, postId);
 	}
 
 	@AfterReturning("targetPackage() && execution(* deleteById(..)) ||" +
 			"execution(* kg.musabaev.megalabnews.service.impl.SimplePostService.deleteById(..))")
 	void onUpdateAndDeleteCommentDeleteCache(JoinPoint jp) {
 		Long postId = (Long) jp.getArgs()[0];
-		deleteRootCommentsCacheByPostId(postId);
-		deleteChildCommentsCacheByPostIdAndAnyCommentId(postId);
+		String source = jp.getSignature().toShortString();
+		deleteRootCommentsCacheByPostId(source, postId);
+		deleteChildCommentsCacheByPostIdAndAnyCommentId(source, postId);
+		deleteCommentTreesCacheByPostId(source, postId);
 	}
 
-	private void deleteRootCommentsCacheByPostId(Long postId) {
-		ConcurrentMap<Object, Object> store = getStoreFromCacheManager(ROOT_COMMENTS_CACHE_NAME);
-
-		store.entrySet().removeIf(entry -> {
-			var pair = (Pair<Long, Pageable>) entry.getKey();
-
-			boolean isEquals = pair.getKey().equals(postId);
-			if (isEquals) log.debug(CACHE_DELETED_BY_KEY, ROOT_COMMENTS_CACHE_NAME, pair);
-			return isEquals;
-		});
+	private void deleteRootCommentsCacheByPostId(String source, Long postId) {
+		deleteCacheByOwner(source, ROOT_COMMENTS_CACHE_NAME, postId);
 	}
 
-	private void deleteChildCommentsCacheByPostIdAndParentCommentId(Long postId, Long parentId) {
-		ConcurrentMap<Object, Object> store = getStoreFromCacheManager(CHILD_COMMENTS_CACHE_NAME);
-
-		store.entrySet().removeIf(entry -> {
-			var triple = (Triple<Long, Long, Pageable>) entry.getKey();
-
-			boolean isEquals = triple.getLeft().equals(postId) && triple.getMiddle().equals(parentId);
-			if (isEquals) log.debug(CACHE_DELETED_BY_KEY, CHILD_COMMENTS_CACHE_NAME, triple);
-			return isEquals;
-		});
+	private void deleteChildCommentsCacheByPostIdAndParentCommentId(String source, Long postId, Long parentId) {
+		deleteCacheByOwner(source, CHILD_COMMENTS_CACHE_NAME, Pair.of(postId, parentId));
 	}
 
-	private void deleteChildCommentsCacheByPostIdAndAnyCommentId(Long postId) {
-		ConcurrentMap<Object, Object> store = getStoreFromCacheManager(CHILD_COMMENTS_CACHE_NAME);
-
-		store.entrySet().removeIf(entry -> {
-			var triple = (Triple<Long, Long, Pageable>) entry.getKey();
-
-			boolean isEquals = triple.getLeft().equals(postId);
-			if (isEquals) log.debug(CACHE_DELETED_BY_KEY, CHILD_COMMENTS_CACHE_NAME, triple);
-			return isEquals;
-		});
+	private void deleteChildCommentsCacheByPostIdAndAnyCommentId(String source, Long postId) {
+		deleteCacheByOwner(source, CHILD_COMMENTS_CACHE_NAME, postId);
 	}
 
 	/**
-	 * @see ConcurrentMapCache#getNativeCache()
+	 * Предки комментария неизвестны, поэтому сбрасываются все деревья публикации
 	 */
-	private ConcurrentMap<Object, Object> getStoreFromCacheManager(String cacheName) {
-		return (ConcurrentMap<Object, Object>) cacheManager
-				.getCache(cacheName)
-				.getNativeCache();
+	private void deleteCommentTreesCacheByPostId(String source, Long postId) {
+		deleteCacheByOwner(source, COMMENT_TREE_CACHE_NAME, postId);
+	}
+
+	private void deleteCacheByOwner(String source, String cacheName, Object owner) {
+		int removed = cacheManager.getManagedCache(cacheName).evictByOwner(owner);
+		invalidationStats.record(source, cacheName, removed);
+		if (removed > 0) log.debug(CACHE_DELETED_BY_OWNER, removed, cacheName, owner);
 	}
 }
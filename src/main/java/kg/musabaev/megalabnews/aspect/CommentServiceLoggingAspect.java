@@ -1,5 +1,7 @@
 package kg.musabaev.megalabnews.aspect;
 
+import kg.musabaev.megalabnews.dto.CommentTree;
+import kg.musabaev.megalabnews.dto.CursorPage;
 import kg.musabaev.megalabnews.dto.NewCommentRequest;
 import kg.musabaev.megalabnews.dto.NewOrUpdateCommentResponse;
 import kg.musabaev.megalabnews.repository.projection.CommentListView;
@@ -15,6 +17,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.Map;
 
 import static kg.musabaev.megalabnews.util.Utils.*;
 
@@ -28,9 +31,14 @@ public class CommentServiceLoggingAspect {
 	static String NEW_COMMENT_SAVED = "Новый комментарий: {}";
 	static String TOTAL_NUMBER_ROOT_COMMENTS_OF_POST = "У публикации с id {} всего {} корневых комментариев";
 	static String TOTAL_NUMBER_CHILD_COMMENTS_OF_PARENT_COMMENT = "У родительского комментария с {} всего {} дочерних комментариев";
+	static String CURSOR_PAGE_OF_COMMENTS_RECEIVED = "Страница комментариев публикации с id {}: {} комментариев, следующий курсор: {}";
+	static String COMMENT_TREE_RECEIVED = "Дерево комментариев публикации с id {} от комментария {}: {} комментариев первого уровня, обрезано: {}";
+	static String REPLY_COUNTS_RECEIVED = "У публикации с id {} ответы есть в {} ветках комментариев";
+	static String REPLY_TOO_DEEP = "Ответ на комментарий с id {} превышает допустимую глубину";
 	static String COMMENT_BY_ID_UPDATED = "Комментарий с id {} обновлен";
 	static String POST_BY_ID_NOT_FOUND = "Публикация с id {} не найден";
 	static String COMMENT_BY_ID_NOT_FOUND = "Комментарий с id {} не найден";
+	static String REQUEST_PARAMS_NOT_VALID = "Недопустимые параметры запроса комментариев публикации с id {}";
 
 	@Pointcut("within(kg.musabaev.megalabnews.service.CommentService+)")
 	void targetPackage() {
@@ -51,6 +59,9 @@ public class CommentServiceLoggingAspect {
 				ifPostNotFound(e, () -> log.debug(POST_BY_ID_NOT_FOUND, jp.getArgs()[0])),
 				ifCommentNotFound(e, () -> {
 					log.debug(COMMENT_BY_ID_NOT_FOUND, ((NewCommentRequest) jp.getArgs()[1]).parentId());
+				}),
+				ifRequestParamsNotValid(e, () -> {
+					log.debug(REPLY_TOO_DEEP, ((NewCommentRequest) jp.getArgs()[1]).parentId());
 				}))
 		);
 	}
@@ -63,8 +74,15 @@ public class CommentServiceLoggingAspect {
 		log.debug(TOTAL_NUMBER_ROOT_COMMENTS_OF_POST, jp.getArgs()[0], r.getTotalElements());
 	}
 
+	@AfterReturning(
+			pointcut = "targetPackage() && (execution(* getRootsByPostIdAfter(..)) || execution(* getChildrenByParentIdAfter(..)))",
+			returning = "r")
+	void afterReturningMethodsAfterCursor(JoinPoint jp, CursorPage<CommentListView> r) {
+		log.debug(CURSOR_PAGE_OF_COMMENTS_RECEIVED, jp.getArgs()[0], r.content().size(), r.next());
+	}
+
 	@AfterThrowing(
-			pointcut = "targetPackage() && execution(* getRootsByPostId(..)))",
+			pointcut = "targetPackage() && execution(* getRootsByPostId*(..)))",
 			throwing = "e")
 	void afterThrowingMethodGetRootsByPostId(JoinPoint jp, Exception e) {
 		ifPostNotFound(e, () -> log.debug(POST_BY_ID_NOT_FOUND, jp.getArgs()[0]));
@@ -78,16 +96,51 @@ public class CommentServiceLoggingAspect {
 	}
 
 	@AfterThrowing(
-			pointcut = "targetPackage() && execution(* getChildrenByParentId(..)))",
+			pointcut = "targetPackage() && execution(* getChildrenByParentId*(..)))",
 			throwing = "e")
 	void afterThrowingMethodGetChildrenByParentId(JoinPoint jp, Exception e) {
 		iterateChainOfChecks(e, List.of(
 				ifPostNotFound(e, () -> log.debug(POST_BY_ID_NOT_FOUND, jp.getArgs()[0])),
-				ifCommentNotFound(e, () -> log.debug(COMMENT_BY_ID_NOT_FOUND, jp.getArgs()[1])))
+				ifCommentNotFound(e, () -> log.debug(COMMENT_BY_ID_NOT_FOUND, jp.getArgs()[1])),
+				ifRequestParamsNotValid(e, () -> log.debug(REQUEST_PARAMS_NOT_VALID, jp.getArgs()[0])))
 		);
 	}
 
 
+	@AfterReturning(
+			pointcut = "targetPackage() && execution(* getTree(..)))",
+			returning = "r")
+	void afterReturningMethodGetTree(JoinPoint jp, CommentTree r) {
+		log.debug(COMMENT_TREE_RECEIVED, jp.getArgs()[0], jp.getArgs()[1], r.comments().size(), r.truncated());
+	}
+
+	@AfterThrowing(
+			pointcut = "targetPackage() && execution(* getTree(..)))",
+			throwing = "e")
+	void afterThrowingMethodGetTree(JoinPoint jp, Exception e) {
+		iterateChainOfChecks(e, List.of(
+				ifPostNotFound(e, () -> log.debug(POST_BY_ID_NOT_FOUND, jp.getArgs()[0])),
+				ifCommentNotFound(e, () -> log.debug(COMMENT_BY_ID_NOT_FOUND, jp.getArgs()[1])),
+				ifRequestParamsNotValid(e, () -> log.debug(REQUEST_PARAMS_NOT_VALID, jp.getArgs()[0])))
+		);
+	}
+
+
+	@AfterReturning(
+			pointcut = "targetPackage() && execution(* getReplyCountsByPostId(..)))",
+			returning = "r")
+	void afterReturningMethodGetReplyCountsByPostId(JoinPoint jp, Map<Long, Long> r) {
+		log.debug(REPLY_COUNTS_RECEIVED, jp.getArgs()[0], r.size());
+	}
+
+	@AfterThrowing(
+			pointcut = "targetPackage() && execution(* getReplyCountsByPostId(..)))",
+			throwing = "e")
+	void afterThrowingMethodGetReplyCountsByPostId(JoinPoint jp, Exception e) {
+		ifPostNotFound(e, () -> log.debug(POST_BY_ID_NOT_FOUND, jp.getArgs()[0]));
+	}
+
+
 	@AfterReturning(
 			pointcut = "targetPackage() && execution(* update(..)))")
 	void afterReturningMethodUpdate(JoinPoint jp) {
@@ -1,59 +1,52 @@
 package kg.musabaev.megalabnews.aspect;
 
+import kg.musabaev.megalabnews.cache.CacheInvalidationStats;
+import kg.musabaev.megalabnews.cache.ManagedCacheManager;
+import kg.musabaev.megalabnews.cache.SecondLevelCacheInvalidations;
 import kg.musabaev.megalabnews.dto.NewOrUpdatePostResponse;
 import kg.musabaev.megalabnews.mapper.PostMapper;
-import kg.musabaev.megalabnews.model.Post;
+import kg.musabaev.megalabnews.repository.projection.PostItemView;
 import kg.musabaev.megalabnews.service.impl.SimplePostService;
 import kg.musabaev.megalabnews.service.impl.SimpleUserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.lang3.tuple.Pair;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
-import org.springframework.cache.Cache;
-import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
 
-import java.awt.print.Pageable;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentMap;
-
-import static kg.musabaev.megalabnews.aspect.CommentCachingAspect.CACHE_DELETED_BY_KEY;
-import static kg.musabaev.megalabnews.service.impl.SimpleCommentService.ROOT_COMMENTS_CACHE_NAME;
+import static kg.musabaev.megalabnews.aspect.CommentCachingAspect.CACHE_DELETED_BY_OWNER;
 
 @Component
 @Aspect
 @RequiredArgsConstructor
 @Log4j2
-@ConditionalOnExpression("${app.cache-enabled} == true")
 public class PostCachingAspect {
 
-	private final CacheManager cacheManager;
+	private final ManagedCacheManager cacheManager;
 	private final PostMapper mapper;
+	private final CacheInvalidationStats invalidationStats;
+	private final SecondLevelCacheInvalidations secondLevelCache;
 
 	@Pointcut("within(kg.musabaev.megalabnews.service.impl.SimplePostService)")
 	void targetPackage() {
 	}
 
+	/**
+	 * Write-through: кладет в кэш {@code postItem} обновленную публикацию,
+	 * собранную из ответа {@link SimplePostService#update}. Значение появится
+	 * после коммита, см. {@link kg.musabaev.megalabnews.cache.ManagedCache#update}
+	 */
 	@AfterReturning(
 			pointcut = "targetPackage() && execution(* update(..))",
 			returning = "responseDto")
 	void updateCachePostItem(JoinPoint joinPoint, NewOrUpdatePostResponse responseDto) {
 		Long postId = (Long) joinPoint.getArgs()[0];
 		String cacheName = SimplePostService.POST_ITEM_CACHE_NAME;
+		PostItemView updatedPost = mapper.toItemView(responseDto);
 
-		Cache cachePostItem = cacheManager.getCache(cacheName);
-		if (Objects.isNull(cachePostItem)) return;
-		Post cachedPost = cachePostItem.get(postId, Post.class);
-		if (Objects.isNull(cachedPost)) return;
-
-		mapper.update(responseDto, cachedPost);
-
-		cachePostItem.put(postId, cachedPost);
-
+		cacheManager.getManagedCache(cacheName).update(postId, updatedPost);
 		log.debug("Обновлены данные у кэша {} с ключом {}", cacheName, postId);
 	}
 
@@ -61,21 +54,25 @@ public class PostCachingAspect {
 			pointcut = "targetPackage() && execution(* update(..)) || " +
 					"targetPackage() && execution(* save(..))",
 			returning = "r")
-	void deleteUserCreatedPostsOnUpdatingPost(NewOrUpdatePostResponse r) {
-		ConcurrentMap<Object, Object> store = getStoreFromCacheManager(SimpleUserService.USER_CREATED_POSTS_CACHE_NAME);
-
-		store.entrySet().removeIf(entry -> {
-			Pair<Long, Pageable> key = (Pair<Long, Pageable>) entry.getKey();
+	void deleteUserCreatedPostsOnUpdatingPost(JoinPoint jp, NewOrUpdatePostResponse r) {
+		String cacheName = SimpleUserService.USER_CREATED_POSTS_CACHE_NAME;
+		Long authorId = r.author().id();
 
-			boolean isEquals = key.getKey().equals(r.author().id());
-			if (isEquals) log.debug(CACHE_DELETED_BY_KEY, ROOT_COMMENTS_CACHE_NAME, key);
-			return isEquals;
-		});
+		int removed = cacheManager.getManagedCache(cacheName).evictByOwner(authorId);
+		invalidationStats.record(jp.getSignature().toShortString(), cacheName, removed);
+		if (removed > 0) log.debug(CACHE_DELETED_BY_OWNER, removed, cacheName, authorId);
 	}
 
-	private ConcurrentMap<Object, Object> getStoreFromCacheManager(String cacheName) {
-		return (ConcurrentMap<Object, Object>) cacheManager
-				.getCache(cacheName)
-				.getNativeCache();
+	/**
+	 * Кэш второго уровня на этом узле Hibernate обновляет сам, остальным узлам
+	 * изменение публикации рассылается через шину инвалидаций
+	 */
+	@AfterReturning("targetPackage() && execution(* update(..)) ||" +
+			"targetPackage() && execution(* deleteById(..))")
+	void publishPostChangeOnUpdatingOrDeleting(JoinPoint jp) {
+		Long postId = (Long) jp.getArgs()[0];
+
+		secondLevelCache.publishPostChange(postId);
+		log.debug("Изменение публикации {} отправлено остальным узлам", postId);
 	}
 }
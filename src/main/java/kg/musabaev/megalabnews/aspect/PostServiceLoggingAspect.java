@@ -1,5 +1,6 @@
 package kg.musabaev.megalabnews.aspect;
 
+import kg.musabaev.megalabnews.dto.CursorPage;
 import kg.musabaev.megalabnews.dto.NewOrUpdatePostRequest;
 import kg.musabaev.megalabnews.dto.NewOrUpdatePostResponse;
 import kg.musabaev.megalabnews.model.Post;
@@ -33,6 +34,7 @@ public class PostServiceLoggingAspect {
 	static String POST_BY_ID_NOT_FOUND = "Публикация с id {} не найден";
 	static String POST_BY_TITLE_ALREADY_EXISTS = "Публикация с title \"{}\" уже существует";
 	static String TOTAL_NUMBER_POSTS = "Общее кол-во публикаций: {}";
+	static String FEED_PAGE_RECEIVED = "Страница ленты: {} публикаций, следующий курсор: {}";
 	static String POST_BY_ID_FOUND = "Найдена публикация с id: {}";
 	static String POST_BY_ID_DELETED = "Публикации с id {} удален";
 	static String POST_BY_ID_UPDATED = "Публикация с id {} обновлен";
@@ -72,6 +74,14 @@ public class PostServiceLoggingAspect {
 	}
 
 
+	@AfterReturning(
+			pointcut = "targetPackage() && execution(* getFeed(..)))",
+			returning = "r")
+	void afterReturningMethodGetFeed(CursorPage<PostListView> r) {
+		log.debug(FEED_PAGE_RECEIVED, r.content().size(), r.next());
+	}
+
+
 	@AfterReturning(
 			pointcut = "targetPackage() && execution(* getById(..)))",
 			returning = "r")
@@ -1,34 +1,30 @@
 package kg.musabaev.megalabnews.aspect;
 
+import kg.musabaev.megalabnews.cache.CacheInvalidationStats;
+import kg.musabaev.megalabnews.cache.ManagedCacheManager;
+import kg.musabaev.megalabnews.cache.SecondLevelCacheInvalidations;
 import kg.musabaev.megalabnews.service.impl.SimpleUserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.lang3.tuple.Pair;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
-import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
 
-import java.awt.print.Pageable;
-import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
-import java.util.function.Predicate;
+import java.util.List;
 
-import static kg.musabaev.megalabnews.service.impl.SimpleCommentService.ROOT_COMMENTS_CACHE_NAME;
+import static kg.musabaev.megalabnews.aspect.CommentCachingAspect.CACHE_DELETED_BY_OWNER;
 
 @Component
 @Aspect
 @RequiredArgsConstructor
 @Log4j2
-@ConditionalOnExpression("${app.cache-enabled} == true")
 public class UserCachingAspect {
 
-	public static final String CACHE_DELETED_BY_KEY = "Удалено значение у кэша {} по ключу {}";
-
-	private final CacheManager cacheManager;
+	private final ManagedCacheManager cacheManager;
+	private final CacheInvalidationStats invalidationStats;
+	private final SecondLevelCacheInvalidations secondLevelCache;
 
 	@Pointcut("within(kg.musabaev.megalabnews.service.impl.SimpleUserService)")
 	void targetPackage() {
@@ -38,26 +34,35 @@ public class UserCachingAspect {
 			"targetPackage() && execution(* deleteFromFavouritePosts(..)) ||" +
 			"targetPackage() && execution(* deleteById(..))")
 	void deleteFavouriteCacheByUserIdOnAddingOrDeleting(JoinPoint jp) {
-		ConcurrentMap<Object, Object> favouritePostsStore
-				= getStoreFromCacheManager(SimpleUserService.USER_FAVOURITE_POSTS_CACHE_NAME);
-		ConcurrentMap<Object, Object> createdPostsStore
-				= getStoreFromCacheManager(SimpleUserService.USER_CREATED_POSTS_CACHE_NAME);
+		Long userId = (Long) jp.getArgs()[0];
 
-		Predicate<Map.Entry<Object, Object>> predicate = entry -> {
-			Pair<Long, Pageable> key = (Pair<Long, Pageable>) entry.getKey();
+		for (String cacheName : List.of(
+				SimpleUserService.USER_FAVOURITE_POSTS_CACHE_NAME,
+				SimpleUserService.USER_CREATED_POSTS_CACHE_NAME)) {
+			int removed = cacheManager.getManagedCache(cacheName).evictByOwner(userId);
+			invalidationStats.record(jp.getSignature().toShortString(), cacheName, removed);
+			if (removed > 0) log.debug(CACHE_DELETED_BY_OWNER, removed, cacheName, userId);
+		}
+	}
 
-			boolean isEquals = key.getKey().equals(jp.getArgs()[0]);
-			if (isEquals) log.debug(CACHE_DELETED_BY_KEY, ROOT_COMMENTS_CACHE_NAME, key);
-			return isEquals;
-		};
+	/**
+	 * Кэш второго уровня на этом узле Hibernate обновляет сам, остальным узлам
+	 * изменение пользователя рассылается через шину инвалидаций
+	 */
+	@AfterReturning("targetPackage() && execution(* update(..)) ||" +
+			"targetPackage() && execution(* deleteById(..))")
+	void publishUserChangeOnUpdatingOrDeleting(JoinPoint jp) {
+		Long userId = (Long) jp.getArgs()[0];
 
-		favouritePostsStore.entrySet().removeIf(predicate);
-		createdPostsStore.entrySet().removeIf(predicate);
+		secondLevelCache.publishUserChange(userId);
+		log.debug("Изменение пользователя {} отправлено остальным узлам", userId);
 	}
 
-	private ConcurrentMap<Object, Object> getStoreFromCacheManager(String cacheName) {
-		return (ConcurrentMap<Object, Object>) cacheManager
-				.getCache(cacheName)
-				.getNativeCache();
+	/**
+	 * Вместе с пользователем удаляются все его публикации
+	 */
+	@AfterReturning("targetPackage() && execution(* deleteById(..))")
+	void publishPostsChangeOnDeleting() {
+		secondLevelCache.publishAllPostsChange();
 	}
 }
@@ -0,0 +1,133 @@
+package kg.musabaev.megalabnews.cache;
+
+import jakarta.annotation.PreDestroy;
+import kg.musabaev.megalabnews.config.CacheProperties;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static kg.musabaev.megalabnews.service.impl.SimplePostService.POST_LIST_CACHE_NAME;
+
+/**
+ * Журнал изменений кэшей, которые сохраняются в снимок (см. {@link CacheSnapshots}).
+ * Инвалидации этих кэшей записываются в таблицу {@code cache_change_markers}:
+ * внутри транзакции — вместе с самим изменением, вне ее — сразу.
+ * Время изменения берется по часам БД, поэтому не зависит от часов узлов,
+ * но в PostgreSQL это время начала транзакции, а не ее коммита.
+ * <p>
+ * Журнал ведут все узлы, на которых включены снимки, поэтому снимки должны
+ * быть включены на всех узлах, иначе изменения с остальных не будут учтены.
+ * Снимок старше {@code max-age} не загружается, поэтому каждые {@code prune-interval}
+ * узел удаляет записи старше {@code max-age + commit-lag}: без этого журнал рос бы,
+ * пока узлы не останавливаются.
+ */
+@Component
+@Log4j2
+@ConditionalOnExpression("${app.cache.snapshot.enabled:false} == true")
+public class CacheChangeMarkers implements CacheInvalidationPublisher {
+
+	static final int MAX_KEY_LENGTH = 255;
+
+	private final JdbcTemplate jdbcTemplate;
+	private final CacheProperties.Snapshot properties;
+	private final Set<String> cacheNames;
+	private ScheduledExecutorService executor;
+
+	public CacheChangeMarkers(JdbcTemplate jdbcTemplate, CacheProperties properties) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.properties = properties.snapshot();
+		this.cacheNames = Set.copyOf(this.properties.caches());
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("cache-change-markers-"));
+		long interval = properties.pruneInterval().toMillis();
+		executor.scheduleWithFixedDelay(this::pruneExpired, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	void stop() {
+		if (executor != null) executor.shutdownNow();
+	}
+
+	/**
+	 * Ключ записывается только для удаления одного ключа, остальные инвалидации
+	 * (очистка, удаление по владельцу, новое поколение postList) затрагивают весь кэш
+	 */
+	@Override
+	public void publish(CacheInvalidation invalidation) {
+		String cacheName = invalidation.type() == CacheInvalidation.Type.POST_LIST_GENERATION
+				? POST_LIST_CACHE_NAME
+				: invalidation.cacheName();
+		if (!cacheNames.contains(cacheName)) return;
+
+		String key = invalidation.type() == CacheInvalidation.Type.EVICT
+				? CacheInvalidationCodec.encodeKey(invalidation.key())
+				: null;
+		if (key != null && key.length() > MAX_KEY_LENGTH) key = null;
+
+		jdbcTemplate.update("INSERT INTO cache_change_markers (cache_name, cache_key) VALUES (?, ?)", cacheName, key);
+	}
+
+	/**
+	 * Текущий момент по часам БД
+	 */
+	public Instant now() {
+		return jdbcTemplate.queryForObject("SELECT CURRENT_TIMESTAMP", Timestamp.class).toInstant();
+	}
+
+	/**
+	 * Изменения, сделанные начиная с {@code from}
+	 */
+	public List<Marker> since(Instant from) {
+		return jdbcTemplate.query(
+				"SELECT cache_name, cache_key FROM cache_change_markers WHERE changed_at >= ?",
+				(rs, rowNum) -> {
+					String key = rs.getString("cache_key");
+					return new Marker(rs.getString("cache_name"), key != null ? CacheInvalidationCodec.decodeKey(key) : null);
+				},
+				Timestamp.from(from));
+	}
+
+	/**
+	 * Удаляет изменения, сделанные раньше {@code before}
+	 */
+	public int prune(Instant before) {
+		int deleted = jdbcTemplate.update("DELETE FROM cache_change_markers WHERE changed_at < ?", Timestamp.from(before));
+		log.debug("Из журнала изменений кэшей удалено {} записей", deleted);
+		return deleted;
+	}
+
+	/**
+	 * Удаляет изменения, которые не понадобятся ни одному снимку:
+	 * снимок старше {@code max-age} отбрасывается целиком
+	 */
+	void pruneExpired() {
+		try {
+			prune(now().minus(properties.maxAge()).minus(properties.commitLag()));
+		} catch (DataAccessException e) {
+			log.warn("Не удалось очистить журнал изменений кэшей", e);
+		}
+	}
+
+	/**
+	 * @param key измененный ключ, либо {@code null}, если изменился весь кэш
+	 */
+	public record Marker(String cacheName, @Nullable Object key) {
+	}
+}
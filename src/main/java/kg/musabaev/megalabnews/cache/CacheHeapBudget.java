@@ -0,0 +1,70 @@
+package kg.musabaev.megalabnews.cache;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Общий лимит памяти для всех кэшей, ограниченных по весу.
+ * Проверяется после каждой записи: пока суммарный вес кэшей больше лимита,
+ * из самого тяжелого кэша вытесняются самые холодные записи.
+ * Порядок вытеснения между кэшами Caffeine не знает, поэтому самый тяжелый кэш
+ * используется как приближение "самых холодных записей всех кэшей".
+ * <p>
+ * Вес кэшей обновляется Caffeine асинхронно, поэтому лимит может ненадолго
+ * превышаться на вес последних записей.
+ */
+@Log4j2
+public class CacheHeapBudget {
+
+	@Getter
+	private final long limit;
+	private final Supplier<Collection<ManagedCache>> caches;
+	private final AtomicBoolean enforcing = new AtomicBoolean();
+
+	/**
+	 * @param limit  лимит в байтах
+	 * @param caches кэши, среди которых распределяется лимит
+	 */
+	public CacheHeapBudget(long limit, Supplier<Collection<ManagedCache>> caches) {
+		this.limit = limit;
+		this.caches = caches;
+	}
+
+	/**
+	 * Суммарный вес всех кэшей, ограниченных по весу
+	 */
+	public long usedBytes() {
+		return caches.get().stream()
+				.mapToLong(cache -> cache.weightedSize().orElse(0))
+				.sum();
+	}
+
+	/**
+	 * Вытесняет записи, пока суммарный вес больше лимита. Если лимит уже соблюдает
+	 * другой поток, то сразу возвращается: записи, вставленные тем временем,
+	 * будут учтены при следующей проверке
+	 */
+	public void enforce() {
+		if (!enforcing.compareAndSet(false, true)) return;
+		try {
+			long used = usedBytes();
+			while (used > limit) {
+				ManagedCache heaviest = caches.get().stream()
+						.max(Comparator.comparingLong(cache -> cache.weightedSize().orElse(0)))
+						.orElse(null);
+				long evicted = heaviest != null ? heaviest.evictColdest(used - limit) : 0;
+				if (evicted == 0) break;
+
+				log.debug("Из кэша {} вытеснено {} байт ради общего лимита {}", heaviest.getName(), evicted, limit);
+				used -= evicted;
+			}
+		} finally {
+			enforcing.set(false);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package kg.musabaev.megalabnews.cache;
+
+import org.springframework.lang.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Инвалидация, которую выполнил один узел и должны повторить остальные
+ *
+ * @param cacheName название кэша, для {@link Type#POST_LIST_GENERATION} — {@code null}
+ * @param key       ключ для {@link Type#EVICT}, владелец для {@link Type#EVICT_BY_OWNER},
+ *                  список тегов для {@link Type#POST_LIST_GENERATION}
+ */
+public record CacheInvalidation(
+		Type type,
+		@Nullable String cacheName,
+		@Nullable Object key
+) {
+
+	public enum Type {
+		EVICT,
+		EVICT_BY_OWNER,
+		CLEAR,
+		POST_LIST_GENERATION
+	}
+
+	public static CacheInvalidation evict(String cacheName, Object key) {
+		return new CacheInvalidation(Type.EVICT, cacheName, key);
+	}
+
+	public static CacheInvalidation evictByOwner(String cacheName, Object owner) {
+		return new CacheInvalidation(Type.EVICT_BY_OWNER, cacheName, owner);
+	}
+
+	public static CacheInvalidation clear(String cacheName) {
+		return new CacheInvalidation(Type.CLEAR, cacheName, null);
+	}
+
+	public static CacheInvalidation postListGeneration(Collection<String> tags) {
+		return new CacheInvalidation(Type.POST_LIST_GENERATION, null, List.copyOf(tags));
+	}
+}
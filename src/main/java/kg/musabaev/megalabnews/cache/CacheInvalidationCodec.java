@@ -0,0 +1,129 @@
+package kg.musabaev.megalabnews.cache;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.lang.Nullable;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Компактный текстовый формат пакета инвалидаций для {@code NOTIFY}.
+ * Первая строка — id узла-отправителя, далее по строке на инвалидацию:
+ * <pre>
+ * E postItem L42         удалить ключ
+ * O rootCommentList L42  удалить ключи владельца
+ * C postImage            очистить кэш
+ * G S%D0%B0 Sb           новое поколение postList для тегов
+ * </pre>
+ * Поддерживаемые ключи: {@code L<long>}, {@code S<urlencoded string>}
+ * и {@code P<ключ>,<ключ>} для {@link Pair} из них.
+ * Инвалидация ключа другого типа заменяется очисткой всего кэша.
+ * Все символы сообщения — ASCII, поэтому длина строки равна ее размеру в байтах.
+ */
+@Log4j2
+public final class CacheInvalidationCodec {
+
+	private CacheInvalidationCodec() {
+	}
+
+	/**
+	 * @param maxPayloadLength максимальная длина одного сообщения
+	 * @return сообщения, каждое из которых начинается с id узла
+	 */
+	public static List<String> encode(String nodeId, Collection<CacheInvalidation> invalidations, int maxPayloadLength) {
+		List<String> payloads = new ArrayList<>();
+		StringBuilder payload = new StringBuilder(nodeId);
+		for (CacheInvalidation invalidation : invalidations) {
+			String line = encode(invalidation);
+			if (payload.length() > nodeId.length() && payload.length() + 1 + line.length() > maxPayloadLength) {
+				payloads.add(payload.toString());
+				payload = new StringBuilder(nodeId);
+			}
+			payload.append('\n').append(line);
+		}
+		if (payload.length() > nodeId.length()) payloads.add(payload.toString());
+		return payloads;
+	}
+
+	public static Batch decode(String payload) {
+		String[] lines = payload.split("\n");
+		List<CacheInvalidation> invalidations = new ArrayList<>(lines.length - 1);
+		for (int i = 1; i < lines.length; i++) {
+			try {
+				invalidations.add(decodeLine(lines[i]));
+			} catch (RuntimeException e) {
+				log.warn("Не удалось разобрать инвалидацию кэша: {}", lines[i], e);
+			}
+		}
+		return new Batch(lines[0], invalidations);
+	}
+
+	/**
+	 * @param nodeId id узла-отправителя
+	 */
+	public record Batch(String nodeId, List<CacheInvalidation> invalidations) {
+	}
+
+	@SuppressWarnings("unchecked")
+	private static String encode(CacheInvalidation invalidation) {
+		return switch (invalidation.type()) {
+			case CLEAR -> "C " + invalidation.cacheName();
+			case EVICT, EVICT_BY_OWNER -> {
+				String key = encodeKey(invalidation.key());
+				if (key == null) yield "C " + invalidation.cacheName();
+				char type = invalidation.type() == CacheInvalidation.Type.EVICT ? 'E' : 'O';
+				yield type + " " + invalidation.cacheName() + " " + key;
+			}
+			case POST_LIST_GENERATION -> {
+				StringBuilder line = new StringBuilder("G");
+				for (String tag : (List<String>) invalidation.key())
+					line.append(' ').append(encodeKey(tag));
+				yield line.toString();
+			}
+		};
+	}
+
+	private static CacheInvalidation decodeLine(String line) {
+		String[] parts = line.split(" ");
+		return switch (parts[0]) {
+			case "C" -> CacheInvalidation.clear(parts[1]);
+			case "E" -> CacheInvalidation.evict(parts[1], decodeKey(parts[2]));
+			case "O" -> CacheInvalidation.evictByOwner(parts[1], decodeKey(parts[2]));
+			case "G" -> CacheInvalidation.postListGeneration(Arrays.stream(parts, 1, parts.length)
+					.map(tag -> (String) decodeKey(tag))
+					.toList());
+			default -> throw new IllegalArgumentException("Неизвестный тип инвалидации " + parts[0]);
+		};
+	}
+
+	@Nullable
+	static String encodeKey(Object key) {
+		if (key instanceof Long l) return "L" + l;
+		if (key instanceof String s) return "S" + URLEncoder.encode(s, UTF_8);
+		if (key instanceof Pair<?, ?> pair && !(pair.getLeft() instanceof Pair) && !(pair.getRight() instanceof Pair)) {
+			String left = encodeKey(pair.getLeft());
+			String right = encodeKey(pair.getRight());
+			if (left != null && right != null) return "P" + left + "," + right;
+		}
+		return null;
+	}
+
+	static Object decodeKey(String key) {
+		return switch (key.charAt(0)) {
+			case 'L' -> Long.valueOf(key.substring(1));
+			case 'S' -> URLDecoder.decode(key.substring(1), UTF_8);
+			case 'P' -> {
+				int comma = key.indexOf(',');
+				yield Pair.of(decodeKey(key.substring(1, comma)), decodeKey(key.substring(comma + 1)));
+			}
+			default -> throw new IllegalArgumentException("Неизвестный тип ключа " + key);
+		};
+	}
+}
@@ -0,0 +1,14 @@
+package kg.musabaev.megalabnews.cache;
+
+/**
+ * Получатель инвалидаций, выполненных на этом узле: шина, которая повторяет их
+ * на остальных узлах, и журнал изменений для снимков кэша ({@link CacheChangeMarkers})
+ */
+@FunctionalInterface
+public interface CacheInvalidationPublisher {
+
+	CacheInvalidationPublisher NOOP = invalidation -> {
+	};
+
+	void publish(CacheInvalidation invalidation);
+}
@@ -0,0 +1,82 @@
+package kg.musabaev.megalabnews.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Учитывает, сколько значений удалили инвалидации, выполняемые аспектами
+ * ({@code kg.musabaev.megalabnews.aspect.*CachingAspect}).
+ * Источник инвалидации — метод сервиса, после которого она выполнена.
+ * Счетчики доступны в {@code /actuator/metrics/cache.invalidation.removed}
+ * и в разрезе источников в {@code /actuator/cacheinvalidations}.
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheInvalidationStats {
+
+	private final MeterRegistry registry;
+	private final ConcurrentMap<Source, Counters> counters = new ConcurrentHashMap<>();
+
+	public void record(String source, String cacheName, int removed) {
+		counters.computeIfAbsent(new Source(source, cacheName), this::register).add(removed);
+	}
+
+	/**
+	 * @return кэш -> источник -> счетчики
+	 */
+	public Map<String, Map<String, Snapshot>> snapshot() {
+		Map<String, Map<String, Snapshot>> snapshot = new TreeMap<>();
+		counters.forEach((source, counters) -> snapshot
+				.computeIfAbsent(source.cacheName(), name -> new TreeMap<>())
+				.put(source.source(), counters.snapshot()));
+		return snapshot;
+	}
+
+	private Counters register(Source source) {
+		Counters counters = new Counters();
+		registry.more().counter(
+				"cache.invalidation.removed",
+				Tags.of("cache", source.cacheName(), "source", source.source()),
+				counters,
+				c -> c.removed.sum());
+		return counters;
+	}
+
+	/**
+	 * @param invalidations кол-во инвалидаций
+	 * @param removed       кол-во удаленных ими значений
+	 * @param lastRemoved   кол-во значений, удаленных последней инвалидацией
+	 */
+	public record Snapshot(long invalidations, long removed, int lastRemoved, Instant lastInvalidatedAt) {
+	}
+
+	private record Source(String source, String cacheName) {
+	}
+
+	private static class Counters {
+		final LongAdder invalidations = new LongAdder();
+		final LongAdder removed = new LongAdder();
+		volatile int lastRemoved;
+		volatile Instant lastInvalidatedAt;
+
+		void add(int removed) {
+			invalidations.increment();
+			this.removed.add(removed);
+			lastRemoved = removed;
+			lastInvalidatedAt = Instant.now();
+		}
+
+		Snapshot snapshot() {
+			return new Snapshot(invalidations.sum(), removed.sum(), lastRemoved, lastInvalidatedAt);
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package kg.musabaev.megalabnews.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/cacheinvalidations}: сколько значений каждого кэша
+ * удалили инвалидации после каждого из методов сервисов
+ */
+@Component
+@Endpoint(id = "cacheinvalidations")
+@RequiredArgsConstructor
+public class CacheInvalidationsEndpoint {
+
+	private final CacheInvalidationStats stats;
+
+	@ReadOperation
+	public Map<String, Map<String, CacheInvalidationStats.Snapshot>> invalidations() {
+		return stats.snapshot();
+	}
+}
@@ -0,0 +1,49 @@
+package kg.musabaev.megalabnews.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/cachemodes}: какие кэши этого узла включены.
+ * {@code POST /actuator/cachemodes {"enabled": false}} выключает все кэши,
+ * {@code POST /actuator/cachemodes/postItem {"enabled": false}} — только {@code postItem}.
+ * Режим действует до перезапуска, при запуске его задает {@code app.cache-enabled}.
+ * В отличие от остального actuator, требует ключ доступа с authority {@code MANAGE_CACHE},
+ * см. {@link kg.musabaev.megalabnews.config.SecurityConfig}
+ */
+@Component
+@Endpoint(id = "cachemodes")
+@RequiredArgsConstructor
+@Log4j2
+public class CacheModesEndpoint {
+
+	private final ManagedCacheManager cacheManager;
+
+	@ReadOperation
+	public Map<String, Boolean> modes() {
+		return cacheManager.getModes();
+	}
+
+	@WriteOperation
+	public Map<String, Boolean> setAll(boolean enabled) {
+		cacheManager.setEnabled(enabled);
+		log.warn("Все кэши {}", enabled ? "включены" : "выключены");
+		return cacheManager.getModes();
+	}
+
+	@WriteOperation
+	public Map<String, Boolean> set(@Selector String name, boolean enabled) {
+		if (!cacheManager.setEnabled(name, enabled))
+			throw new InvalidEndpointRequestException("Неизвестный кэш " + name, "Unknown cache");
+		log.warn("Кэш {} {}", name, enabled ? "включен" : "выключен");
+		return cacheManager.getModes();
+	}
+}
@@ -0,0 +1,330 @@
+package kg.musabaev.megalabnews.cache;
+
+import kg.musabaev.megalabnews.repository.projection.PostItemView;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.data.projection.TargetAware;
+import org.springframework.util.ClassUtils;
+
+import java.beans.PropertyDescriptor;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Двоичный формат снимка кэшей, см. {@link CacheSnapshots}:
+ * <pre>
+ * int    MAGIC, byte VERSION
+ * long   момент снимка по часам БД, мс
+ * int    число кэшей, для каждого:
+ *        string название, int число записей, затем ключи и значения записей
+ * </pre>
+ * Каждое значение начинается с байта типа. Поддерживаются {@code null}, {@link Long},
+ * {@link Integer}, {@link Boolean}, {@link String}, {@link LocalDate}, {@link List}, {@link Set},
+ * {@link Pageable}, {@link Page}, ключ {@code postList} и проекции Spring Data из пакета
+ * {@code repository.projection}. Свойства проекции записываются по именам, а при чтении
+ * собираются в проекцию на {@link Map}, как в {@code PostMapper#toItemView}.
+ * Записи, ключ или значение которых другого типа, в снимок не попадают.
+ */
+public final class CacheSnapshotCodec {
+
+	static final int MAGIC = 0x4D4E4353;
+	static final byte VERSION = 1;
+
+	private static final byte NULL = 'N';
+	private static final byte LONG = 'J';
+	private static final byte INTEGER = 'I';
+	private static final byte BOOLEAN = 'Z';
+	private static final byte STRING = 'S';
+	private static final byte DATE = 'D';
+	private static final byte LIST = 'A';
+	private static final byte SET = 'E';
+	private static final byte PAGEABLE = 'G';
+	private static final byte PAGE = 'P';
+	private static final byte POST_LIST_KEY = 'K';
+	private static final byte PROJECTION = 'V';
+
+	private static final String PROJECTION_PACKAGE = PostItemView.class.getPackageName();
+	private static final ProjectionFactory PROJECTION_FACTORY = new SpelAwareProxyProjectionFactory();
+
+	private CacheSnapshotCodec() {
+	}
+
+	public static byte[] encode(Snapshot snapshot) {
+		var bytes = new ByteArrayOutputStream();
+		var out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(snapshot.takenAt().toEpochMilli());
+			out.writeInt(snapshot.caches().size());
+			for (var cache : snapshot.caches().entrySet()) {
+				writeString(out, cache.getKey());
+				writeEntries(out, cache.getValue());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @throws IllegalArgumentException если снимок другого формата или поврежден
+	 */
+	public static Snapshot decode(ByteBuffer in) {
+		try {
+			if (in.getInt() != MAGIC) throw new IllegalArgumentException("Файл не является снимком кэша");
+			byte version = in.get();
+			if (version != VERSION) throw new IllegalArgumentException("Неподдерживаемая версия снимка " + version);
+
+			Instant takenAt = Instant.ofEpochMilli(in.getLong());
+			int cacheCount = in.getInt();
+			Map<String, Map<Object, Object>> caches = new LinkedHashMap<>();
+			for (int i = 0; i < cacheCount; i++) {
+				String name = readString(in);
+				int entryCount = in.getInt();
+				Map<Object, Object> entries = new HashMap<>(entryCount * 4 / 3 + 1);
+				for (int j = 0; j < entryCount; j++)
+					entries.put(read(in), read(in));
+				caches.put(name, entries);
+			}
+			return new Snapshot(takenAt, caches);
+		} catch (BufferUnderflowException | ClassCastException e) {
+			throw new IllegalArgumentException("Снимок кэша поврежден", e);
+		}
+	}
+
+	/**
+	 * @param takenAt момент снимка по часам БД
+	 * @param caches  записи по названиям кэшей
+	 */
+	public record Snapshot(Instant takenAt, Map<String, Map<Object, Object>> caches) {
+	}
+
+	/**
+	 * Число записей известно только после того, как отброшены неподдерживаемые,
+	 * поэтому записи сначала пишутся в отдельный буфер
+	 */
+	private static void writeEntries(DataOutputStream out, Map<Object, Object> entries) throws IOException {
+		var entriesBytes = new ByteArrayOutputStream();
+		var entry = new ByteArrayOutputStream();
+		var entryOut = new DataOutputStream(entry);
+		int count = 0;
+		for (var e : entries.entrySet()) {
+			entry.reset();
+			try {
+				write(entryOut, e.getKey());
+				write(entryOut, e.getValue());
+			} catch (IllegalArgumentException unsupported) {
+				continue;
+			}
+			entry.writeTo(entriesBytes);
+			count++;
+		}
+		out.writeInt(count);
+		entriesBytes.writeTo(out);
+	}
+
+	private static void write(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof Long l) {
+			out.writeByte(LONG);
+			out.writeLong(l);
+		} else if (value instanceof Integer i) {
+			out.writeByte(INTEGER);
+			out.writeInt(i);
+		} else if (value instanceof Boolean b) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean(b);
+		} else if (value instanceof String s) {
+			out.writeByte(STRING);
+			writeString(out, s);
+		} else if (value instanceof LocalDate date) {
+			out.writeByte(DATE);
+			out.writeLong(date.toEpochDay());
+		} else if (value instanceof List<?> list) {
+			out.writeByte(LIST);
+			writeElements(out, list);
+		} else if (value instanceof Set<?> set) {
+			out.writeByte(SET);
+			writeElements(out, set);
+		} else if (value instanceof Pageable pageable) {
+			out.writeByte(PAGEABLE);
+			writePageable(out, pageable);
+		} else if (value instanceof Page<?> page) {
+			out.writeByte(PAGE);
+			out.writeLong(page.getTotalElements());
+			writePageable(out, page.getPageable());
+			writeElements(out, page.getContent());
+		} else if (value instanceof PostListCacheKeyGenerator.PostListKey key) {
+			out.writeByte(POST_LIST_KEY);
+			writeElements(out, key.tags());
+			writeElements(out, key.generations());
+			writePageable(out, key.pageable());
+		} else if (value instanceof TargetAware) {
+			out.writeByte(PROJECTION);
+			writeProjection(out, value);
+		} else {
+			throw new IllegalArgumentException("Неподдерживаемый тип " + value.getClass());
+		}
+	}
+
+	private static Object read(ByteBuffer in) {
+		byte type = in.get();
+		return switch (type) {
+			case NULL -> null;
+			case LONG -> in.getLong();
+			case INTEGER -> in.getInt();
+			case BOOLEAN -> in.get() != 0;
+			case STRING -> readString(in);
+			case DATE -> LocalDate.ofEpochDay(in.getLong());
+			case LIST -> readElements(in, new ArrayList<>());
+			case SET -> readElements(in, new LinkedHashSet<>());
+			case PAGEABLE -> readPageable(in);
+			case PAGE -> {
+				long total = in.getLong();
+				Pageable pageable = readPageable(in);
+				yield new PageImpl<>(readElements(in, new ArrayList<>()), pageable, total);
+			}
+			case POST_LIST_KEY -> {
+				@SuppressWarnings("unchecked")
+				List<String> tags = (List<String>) (List<?>) readElements(in, new ArrayList<>());
+				@SuppressWarnings("unchecked")
+				List<Long> generations = (List<Long>) (List<?>) readElements(in, new ArrayList<>());
+				yield new PostListCacheKeyGenerator.PostListKey(tags, generations, readPageable(in));
+			}
+			case PROJECTION -> readProjection(in);
+			default -> throw new IllegalArgumentException("Неизвестный тип значения " + (char) type);
+		};
+	}
+
+	private static void writeElements(DataOutputStream out, Collection<?> elements) throws IOException {
+		out.writeInt(elements.size());
+		for (Object element : elements)
+			write(out, element);
+	}
+
+	private static <C extends Collection<Object>> C readElements(ByteBuffer in, C elements) {
+		int size = in.getInt();
+		for (int i = 0; i < size; i++)
+			elements.add(read(in));
+		return elements;
+	}
+
+	/**
+	 * {@code page} = -1 для {@link Pageable#unpaged()}
+	 */
+	private static void writePageable(DataOutputStream out, Pageable pageable) throws IOException {
+		if (pageable.isUnpaged()) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(pageable.getPageNumber());
+		out.writeInt(pageable.getPageSize());
+		List<Sort.Order> orders = pageable.getSort().toList();
+		out.writeInt(orders.size());
+		for (Sort.Order order : orders) {
+			writeString(out, order.getProperty());
+			out.writeByte(order.getDirection().ordinal());
+			out.writeBoolean(order.isIgnoreCase());
+			out.writeByte(order.getNullHandling().ordinal());
+		}
+	}
+
+	private static Pageable readPageable(ByteBuffer in) {
+		int page = in.getInt();
+		if (page == -1) return Pageable.unpaged();
+		int size = in.getInt();
+		int orderCount = in.getInt();
+		List<Sort.Order> orders = new ArrayList<>(orderCount);
+		for (int i = 0; i < orderCount; i++) {
+			String property = readString(in);
+			Sort.Direction direction = Sort.Direction.values()[in.get()];
+			boolean ignoreCase = in.get() != 0;
+			var order = new Sort.Order(direction, property, Sort.NullHandling.values()[in.get()]);
+			orders.add(ignoreCase ? order.ignoreCase() : order);
+		}
+		return PageRequest.of(page, size, Sort.by(orders));
+	}
+
+	private static void writeProjection(DataOutputStream out, Object projection) throws IOException {
+		Class<?> type = Arrays.stream(ClassUtils.getAllInterfaces(projection))
+				.filter(i -> i.getPackageName().equals(PROJECTION_PACKAGE))
+				.findFirst()
+				.orElseThrow(() -> new IllegalArgumentException("Неподдерживаемая проекция " + projection.getClass()));
+		List<PropertyDescriptor> properties = getProperties(type);
+
+		writeString(out, type.getName());
+		out.writeInt(properties.size());
+		for (PropertyDescriptor property : properties) {
+			writeString(out, property.getName());
+			try {
+				write(out, property.getReadMethod().invoke(projection));
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				throw new IllegalArgumentException("Не удалось прочитать свойство " + property.getName(), e);
+			}
+		}
+	}
+
+	private static Object readProjection(ByteBuffer in) {
+		String typeName = readString(in);
+		Class<?> type;
+		try {
+			type = ClassUtils.forName(typeName, CacheSnapshotCodec.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("Неизвестная проекция " + typeName, e);
+		}
+		if (!type.isInterface() || !type.getPackageName().equals(PROJECTION_PACKAGE))
+			throw new IllegalArgumentException("Неподдерживаемая проекция " + typeName);
+
+		int size = in.getInt();
+		Map<String, Object> properties = new HashMap<>(size * 4 / 3 + 1);
+		for (int i = 0; i < size; i++)
+			properties.put(readString(in), read(in));
+		return PROJECTION_FACTORY.createProjection(type, properties);
+	}
+
+	private static List<PropertyDescriptor> getProperties(Class<?> type) {
+		return Arrays.stream(BeanUtils.getPropertyDescriptors(type))
+				.filter(property -> property.getReadMethod() != null)
+				.sorted(Comparator.comparing(PropertyDescriptor::getName))
+				.toList();
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+}
@@ -0,0 +1,204 @@
+package kg.musabaev.megalabnews.cache;
+
+import kg.musabaev.megalabnews.config.CacheProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.cache.support.NullValue;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static kg.musabaev.megalabnews.service.impl.SimplePostService.POST_LIST_CACHE_NAME;
+
+/**
+ * Снимок кэшей на диске, чтобы после перезапуска узел начинал работу с теплыми кэшами.
+ * При штатной остановке записи кэшей из {@code snapshot.caches} сохраняются
+ * в {@code snapshot.path} ({@link CacheSnapshotCodec}), при запуске загружаются
+ * до того, как узел станет готов принимать трафик, а файл удаляется.
+ * <p>
+ * В снимке хранится момент его создания по часам БД. Записи, которые после этого
+ * момента изменились по журналу {@link CacheChangeMarkers}, не загружаются,
+ * а снимок старше {@code max-age} отбрасывается целиком.
+ * Поколения {@code postList} живут только в памяти узла, поэтому в снимок попадают
+ * лишь страницы текущих поколений, а при загрузке они получают текущие поколения нового узла.
+ */
+@Component
+@RequiredArgsConstructor
+@Log4j2
+@ConditionalOnExpression("${app.cache.snapshot.enabled:false} == true")
+public class CacheSnapshots {
+
+	private final ManagedCacheManager cacheManager;
+	private final PostListGenerations postListGenerations;
+	private final CacheChangeMarkers changeMarkers;
+	private final CacheProperties properties;
+
+	/**
+	 * Вызывается до остановки веб-сервера: изменения, сделанные после снимка,
+	 * попадут в журнал и будут учтены при загрузке
+	 */
+	@EventListener(ContextClosedEvent.class)
+	public void save() {
+		CacheProperties.Snapshot snapshot = properties.snapshot();
+		long start = System.nanoTime();
+		try {
+			Instant takenAt = changeMarkers.now();
+			Map<String, Map<Object, Object>> caches = new LinkedHashMap<>();
+			for (ManagedCache cache : cacheManager.getManagedCaches())
+				if (snapshot.caches().contains(cache.getName()))
+					caches.put(cache.getName(), getEntries(cache));
+
+			byte[] bytes = CacheSnapshotCodec.encode(new CacheSnapshotCodec.Snapshot(takenAt, caches));
+			write(snapshot.path(), bytes);
+			changeMarkers.prune(takenAt.minus(snapshot.maxAge()).minus(snapshot.commitLag()));
+
+			log.info("Снимок кэшей {} сохранен в {}: {} байт за {} мс",
+					caches.keySet(), snapshot.path(), bytes.length, elapsedMillis(start));
+		} catch (IOException | RuntimeException e) {
+			log.error("Не удалось сохранить снимок кэшей в {}", snapshot.path(), e);
+		}
+	}
+
+	@EventListener(ApplicationStartedEvent.class)
+	public void load() {
+		Path path = properties.snapshot().path();
+		if (!Files.exists(path)) {
+			log.debug("Снимка кэшей {} нет", path);
+			return;
+		}
+
+		long start = System.nanoTime();
+		try {
+			CacheSnapshotCodec.Snapshot snapshot = CacheSnapshotCodec.decode(read(path));
+			Instant now = changeMarkers.now();
+			if (snapshot.takenAt().plus(properties.snapshot().maxAge()).isBefore(now)) {
+				log.info("Снимок кэшей {} от {} устарел и не загружается", path, snapshot.takenAt());
+				return;
+			}
+
+			int[] counts = restore(snapshot);
+			log.info("Из снимка кэшей {} от {} загружено {} записей за {} мс, отброшено измененных {}",
+					path, snapshot.takenAt(), counts[0], elapsedMillis(start), counts[1]);
+		} catch (IOException | RuntimeException e) {
+			log.error("Не удалось загрузить снимок кэшей {}", path, e);
+		} finally {
+			delete(path);
+		}
+	}
+
+	/**
+	 * @return число загруженных записей и число отброшенных
+	 */
+	private int[] restore(CacheSnapshotCodec.Snapshot snapshot) {
+		Set<String> changedCaches = new HashSet<>();
+		Map<String, Set<Object>> changedKeys = new HashMap<>();
+		List<CacheChangeMarkers.Marker> markers =
+				changeMarkers.since(snapshot.takenAt().minus(properties.snapshot().commitLag()));
+		for (CacheChangeMarkers.Marker marker : markers) {
+			if (marker.key() == null) changedCaches.add(marker.cacheName());
+			else changedKeys.computeIfAbsent(marker.cacheName(), name -> new HashSet<>()).add(marker.key());
+		}
+
+		int restored = 0;
+		int discarded = 0;
+		for (var entries : snapshot.caches().entrySet()) {
+			String name = entries.getKey();
+			if (!properties.snapshot().caches().contains(name) || changedCaches.contains(name)) {
+				discarded += entries.getValue().size();
+				continue;
+			}
+
+			ManagedCache cache = cacheManager.getManagedCache(name);
+			Set<Object> changed = changedKeys.getOrDefault(name, Set.of());
+			for (var entry : entries.getValue().entrySet()) {
+				if (changed.contains(entry.getKey())) {
+					discarded++;
+					continue;
+				}
+				// значение, загруженное уже после запуска, новее снимка
+				cache.putIfAbsent(toCacheKey(name, entry.getKey()), entry.getValue());
+				restored++;
+			}
+		}
+		return new int[]{restored, discarded};
+	}
+
+	private Map<Object, Object> getEntries(ManagedCache cache) {
+		Map<Object, Object> entries = new HashMap<>();
+		cache.getNativeCache().asMap().forEach((key, value) -> {
+			if (value instanceof NullValue) return;
+			Object snapshotKey = toSnapshotKey(cache.getName(), key);
+			if (snapshotKey != null) entries.put(snapshotKey, value);
+		});
+		return entries;
+	}
+
+	/**
+	 * @return ключ без поколений, либо {@code null}, если страница postList устарела
+	 */
+	private Object toSnapshotKey(String cacheName, Object key) {
+		if (!POST_LIST_CACHE_NAME.equals(cacheName)) return key;
+
+		var postListKey = (PostListCacheKeyGenerator.PostListKey) key;
+		return postListKey.equals(postListGenerations.version(postListKey)) ? postListKey.unversioned() : null;
+	}
+
+	private Object toCacheKey(String cacheName, Object snapshotKey) {
+		if (!POST_LIST_CACHE_NAME.equals(cacheName)) return snapshotKey;
+		return postListGenerations.version((PostListCacheKeyGenerator.PostListKey) snapshotKey);
+	}
+
+	/**
+	 * Снимок пишется во временный файл и переименовывается,
+	 * чтобы остановка посреди записи не оставила поврежденный файл
+	 */
+	private static void write(Path path, byte[] bytes) throws IOException {
+		Path parent = path.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(false);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static MappedByteBuffer read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	private static void delete(Path path) {
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			log.warn("Не удалось удалить снимок кэшей {}", path, e);
+		}
+	}
+
+	private static long elapsedMillis(long start) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+}
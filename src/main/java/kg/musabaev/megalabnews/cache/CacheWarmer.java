@@ -0,0 +1,120 @@
+package kg.musabaev.megalabnews.cache;
+
+import kg.musabaev.megalabnews.config.CacheProperties;
+import kg.musabaev.megalabnews.repository.PostRepo;
+import kg.musabaev.megalabnews.service.PostService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Прогревает кэши при запуске: первые страницы ленты без фильтра и по популярным тегам,
+ * а также последние публикации. Значения загружаются через методы {@link PostService},
+ * поэтому попадают в кэш под теми же ключами, что и при обычных запросах.
+ * <p>
+ * Пока прогрев не закончен и не истек {@code timeout}, индикатор сообщает
+ * {@code OUT_OF_SERVICE} и входит в группу readiness, поэтому балансировщик
+ * не направляет на узел трафик. Если список прогреваемых значений получить не удалось
+ * (например, БД недоступна), прогрев считается завершенным с ошибкой и узел работает с холодным кэшем.
+ */
+@Component
+@RequiredArgsConstructor
+@Log4j2
+@ConditionalOnExpression("${app.cache-enabled} == true && ${app.cache.warm-up.enabled:false} == true")
+public class CacheWarmer implements HealthIndicator {
+
+	private final PostService postService;
+	private final PostRepo postRepo;
+	private final CacheProperties properties;
+
+	private final AtomicInteger completed = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private volatile int total;
+	private volatile boolean finished;
+	private volatile Instant deadline = Instant.MAX;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUp() {
+		CacheProperties.WarmUp warmUp = properties.warmUp();
+		deadline = Instant.now().plus(warmUp.timeout());
+
+		List<Runnable> tasks;
+		try {
+			tasks = getTasks(warmUp);
+		} catch (RuntimeException e) {
+			// без прогрева узел обслуживает запросы с холодным кэшем, но не останавливает запуск
+			failed.incrementAndGet();
+			finished = true;
+			log.error("Не удалось подготовить прогрев кэша, кэш не прогрет", e);
+			return;
+		}
+		total = tasks.size();
+
+		ExecutorService executor = Executors.newFixedThreadPool(
+				warmUp.threads(), new CustomizableThreadFactory("cache-warm-up-"));
+		CompletableFuture.allOf(tasks.stream()
+						.map(task -> CompletableFuture.runAsync(() -> run(task), executor))
+						.toArray(CompletableFuture[]::new))
+				.orTimeout(warmUp.timeout().toMillis(), TimeUnit.MILLISECONDS)
+				.whenComplete((result, timeout) -> {
+					finished = true;
+					executor.shutdownNow();
+					if (timeout != null)
+						log.warn("Прогрев кэша прерван по таймауту: выполнено {} из {}", completed.get(), total);
+					else
+						log.info("Прогрев кэша завершен: выполнено {} из {}, с ошибкой {}", completed.get(), total, failed.get());
+				});
+	}
+
+	private List<Runnable> getTasks(CacheProperties.WarmUp warmUp) {
+		List<String> topTags = postRepo.findTopTags(PageRequest.of(0, warmUp.topTags()));
+		List<Runnable> tasks = new ArrayList<>();
+		for (int page = 0; page < warmUp.pages(); page++) {
+			PageRequest pageable = PageRequest.of(page, warmUp.pageSize());
+			tasks.add(() -> postService.getAll(pageable, null));
+			for (String tag : topTags)
+				tasks.add(() -> postService.getAll(pageable, Set.of(tag)));
+		}
+		for (Long postId : postRepo.findRecentPostIds(PageRequest.of(0, warmUp.recentPosts())))
+			tasks.add(() -> postService.getById(postId));
+		return tasks;
+	}
+
+	@Override
+	public Health health() {
+		Health.Builder health = finished || Instant.now().isAfter(deadline) ? Health.up() : Health.outOfService();
+		return health
+				.withDetail("completed", completed.get())
+				.withDetail("failed", failed.get())
+				.withDetail("total", total)
+				.build();
+	}
+
+	private void run(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			failed.incrementAndGet();
+			log.warn("Не удалось прогреть кэш", e);
+		} finally {
+			completed.incrementAndGet();
+		}
+	}
+}
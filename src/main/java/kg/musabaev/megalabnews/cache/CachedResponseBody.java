@@ -0,0 +1,22 @@
+package kg.musabaev.megalabnews.cache;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Помечает метод контроллера, тело ответа которого берется из кэша сервиса:
+ * {@link SerializedResponseCache} отдает его уже сериализованным.
+ * Тело должно возвращаться из кэша как есть, без копирования и преобразований
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CachedResponseBody {
+
+	/**
+	 * Кэш сервиса, из которого берется тело. Пока он выключен,
+	 * тело каждый раз новое, и ответ сериализуется обычным образом
+	 */
+	String value();
+}
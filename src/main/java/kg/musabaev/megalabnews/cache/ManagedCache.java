@@ -0,0 +1,603 @@
+package kg.musabaev.megalabnews.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import kg.musabaev.megalabnews.util.Utils;
+import lombok.Builder;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * {@link CaffeineCache}, который помимо самих значений хранит обратный индекс
+ * "владелец -> ключи". Владелец ключа — сущность, от которой зависит закэшированное
+ * значение (публикация, родительский комментарий, пользователь).
+ * Благодаря индексу инвалидация по владельцу удаляет только его k ключей,
+ * а не проходит по всему кэшу.
+ * <p>
+ * Каждая явная инвалидация передается в {@link CacheInvalidationPublisher},
+ * чтобы ее повторили остальные узлы. Вытеснение по размеру и времени жизни,
+ * а также инвалидации, пришедшие с других узлов ({@link #apply}), не публикуются.
+ * <p>
+ * Загрузка через {@link #get(Object, Callable)} (т.е. {@code @Cacheable(sync = true)})
+ * выполняется в режиме single-flight: при промахе значение по ключу загружает только
+ * один поток, а остальные ждут его результат, см. {@link #coalescedCount()}.
+ * Там же работают refresh-ahead и stale-while-revalidate, см. {@link Settings}.
+ * <p>
+ * Если кэш ограничен по весу, то вес записи — оценка ее размера в байтах,
+ * а общий для всех кэшей лимит соблюдается через {@link #evictColdest(long)}.
+ * <p>
+ * Кэш можно выключить на ходу ({@link #setEnabled(boolean)}): тогда он ничего не хранит,
+ * каждое обращение загружает значение заново, а инвалидации выполняются и публикуются как обычно.
+ */
+public class ManagedCache extends CaffeineCache {
+
+	private final Function<Object, Collection<?>> keyOwners;
+	private final ConcurrentMap<Object, Set<Object>> keysByOwner;
+	private final CacheInvalidationPublisher publisher;
+	private final boolean singleFlight;
+	private final ConcurrentMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+	private final LongAdder coalesced = new LongAdder();
+
+	@Nullable
+	private final Duration refreshAfter;
+	@Nullable
+	private final Policy.FixedExpiration<Object, Object> writeExpiration;
+	@Nullable
+	private final Cache<Object, Object> staleValues;
+	private final UnaryOperator<Object> staleKey;
+	@Nullable
+	private final Executor refreshExecutor;
+	private final LongAdder refreshes = new LongAdder();
+	private final LongAdder staleHits = new LongAdder();
+	private final LongAdder budgetEvictions = new LongAdder();
+	private final StatsCounter stats;
+	private final Runnable afterWrite;
+	private volatile boolean enabled = true;
+
+	private ManagedCache(
+			String name,
+			Cache<Object, Object> cache,
+			ConcurrentMap<Object, Set<Object>> keysByOwner,
+			Settings settings,
+			StatsCounter stats) {
+		super(name, cache);
+		this.stats = stats;
+		this.keyOwners = settings.keyOwners();
+		this.keysByOwner = keysByOwner;
+		this.publisher = settings.publisher();
+		this.singleFlight = settings.singleFlight();
+		this.refreshAfter = settings.refreshAfter();
+		this.writeExpiration = cache.policy().expireAfterWrite().orElse(null);
+		this.staleValues = settings.staleGrace() != null ? createStaleValues(cache, settings.staleGrace()) : null;
+		this.staleKey = settings.staleKey();
+		this.refreshExecutor = settings.refreshExecutor();
+		this.afterWrite = settings.afterWrite();
+	}
+
+	/**
+	 * Устаревшие копии ссылаются на те же объекты, что и основной кэш,
+	 * и занимают память сверх него только после вытеснения основного значения,
+	 * поэтому ограничиваются тем же лимитом, но в общий вес кэша не входят
+	 */
+	private static Cache<Object, Object> createStaleValues(Cache<Object, Object> cache, Duration staleGrace) {
+		Caffeine<Object, Object> caffeine = Caffeine.newBuilder().expireAfterWrite(staleGrace);
+		Policy.Eviction<Object, Object> eviction = cache.policy().eviction().orElse(null);
+		if (eviction == null) caffeine.maximumSize(Long.MAX_VALUE);
+		else if (eviction.isWeighted()) caffeine.maximumWeight(eviction.getMaximum()).weigher(ObjectSizeEstimator::weigh);
+		else caffeine.maximumSize(eviction.getMaximum());
+		return caffeine.build();
+	}
+
+	public static ManagedCache create(
+			String name,
+			Caffeine<Object, Object> caffeine,
+			@Nullable Function<Object, Collection<?>> keyOwners) {
+		return create(name, caffeine, Settings.builder()
+				.keyOwners(keyOwners)
+				.singleFlight(true)
+				.build());
+	}
+
+	public static ManagedCache create(String name, Caffeine<Object, Object> caffeine, Settings settings) {
+		Function<Object, Collection<?>> owners = settings.keyOwners();
+		ConcurrentMap<Object, Set<Object>> keysByOwner = new ConcurrentHashMap<>();
+		StatsCounter stats = new ConcurrentStatsCounter();
+
+		// вытеснение по размеру и времени жизни происходит внутри Caffeine,
+		// поэтому индекс чистится в слушателе, который вызывается атомарно с удалением
+		Cache<Object, Object> cache = caffeine
+				.evictionListener((key, value, cause) -> unindex(keysByOwner, owners, key))
+				.recordStats(() -> new WritesAsLoadsIgnoringStatsCounter(stats))
+				.build();
+		return new ManagedCache(name, cache, keysByOwner, settings, stats);
+	}
+
+	/**
+	 * @param keyOwners       функция, возвращающая владельцев ключа,
+	 *                        либо {@code null}, если кэш не нуждается в индексе
+	 * @param publisher       получатель инвалидаций для остальных узлов
+	 * @param singleFlight    объединять ли параллельные загрузки одного ключа
+	 * @param refreshAfter    возраст значения, после которого оно перезагружается в фоне
+	 *                        при очередном обращении (refresh-ahead); работает только
+	 *                        вместе с {@code expireAfterWrite}
+	 * @param staleGrace      сколько времени после загрузки значение может отдаваться
+	 *                        устаревшим после инвалидации, пока в фоне грузится новое
+	 *                        (stale-while-revalidate)
+	 * @param staleKey        ключ, под которым хранится устаревшее значение. Нужен кэшам
+	 *                        с версионными ключами, где после инвалидации меняется сам ключ
+	 * @param refreshExecutor пул для фоновых загрузок
+	 * @param afterWrite      вызывается после каждой записи в кэш, например для проверки
+	 *                        общего лимита памяти
+	 */
+	@Builder
+	public record Settings(
+			@Nullable Function<Object, Collection<?>> keyOwners,
+			@Nullable CacheInvalidationPublisher publisher,
+			boolean singleFlight,
+			@Nullable Duration refreshAfter,
+			@Nullable Duration staleGrace,
+			@Nullable UnaryOperator<Object> staleKey,
+			@Nullable Executor refreshExecutor,
+			@Nullable Runnable afterWrite
+	) {
+
+		public Settings {
+			if (keyOwners == null) keyOwners = key -> List.of();
+			if (publisher == null) publisher = CacheInvalidationPublisher.NOOP;
+			if (staleKey == null) staleKey = UnaryOperator.identity();
+			if (afterWrite == null) afterWrite = () -> {};
+			if ((refreshAfter != null || staleGrace != null) && refreshExecutor == null)
+				throw new IllegalArgumentException("Для фоновой загрузки нужен refreshExecutor");
+		}
+	}
+
+	/**
+	 * Удаляет все значения, ключи которых принадлежат владельцу
+	 *
+	 * @return кол-во удаленных значений на этом узле
+	 */
+	public int evictByOwner(Object owner) {
+		publisher.publish(CacheInvalidation.evictByOwner(getName(), owner));
+		return evictByOwnerLocally(owner);
+	}
+
+	/**
+	 * Обновляет значение на этом узле, а на остальных узлах удаляет его,
+	 * чтобы они загрузили актуальное значение при следующем обращении.
+	 * <p>
+	 * Внутри транзакции удаление публикуется сразу и уходит в ее пакет инвалидаций,
+	 * а новое значение кладется только после коммита: до него читатели должны видеть
+	 * прежнее значение, а при откате оно и остается
+	 */
+	public void update(Object key, @Nullable Object value) {
+		publisher.publish(CacheInvalidation.evict(getName(), key));
+		Utils.runAfterCommit(() -> put(key, value));
+	}
+
+	/**
+	 * Применяет инвалидацию, пришедшую с другого узла, не публикуя ее повторно
+	 */
+	public void apply(CacheInvalidation invalidation) {
+		switch (invalidation.type()) {
+			case EVICT -> invalidateKey(invalidation.key());
+			case EVICT_BY_OWNER -> evictByOwnerLocally(invalidation.key());
+			case CLEAR -> clearLocally();
+			default -> throw new IllegalArgumentException(invalidation.type().name());
+		}
+	}
+
+	private int evictByOwnerLocally(Object owner) {
+		Set<Object> keys = keysByOwner.remove(owner);
+		if (keys == null) return 0;
+
+		int removed = 0;
+		for (Object key : keys)
+			if (invalidateKey(key)) removed++;
+		return removed;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Выключенный кэш очищается, поэтому после включения он заполняется заново
+	 * и не отдает значения, которые могли пропустить инвалидации
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (enabled) return;
+		clearLocally();
+		if (staleValues != null) staleValues.invalidateAll();
+	}
+
+	/**
+	 * Кол-во обращений, которые при промахе дождались чужой загрузки вместо своей
+	 */
+	public long coalescedCount() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * Занимаемая память: для кэша, ограниченного по весу, это его вес,
+	 * иначе оценка по выборке из {@code sampleSize} значений, см. {@link ObjectSizeEstimator}
+	 */
+	public long estimatedBytes(int sampleSize) {
+		OptionalLong weightedSize = weightedSize();
+		if (weightedSize.isPresent()) return weightedSize.getAsLong();
+
+		long sampled = 0;
+		long bytes = 0;
+		for (Object value : getNativeCache().asMap().values()) {
+			if (sampled == sampleSize) break;
+			bytes += ObjectSizeEstimator.estimate(value);
+			sampled++;
+		}
+		return sampled > 0 ? bytes * getNativeCache().estimatedSize() / sampled : 0;
+	}
+
+	/**
+	 * Суммарный вес записей, если кэш ограничен по весу
+	 */
+	public OptionalLong weightedSize() {
+		return getNativeCache().policy().eviction()
+				.filter(Policy.Eviction::isWeighted)
+				.map(Policy.Eviction::weightedSize)
+				.orElse(OptionalLong.empty());
+	}
+
+	/**
+	 * Вытесняет на этом узле самые холодные записи общим весом не меньше {@code weight}
+	 * вместе с их устаревшими копиями. Остальным узлам не публикуется:
+	 * нехватка памяти на одном узле не делает значения неактуальными
+	 *
+	 * @return вес вытесненных записей
+	 */
+	public long evictColdest(long weight) {
+		Policy.Eviction<Object, Object> eviction = getNativeCache().policy().eviction()
+				.filter(Policy.Eviction::isWeighted)
+				.orElse(null);
+		if (eviction == null || weight <= 0) return 0;
+
+		long evicted = 0;
+		for (Object key : eviction.coldestWeighted(weight).keySet()) {
+			int keyWeight = eviction.weightOf(key).orElse(0);
+			if (!invalidateKey(key)) continue;
+			if (staleValues != null) staleValues.invalidate(staleKey.apply(key));
+			budgetEvictions.increment();
+			evicted += keyWeight;
+		}
+		return evicted;
+	}
+
+	/**
+	 * Кол-во записей, вытесненных ради общего лимита памяти
+	 */
+	public long budgetEvictionCount() {
+		return budgetEvictions.sum();
+	}
+
+	/**
+	 * Кол-во фоновых загрузок: refresh-ahead и stale-while-revalidate
+	 */
+	public long refreshCount() {
+		return refreshes.sum();
+	}
+
+	/**
+	 * Кол-во обращений, получивших устаревшее значение
+	 */
+	public long staleHitCount() {
+		return staleHits.sum();
+	}
+
+	/**
+	 * Загружает значение при промахе. В отличие от {@link CaffeineCache#get(Object, Callable)},
+	 * загрузка выполняется вне {@code compute} и не блокирует соседние ключи,
+	 * а ожидающие потоки получают результат или исключение через общий {@link CompletableFuture}.
+	 * <p>
+	 * Стареющее значение отдается сразу и перезагружается в фоне тем же {@code valueLoader},
+	 * а при промахе, если есть устаревшее значение, оно отдается вместо ожидания загрузки.
+	 */
+	@Override
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		if (!enabled) return load(key, valueLoader);
+
+		ValueWrapper cached = get(key);
+		if (cached != null) {
+			if (isAging(key)) reloadAsync(key, valueLoader, cached.get());
+			return (T) cached.get();
+		}
+		ValueWrapper stale = getStale(key);
+		if (stale != null) {
+			staleHits.increment();
+			reloadAsync(key, valueLoader, stale.get());
+			return (T) stale.get();
+		}
+
+		CompletableFuture<Object> loading = new CompletableFuture<>();
+		CompletableFuture<Object> leader = singleFlight ? inFlight.putIfAbsent(key, loading) : null;
+		if (leader != null) {
+			coalesced.increment();
+			return (T) await(key, valueLoader, leader);
+		}
+
+		try {
+			// значение могло появиться, пока предыдущий загружающий поток снимал свою загрузку.
+			// Повторная проверка не учитывается в статистике как еще один промах
+			Object storeValue = getNativeCache().policy().getIfPresentQuietly(key);
+			cached = storeValue != null ? toValueWrapper(storeValue) : null;
+			T value = cached != null ? (T) cached.get() : load(key, valueLoader);
+			loading.complete(value);
+			return value;
+		} catch (ValueRetrievalException e) {
+			loading.completeExceptionally(e.getCause());
+			throw e;
+		} catch (Throwable e) {
+			loading.completeExceptionally(e);
+			throw e;
+		} finally {
+			if (singleFlight) inFlight.remove(key, loading);
+		}
+	}
+
+	private boolean isAging(Object key) {
+		if (refreshAfter == null || writeExpiration == null) return false;
+		OptionalLong age = writeExpiration.ageOf(key, TimeUnit.NANOSECONDS);
+		return age.isPresent() && age.getAsLong() >= refreshAfter.toNanos();
+	}
+
+	@Nullable
+	private ValueWrapper getStale(Object key) {
+		if (staleValues == null) return null;
+		Object storeValue = staleValues.getIfPresent(staleKey.apply(key));
+		return storeValue != null ? toValueWrapper(storeValue) : null;
+	}
+
+	/**
+	 * Загружает значение в фоне, если его уже не загружает другой поток.
+	 * Потоки, которые тем временем промахнутся по ключу, дождутся этой загрузки
+	 *
+	 * @param fallback значение для ожидающих потоков, если пул переполнен
+	 */
+	private void reloadAsync(Object key, Callable<?> valueLoader, @Nullable Object fallback) {
+		CompletableFuture<Object> loading = new CompletableFuture<>();
+		if (inFlight.putIfAbsent(key, loading) != null) return;
+		try {
+			refreshExecutor.execute(() -> {
+				try {
+					loading.complete(load(key, valueLoader));
+				} catch (Throwable e) {
+					loading.completeExceptionally(e instanceof ValueRetrievalException ? e.getCause() : e);
+					// значение, которое не удалось перезагрузить, больше не отдается устаревшим
+					if (staleValues != null) staleValues.invalidate(staleKey.apply(key));
+				} finally {
+					inFlight.remove(key, loading);
+				}
+			});
+			refreshes.increment();
+		} catch (RejectedExecutionException e) {
+			inFlight.remove(key, loading);
+			loading.complete(fallback);
+		}
+	}
+
+	/**
+	 * Загрузка идет мимо Caffeine, поэтому ее время записывается в статистику кэша вручную
+	 */
+	private <T> T load(Object key, Callable<T> valueLoader) {
+		long start = System.nanoTime();
+		T value;
+		try {
+			value = valueLoader.call();
+		} catch (Exception e) {
+			stats.recordLoadFailure(System.nanoTime() - start);
+			throw new ValueRetrievalException(key, valueLoader, e);
+		}
+		stats.recordLoadSuccess(System.nanoTime() - start);
+		put(key, value);
+		return value;
+	}
+
+	private static Object await(Object key, Callable<?> valueLoader, CompletableFuture<Object> leader) {
+		try {
+			return leader.get();
+		} catch (ExecutionException e) {
+			throw new ValueRetrievalException(key, valueLoader, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ValueRetrievalException(key, valueLoader, e);
+		}
+	}
+
+	@Override
+	@Nullable
+	protected Object lookup(Object key) {
+		return enabled ? super.lookup(key) : null;
+	}
+
+	/**
+	 * Значение записывается вместе с записями индекса в одной атомарной операции:
+	 * иначе параллельный {@link #evictByOwner} между ними удалил бы старый набор ключей
+	 * владельца и пропустил уже видимое значение
+	 */
+	@Override
+	public void put(Object key, @Nullable Object value) {
+		if (!enabled) return;
+		Object storeValue = toStoreValue(value);
+		getNativeCache().asMap().compute(key, (k, v) -> {
+			index(k);
+			return storeValue;
+		});
+		putStale(key, value);
+		discardIfDisabled(key);
+		afterWrite.run();
+	}
+
+	@Override
+	@Nullable
+	public ValueWrapper putIfAbsent(Object key, @Nullable Object value) {
+		if (!enabled) return null;
+		Object storeValue = toStoreValue(value);
+		boolean[] added = new boolean[1];
+		Object current = getNativeCache().asMap().computeIfAbsent(key, k -> {
+			index(k);
+			added[0] = true;
+			return storeValue;
+		});
+		if (!added[0]) return toValueWrapper(current);
+
+		putStale(key, value);
+		discardIfDisabled(key);
+		afterWrite.run();
+		return null;
+	}
+
+	/**
+	 * Запись, начатая до выключения, могла завершиться уже после очистки кэша,
+	 * поэтому флаг проверяется еще раз после записи
+	 */
+	private void discardIfDisabled(Object key) {
+		if (enabled) return;
+		invalidateKey(key);
+		if (staleValues != null) staleValues.invalidate(staleKey.apply(key));
+	}
+
+	/**
+	 * Копия переживает инвалидацию основного значения, но не дольше staleGrace после загрузки,
+	 * поэтому устаревшее значение отстает от актуального не больше чем на staleGrace
+	 */
+	private void putStale(Object key, @Nullable Object value) {
+		if (staleValues != null) staleValues.put(staleKey.apply(key), toStoreValue(value));
+	}
+
+	@Override
+	public void evict(Object key) {
+		publisher.publish(CacheInvalidation.evict(getName(), key));
+		invalidateKey(key);
+	}
+
+	@Override
+	public boolean evictIfPresent(Object key) {
+		publisher.publish(CacheInvalidation.evict(getName(), key));
+		return invalidateKey(key);
+	}
+
+	@Override
+	public void clear() {
+		publisher.publish(CacheInvalidation.clear(getName()));
+		clearLocally();
+	}
+
+	@Override
+	public boolean invalidate() {
+		publisher.publish(CacheInvalidation.clear(getName()));
+		keysByOwner.clear();
+		return super.invalidate();
+	}
+
+	private void clearLocally() {
+		// сначала индекс: ключ, добавленный между двумя вызовами,
+		// останется в индексе лишним, но не потеряется
+		keysByOwner.clear();
+		super.clear();
+	}
+
+	int indexedKeysCount(Object owner) {
+		Set<Object> keys = keysByOwner.get(owner);
+		return keys != null ? keys.size() : 0;
+	}
+
+	/**
+	 * Значение удаляется вместе с записями индекса в одной атомарной операции,
+	 * чтобы параллельный put того же ключа не остался без индекса
+	 */
+	private boolean invalidateKey(Object key) {
+		boolean[] removed = new boolean[1];
+		getNativeCache().asMap().computeIfPresent(key, (k, v) -> {
+			unindex(keysByOwner, keyOwners, k);
+			removed[0] = true;
+			return null;
+		});
+		return removed[0];
+	}
+
+	private void index(Object key) {
+		for (Object owner : keyOwners.apply(key))
+			keysByOwner.compute(owner, (o, keys) -> {
+				if (keys == null) keys = ConcurrentHashMap.newKeySet();
+				keys.add(key);
+				return keys;
+			});
+	}
+
+	private static void unindex(
+			ConcurrentMap<Object, Set<Object>> keysByOwner,
+			Function<Object, Collection<?>> keyOwners,
+			Object key) {
+		for (Object owner : keyOwners.apply(key))
+			keysByOwner.computeIfPresent(owner, (o, keys) -> {
+				keys.remove(key);
+				return keys.isEmpty() ? null : keys;
+			});
+	}
+
+	/**
+	 * Значения загружает сам {@link ManagedCache} и записывает загрузки в статистику вручную,
+	 * а Caffeine считает загрузкой каждый {@code compute}, которым значение кладется вместе с индексом
+	 */
+	private record WritesAsLoadsIgnoringStatsCounter(StatsCounter delegate) implements StatsCounter {
+
+		@Override
+		public void recordHits(int count) {
+			delegate.recordHits(count);
+		}
+
+		@Override
+		public void recordMisses(int count) {
+			delegate.recordMisses(count);
+		}
+
+		@Override
+		public void recordLoadSuccess(long loadTime) {
+		}
+
+		@Override
+		public void recordLoadFailure(long loadTime) {
+		}
+
+		@Override
+		public void recordEviction(int weight, RemovalCause cause) {
+			delegate.recordEviction(weight, cause);
+		}
+
+		@Override
+		public CacheStats snapshot() {
+			return delegate.snapshot();
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package kg.musabaev.megalabnews.cache;
+
+import kg.musabaev.megalabnews.config.CacheProperties;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractCacheManager;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Создает {@link ManagedCache} по спецификациям из {@link CacheProperties}.
+ * Кэши, для которых спецификация не задана, создаются по требованию
+ * с настройками по умолчанию.
+ * Фоновые загрузки всех кэшей выполняются в общем ограниченном пуле:
+ * если он переполнен, загрузка пропускается до следующего обращения.
+ * Если задан {@code heap-budget}, кэши, ограниченные по весу, делят общий {@link CacheHeapBudget}.
+ * Кэши можно включать и выключать на ходу, см. {@link ManagedCache#setEnabled(boolean)}.
+ */
+@Log4j2
+public class ManagedCacheManager extends AbstractCacheManager implements DisposableBean {
+
+	private final CacheProperties properties;
+	private final Map<String, Function<Object, Collection<?>>> keyOwners;
+	private final Map<String, UnaryOperator<Object>> staleKeys;
+	private final ObjectProvider<CacheInvalidationPublisher> publisher;
+	private final ThreadPoolExecutor refreshExecutor;
+	@Nullable
+	private final CacheHeapBudget heapBudget;
+	private volatile boolean enabledByDefault = true;
+
+	public ManagedCacheManager(
+			CacheProperties properties,
+			Map<String, Function<Object, Collection<?>>> keyOwners,
+			Map<String, UnaryOperator<Object>> staleKeys,
+			ObjectProvider<CacheInvalidationPublisher> publisher) {
+		this.properties = properties;
+		this.keyOwners = keyOwners;
+		this.staleKeys = staleKeys;
+		this.publisher = publisher;
+
+		CacheProperties.RefreshPool pool = properties.refreshPool();
+		this.refreshExecutor = new ThreadPoolExecutor(
+				pool.threads(), pool.threads(),
+				1, TimeUnit.MINUTES,
+				new ArrayBlockingQueue<>(pool.queueCapacity()),
+				new CustomizableThreadFactory("cache-refresh-"));
+		this.refreshExecutor.allowCoreThreadTimeOut(true);
+
+		this.heapBudget = properties.heapBudget() != null
+				? new CacheHeapBudget(properties.heapBudget().toBytes(), this::getManagedCaches)
+				: null;
+	}
+
+	@Override
+	protected Collection<? extends Cache> loadCaches() {
+		return properties.specs().keySet().stream()
+				.map(this::createCache)
+				.toList();
+	}
+
+	@Override
+	@Nullable
+	protected Cache getMissingCache(String name) {
+		return createCache(name);
+	}
+
+	public ManagedCache getManagedCache(String name) {
+		return (ManagedCache) getCache(name);
+	}
+
+	/**
+	 * Уже созданные кэши, без создания новых
+	 */
+	public Collection<ManagedCache> getManagedCaches() {
+		return getCacheNames().stream()
+				.map(name -> (ManagedCache) lookupCache(name))
+				.toList();
+	}
+
+	public Optional<CacheHeapBudget> getHeapBudget() {
+		return Optional.ofNullable(heapBudget);
+	}
+
+	/**
+	 * Включает или выключает все кэши этого узла, в том числе еще не созданные
+	 */
+	public void setEnabled(boolean enabled) {
+		enabledByDefault = enabled;
+		getManagedCaches().forEach(cache -> cache.setEnabled(enabled));
+	}
+
+	/**
+	 * Включает или выключает один уже созданный кэш этого узла
+	 *
+	 * @return {@code false}, если такого кэша нет
+	 */
+	public boolean setEnabled(String name, boolean enabled) {
+		Cache cache = lookupCache(name);
+		if (cache == null) return false;
+		((ManagedCache) cache).setEnabled(enabled);
+		return true;
+	}
+
+	/**
+	 * @return название кэша -> включен ли он
+	 */
+	public Map<String, Boolean> getModes() {
+		Map<String, Boolean> modes = new TreeMap<>();
+		getManagedCaches().forEach(cache -> modes.put(cache.getName(), cache.isEnabled()));
+		return modes;
+	}
+
+	/**
+	 * Применяет инвалидацию, пришедшую с другого узла.
+	 * Кэш, которого на этом узле еще нет, не создается
+	 */
+	public void apply(CacheInvalidation invalidation) {
+		Cache cache = lookupCache(invalidation.cacheName());
+		if (cache == null) return;
+		((ManagedCache) cache).apply(invalidation);
+	}
+
+	@Override
+	public void destroy() {
+		refreshExecutor.shutdownNow();
+	}
+
+	private ManagedCache createCache(String name) {
+		CacheProperties.Spec spec = properties.getSpec(name);
+		log.debug("Кэш {} настроен: {}", name, spec);
+
+		ManagedCache cache = ManagedCache.create(name, spec.toCaffeine(), ManagedCache.Settings.builder()
+				.keyOwners(keyOwners.get(name))
+				.publisher(invalidation -> publisher.orderedStream().forEach(p -> p.publish(invalidation)))
+				.singleFlight(spec.isSingleFlight())
+				.refreshAfter(spec.refreshAfter())
+				.staleGrace(spec.staleGrace())
+				.staleKey(staleKeys.get(name))
+				.refreshExecutor(refreshExecutor)
+				.afterWrite(heapBudget != null ? heapBudget::enforce : null)
+				.build());
+		cache.setEnabled(enabledByDefault);
+		return cache;
+	}
+}
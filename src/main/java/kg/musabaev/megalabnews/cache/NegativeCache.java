@@ -0,0 +1,30 @@
+package kg.musabaev.megalabnews.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+/**
+ * Кэши заведомо отсутствующих сущностей: повторный запрос несуществующего id
+ * отвечает 404 без обращения к БД. Запись удаляется через {@code @CacheEvict}
+ * при вставке сущности, а на случай вставки, закоммиченной между проверкой и
+ * {@link #markMissing}, кэши живут недолго (см. {@code app.cache.specs}).
+ * Если кэширование выключено, ничего не хранится и каждая проверка идет в БД.
+ */
+@Component
+@RequiredArgsConstructor
+public class NegativeCache {
+
+	private final CacheManager cacheManager;
+
+	public boolean isKnownMissing(String cacheName, Object key) {
+		Cache cache = cacheManager.getCache(cacheName);
+		return cache != null && cache.get(key) != null;
+	}
+
+	public void markMissing(String cacheName, Object key) {
+		Cache cache = cacheManager.getCache(cacheName);
+		if (cache != null) cache.put(key, Boolean.TRUE);
+	}
+}
@@ -0,0 +1,159 @@
+package kg.musabaev.megalabnews.cache;
+
+import org.hibernate.Hibernate;
+import org.springframework.data.projection.TargetAware;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Приблизительно оценивает размер графа объектов в куче (64-битная JVM со сжатыми ссылками).
+ * Оценка нужна, чтобы сравнивать значения кэшей между собой, а не для точного учета памяти.
+ * <ul>
+ *     <li>общие объекты учитываются один раз</li>
+ *     <li>у проекций Spring Data учитывается объект, на который они опираются</li>
+ *     <li>непроинициализированные прокси и коллекции Hibernate не учитываются и не загружаются</li>
+ *     <li>внутренности классов JDK и фреймворков, кроме коллекций и {@code org.springframework.data.domain},
+ *     не обходятся, учитывается только сам объект</li>
+ *     <li>обход ограничен {@link #MAX_OBJECTS} объектами</li>
+ * </ul>
+ */
+public final class ObjectSizeEstimator {
+
+	static final int MAX_OBJECTS = 10_000;
+
+	private static final int OBJECT_HEADER = 12;
+	private static final int ARRAY_HEADER = 16;
+	private static final int REFERENCE = 4;
+	private static final int COLLECTION_ENTRY = 32;
+
+	private static final ClassValue<Layout> LAYOUTS = new ClassValue<>() {
+		@Override
+		protected Layout computeValue(Class<?> type) {
+			return Layout.of(type);
+		}
+	};
+
+	private ObjectSizeEstimator() {
+	}
+
+	public static long estimate(Object root) {
+		Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<Object> pending = new ArrayDeque<>();
+		pending.push(root);
+
+		long size = 0;
+		while (!pending.isEmpty() && visited.size() < MAX_OBJECTS) {
+			Object object = pending.pop();
+			if (object instanceof TargetAware projection) object = projection.getTarget();
+			if (object == null || !Hibernate.isInitialized(object)) continue;
+			object = Hibernate.unproxy(object);
+			if (!visited.add(object)) continue;
+
+			size += sizeOf(object, pending);
+		}
+		return size;
+	}
+
+	/**
+	 * Вес записи кэша для {@link com.github.benmanes.caffeine.cache.Weigher}: ключ и значение
+	 * оцениваются вместе, чтобы общие с ключом объекты не учитывались дважды
+	 */
+	public static int weigh(Object key, Object value) {
+		long entry = estimate(new Object[]{key, value}) - align(ARRAY_HEADER + 2 * REFERENCE);
+		return (int) Math.min(entry, Integer.MAX_VALUE);
+	}
+
+	private static long sizeOf(Object object, Deque<Object> pending) {
+		if (object instanceof String string)
+			return align(OBJECT_HEADER + 2 * REFERENCE) + align(ARRAY_HEADER + string.length());
+		if (object instanceof Collection<?> collection) {
+			for (Object element : collection) if (element != null) pending.push(element);
+			return align(OBJECT_HEADER + 4 * REFERENCE) + (long) collection.size() * COLLECTION_ENTRY;
+		}
+		if (object instanceof Map<?, ?> map) {
+			map.forEach((key, value) -> {
+				if (key != null) pending.push(key);
+				if (value != null) pending.push(value);
+			});
+			return align(OBJECT_HEADER + 4 * REFERENCE) + (long) map.size() * COLLECTION_ENTRY;
+		}
+
+		Class<?> type = object.getClass();
+		if (type.isArray()) {
+			int length = Array.getLength(object);
+			if (type.getComponentType().isPrimitive())
+				return align(ARRAY_HEADER + (long) length * primitiveSize(type.getComponentType()));
+			for (Object element : (Object[]) object) if (element != null) pending.push(element);
+			return align(ARRAY_HEADER + (long) length * REFERENCE);
+		}
+
+		Layout layout = LAYOUTS.get(type);
+		for (Field field : layout.references()) {
+			try {
+				Object value = field.get(object);
+				if (value != null) pending.push(value);
+			} catch (IllegalAccessException ignored) {
+				// поле недоступно, учитывается только ссылка на него
+			}
+		}
+		return layout.shallowSize();
+	}
+
+	private static long align(long size) {
+		return (size + 7) & ~7;
+	}
+
+	private static int primitiveSize(Class<?> type) {
+		if (type == long.class || type == double.class) return 8;
+		if (type == int.class || type == float.class) return 4;
+		if (type == short.class || type == char.class) return 2;
+		return 1;
+	}
+
+	/**
+	 * @param references поля, по которым продолжается обход
+	 */
+	private record Layout(long shallowSize, List<Field> references) {
+
+		static Layout of(Class<?> type) {
+			boolean traversable = isTraversable(type);
+			long size = OBJECT_HEADER;
+			List<Field> references = new ArrayList<>();
+			for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers())) continue;
+					if (field.getType().isPrimitive()) {
+						size += primitiveSize(field.getType());
+						continue;
+					}
+					size += REFERENCE;
+					if (traversable && field.trySetAccessible()) references.add(field);
+				}
+			}
+			return new Layout(align(size), List.copyOf(references));
+		}
+
+		private static boolean isTraversable(Class<?> type) {
+			String name = type.getName();
+			if (name.startsWith("org.springframework.data.domain.")) return true;
+			return !name.startsWith("java.") &&
+					!name.startsWith("javax.") &&
+					!name.startsWith("jakarta.") &&
+					!name.startsWith("jdk.") &&
+					!name.startsWith("sun.") &&
+					!name.startsWith("org.springframework.") &&
+					!name.startsWith("org.hibernate.");
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package kg.musabaev.megalabnews.cache;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import kg.musabaev.megalabnews.config.CacheProperties;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Шина инвалидаций кэша между узлами через PostgreSQL {@code LISTEN/NOTIFY}.
+ * <p>
+ * Инвалидации, выполненные внутри транзакции, собираются в пакет и отправляются
+ * через {@code pg_notify} перед ее коммитом: PostgreSQL доставляет уведомления
+ * только после коммита и отбрасывает их при откате, поэтому остальные узлы
+ * не удалят значения раньше, чем изменения станут видны. Вне транзакции
+ * инвалидация отправляется сразу.
+ * <p>
+ * Каждый узел слушает канал на отдельном соединении и применяет чужие пакеты
+ * к своим кэшам, свои пакеты пропускаются по id узла. После переподключения
+ * часть уведомлений могла быть пропущена, поэтому все кэши узла очищаются.
+ * Через шину же идут изменения пользователей и публикаций для кэша второго уровня Hibernate,
+ * см. {@link SecondLevelCacheInvalidations}.
+ */
+@Log4j2
+public class PgNotifyCacheInvalidationBus implements CacheInvalidationPublisher {
+
+	/**
+	 * Ограничение PostgreSQL на размер payload — 8000 байт, часть оставлена в запас
+	 */
+	static final int MAX_PAYLOAD_LENGTH = 7900;
+
+	@Getter
+	private final String nodeId = UUID.randomUUID().toString();
+	private final ManagedCacheManager cacheManager;
+	private final PostListGenerations postListGenerations;
+	private final SecondLevelCacheInvalidations secondLevelCache;
+	private final JdbcTemplate jdbcTemplate;
+	private final DataSourceProperties dataSourceProperties;
+	private final CacheProperties.Bus properties;
+
+	private volatile boolean running;
+	private Thread listener;
+
+	public PgNotifyCacheInvalidationBus(
+			ManagedCacheManager cacheManager,
+			PostListGenerations postListGenerations,
+			SecondLevelCacheInvalidations secondLevelCache,
+			JdbcTemplate jdbcTemplate,
+			DataSourceProperties dataSourceProperties,
+			CacheProperties.Bus properties) {
+		this.cacheManager = cacheManager;
+		this.postListGenerations = postListGenerations;
+		this.secondLevelCache = secondLevelCache;
+		this.jdbcTemplate = jdbcTemplate;
+		this.dataSourceProperties = dataSourceProperties;
+		this.properties = properties;
+	}
+
+	@Override
+	public void publish(CacheInvalidation invalidation) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive() ||
+				!TransactionSynchronizationManager.isActualTransactionActive()) {
+			send(List.of(invalidation));
+			return;
+		}
+
+		@SuppressWarnings("unchecked")
+		Set<CacheInvalidation> batch = (Set<CacheInvalidation>) TransactionSynchronizationManager.getResource(this);
+		if (batch == null) {
+			Set<CacheInvalidation> newBatch = new LinkedHashSet<>();
+			TransactionSynchronizationManager.bindResource(this, newBatch);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					send(newBatch);
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(PgNotifyCacheInvalidationBus.this);
+				}
+			});
+			batch = newBatch;
+		}
+		batch.add(invalidation);
+	}
+
+	/**
+	 * Применяет пакет, полученный из канала
+	 */
+	void receive(String payload) {
+		CacheInvalidationCodec.Batch batch = CacheInvalidationCodec.decode(payload);
+		if (nodeId.equals(batch.nodeId())) return;
+
+		for (CacheInvalidation invalidation : batch.invalidations()) {
+			if (invalidation.type() == CacheInvalidation.Type.POST_LIST_GENERATION)
+				postListGenerations.apply(invalidation);
+			else if (!secondLevelCache.apply(invalidation))
+				cacheManager.apply(invalidation);
+		}
+		log.debug("Применено {} инвалидаций кэша от узла {}", batch.invalidations().size(), batch.nodeId());
+	}
+
+	@PostConstruct
+	void start() {
+		running = true;
+		listener = new Thread(this::listen, "cache-invalidation-listener");
+		listener.setDaemon(true);
+		listener.start();
+	}
+
+	@PreDestroy
+	void stop() throws InterruptedException {
+		running = false;
+		listener.interrupt();
+		listener.join(properties.pollTimeout().toMillis() * 2);
+	}
+
+	private void send(Collection<CacheInvalidation> invalidations) {
+		if (invalidations.isEmpty()) return;
+		try {
+			for (String payload : CacheInvalidationCodec.encode(nodeId, invalidations, MAX_PAYLOAD_LENGTH))
+				jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", properties.channel(), payload);
+		} catch (DataAccessException e) {
+			// остальные узлы получат актуальные данные по истечении времени жизни записей
+			log.error("Не удалось отправить {} инвалидаций кэша", invalidations.size(), e);
+		}
+	}
+
+	private void listen() {
+		boolean reconnecting = false;
+		while (running) {
+			try (Connection connection = DriverManager.getConnection(
+					dataSourceProperties.determineUrl(),
+					dataSourceProperties.determineUsername(),
+					dataSourceProperties.determinePassword())) {
+				try (Statement statement = connection.createStatement()) {
+					statement.execute("LISTEN " + properties.channel());
+				}
+				log.info("Узел {} слушает инвалидации кэша в канале {}", nodeId, properties.channel());
+				if (reconnecting) {
+					cacheManager.getCacheNames().forEach(name -> cacheManager.apply(CacheInvalidation.clear(name)));
+					secondLevelCache.clear();
+					log.warn("Кэши очищены после переподключения к каналу {}", properties.channel());
+				}
+
+				PGConnection pgConnection = connection.unwrap(PGConnection.class);
+				int pollTimeout = (int) properties.pollTimeout().toMillis();
+				while (running) {
+					PGNotification[] notifications = pgConnection.getNotifications(pollTimeout);
+					if (notifications == null) continue;
+					for (PGNotification notification : notifications) receiveSafely(notification.getParameter());
+				}
+			} catch (SQLException e) {
+				if (!running) return;
+				log.warn("Потеряно соединение с каналом {}", properties.channel(), e);
+				reconnecting = true;
+				try {
+					Thread.sleep(properties.reconnectDelay().toMillis());
+				} catch (InterruptedException ie) {
+					return;
+				}
+			}
+		}
+	}
+
+	private void receiveSafely(String payload) {
+		try {
+			receive(payload);
+		} catch (RuntimeException e) {
+			log.error("Не удалось применить инвалидации кэша", e);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package kg.musabaev.megalabnews.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.data.domain.Pageable;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Ключ для {@link kg.musabaev.megalabnews.service.PostService#getAll(Pageable, java.util.Set)}.
+ * Теги сортируются, чтобы {@code ?tags=a,b} и {@code ?tags=b,a} попадали в одну запись,
+ * а к ним добавляются текущие поколения из {@link PostListGenerations}.
+ */
+@RequiredArgsConstructor
+public class PostListCacheKeyGenerator implements KeyGenerator {
+
+	private final PostListGenerations generations;
+
+	@Override
+	public Object generate(Object target, Method method, Object... params) {
+		Pageable pageable = (Pageable) params[0];
+		Collection<?> tags = (Collection<?>) params[1];
+
+		List<String> sortedTags = tags == null ? List.of() : tags.stream()
+				.map(String::valueOf)
+				.distinct()
+				.sorted()
+				.toList();
+		return generations.version(new PostListKey(sortedTags, List.of(), pageable));
+	}
+
+	/**
+	 * @param generations поколение ленты без фильтра, либо поколения каждого тега из {@code tags}
+	 */
+	public record PostListKey(List<String> tags, List<Long> generations, Pageable pageable) {
+
+		/**
+		 * Тот же ключ без поколений, общий для всех версий страницы
+		 */
+		public PostListKey unversioned() {
+			return new PostListKey(tags, List.of(), pageable);
+		}
+	}
+}
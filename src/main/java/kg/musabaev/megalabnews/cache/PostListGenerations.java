@@ -0,0 +1,80 @@
+package kg.musabaev.megalabnews.cache;
+
+import kg.musabaev.megalabnews.util.Utils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Поколения кэша {@code postList}: одно общее для ленты без фильтра
+ * и по одному на каждый тег. Поколения входят в ключ кэша
+ * (см. {@link PostListCacheKeyGenerator}), поэтому изменение публикации
+ * делает неактуальными только те страницы, которые от нее зависят.
+ * Старые записи не удаляются явно, а вытесняются кэшем по размеру и времени жизни.
+ */
+@Component
+@RequiredArgsConstructor
+@Log4j2
+public class PostListGenerations {
+
+	private final ObjectProvider<CacheInvalidationPublisher> publisher;
+
+	private final AtomicLong global = new AtomicLong();
+	private final ConcurrentMap<String, AtomicLong> byTag = new ConcurrentHashMap<>();
+
+	public long global() {
+		return global.get();
+	}
+
+	public long of(String tag) {
+		AtomicLong generation = byTag.get(tag);
+		return generation != null ? generation.get() : 0;
+	}
+
+	/**
+	 * Тот же ключ с текущими поколениями: общим для ленты без фильтра, либо поколениями ее тегов
+	 */
+	public PostListCacheKeyGenerator.PostListKey version(PostListCacheKeyGenerator.PostListKey key) {
+		List<Long> current = key.tags().isEmpty()
+				? List.of(global())
+				: key.tags().stream().map(this::of).toList();
+		return new PostListCacheKeyGenerator.PostListKey(key.tags(), current, key.pageable());
+	}
+
+	/**
+	 * Переводит на новое поколение ленту без фильтра и ленты по переданным тегам.
+	 * Если есть активная транзакция, то после ее коммита,
+	 * иначе читатели могут успеть закэшировать старые данные под новым поколением.
+	 *
+	 * @param tags теги измененной публикации (при обновлении — старые и новые)
+	 */
+	public void bump(Collection<String> tags) {
+		List<String> affectedTags = List.copyOf(tags);
+		CacheInvalidation invalidation = CacheInvalidation.postListGeneration(affectedTags);
+		publisher.orderedStream().forEach(p -> p.publish(invalidation));
+		Utils.runAfterCommit(() -> bumpLocally(affectedTags));
+	}
+
+	/**
+	 * Применяет смену поколений, пришедшую с другого узла уже после коммита
+	 */
+	public void apply(CacheInvalidation invalidation) {
+		@SuppressWarnings("unchecked")
+		List<String> tags = (List<String>) invalidation.key();
+		bumpLocally(tags);
+	}
+
+	private void bumpLocally(List<String> tags) {
+		global.incrementAndGet();
+		tags.forEach(tag -> byTag.computeIfAbsent(tag, t -> new AtomicLong()).incrementAndGet());
+
+		log.debug("Новое поколение кэша postList для тегов {}", tags);
+	}
+}
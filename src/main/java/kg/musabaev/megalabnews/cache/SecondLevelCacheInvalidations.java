@@ -0,0 +1,121 @@
+package kg.musabaev.megalabnews.cache;
+
+import jakarta.persistence.EntityManagerFactory;
+import kg.musabaev.megalabnews.model.Post;
+import kg.musabaev.megalabnews.model.User;
+import lombok.extern.log4j.Log4j2;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * Инвалидации регионов кэша второго уровня Hibernate между узлами.
+ * <p>
+ * Регионы локальны для узла: свои изменения Hibernate учитывает сам, а об изменениях
+ * на других узлах узнает только по истечении времени жизни записей. Для пользователей
+ * и публикаций этого недостаточно: по пользователям проходит аутентификация, а публикацию
+ * {@link kg.musabaev.megalabnews.service.impl.SimplePostService#update} читает из региона
+ * (удаленную тоже — {@code @Where} к записи из кэша не применяется). Поэтому их изменения
+ * рассылаются через шину инвалидаций как удаление ключа из кэша {@link User#CACHE_REGION}
+ * или {@link Post#CACHE_REGION}.
+ */
+@Component
+@Log4j2
+public class SecondLevelCacheInvalidations {
+
+	static final String USER_AUTHORITIES_ROLE = User.class.getName() + ".authorities";
+	static final String POST_TAGS_ROLE = Post.class.getName() + ".tags";
+
+	private final EntityManagerFactory entityManagerFactory;
+	private final ObjectProvider<CacheInvalidationPublisher> publisher;
+
+	public SecondLevelCacheInvalidations(
+			EntityManagerFactory entityManagerFactory,
+			ObjectProvider<CacheInvalidationPublisher> publisher) {
+		this.entityManagerFactory = entityManagerFactory;
+		this.publisher = publisher;
+	}
+
+	/**
+	 * Сообщает остальным узлам об изменении или удалении пользователя и его полномочий.
+	 * Внутри транзакции инвалидация уходит вместе с ее пакетом
+	 */
+	public void publishUserChange(Long userId) {
+		publish(CacheInvalidation.evict(User.CACHE_REGION, userId));
+	}
+
+	/**
+	 * Сообщает остальным узлам об изменении или удалении публикации и ее тегов
+	 */
+	public void publishPostChange(Long postId) {
+		publish(CacheInvalidation.evict(Post.CACHE_REGION, postId));
+	}
+
+	/**
+	 * Сообщает остальным узлам об изменении публикаций, идентификаторы которых неизвестны,
+	 * например всех публикаций удаленного автора
+	 */
+	public void publishAllPostsChange() {
+		publish(CacheInvalidation.clear(Post.CACHE_REGION));
+	}
+
+	/**
+	 * Применяет инвалидацию, пришедшую с другого узла
+	 *
+	 * @return {@code false}, если инвалидация не относится к кэшу второго уровня
+	 */
+	public boolean apply(CacheInvalidation invalidation) {
+		if (User.CACHE_REGION.equals(invalidation.cacheName())) {
+			applyToUsers(invalidation);
+			return true;
+		}
+		if (Post.CACHE_REGION.equals(invalidation.cacheName())) {
+			applyToPosts(invalidation);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Очищает все рассылаемые регионы, например когда часть инвалидаций могла быть пропущена
+	 */
+	public void clear() {
+		apply(CacheInvalidation.clear(User.CACHE_REGION));
+		apply(CacheInvalidation.clear(Post.CACHE_REGION));
+	}
+
+	private void applyToUsers(CacheInvalidation invalidation) {
+		Cache cache = getCache();
+		if (invalidation.type() == CacheInvalidation.Type.EVICT) {
+			cache.evictEntityData(User.class, invalidation.key());
+			cache.evictCollectionData(USER_AUTHORITIES_ROLE, invalidation.key());
+		} else {
+			cache.evictEntityData(User.class);
+			cache.evictCollectionData(USER_AUTHORITIES_ROLE);
+		}
+		// прежнее имя пользователя неизвестно, поэтому регион имен очищается целиком
+		cache.evictNaturalIdData(User.class);
+		log.debug("Из кэша второго уровня удален пользователь {}", invalidation.key());
+	}
+
+	private void applyToPosts(CacheInvalidation invalidation) {
+		Cache cache = getCache();
+		if (invalidation.type() == CacheInvalidation.Type.EVICT) {
+			cache.evictEntityData(Post.class, invalidation.key());
+			cache.evictCollectionData(POST_TAGS_ROLE, invalidation.key());
+		} else {
+			cache.evictEntityData(Post.class);
+			cache.evictCollectionData(POST_TAGS_ROLE);
+		}
+		log.debug("Из кэша второго уровня удалена публикация {}", invalidation.key());
+	}
+
+	private Cache getCache() {
+		return entityManagerFactory.unwrap(SessionFactory.class).getCache();
+	}
+
+	private void publish(CacheInvalidation invalidation) {
+		publisher.orderedStream().forEach(p -> p.publish(invalidation));
+	}
+}
@@ -0,0 +1,156 @@
+package kg.musabaev.megalabnews.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import kg.musabaev.megalabnews.config.CacheProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.lang.Nullable;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Кэш сериализованных тел ответов для методов с {@link CachedResponseBody}.
+ * Тела таких методов — значения из кэшей сервисов, и при попадании в кэш сервиса
+ * контроллер возвращает тот же самый объект. Поэтому JSON и его gzip хранятся
+ * по ссылке на объект ({@code weakKeys}), а при повторном ответе пишутся в ответ
+ * как есть, минуя Jackson.
+ * <p>
+ * Отдельной инвалидации нет: когда запись кэша сервиса удаляется или заменяется,
+ * контроллер начинает возвращать новый объект, а байты старого становятся
+ * недостижимыми вместе с ним. Пока кэш сервиса выключен, тела не кэшируются:
+ * каждое из них новое и больше не встретится.
+ */
+@ControllerAdvice
+@ConditionalOnExpression("${app.cache.responses.enabled:false} == true")
+public class SerializedResponseCache implements ResponseBodyAdvice<Object>, MeterBinder {
+
+	static final String CACHE_NAME = "serializedResponses";
+
+	private final ObjectMapper objectMapper;
+	private final ManagedCacheManager cacheManager;
+	private final int minGzipSize;
+	private final Cache<Object, SerializedBody> bodies;
+
+	public SerializedResponseCache(
+			ObjectMapper objectMapper,
+			ManagedCacheManager cacheManager,
+			CacheProperties properties) {
+		this.objectMapper = objectMapper;
+		this.cacheManager = cacheManager;
+		this.minGzipSize = (int) properties.responses().minGzipSize().toBytes();
+		this.bodies = Caffeine.newBuilder()
+				.weakKeys()
+				.maximumWeight(properties.responses().maximumWeight().toBytes())
+				.<Object, SerializedBody>weigher((body, serialized) -> serialized.weight())
+				.recordStats()
+				.build();
+	}
+
+	@Override
+	public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+		return returnType.hasMethodAnnotation(CachedResponseBody.class)
+				&& AbstractJackson2HttpMessageConverter.class.isAssignableFrom(converterType);
+	}
+
+	/**
+	 * Пишет тело сам и возвращает {@code null}, чтобы конвертер ничего не писал
+	 */
+	@Override
+	@Nullable
+	public Object beforeBodyWrite(
+			@Nullable Object body,
+			MethodParameter returnType,
+			MediaType selectedContentType,
+			Class<? extends HttpMessageConverter<?>> selectedConverterType,
+			ServerHttpRequest request,
+			ServerHttpResponse response) {
+		if (body == null || !MediaType.APPLICATION_JSON.isCompatibleWith(selectedContentType)) return body;
+		String cacheName = returnType.getMethodAnnotation(CachedResponseBody.class).value();
+		if (!cacheManager.getManagedCache(cacheName).isEnabled()) return body;
+
+		SerializedBody serialized = get(body);
+		boolean gzip = serialized.gzip() != null && acceptsGzip(request);
+		byte[] bytes = gzip ? serialized.gzip() : serialized.json();
+
+		HttpHeaders headers = response.getHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		headers.setContentLength(bytes.length);
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if (gzip) headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+		try {
+			response.getBody().write(bytes);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return null;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, bodies, CACHE_NAME);
+	}
+
+	SerializedBody get(Object body) {
+		return bodies.get(body, this::serialize);
+	}
+
+	private SerializedBody serialize(Object body) {
+		try {
+			byte[] json = objectMapper.writeValueAsBytes(body);
+			return new SerializedBody(json, json.length >= minGzipSize ? gzip(json) : null);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("Не удалось сериализовать " + body.getClass(), e);
+		}
+	}
+
+	private static byte[] gzip(byte[] json) {
+		var bytes = new ByteArrayOutputStream(json.length / 4);
+		try (var gzip = new GZIPOutputStream(bytes)) {
+			gzip.write(json);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * {@code gzip} в {@code Accept-Encoding} без {@code q=0}
+	 */
+	static boolean acceptsGzip(ServerHttpRequest request) {
+		for (String value : request.getHeaders().getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+			for (String coding : value.split(",")) {
+				String[] parts = coding.trim().split(";");
+				if (!parts[0].trim().equalsIgnoreCase("gzip")) continue;
+				return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param gzip сжатый JSON, либо {@code null}, если JSON слишком мал для сжатия
+	 */
+	record SerializedBody(byte[] json, @Nullable byte[] gzip) {
+
+		int weight() {
+			return json.length + (gzip != null ? gzip.length : 0);
+		}
+	}
+}
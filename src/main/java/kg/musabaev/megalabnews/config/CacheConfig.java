@@ -1,39 +1,203 @@
 package kg.musabaev.megalabnews.config;
 
+import kg.musabaev.megalabnews.cache.CacheHeapBudget;
+import kg.musabaev.megalabnews.cache.CacheInvalidationPublisher;
+import kg.musabaev.megalabnews.cache.ManagedCache;
+import kg.musabaev.megalabnews.cache.ManagedCacheManager;
+import kg.musabaev.megalabnews.cache.PgNotifyCacheInvalidationBus;
+import kg.musabaev.megalabnews.cache.PostListCacheKeyGenerator;
+import kg.musabaev.megalabnews.cache.PostListGenerations;
+import kg.musabaev.megalabnews.cache.SecondLevelCacheInvalidations;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.cache.interceptor.SimpleKey;
 import org.springframework.cache.interceptor.SimpleKeyGenerator;
-import org.springframework.cache.support.NoOpCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import static kg.musabaev.megalabnews.service.impl.SimpleCommentService.CHILD_COMMENTS_CACHE_NAME;
+import static kg.musabaev.megalabnews.service.impl.SimpleCommentService.COMMENT_TREE_CACHE_NAME;
+import static kg.musabaev.megalabnews.service.impl.SimpleCommentService.ROOT_COMMENTS_CACHE_NAME;
+import static kg.musabaev.megalabnews.service.impl.SimplePostService.POST_LIST_CACHE_NAME;
+import static kg.musabaev.megalabnews.service.impl.SimpleUserService.USER_CREATED_POSTS_CACHE_NAME;
+import static kg.musabaev.megalabnews.service.impl.SimpleUserService.USER_FAVOURITE_POSTS_CACHE_NAME;
 
 @Configuration
-@EnableCaching
+@EnableCaching(order = CacheConfig.CACHE_ADVISOR_ORDER)
+@EnableConfigurationProperties(CacheProperties.class)
 @Log4j2
 public class CacheConfig {
 
+	/**
+	 * Кэширование оборачивает транзакцию, а не наоборот: попадание в кэш не открывает
+	 * транзакцию, фоновая перезагрузка значения выполняется в своей транзакции,
+	 * а {@code @CacheEvict} срабатывает уже после коммита. Между ними остается место для
+	 * {@link kg.musabaev.megalabnews.aspect.CacheLoadRoutingAspect}
+	 */
+	static final int CACHE_ADVISOR_ORDER = Ordered.LOWEST_PRECEDENCE - 2;
+
+	private static final int ESTIMATED_BYTES_SAMPLE_SIZE = 64;
+
+	/**
+	 * Значение тега {@code cache.manager}, которое Spring Boot выводит из имени бина
+	 * {@code managedCacheManager} для стандартных метрик кэшей
+	 */
+	private static final String CACHE_MANAGER_TAG = "managed";
+
+	/**
+	 * Создается всегда, чтобы кэши можно было включить на ходу (см. {@code /actuator/cachemodes}),
+	 * а {@code app.cache-enabled} задает, включены ли они при запуске
+	 */
 	@Bean
-	@ConditionalOnExpression("${app.cache-enabled} == true")
-	public CacheManager concurrentMapCacheManager() {
-		log.debug("{} используется как реализация {}", ConcurrentMapCacheManager.class, CacheManager.class);
+	public ManagedCacheManager managedCacheManager(
+			CacheProperties properties,
+			ObjectProvider<CacheInvalidationPublisher> invalidationPublisher,
+			@Value("${app.cache-enabled}") boolean cacheEnabled) {
+		log.debug("{} используется как реализация {}, кэши включены: {}",
+				ManagedCacheManager.class, CacheManager.class, cacheEnabled);
 
-		return new ConcurrentMapCacheManager();
+		var cacheManager = new ManagedCacheManager(properties, getKeyOwners(), getStaleKeys(), invalidationPublisher);
+		cacheManager.setEnabled(cacheEnabled);
+		return cacheManager;
 	}
 
+	/**
+	 * Метрики {@link ManagedCache} в дополнение к стандартным метрикам Caffeine
+	 * ({@code cache.gets}, {@code cache.puts}, {@code cache.evictions}, {@code cache.size}),
+	 * которые Spring Boot регистрирует сам. Метрики загрузок Micrometer регистрирует только
+	 * для {@code LoadingCache}, а {@link ManagedCache} загружает значения сам, поэтому они здесь
+	 */
 	@Bean
-	@ConditionalOnExpression("${app.cache-enabled} == false")
-	public CacheManager noOpCacheManager() {
-		log.debug("{} используется как реализация {}", NoOpCacheManager.class, CacheManager.class);
+	public MeterBinder managedCacheMetrics(ManagedCacheManager cacheManager) {
+		return registry -> {
+			cacheManager.getHeapBudget().ifPresent(budget -> {
+				Gauge.builder("cache.heap.budget.used", budget, CacheHeapBudget::usedBytes)
+						.description("Суммарный вес кэшей, ограниченных по весу")
+						.baseUnit(BaseUnits.BYTES)
+						.register(registry);
+				Gauge.builder("cache.heap.budget.limit", budget, CacheHeapBudget::getLimit)
+						.description("Общий лимит памяти кэшей")
+						.baseUnit(BaseUnits.BYTES)
+						.register(registry);
+			});
+			cacheManager.getCacheNames().forEach(name -> bindManagedCacheMetrics(registry, name, cacheManager));
+		};
+	}
 
-		return new NoOpCacheManager();
+	/**
+	 * Доля попаданий по регионам кэша второго уровня Hibernate. Счетчики обращений
+	 * ({@code hibernate.second.level.cache.requests}) регистрирует hibernate-micrometer
+	 */
+	@Bean
+	@ConditionalOnExpression("${app.cache-enabled} == true")
+	public MeterBinder secondLevelCacheMetrics(EntityManagerFactory entityManagerFactory) {
+		return registry -> {
+			Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+			for (String region : statistics.getSecondLevelCacheRegionNames()) {
+				Gauge.builder("hibernate.second.level.cache.hit.ratio", statistics, s -> hitRatio(s, region))
+						.description("Доля попаданий в регион кэша второго уровня")
+						.tag("region", region)
+						.register(registry);
+			}
+		};
+	}
+
+	private static double hitRatio(Statistics statistics, String region) {
+		CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+		if (regionStatistics == null) return Double.NaN;
+		long requests = regionStatistics.getHitCount() + regionStatistics.getMissCount();
+		return requests == 0 ? Double.NaN : (double) regionStatistics.getHitCount() / requests;
+	}
+
+	private static void bindManagedCacheMetrics(MeterRegistry registry, String name, ManagedCacheManager cacheManager) {
+		ManagedCache cache = cacheManager.getManagedCache(name);
+		Tags tags = Tags.of("cache", name, "name", name, "cache.manager", CACHE_MANAGER_TAG);
+		FunctionCounter.builder("cache.load", cache, c -> c.getNativeCache().stats().loadSuccessCount())
+				.description("Успешные загрузки значений")
+				.tags(tags)
+				.tag("result", "success")
+				.register(registry);
+		FunctionCounter.builder("cache.load", cache, c -> c.getNativeCache().stats().loadFailureCount())
+				.description("Загрузки значений, завершившиеся исключением")
+				.tags(tags)
+				.tag("result", "failure")
+				.register(registry);
+		TimeGauge.builder("cache.load.duration", cache, TimeUnit.NANOSECONDS,
+						c -> c.getNativeCache().stats().totalLoadTime())
+				.description("Суммарное время загрузки значений")
+				.tags(tags)
+				.register(registry);
+		FunctionCounter.builder("cache.coalesced", cache, ManagedCache::coalescedCount)
+				.description("Обращения, дождавшиеся загрузки значения другим потоком")
+				.tags(tags)
+				.register(registry);
+		FunctionCounter.builder("cache.refreshes", cache, ManagedCache::refreshCount)
+				.description("Фоновые загрузки значений")
+				.tags(tags)
+				.register(registry);
+		FunctionCounter.builder("cache.stale.hits", cache, ManagedCache::staleHitCount)
+				.description("Обращения, получившие устаревшее значение")
+				.tags(tags)
+				.register(registry);
+		FunctionCounter.builder("cache.budget.evictions", cache, ManagedCache::budgetEvictionCount)
+				.description("Записи, вытесненные ради общего лимита памяти")
+				.tags(tags)
+				.register(registry);
+		Gauge.builder("cache.enabled", cache, c -> c.isEnabled() ? 1 : 0)
+				.description("Включен ли кэш")
+				.tags(tags)
+				.register(registry);
+		Gauge.builder("cache.estimated.bytes", cache, c -> c.estimatedBytes(ESTIMATED_BYTES_SAMPLE_SIZE))
+				.description("Вес кэша, либо оценка занимаемой памяти по выборке значений")
+				.baseUnit(BaseUnits.BYTES)
+				.tags(tags)
+				.register(registry);
+	}
+
+	/**
+	 * Работает только с PostgreSQL, поэтому включается отдельно от кэша
+	 */
+	@Bean
+	@ConditionalOnExpression("${app.cache.bus.enabled:false} == true")
+	public PgNotifyCacheInvalidationBus cacheInvalidationBus(
+			ManagedCacheManager cacheManager,
+			PostListGenerations postListGenerations,
+			SecondLevelCacheInvalidations secondLevelCache,
+			JdbcTemplate jdbcTemplate,
+			DataSourceProperties dataSourceProperties,
+			CacheProperties properties) {
+		return new PgNotifyCacheInvalidationBus(
+				cacheManager, postListGenerations, secondLevelCache, jdbcTemplate, dataSourceProperties, properties.bus());
 	}
 
 	@Bean
@@ -46,6 +210,49 @@ public class CacheConfig {
 		return new ChildCommentCacheKeyGenerator();
 	}
 
+	@Bean
+	public KeyGenerator commentTreeCacheKeyGenerator() {
+		return new CommentTreeCacheKeyGenerator();
+	}
+
+	@Bean
+	public KeyGenerator postListCacheKeyGenerator(PostListGenerations generations) {
+		return new PostListCacheKeyGenerator(generations);
+	}
+
+	/**
+	 * Владельцы ключей для индекса {@link kg.musabaev.megalabnews.cache.ManagedCache}.
+	 * Ключи этих кэшей строятся через {@link PairCacheKeyGenerator}, {@link ChildCommentCacheKeyGenerator}
+	 * и {@link CommentTreeCacheKeyGenerator}:
+	 * <ul>
+	 *     <li>{@code rootCommentList} — (postId, pageable), владелец postId</li>
+	 *     <li>{@code childCommentList} — (postId, parentCommentId, pageable),
+	 *     владельцы postId и пара (postId, parentCommentId)</li>
+	 *     <li>{@code commentTree} — (postId, (parentCommentId, depth, limit)), владелец postId</li>
+	 *     <li>{@code userFavouritePosts}, {@code userCreatedPosts} — (userId, pageable), владелец userId</li>
+	 * </ul>
+	 */
+	private static Map<String, Function<Object, Collection<?>>> getKeyOwners() {
+		Function<Object, Collection<?>> pairLeft = key -> List.of(((Pair<?, ?>) key).getLeft());
+		Function<Object, Collection<?>> childComment = key -> {
+			var triple = (Triple<?, ?, ?>) key;
+			return List.of(triple.getLeft(), Pair.of(triple.getLeft(), triple.getMiddle()));
+		};
+		return Map.of(
+				ROOT_COMMENTS_CACHE_NAME, pairLeft,
+				CHILD_COMMENTS_CACHE_NAME, childComment,
+				COMMENT_TREE_CACHE_NAME, pairLeft,
+				USER_FAVOURITE_POSTS_CACHE_NAME, pairLeft,
+				USER_CREATED_POSTS_CACHE_NAME, pairLeft);
+	}
+
+	/**
+	 * Ключи устаревших значений для кэшей, у которых после инвалидации меняется сам ключ
+	 */
+	private static Map<String, UnaryOperator<Object>> getStaleKeys() {
+		return Map.of(POST_LIST_CACHE_NAME, key -> ((PostListCacheKeyGenerator.PostListKey) key).unversioned());
+	}
+
 	private static class PairCacheKeyGenerator extends SimpleKeyGenerator {
 		@Override
 		public Object generate(Object target, Method method, Object... params) {
@@ -59,4 +266,11 @@ public class CacheConfig {
 			return super.generate(target, method, Triple.of(params[0], params[1], params[2]));
 		}
 	}
+
+	private static class CommentTreeCacheKeyGenerator extends SimpleKeyGenerator {
+		@Override
+		public Object generate(Object target, Method method, Object... params) {
+			return Pair.of(params[0], new SimpleKey(params[1], params[2], params[3]));
+		}
+	}
 }
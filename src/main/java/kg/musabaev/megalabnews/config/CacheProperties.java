@@ -0,0 +1,210 @@
+package kg.musabaev.megalabnews.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import kg.musabaev.megalabnews.cache.CacheHeapBudget;
+import kg.musabaev.megalabnews.cache.CacheSnapshots;
+import kg.musabaev.megalabnews.cache.ObjectSizeEstimator;
+import kg.musabaev.megalabnews.cache.SerializedResponseCache;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.lang.Nullable;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static kg.musabaev.megalabnews.service.impl.SimplePostService.POST_ITEM_CACHE_NAME;
+import static kg.musabaev.megalabnews.service.impl.SimplePostService.POST_LIST_CACHE_NAME;
+import static kg.musabaev.megalabnews.service.impl.SimpleUserService.USER_ITEM_CACHE_NAME;
+
+/**
+ * Настройки кэшей из {@code app.cache}.
+ * Для каждого кэша можно задать свою спецификацию в {@code specs},
+ * незаданные параметры берутся из {@code defaults}.
+ * В {@code bus} настраивается инвалидация кэшей между узлами,
+ * в {@code refresh-pool} — пул фоновых загрузок, в {@code warm-up} — прогрев при запуске.
+ * {@code heap-budget} — общий лимит памяти всех кэшей, см. {@link CacheHeapBudget},
+ * в {@code responses} — кэш сериализованных ответов, см. {@link SerializedResponseCache},
+ * в {@code snapshot} — снимок кэшей на диске, см. {@link CacheSnapshots}.
+ */
+@ConfigurationProperties(prefix = "app.cache")
+public record CacheProperties(
+		Spec defaults,
+		Map<String, Spec> specs,
+		Bus bus,
+		RefreshPool refreshPool,
+		WarmUp warmUp,
+		@Nullable DataSize heapBudget,
+		Responses responses,
+		Snapshot snapshot
+) {
+
+	public CacheProperties {
+		if (defaults == null) defaults = new Spec(null, null, null, null, null, null, null);
+		if (specs == null) specs = Map.of();
+		if (bus == null) bus = new Bus(false, null, null, null);
+		if (refreshPool == null) refreshPool = new RefreshPool(null, null);
+		if (warmUp == null) warmUp = new WarmUp(false, null, null, null, null, null, null);
+		if (responses == null) responses = new Responses(false, null, null);
+		if (snapshot == null) snapshot = new Snapshot(false, null, null, null, null, null);
+	}
+
+	/**
+	 * Спецификация конкретного кэша с учетом значений по умолчанию
+	 */
+	public Spec getSpec(String cacheName) {
+		Spec spec = specs.get(cacheName);
+		return spec != null ? spec.orElse(defaults) : defaults;
+	}
+
+	/**
+	 * @param maximumWeight лимит памяти кэша, вес значений оценивается {@link ObjectSizeEstimator}
+	 *                      при вставке. Если задан, то {@code maximumSize} не используется
+	 * @param refreshAfter  возраст значения, после которого оно перезагружается в фоне
+	 * @param staleGrace    сколько после загрузки значение может отдаваться устаревшим
+	 */
+	public record Spec(
+			@Nullable Long maximumSize,
+			@Nullable DataSize maximumWeight,
+			@Nullable Duration expireAfterWrite,
+			@Nullable Duration expireAfterAccess,
+			@Nullable Boolean singleFlight,
+			@Nullable Duration refreshAfter,
+			@Nullable Duration staleGrace
+	) {
+
+		Spec orElse(Spec other) {
+			return new Spec(
+					maximumSize != null ? maximumSize : other.maximumSize,
+					maximumWeight != null ? maximumWeight : other.maximumWeight,
+					expireAfterWrite != null ? expireAfterWrite : other.expireAfterWrite,
+					expireAfterAccess != null ? expireAfterAccess : other.expireAfterAccess,
+					singleFlight != null ? singleFlight : other.singleFlight,
+					refreshAfter != null ? refreshAfter : other.refreshAfter,
+					staleGrace != null ? staleGrace : other.staleGrace);
+		}
+
+		/**
+		 * Объединять ли параллельные загрузки одного ключа, по умолчанию да
+		 */
+		public boolean isSingleFlight() {
+			return !Boolean.FALSE.equals(singleFlight);
+		}
+
+		public Caffeine<Object, Object> toCaffeine() {
+			Caffeine<Object, Object> caffeine = Caffeine.newBuilder();
+			if (maximumWeight != null)
+				caffeine.maximumWeight(maximumWeight.toBytes()).weigher(ObjectSizeEstimator::weigh);
+			else if (maximumSize != null)
+				caffeine.maximumSize(maximumSize);
+			if (expireAfterWrite != null) caffeine.expireAfterWrite(expireAfterWrite);
+			if (expireAfterAccess != null) caffeine.expireAfterAccess(expireAfterAccess);
+			return caffeine;
+		}
+	}
+
+	/**
+	 * @param channel        канал {@code LISTEN/NOTIFY}, должен быть идентификатором PostgreSQL
+	 * @param pollTimeout    сколько ждать уведомления за одно обращение к соединению
+	 * @param reconnectDelay пауза перед повторным подключением к каналу
+	 */
+	public record Bus(
+			boolean enabled,
+			@Nullable String channel,
+			@Nullable Duration pollTimeout,
+			@Nullable Duration reconnectDelay
+	) {
+
+		public Bus {
+			if (channel == null) channel = "cache_invalidation";
+			if (pollTimeout == null) pollTimeout = Duration.ofMillis(500);
+			if (reconnectDelay == null) reconnectDelay = Duration.ofSeconds(5);
+			if (!channel.matches("[a-z_][a-z0-9_]*"))
+				throw new IllegalArgumentException("Некорректное название канала " + channel);
+		}
+	}
+
+	/**
+	 * @param queueCapacity сколько фоновых загрузок может ждать свободного потока
+	 */
+	public record RefreshPool(
+			@Nullable Integer threads,
+			@Nullable Integer queueCapacity
+	) {
+
+		public RefreshPool {
+			if (threads == null) threads = 2;
+			if (queueCapacity == null) queueCapacity = 100;
+		}
+	}
+
+	/**
+	 * @param pages       сколько первых страниц ленты прогревать, без фильтра и для каждого тега
+	 * @param pageSize    размер страницы, должен совпадать с {@code @PageableDefault} контроллера
+	 * @param topTags     сколько самых популярных тегов прогревать
+	 * @param recentPosts сколько последних публикаций прогревать
+	 * @param timeout     после этого времени приложение считается готовым, даже если прогрев не закончен
+	 */
+	public record WarmUp(
+			boolean enabled,
+			@Nullable Integer pages,
+			@Nullable Integer pageSize,
+			@Nullable Integer topTags,
+			@Nullable Integer recentPosts,
+			@Nullable Integer threads,
+			@Nullable Duration timeout
+	) {
+
+		public WarmUp {
+			if (pages == null) pages = 3;
+			if (pageSize == null) pageSize = 10;
+			if (topTags == null) topTags = 10;
+			if (recentPosts == null) recentPosts = 50;
+			if (threads == null) threads = 4;
+			if (timeout == null) timeout = Duration.ofSeconds(30);
+		}
+	}
+
+	/**
+	 * @param maximumWeight лимит памяти на JSON и gzip всех закэшированных ответов
+	 * @param minGzipSize   ответы меньше этого размера не сжимаются
+	 */
+	public record Responses(
+			boolean enabled,
+			@Nullable DataSize maximumWeight,
+			@Nullable DataSize minGzipSize
+	) {
+
+		public Responses {
+			if (maximumWeight == null) maximumWeight = DataSize.ofMegabytes(16);
+			if (minGzipSize == null) minGzipSize = DataSize.ofBytes(512);
+		}
+	}
+
+	/**
+	 * @param path      файл снимка
+	 * @param caches    кэши, которые сохраняются в снимок
+	 * @param maxAge    снимок старше этого отбрасывается целиком
+	 * @param commitLag за сколько до снимка начинаются изменения, которые проверяются при загрузке:
+	 *                  транзакция, начатая до снимка, могла закоммититься уже после него
+	 * @param pruneInterval как часто из журнала изменений удаляются записи старше {@code max-age + commit-lag}
+	 */
+	public record Snapshot(
+			boolean enabled,
+			@Nullable Path path,
+			@Nullable List<String> caches,
+			@Nullable Duration maxAge,
+			@Nullable Duration commitLag,
+			@Nullable Duration pruneInterval
+	) {
+
+		public Snapshot {
+			if (path == null) path = Path.of("cache-snapshot.bin");
+			if (caches == null) caches = List.of(POST_ITEM_CACHE_NAME, POST_LIST_CACHE_NAME, USER_ITEM_CACHE_NAME);
+			if (maxAge == null) maxAge = Duration.ofHours(1);
+			if (commitLag == null) commitLag = Duration.ofSeconds(10);
+			if (pruneInterval == null) pruneInterval = Duration.ofMinutes(10);
+		}
+	}
+}
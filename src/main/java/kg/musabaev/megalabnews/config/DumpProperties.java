@@ -0,0 +1,31 @@
+package kg.musabaev.megalabnews.config;
+
+import kg.musabaev.megalabnews.dump.DataDump;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.lang.Nullable;
+
+import java.nio.file.Path;
+
+/**
+ * Настройки выгрузки и загрузки данных из {@code app.dump}, см. {@link DataDump}
+ *
+ * @param export           файл, в который выгрузить данные и завершить приложение
+ * @param restore          файл, из которого загрузить данные в пустую базу и завершить приложение
+ * @param fetchSize        сколько строк драйвер читает из курсора за одно обращение к БД
+ * @param batchSize        сколько строк вставляется одним пакетом при загрузке
+ * @param includePasswords выгружать ли хэши паролей; без них загруженные пользователи не смогут войти
+ */
+@ConfigurationProperties(prefix = "app.dump")
+public record DumpProperties(
+		@Nullable Path export,
+		@Nullable Path restore,
+		@Nullable Integer fetchSize,
+		@Nullable Integer batchSize,
+		boolean includePasswords
+) {
+
+	public DumpProperties {
+		if (fetchSize == null) fetchSize = 1000;
+		if (batchSize == null) batchSize = 1000;
+	}
+}
@@ -6,6 +6,7 @@ import io.swagger.v3.oas.annotations.enums.SecuritySchemeType;
 import io.swagger.v3.oas.annotations.info.Info;
 import io.swagger.v3.oas.annotations.security.SecurityScheme;
 import io.swagger.v3.oas.models.media.Schema;
+import kg.musabaev.megalabnews.dto.CursorPage;
 import org.springdoc.core.customizers.OpenApiCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -68,6 +69,9 @@ public class OpenApiConfig {
 	public static final String RESPONSE_DESC_IF_FILE_RECEIVED =
 			"Если файл найден, то возвращается строковое представление изображения.";
 	public static final String RESPONSE_DESC_IF_FILE_NOT_FOUND = "Если файл не найден.";
+	public static final String REQUEST_PARAM_DESC_CURSOR = "Курсор из поля `next` предыдущей страницы. Пустой для первой страницы.";
+	public static final String REQUEST_PARAM_DESC_CURSOR_PAGE_SIZE = "Размер страницы, от 1 до " + CursorPage.MAX_SIZE + ".";
+	public static final String RESPONSE_DESC_IF_CURSOR_PARAMS_NOT_VALID = "Если курсор поврежден или размер страницы вне допустимых пределов.";
 
 	@Bean
 	public OpenApiCustomizer openAPI() {
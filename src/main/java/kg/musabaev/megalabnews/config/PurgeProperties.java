@@ -0,0 +1,29 @@
+package kg.musabaev.megalabnews.config;
+
+import kg.musabaev.megalabnews.purge.TombstonePurger;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+
+/**
+ * Настройки очистки удаленных публикаций и пользователей из {@code app.purge}, см. {@link TombstonePurger}
+ *
+ * @param interval         пауза между запусками очистки
+ * @param batchSize        сколько строк удаляется за одну транзакцию
+ * @param maxBatchesPerRun сколько транзакций выполняется за один запуск
+ */
+@ConfigurationProperties(prefix = "app.purge")
+public record PurgeProperties(
+		boolean enabled,
+		@Nullable Duration interval,
+		@Nullable Integer batchSize,
+		@Nullable Integer maxBatchesPerRun
+) {
+
+	public PurgeProperties {
+		if (interval == null) interval = Duration.ofSeconds(10);
+		if (batchSize == null) batchSize = 500;
+		if (maxBatchesPerRun == null) maxBatchesPerRun = 100;
+	}
+}
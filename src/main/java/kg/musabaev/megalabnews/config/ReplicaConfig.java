@@ -0,0 +1,88 @@
+package kg.musabaev.megalabnews.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import kg.musabaev.megalabnews.replica.ReadYourWrites;
+import kg.musabaev.megalabnews.replica.ReplicaRoutingDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Чтение с реплик. Вместо пула, который Spring Boot создает из {@code spring.datasource},
+ * источником данных становится {@link ReplicaRoutingDataSource} за {@link LazyConnectionDataSourceProxy},
+ * а пул основной БД создается здесь с теми же настройками
+ */
+@Configuration
+@ConditionalOnExpression("${app.replicas.enabled:false} == true")
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class ReplicaConfig {
+
+	@Bean
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+		return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+
+	@Bean
+	public ReplicaRoutingDataSource replicaRoutingDataSource(
+			HikariDataSource primaryDataSource,
+			DataSourceProperties dataSourceProperties,
+			ReplicaProperties properties,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		Map<String, DataSource> replicas = new LinkedHashMap<>();
+		List<String> urls = properties.urls();
+		for (int i = 0; i < urls.size(); i++) {
+			HikariDataSource replica = DataSourceBuilder.create()
+					.type(HikariDataSource.class)
+					.driverClassName(dataSourceProperties.determineDriverClassName())
+					.url(urls.get(i))
+					.username(properties.username() != null
+							? properties.username()
+							: dataSourceProperties.determineUsername())
+					.password(properties.password() != null
+							? properties.password()
+							: dataSourceProperties.determinePassword())
+					.build();
+			replica.setPoolName("replica-" + i);
+			replica.setMaximumPoolSize(properties.poolSize());
+			replica.setReadOnly(true);
+			meterRegistry.ifAvailable(replica::setMetricRegistry);
+			replicas.put(replica.getPoolName(), replica);
+		}
+		return new ReplicaRoutingDataSource(
+				primaryDataSource, replicas, new ReadYourWrites(properties.readYourWritesWindow()), properties);
+	}
+
+	@Bean
+	@Primary
+	public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+		return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+	}
+
+	/**
+	 * По умолчанию сессия держит соединение до закрытия, а при open-in-view она живет весь запрос,
+	 * и все транзакции запроса ушли бы туда же, куда первая
+	 */
+	@Bean
+	public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+		return hibernateProperties -> hibernateProperties.put(
+				AvailableSettings.CONNECTION_HANDLING,
+				PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+	}
+}
@@ -0,0 +1,46 @@
+package kg.musabaev.megalabnews.config;
+
+import kg.musabaev.megalabnews.replica.ReplicaRoutingDataSource;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Настройки чтения с реплик из {@code app.replicas}, см. {@link ReplicaRoutingDataSource}
+ *
+ * @param urls                 JDBC URL реплик
+ * @param username             пользователь реплик, по умолчанию как у основной БД
+ * @param password             пароль реплик, по умолчанию как у основной БД
+ * @param poolSize             размер пула соединений каждой реплики
+ * @param healthCheckInterval  пауза между проверками реплик
+ * @param healthCheckTimeout   сколько ждать ответа реплики при проверке
+ * @param maxLag               отставание, после которого реплика (PostgreSQL) считается неисправной
+ * @param readYourWritesWindow сколько после записи клиент читает с основной БД, на это время ему выдается cookie
+ * @param cacheLoadMaxLag      отставание, до которого значения для кэшей еще читаются с реплики
+ */
+@ConfigurationProperties(prefix = "app.replicas")
+public record ReplicaProperties(
+		boolean enabled,
+		@Nullable List<String> urls,
+		@Nullable String username,
+		@Nullable String password,
+		@Nullable Integer poolSize,
+		@Nullable Duration healthCheckInterval,
+		@Nullable Duration healthCheckTimeout,
+		@Nullable Duration maxLag,
+		@Nullable Duration readYourWritesWindow,
+		@Nullable Duration cacheLoadMaxLag
+) {
+
+	public ReplicaProperties {
+		if (urls == null) urls = List.of();
+		if (poolSize == null) poolSize = 10;
+		if (healthCheckInterval == null) healthCheckInterval = Duration.ofSeconds(5);
+		if (healthCheckTimeout == null) healthCheckTimeout = Duration.ofSeconds(2);
+		if (maxLag == null) maxLag = Duration.ofSeconds(10);
+		if (readYourWritesWindow == null) readYourWritesWindow = Duration.ofSeconds(10);
+		if (cacheLoadMaxLag == null) cacheLoadMaxLag = Duration.ofSeconds(1);
+	}
+}
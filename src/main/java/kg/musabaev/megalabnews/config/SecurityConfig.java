@@ -1,10 +1,13 @@
 package kg.musabaev.megalabnews.config;
 
+import kg.musabaev.megalabnews.cache.CacheModesEndpoint;
 import kg.musabaev.megalabnews.model.User;
 import kg.musabaev.megalabnews.repository.UserRepo;
+import kg.musabaev.megalabnews.security.Authority;
 import kg.musabaev.megalabnews.security.SimpleUserDetails;
 import kg.musabaev.megalabnews.security.TokenFilter;
 import kg.musabaev.megalabnews.service.impl.SimpleUserService;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -57,6 +60,7 @@ public class SecurityConfig {
 				.requestMatchers(HttpMethod.GET, "/api/posts/**").permitAll()
 				.requestMatchers(HttpMethod.GET, "/api/comments/**").permitAll()
 				.requestMatchers(HttpMethod.GET, "/api/users/**").permitAll()
+				.requestMatchers(EndpointRequest.to(CacheModesEndpoint.class)).hasAuthority(Authority.MANAGE_CACHE.name())
 				.anyRequest().authenticated()
 				.and()
 				.exceptionHandling().authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED))
@@ -71,11 +75,16 @@ public class SecurityConfig {
 				.build();
 	}
 
+	/**
+	 * Actuator открыт, кроме {@link CacheModesEndpoint}: он выключает кэши узла,
+	 * поэтому проходит через фильтры безопасности и требует {@link Authority#MANAGE_CACHE}
+	 */
 	@Bean
 	public WebSecurityCustomizer webSecurityCustomizer() {
 		return web -> web
 				.ignoring()
-				.requestMatchers("/h2-console/**", "/api-docs/**", "/swagger-ui/**", "/actuator/**");
+				.requestMatchers("/h2-console/**", "/api-docs/**", "/swagger-ui/**")
+				.requestMatchers(EndpointRequest.toAnyEndpoint().excluding(CacheModesEndpoint.class));
 	}
 
 	@Bean
@@ -107,7 +116,7 @@ public class SecurityConfig {
 	public UserDetailsService userDetailsService() {
 		return new UserDetailsService() {
 			@Override
-			@Cacheable(SimpleUserService.USER_ITEM_BY_USERNAME_CACHE_NAME)
+			@Cacheable(value = SimpleUserService.USER_ITEM_BY_USERNAME_CACHE_NAME, sync = true)
 			@Transactional(readOnly = true)
 			public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
 				return userRepo.findByUsername(username)
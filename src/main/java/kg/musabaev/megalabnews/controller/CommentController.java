@@ -8,12 +8,17 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Positive;
+import kg.musabaev.megalabnews.cache.CachedResponseBody;
 import kg.musabaev.megalabnews.config.OpenApiConfig;
+import kg.musabaev.megalabnews.dto.CommentTree;
+import kg.musabaev.megalabnews.dto.CursorPage;
 import kg.musabaev.megalabnews.dto.NewCommentRequest;
 import kg.musabaev.megalabnews.dto.NewOrUpdateCommentResponse;
 import kg.musabaev.megalabnews.dto.UpdateCommentRequest;
+import kg.musabaev.megalabnews.model.Comment;
 import kg.musabaev.megalabnews.repository.projection.CommentListView;
 import kg.musabaev.megalabnews.service.CommentService;
+import kg.musabaev.megalabnews.service.impl.SimpleCommentService;
 import lombok.RequiredArgsConstructor;
 import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.data.domain.Page;
@@ -24,9 +29,11 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
-import static kg.musabaev.megalabnews.config.OpenApiConfig.RESPONSE_DESC_IF_REQUEST_BODY_NOT_VALID;
-import static kg.musabaev.megalabnews.config.OpenApiConfig.THEN_RETURNED_OBJECT_WITH_FOLLOWING_FIELDS;
+import java.util.Map;
+
+import static kg.musabaev.megalabnews.config.OpenApiConfig.*;
 import static kg.musabaev.megalabnews.controller.PostController.REQUEST_PARAM_DESC_POST_ID;
+import static kg.musabaev.megalabnews.controller.PostController.RESPONSE_DESC_IF_POST_NOT_FOUND;
 
 @Tag(name = "Комментарии", description = "Методы для работы с комментариями")
 @RestController
@@ -74,6 +81,33 @@ public class CommentController {
 	public static final String RESPONSE_DESC_IF_COMMENT_PAGE_RECEIVED = """
 			Возвращается объект Page (см. раздел Schemas) содержащий комментарии.
 			""";
+	public static final String RESPONSE_DESC_IF_COMMENT_CURSOR_PAGE_RECEIVED = """
+			* `content` - Комментарии в порядке создания.
+			* `next` - Курсор следующей страницы. `null`, если страница последняя.
+			""";
+	public static final String RESPONSE_DESC_IF_COMMENT_TREE_RECEIVED = """
+			* `comments` - Комментарии первого уровня в порядке создания.
+				* `id` - Идентификатор комментария.
+				* `author` - Автор комментария.
+				* `content` - Содержимое комментария.
+				* `createdDate` - Дата создание комментария в формате "yyyy-mm-dd".
+				* `replies` - Ответы на комментарий в том же формате.
+			* `truncated` - `true`, если комментариев больше, чем `limit`, и в дерево попали не все.
+			Дерево заполняется по уровням, поэтому обрезаются самые глубокие ответы.
+			""";
+	public static final String REQUEST_PARAM_DESC_COMMENT_TREE_DEPTH =
+			"Глубина дерева, от 1 до " + CommentTree.MAX_DEPTH + ". Комментарии первого уровня имеют глубину 1.";
+	public static final String REQUEST_PARAM_DESC_COMMENT_TREE_LIMIT =
+			"Наибольшее число комментариев в дереве, от 1 до " + CommentTree.MAX_LIMIT + ".";
+	public static final String RESPONSE_DESC_IF_COMMENT_TREE_PARAMS_NOT_VALID = "Если глубина или число комментариев вне допустимых пределов.";
+	public static final String RESPONSE_DESC_IF_REPLY_TOO_DEEP =
+			"Если ответ оказался бы глубже " + Comment.PATH_MAX_LENGTH / Comment.PATH_SEGMENT_LENGTH + " уровней.";
+	public static final String RESPONSE_DESC_IF_REPLY_COUNTS_RECEIVED = """
+			Возвращается объект, в котором ключ — идентификатор корневого комментария,
+			значение — число всех ответов в его ветке на любой глубине. Ветки без ответов не включаются.
+			""";
+	public static final String OPERATION_DESC_CURSOR_MODE = "Режим включается параметром `cursor`. " +
+			"Общее количество комментариев не возвращается, поэтому страницы не замедляются с ростом обсуждения.";
 
 	@Operation(
 			summary = "Создает новый комментарий",
@@ -82,7 +116,10 @@ public class CommentController {
 			requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(description = REQUEST_DESC_NEW_OR_UPDATE_COMMENT),
 			responses = {
 					@ApiResponse(responseCode = "201", description = RESPONSE_DESC_IF_COMMENT_SAVED + "\n" + RESPONSE_DESC_IF_COMMENT_ITEM),
-					@ApiResponse(responseCode = "400", description = RESPONSE_DESC_IF_REQUEST_BODY_NOT_VALID, content = @Content)})
+					@ApiResponse(
+							responseCode = "400",
+							description = RESPONSE_DESC_IF_REQUEST_BODY_NOT_VALID + "\n" + RESPONSE_DESC_IF_REPLY_TOO_DEEP,
+							content = @Content)})
 	@PostMapping("/{postId}/comments")
 	@PreAuthorize("hasAuthority('WRITE_COMMENT')")
 	ResponseEntity<NewOrUpdateCommentResponse> saveComment(
@@ -99,6 +136,7 @@ public class CommentController {
 			summary = "Возвращает постранично все корневые комментарии конкретной публикации.",
 			responses = @ApiResponse(responseCode = "200", description = RESPONSE_DESC_IF_COMMENT_PAGE_RECEIVED))
 	@GetMapping("/{postId}/comments")
+	@CachedResponseBody(SimpleCommentService.ROOT_COMMENTS_CACHE_NAME)
 	ResponseEntity<Page<CommentListView>> getRootCommentsOfPostById(
 			@Parameter(description = REQUEST_PARAM_DESC_POST_ID) @Positive @PathVariable
 			Long postId,
@@ -121,6 +159,105 @@ public class CommentController {
 		return ResponseEntity.ok(commentService.getChildrenByParentId(postId, parentCommentId, pageable));
 	}
 
+	@Operation(
+			summary = "Возвращает корневые комментарии конкретной публикации по курсору.",
+			description = OPERATION_DESC_CURSOR_MODE,
+			responses = {
+					@ApiResponse(responseCode = "200", description = RESPONSE_DESC_IF_COMMENT_CURSOR_PAGE_RECEIVED),
+					@ApiResponse(responseCode = "400", description = RESPONSE_DESC_IF_CURSOR_PARAMS_NOT_VALID, content = @Content)})
+	@GetMapping(value = "/{postId}/comments", params = "cursor")
+	ResponseEntity<CursorPage<CommentListView>> getRootCommentsOfPostByIdAfterCursor(
+			@Parameter(description = REQUEST_PARAM_DESC_POST_ID) @Positive @PathVariable
+			Long postId,
+			@Parameter(description = REQUEST_PARAM_DESC_CURSOR, allowEmptyValue = true)
+			@RequestParam(name = "cursor")
+			String cursor,
+			@Parameter(description = REQUEST_PARAM_DESC_CURSOR_PAGE_SIZE)
+			@RequestParam(name = "size", defaultValue = "10")
+			int size
+	) {
+		return ResponseEntity.ok(commentService.getRootsByPostIdAfter(postId, cursor, size));
+	}
+
+	@Operation(
+			summary = "Возвращает дочерние комментарии конкретной публикации и родительского комментария по курсору.",
+			description = OPERATION_DESC_CURSOR_MODE,
+			responses = {
+					@ApiResponse(responseCode = "200", description = RESPONSE_DESC_IF_COMMENT_CURSOR_PAGE_RECEIVED),
+					@ApiResponse(responseCode = "400", description = RESPONSE_DESC_IF_CURSOR_PARAMS_NOT_VALID, content = @Content)})
+	@GetMapping(value = "/{postId}/comments/{parentCommentId}", params = "cursor")
+	ResponseEntity<CursorPage<CommentListView>> getCommentChildrenOfParentIdAfterCursor(
+			@Parameter(description = REQUEST_PARAM_DESC_POST_ID) @Positive @PathVariable
+			Long postId,
+			@Parameter(description = REQUEST_PARAM_DESC_COMMENT_ID) @Positive @PathVariable
+			Long parentCommentId,
+			@Parameter(description = REQUEST_PARAM_DESC_CURSOR, allowEmptyValue = true)
+			@RequestParam(name = "cursor")
+			String cursor,
+			@Parameter(description = REQUEST_PARAM_DESC_CURSOR_PAGE_SIZE)
+			@RequestParam(name = "size", defaultValue = "10")
+			int size
+	) {
+		return ResponseEntity.ok(commentService.getChildrenByParentIdAfter(postId, parentCommentId, cursor, size));
+	}
+
+	@Operation(
+			summary = "Возвращает дерево комментариев конкретной публикации одним ответом.",
+			responses = {
+					@ApiResponse(responseCode = "200", description = RESPONSE_DESC_IF_COMMENT_TREE_RECEIVED),
+					@ApiResponse(responseCode = "400", description = RESPONSE_DESC_IF_COMMENT_TREE_PARAMS_NOT_VALID, content = @Content),
+					@ApiResponse(responseCode = "404", description = RESPONSE_DESC_IF_POST_NOT_FOUND, content = @Content)})
+	@GetMapping("/{postId}/comments/tree")
+	@CachedResponseBody(SimpleCommentService.COMMENT_TREE_CACHE_NAME)
+	ResponseEntity<CommentTree> getCommentTreeOfPostById(
+			@Parameter(description = REQUEST_PARAM_DESC_POST_ID) @Positive @PathVariable
+			Long postId,
+			@Parameter(description = REQUEST_PARAM_DESC_COMMENT_TREE_DEPTH)
+			@RequestParam(name = "depth", defaultValue = "" + CommentTree.DEFAULT_DEPTH)
+			int depth,
+			@Parameter(description = REQUEST_PARAM_DESC_COMMENT_TREE_LIMIT)
+			@RequestParam(name = "limit", defaultValue = "" + CommentTree.DEFAULT_LIMIT)
+			int limit
+	) {
+		return ResponseEntity.ok(commentService.getTree(postId, null, depth, limit));
+	}
+
+	@Operation(
+			summary = "Возвращает дерево ответов на конкретный комментарий одним ответом.",
+			responses = {
+					@ApiResponse(responseCode = "200", description = RESPONSE_DESC_IF_COMMENT_TREE_RECEIVED),
+					@ApiResponse(responseCode = "400", description = RESPONSE_DESC_IF_COMMENT_TREE_PARAMS_NOT_VALID, content = @Content),
+					@ApiResponse(responseCode = "404", description = RESPONSE_DESC_IF_COMMENT_NOT_FOUND, content = @Content)})
+	@GetMapping("/{postId}/comments/{parentCommentId}/tree")
+	@CachedResponseBody(SimpleCommentService.COMMENT_TREE_CACHE_NAME)
+	ResponseEntity<CommentTree> getCommentTreeOfParentId(
+			@Parameter(description = REQUEST_PARAM_DESC_POST_ID) @Positive @PathVariable
+			Long postId,
+			@Parameter(description = REQUEST_PARAM_DESC_COMMENT_ID) @Positive @PathVariable
+			Long parentCommentId,
+			@Parameter(description = REQUEST_PARAM_DESC_COMMENT_TREE_DEPTH)
+			@RequestParam(name = "depth", defaultValue = "" + CommentTree.DEFAULT_DEPTH)
+			int depth,
+			@Parameter(description = REQUEST_PARAM_DESC_COMMENT_TREE_LIMIT)
+			@RequestParam(name = "limit", defaultValue = "" + CommentTree.DEFAULT_LIMIT)
+			int limit
+	) {
+		return ResponseEntity.ok(commentService.getTree(postId, parentCommentId, depth, limit));
+	}
+
+	@Operation(
+			summary = "Возвращает число ответов в каждой ветке комментариев конкретной публикации.",
+			responses = {
+					@ApiResponse(responseCode = "200", description = RESPONSE_DESC_IF_REPLY_COUNTS_RECEIVED),
+					@ApiResponse(responseCode = "404", description = RESPONSE_DESC_IF_POST_NOT_FOUND, content = @Content)})
+	@GetMapping("/{postId}/comments/reply-counts")
+	ResponseEntity<Map<Long, Long>> getReplyCountsOfPostById(
+			@Parameter(description = REQUEST_PARAM_DESC_POST_ID) @Positive @PathVariable
+			Long postId
+	) {
+		return ResponseEntity.ok(commentService.getReplyCountsByPostId(postId));
+	}
+
 	@Operation(
 			summary = "Редактирует конкретный комментарий.",
 			description = OPERATION_DESC_REQUIRE_AUTHORITY,
@@ -9,13 +9,18 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Positive;
+import kg.musabaev.megalabnews.cache.CachedResponseBody;
 import kg.musabaev.megalabnews.config.OpenApiConfig;
+import kg.musabaev.megalabnews.dto.CursorPage;
 import kg.musabaev.megalabnews.dto.NewOrUpdatePostRequest;
 import kg.musabaev.megalabnews.dto.NewOrUpdatePostResponse;
+import kg.musabaev.megalabnews.dto.PostImportReport;
 import kg.musabaev.megalabnews.dto.UploadFileResponse;
 import kg.musabaev.megalabnews.repository.projection.PostItemView;
 import kg.musabaev.megalabnews.repository.projection.PostListView;
+import kg.musabaev.megalabnews.service.PostImportService;
 import kg.musabaev.megalabnews.service.PostService;
+import kg.musabaev.megalabnews.service.impl.SimplePostService;
 import kg.musabaev.megalabnews.util.Utils;
 import lombok.RequiredArgsConstructor;
 import org.springdoc.core.annotations.ParameterObject;
@@ -31,6 +36,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.util.Set;
 
 import static kg.musabaev.megalabnews.config.OpenApiConfig.*;
@@ -44,6 +50,7 @@ import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 public class PostController {
 
 	private final PostService postService;
+	private final PostImportService postImportService;
 
 
 	public static final String OPERATION_DESC_REQUIRE_AUTHORITY
@@ -65,9 +72,18 @@ public class PostController {
 			* `imageUrl` - Изображение публикации. Должно быть валидным url адрес на изображение или `null`.
 			""";
 
+	public static final String REQUEST_DESC_IMPORT_POSTS = """
+			Публикации в формате NDJSON: по одному объекту в строке, поля те же, что при создании публикации.
+			Пустые строки пропускаются.
+			""";
+
 	public static final String RESPONSE_DESC_IF_POST_PAGE_RECEIVED = """
 			Возвращается объект Page (см. раздел Schemas) содержащий публикации.
 			""";
+	public static final String RESPONSE_DESC_IF_POST_FEED_RECEIVED = """
+			* `content` - Публикации, отсортированные по дате создания и идентификатору по убыванию.
+			* `next` - Курсор следующей страницы. `null`, если страница последняя.
+			""";
 	public static final String RESPONSE_DESC_IF_POST_ITEM = """
 			* `id` - Идентификатор публикации.
 			* `content` - Содержимое публикации.
@@ -83,6 +99,15 @@ public class PostController {
 				* `username` - Пользовательское имя автора.
 				* `userPictureUrl` - Аватарка автора. Может быть `null` или валидный url адрес на изображение.
 			""";
+	public static final String RESPONSE_DESC_IF_POSTS_IMPORTED = """
+			Возвращается отчет об импорте:
+			* `created`, `duplicates`, `invalid`, `failed` - Количество строк с каждым статусом.
+			* `lines` - Результат по каждой непустой строке.
+				* `line` - Номер строки, начиная с 1.
+				* `status` - `CREATED`, `DUPLICATE` (заголовок занят), `INVALID` (не JSON или не прошла валидацию) или `FAILED`.
+				* `id` - Идентификатор сохраненной публикации, иначе `null`.
+				* `errors` - Причины, если публикация не сохранена.
+			""";
 	public static final String RESPONSE_DESC_IF_POST_NOT_FOUND = "Если публикация не найдена.";
 	public static final String RESPONSE_DESC_IF_POST_ALREADY_EXISTS = "Если публикация с таким `title` уже существует.";
 	public static final String RESPONSE_DESC_IF_POST_UPDATED = "Если публикация успешно обновлена, " + THEN_RETURNED_OBJECT_WITH_FOLLOWING_FIELDS;
@@ -107,10 +132,24 @@ public class PostController {
 				.body(postService.save(dto));
 	}
 
+	@Operation(
+			summary = "Импортирует публикации из NDJSON.",
+			description = OPERATION_DESC_REQUIRE_AUTHORITY + "Публикации сохраняются пачками, каждая пачка в своей транзакции, " +
+					"поэтому при ошибке уже сохраненные пачки остаются в базе.",
+			security = @SecurityRequirement(name = OpenApiConfig.SECURITY_SCHEMA_NAME),
+			requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(description = REQUEST_DESC_IMPORT_POSTS),
+			responses = @ApiResponse(responseCode = "200", description = RESPONSE_DESC_IF_POSTS_IMPORTED))
+	@PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = APPLICATION_JSON_VALUE)
+	@PreAuthorize("hasAuthority('WRITE_POST')")
+	PostImportReport importPosts(InputStream body) {
+		return postImportService.importPosts(body);
+	}
+
 	@Operation(
 			summary = "Возвращает постранично все публикации.",
 			responses = @ApiResponse(responseCode = "200", description = RESPONSE_DESC_IF_POST_PAGE_RECEIVED))
 	@GetMapping
+	@CachedResponseBody(SimplePostService.POST_LIST_CACHE_NAME)
 	ResponseEntity<Page<PostListView>> getAllPosts(
 			@ParameterObject @PageableDefault
 			Pageable pageable,
@@ -123,10 +162,35 @@ public class PostController {
 		return ResponseEntity.ok(postService.getAll(pageable, tags));
 	}
 
+	@Operation(
+			summary = "Возвращает ленту публикаций по курсору.",
+			description = "Режим включается параметром `cursor`. Общее количество публикаций не возвращается, " +
+					"поэтому страницы не замедляются с ростом ленты.",
+			responses = {
+					@ApiResponse(responseCode = "200", description = RESPONSE_DESC_IF_POST_FEED_RECEIVED),
+					@ApiResponse(responseCode = "400", description = RESPONSE_DESC_IF_CURSOR_PARAMS_NOT_VALID, content = @Content)})
+	@GetMapping(params = "cursor")
+	ResponseEntity<CursorPage<PostListView>> getPostFeed(
+			@Parameter(description = REQUEST_PARAM_DESC_CURSOR, allowEmptyValue = true)
+			@RequestParam(name = "cursor")
+			String cursor,
+			@Parameter(description = REQUEST_PARAM_DESC_CURSOR_PAGE_SIZE)
+			@RequestParam(name = "size", defaultValue = "10")
+			int size,
+			@Parameter(
+					description = REQUEST_PARAM_DESC_POST_TAGS,
+					schema = @Schema(example = "Спорт,Наука", type = "array[string]"), allowEmptyValue = true)
+			@RequestParam(name = "tags", required = false)
+			Set<String> tags
+	) {
+		return ResponseEntity.ok(postService.getFeed(cursor, size, tags));
+	}
+
 	@Operation(summary = "Возвращает информацию о конкретной публикации.", responses = {
 			@ApiResponse(responseCode = "200", description = RESPONSE_DESC_IF_POST_FOUND + "\n" + RESPONSE_DESC_IF_POST_ITEM),
 			@ApiResponse(responseCode = "404", description = RESPONSE_DESC_IF_POST_NOT_FOUND, content = @Content)})
 	@GetMapping("/{postId}")
+	@CachedResponseBody(SimplePostService.POST_ITEM_CACHE_NAME)
 	ResponseEntity<PostItemView> getPostById(
 			@Parameter(description = REQUEST_PARAM_DESC_POST_ID) @Positive @PathVariable
 			Long postId
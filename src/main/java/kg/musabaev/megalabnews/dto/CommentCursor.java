@@ -0,0 +1,38 @@
+package kg.musabaev.megalabnews.dto;
+
+import kg.musabaev.megalabnews.exception.ResponseStatusBadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Позиция в списке комментариев, отсортированном по {@code id} по возрастанию.
+ * Клиенту передается в виде непрозрачной строки
+ */
+public record CommentCursor(
+		Long id
+) {
+	/**
+	 * Позиция перед первым комментарием
+	 */
+	public static final CommentCursor FIRST = new CommentCursor(0L);
+
+	public String encode() {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(id.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * @return {@link #FIRST} для пустой строки
+	 * @throws ResponseStatusBadRequestException если курсор поврежден
+	 */
+	public static CommentCursor decode(String cursor) {
+		if (cursor.isEmpty()) return FIRST;
+		try {
+			long id = Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII));
+			if (id < 0) throw new ResponseStatusBadRequestException();
+			return new CommentCursor(id);
+		} catch (IllegalArgumentException e) {
+			throw new ResponseStatusBadRequestException();
+		}
+	}
+}
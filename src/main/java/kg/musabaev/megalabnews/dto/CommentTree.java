@@ -0,0 +1,38 @@
+package kg.musabaev.megalabnews.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Дерево комментариев публикации или поддерево комментария
+ *
+ * @param truncated {@code true}, если в дерево попали не все комментарии до заданной глубины,
+ *                  т.к. их больше, чем {@code limit}
+ */
+public record CommentTree(
+		List<Node> comments,
+		boolean truncated
+) {
+	public static final int DEFAULT_DEPTH = 8;
+	public static final int MAX_DEPTH = 32;
+	public static final int DEFAULT_LIMIT = 200;
+	public static final int MAX_LIMIT = 1000;
+
+	public record Node(
+			Long id,
+			UserInfo author,
+			String content,
+			LocalDate createdDate,
+			List<Node> replies
+	) {
+	}
+
+	public record UserInfo(
+			Long id,
+			String name,
+			String surname,
+			String username,
+			String userPictureUrl
+	) {
+	}
+}
@@ -0,0 +1,28 @@
+package kg.musabaev.megalabnews.dto;
+
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+/**
+ * Страница, полученная по курсору (keyset-пагинация). В отличие от Page,
+ * общее количество элементов не считается
+ *
+ * @param next курсор следующей страницы, либо {@code null}, если страница последняя
+ */
+public record CursorPage<T>(
+		List<T> content,
+		@Nullable String next
+) {
+	/**
+	 * Наибольший размер страницы
+	 */
+	public static final int MAX_SIZE = 100;
+
+	/**
+	 * @return {@code true}, если размер страницы допустим
+	 */
+	public static boolean isValidSize(int size) {
+		return size >= 1 && size <= MAX_SIZE;
+	}
+}
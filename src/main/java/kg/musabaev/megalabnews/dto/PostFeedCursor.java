@@ -0,0 +1,38 @@
+package kg.musabaev.megalabnews.dto;
+
+import kg.musabaev.megalabnews.exception.ResponseStatusBadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+/**
+ * Позиция в ленте публикаций, отсортированной по ({@code createdDate}, {@code id}) по убыванию.
+ * Клиенту передается в виде непрозрачной строки
+ */
+public record PostFeedCursor(
+		LocalDate createdDate,
+		Long id
+) {
+	private static final char SEPARATOR = ',';
+
+	public String encode() {
+		String cursor = createdDate.toString() + SEPARATOR + id;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * @throws ResponseStatusBadRequestException если курсор поврежден
+	 */
+	public static PostFeedCursor decode(String cursor) {
+		try {
+			String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+			int separator = decoded.indexOf(SEPARATOR);
+			return new PostFeedCursor(
+					LocalDate.parse(decoded.substring(0, separator)),
+					Long.valueOf(decoded.substring(separator + 1)));
+		} catch (RuntimeException e) {
+			throw new ResponseStatusBadRequestException();
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package kg.musabaev.megalabnews.dto;
+
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+/**
+ * Результат импорта публикаций из NDJSON, по одной записи на каждую непустую строку
+ */
+public record PostImportReport(
+		int created,
+		int duplicates,
+		int invalid,
+		int failed,
+		List<Line> lines
+) {
+	public enum Status {
+		/**
+		 * Публикация сохранена
+		 */
+		CREATED,
+		/**
+		 * Публикация с таким заголовком уже есть в базе или выше в файле
+		 */
+		DUPLICATE,
+		/**
+		 * Строка не является JSON или не прошла валидацию
+		 */
+		INVALID,
+		/**
+		 * Публикацию не удалось сохранить
+		 */
+		FAILED
+	}
+
+	/**
+	 * @param line   номер строки, начиная с 1
+	 * @param id     идентификатор сохраненной публикации
+	 * @param errors причины, если публикация не сохранена
+	 */
+	public record Line(
+			int line,
+			Status status,
+			@Nullable Long id,
+			List<String> errors
+	) {
+	}
+}
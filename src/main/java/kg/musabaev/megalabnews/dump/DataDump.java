@@ -0,0 +1,378 @@
+package kg.musabaev.megalabnews.dump;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import kg.musabaev.megalabnews.config.DumpProperties;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Выгрузка всех пользователей, публикаций, комментариев и избранного в gzip-файл NDJSON
+ * (по одной {@link DumpRecord} в строке) и загрузка такого файла в пустую базу.
+ * <p>
+ * Выгрузка читает все таблицы в одной read-only транзакции с уровнем изоляции REPEATABLE READ,
+ * поэтому видит один снимок базы. Строки читаются однонаправленным курсором по
+ * {@code fetch-size} штук и сразу пишутся в файл, так что занятая память не зависит от объема базы.
+ * Порядок записей: пользователи, публикации с тегами и автором, комментарии (родитель раньше ответов),
+ * избранное — в этом же порядке они загружаются, не нарушая внешних ключей.
+ * Удаленные публикации не выгружаются, удаленные пользователи выгружаются ради их комментариев.
+ * <p>
+ * Загрузка выполняется в одной транзакции: записи читаются из файла по одной и вставляются пакетами
+ * по {@code batch-size} строк с прежними id. После загрузки последовательности id переводятся за
+ * наибольший загруженный id.
+ */
+@Component
+@Log4j2
+@EnableConfigurationProperties(DumpProperties.class)
+public class DataDump {
+
+	private static final String SELECT_USERS = """
+			SELECT u.user_id, u.name, u.surname, u.username, u.password, u.user_picture_url, u.deleted_at, a.authority
+			FROM users u
+			LEFT JOIN users_authorities a ON a.user_id = u.user_id
+			ORDER BY u.user_id""";
+	private static final String SELECT_POSTS = """
+			SELECT p.post_id, p.title, p.description, p.content, p.image_url, p.created_date, t.tag,
+			       u.user_id, u.name, u.surname, u.username, u.user_picture_url
+			FROM posts p
+			JOIN users u ON u.user_id = p.author_id
+			LEFT JOIN posts_tags t ON t.post_id = p.post_id
+			WHERE p.deleted_at IS NULL
+			ORDER BY p.post_id""";
+	private static final String SELECT_COMMENTS = """
+			SELECT c.comment_id, c.post_id, c.parent_comment_id, c.path, c.author_id, c.content, c.created_date
+			FROM comments c
+			JOIN posts p ON p.post_id = c.post_id
+			WHERE p.deleted_at IS NULL
+			ORDER BY c.post_id, c.path, c.comment_id""";
+	private static final String SELECT_FAVOURITES = """
+			SELECT f.user_id, f.post_id
+			FROM favourite_posts_users f
+			JOIN posts p ON p.post_id = f.post_id
+			WHERE p.deleted_at IS NULL
+			ORDER BY f.user_id, f.post_id""";
+
+	/**
+	 * Последовательность id и ее таблица, см. {@code create-id-sequences.yml}
+	 */
+	private static final Map<String, String> SEQUENCES = Map.of(
+			"users_seq", "SELECT MAX(user_id) FROM users",
+			"posts_seq", "SELECT MAX(post_id) FROM posts",
+			"comments_seq", "SELECT MAX(comment_id) FROM comments");
+	private static final int SEQUENCE_INCREMENT = 50;
+
+	private final DataSource dataSource;
+	private final TransactionTemplate exportTransaction;
+	private final TransactionTemplate restoreTransaction;
+	private final ObjectWriter recordWriter;
+	private final ObjectReader recordReader;
+	private final DumpProperties properties;
+
+	public DataDump(
+			DataSource dataSource,
+			PlatformTransactionManager transactionManager,
+			ObjectMapper objectMapper,
+			DumpProperties properties) {
+		this.dataSource = dataSource;
+		this.exportTransaction = new TransactionTemplate(transactionManager);
+		this.exportTransaction.setReadOnly(true);
+		this.exportTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+		this.restoreTransaction = new TransactionTemplate(transactionManager);
+		this.recordWriter = objectMapper.writerFor(DumpRecord.class).withRootValueSeparator("\n");
+		this.recordReader = objectMapper.readerFor(DumpRecord.class);
+		this.properties = properties;
+	}
+
+	public DumpStats export(Path file) throws IOException {
+		try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			DumpStats stats = export(out);
+			log.info("Выгружено в {}: {}", file, stats);
+			return stats;
+		}
+	}
+
+	public DumpStats restore(Path file) throws IOException {
+		try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			DumpStats stats = restore(in);
+			log.info("Загружено из {}: {}", file, stats);
+			return stats;
+		}
+	}
+
+	/**
+	 * @param out поток для записи NDJSON, закрывается после выгрузки
+	 */
+	public DumpStats export(OutputStream out) {
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		jdbc.setFetchSize(properties.fetchSize());
+		return exportTransaction.execute(status -> {
+			var stats = new DumpStats();
+			try (SequenceWriter writer = recordWriter.writeValues(out)) {
+				exportUsers(jdbc, writer, stats);
+				exportPosts(jdbc, writer, stats);
+				jdbc.query(SELECT_COMMENTS, rs -> {
+					write(writer, new DumpRecord.Comment(
+							rs.getLong("comment_id"),
+							rs.getLong("post_id"),
+							getLongOrNull(rs, "parent_comment_id"),
+							rs.getString("path"),
+							rs.getLong("author_id"),
+							rs.getString("content"),
+							rs.getDate("created_date").toLocalDate()));
+					stats.comments++;
+				});
+				jdbc.query(SELECT_FAVOURITES, rs -> {
+					write(writer, new DumpRecord.Favourite(rs.getLong("user_id"), rs.getLong("post_id")));
+					stats.favourites++;
+				});
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return stats;
+		});
+	}
+
+	/**
+	 * Пользователь с правами занимает несколько соседних строк результата, по одной на право
+	 */
+	private void exportUsers(JdbcTemplate jdbc, SequenceWriter writer, DumpStats stats) {
+		var current = new Object() {
+			DumpRecord.User user;
+		};
+		jdbc.query(SELECT_USERS, rs -> {
+			long id = rs.getLong("user_id");
+			if (current.user == null || current.user.id() != id) {
+				if (current.user != null) write(writer, current.user);
+				Timestamp deletedAt = rs.getTimestamp("deleted_at");
+				current.user = new DumpRecord.User(
+						id,
+						rs.getString("name"),
+						rs.getString("surname"),
+						rs.getString("username"),
+						properties.includePasswords() ? rs.getString("password") : null,
+						rs.getString("user_picture_url"),
+						new ArrayList<>(),
+						deletedAt != null ? deletedAt.toInstant() : null);
+				stats.users++;
+			}
+			String authority = rs.getString("authority");
+			if (authority != null) current.user.authorities().add(authority);
+		});
+		if (current.user != null) write(writer, current.user);
+	}
+
+	/**
+	 * Публикация с тегами занимает несколько соседних строк результата, по одной на тег
+	 */
+	private void exportPosts(JdbcTemplate jdbc, SequenceWriter writer, DumpStats stats) {
+		var current = new Object() {
+			DumpRecord.Post post;
+		};
+		jdbc.query(SELECT_POSTS, rs -> {
+			long id = rs.getLong("post_id");
+			if (current.post == null || current.post.id() != id) {
+				if (current.post != null) write(writer, current.post);
+				current.post = new DumpRecord.Post(
+						id,
+						rs.getString("title"),
+						rs.getString("description"),
+						rs.getString("content"),
+						rs.getString("image_url"),
+						rs.getDate("created_date").toLocalDate(),
+						new ArrayList<>(),
+						new DumpRecord.Author(
+								rs.getLong("user_id"),
+								rs.getString("name"),
+								rs.getString("surname"),
+								rs.getString("username"),
+								rs.getString("user_picture_url")));
+				stats.posts++;
+			}
+			String tag = rs.getString("tag");
+			if (tag != null) current.post.tags().add(tag);
+		});
+		if (current.post != null) write(writer, current.post);
+	}
+
+	/**
+	 * @param in поток NDJSON, закрывается после загрузки
+	 * @throws IllegalStateException если в базе уже есть пользователи или публикации
+	 */
+	public DumpStats restore(InputStream in) {
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		DumpStats stats = restoreTransaction.execute(status -> {
+			Long existing = jdbc.queryForObject(
+					"SELECT (SELECT COUNT(*) FROM users) + (SELECT COUNT(*) FROM posts)", Long.class);
+			if (existing != null && existing > 0)
+				throw new IllegalStateException("Загрузка возможна только в пустую базу");
+
+			var batch = new RestoreBatch(jdbc, properties.batchSize());
+			try (MappingIterator<DumpRecord> records = recordReader.readValues(in)) {
+				while (records.hasNextValue())
+					batch.add(records.nextValue());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			batch.flush();
+			return batch.stats;
+		});
+		// в H2 изменение последовательности фиксирует транзакцию, поэтому выполняется после загрузки
+		SEQUENCES.forEach((sequence, selectMaxId) -> {
+			Long lastId = jdbc.queryForObject(selectMaxId, Long.class);
+			if (lastId != null)
+				jdbc.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + (lastId + SEQUENCE_INCREMENT));
+		});
+		return stats;
+	}
+
+	private static void write(SequenceWriter writer, DumpRecord record) {
+		try {
+			writer.write(record);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static Long getLongOrNull(ResultSet rs, String column) throws SQLException {
+		long value = rs.getLong(column);
+		return rs.wasNull() ? null : value;
+	}
+
+	/**
+	 * Накапливает подряд идущие записи одного типа и вставляет их одним пакетом
+	 */
+	private static class RestoreBatch {
+		final JdbcTemplate jdbc;
+		final int size;
+		final List<DumpRecord> records;
+		final DumpStats stats = new DumpStats();
+
+		RestoreBatch(JdbcTemplate jdbc, int size) {
+			this.jdbc = jdbc;
+			this.size = size;
+			this.records = new ArrayList<>(size);
+		}
+
+		void add(DumpRecord record) {
+			if (!records.isEmpty() && records.get(0).getClass() != record.getClass()) flush();
+			records.add(record);
+			if (records.size() == size) flush();
+		}
+
+		void flush() {
+			if (records.isEmpty()) return;
+			DumpRecord first = records.get(0);
+			if (first instanceof DumpRecord.User) insertUsers(cast(records));
+			else if (first instanceof DumpRecord.Post) insertPosts(cast(records));
+			else if (first instanceof DumpRecord.Comment) insertComments(cast(records));
+			else if (first instanceof DumpRecord.Favourite) insertFavourites(cast(records));
+			records.clear();
+		}
+
+		void insertUsers(List<DumpRecord.User> users) {
+			jdbc.batchUpdate("""
+							INSERT INTO users (user_id, name, surname, username, password, user_picture_url, deleted_at)
+							VALUES (?, ?, ?, ?, ?, ?, ?)""",
+					users,
+					users.size(),
+					(ps, user) -> {
+						ps.setLong(1, user.id());
+						ps.setString(2, user.name());
+						ps.setString(3, user.surname());
+						ps.setString(4, user.username());
+						// без хэша пароля войти невозможно, пароль восстанавливается отдельно
+						ps.setString(5, user.password() != null ? user.password() : "");
+						ps.setString(6, user.userPictureUrl());
+						ps.setTimestamp(7, user.deletedAt() != null ? Timestamp.from(user.deletedAt()) : null);
+					});
+			List<Object[]> authorities = new ArrayList<>();
+			users.forEach(user -> user.authorities().forEach(a -> authorities.add(new Object[]{user.id(), a})));
+			jdbc.batchUpdate("INSERT INTO users_authorities (user_id, authority) VALUES (?, ?)", authorities);
+			stats.users += users.size();
+		}
+
+		void insertPosts(List<DumpRecord.Post> posts) {
+			jdbc.batchUpdate("""
+							INSERT INTO posts (post_id, title, description, content, image_url, created_date, author_id)
+							VALUES (?, ?, ?, ?, ?, ?, ?)""",
+					posts,
+					posts.size(),
+					(ps, post) -> {
+						ps.setLong(1, post.id());
+						ps.setString(2, post.title());
+						ps.setString(3, post.description());
+						ps.setString(4, post.content());
+						ps.setString(5, post.imageUrl());
+						ps.setDate(6, Date.valueOf(post.createdDate()));
+						ps.setLong(7, post.author().id());
+					});
+			List<Object[]> tags = new ArrayList<>();
+			posts.forEach(post -> post.tags().forEach(tag -> tags.add(new Object[]{post.id(), tag})));
+			jdbc.batchUpdate("INSERT INTO posts_tags (post_id, tag) VALUES (?, ?)", tags);
+			stats.posts += posts.size();
+		}
+
+		void insertComments(List<DumpRecord.Comment> comments) {
+			jdbc.batchUpdate("""
+							INSERT INTO comments (comment_id, post_id, parent_comment_id, path, author_id, content, created_date)
+							VALUES (?, ?, ?, ?, ?, ?, ?)""",
+					comments,
+					comments.size(),
+					(ps, comment) -> {
+						ps.setLong(1, comment.id());
+						ps.setLong(2, comment.postId());
+						if (comment.parentId() != null) ps.setLong(3, comment.parentId());
+						else ps.setNull(3, Types.BIGINT);
+						ps.setString(4, comment.path());
+						ps.setLong(5, comment.authorId());
+						ps.setString(6, comment.content());
+						ps.setDate(7, Date.valueOf(comment.createdDate()));
+					});
+			stats.comments += comments.size();
+		}
+
+		void insertFavourites(List<DumpRecord.Favourite> favourites) {
+			jdbc.batchUpdate("INSERT INTO favourite_posts_users (user_id, post_id) VALUES (?, ?)",
+					favourites,
+					favourites.size(),
+					(ps, favourite) -> {
+						ps.setLong(1, favourite.userId());
+						ps.setLong(2, favourite.postId());
+					});
+			stats.favourites += favourites.size();
+		}
+
+		@SuppressWarnings("unchecked")
+		static <T extends DumpRecord> List<T> cast(List<DumpRecord> records) {
+			return (List<T>) records;
+		}
+	}
+}
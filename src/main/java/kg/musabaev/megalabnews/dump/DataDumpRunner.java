@@ -0,0 +1,41 @@
+package kg.musabaev.megalabnews.dump;
+
+import kg.musabaev.megalabnews.config.DumpProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Запуск приложения как утилиты выгрузки или загрузки данных ({@link DataDump}):
+ * <pre>
+ * java -jar megalab-news.jar --app.dump.export=dump.ndjson.gz
+ * java -jar megalab-news.jar --app.dump.restore=dump.ndjson.gz
+ * </pre>
+ * После выгрузки или загрузки приложение завершается. Порт веб-сервера, снимок кэшей, шина инвалидаций,
+ * прогрев и очистка в этом режиме выключены ({@link DumpEnvironmentPostProcessor}),
+ * поэтому утилиту можно запустить рядом с работающим узлом
+ */
+@Component
+@Log4j2
+@RequiredArgsConstructor
+@ConditionalOnExpression("'${app.dump.export:}' != '' or '${app.dump.restore:}' != ''")
+public class DataDumpRunner implements ApplicationRunner {
+
+	private final DataDump dataDump;
+	private final DumpProperties properties;
+	private final ConfigurableApplicationContext context;
+
+	@Override
+	public void run(ApplicationArguments args) throws Exception {
+		if (properties.export() != null && properties.restore() != null)
+			throw new IllegalArgumentException("Задайте только один из app.dump.export и app.dump.restore");
+		if (properties.export() != null) dataDump.export(properties.export());
+		else dataDump.restore(properties.restore());
+		System.exit(SpringApplication.exit(context));
+	}
+}
@@ -0,0 +1,34 @@
+package kg.musabaev.megalabnews.dump;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.util.StringUtils;
+
+import java.util.Map;
+
+/**
+ * При запуске утилиты выгрузки или загрузки ({@link DataDumpRunner}) выключает все, что
+ * мешало бы работающим узлам на той же БД и том же каталоге: порт веб-сервера, снимок кэшей
+ * (загрузка удаляет файл снимка, а остановка перезаписывает его), шину инвалидаций,
+ * прогрев кэшей и очистку удаленных строк. Эти настройки важнее заданных в конфигурации
+ */
+public class DumpEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+	static final String PROPERTY_SOURCE_NAME = "dump";
+
+	@Override
+	public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+		if (!StringUtils.hasText(environment.getProperty("app.dump.export"))
+				&& !StringUtils.hasText(environment.getProperty("app.dump.restore")))
+			return;
+
+		environment.getPropertySources().addFirst(new MapPropertySource(PROPERTY_SOURCE_NAME, Map.of(
+				"server.port", "-1",
+				"app.cache.snapshot.enabled", "false",
+				"app.cache.bus.enabled", "false",
+				"app.cache.warm-up.enabled", "false",
+				"app.purge.enabled", "false")));
+	}
+}
@@ -0,0 +1,76 @@
+package kg.musabaev.megalabnews.dump;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Строка файла выгрузки, тип записывается в поле {@code type}
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+		@JsonSubTypes.Type(value = DumpRecord.User.class, name = "user"),
+		@JsonSubTypes.Type(value = DumpRecord.Post.class, name = "post"),
+		@JsonSubTypes.Type(value = DumpRecord.Comment.class, name = "comment"),
+		@JsonSubTypes.Type(value = DumpRecord.Favourite.class, name = "favourite")})
+public sealed interface DumpRecord {
+
+	/**
+	 * @param password  хэш пароля, если выгрузка с паролями
+	 * @param deletedAt момент удаления: комментарии удаленного пользователя видны до очистки, поэтому он выгружается
+	 */
+	record User(
+			Long id,
+			String name,
+			String surname,
+			String username,
+			@JsonInclude(JsonInclude.Include.NON_NULL) @Nullable String password,
+			String userPictureUrl,
+			List<String> authorities,
+			@Nullable Instant deletedAt
+	) implements DumpRecord {
+	}
+
+	record Post(
+			Long id,
+			String title,
+			String description,
+			String content,
+			@Nullable String imageUrl,
+			LocalDate createdDate,
+			List<String> tags,
+			Author author
+	) implements DumpRecord {
+	}
+
+	record Author(
+			Long id,
+			String name,
+			String surname,
+			String username,
+			String userPictureUrl
+	) {
+	}
+
+	record Comment(
+			Long id,
+			Long postId,
+			@Nullable Long parentId,
+			String path,
+			Long authorId,
+			String content,
+			LocalDate createdDate
+	) implements DumpRecord {
+	}
+
+	record Favourite(
+			Long userId,
+			Long postId
+	) implements DumpRecord {
+	}
+}
@@ -0,0 +1,17 @@
+package kg.musabaev.megalabnews.dump;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Сколько записей каждого типа выгружено или загружено
+ */
+@Getter
+@ToString
+public class DumpStats {
+
+	int users;
+	int posts;
+	int comments;
+	int favourites;
+}
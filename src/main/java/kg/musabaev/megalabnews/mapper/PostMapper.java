@@ -3,17 +3,50 @@ package kg.musabaev.megalabnews.mapper;
 import kg.musabaev.megalabnews.dto.NewOrUpdatePostRequest;
 import kg.musabaev.megalabnews.dto.NewOrUpdatePostResponse;
 import kg.musabaev.megalabnews.model.Post;
+import kg.musabaev.megalabnews.repository.projection.PostItemView;
 import org.mapstruct.Mapper;
 import org.mapstruct.MappingTarget;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
 @Mapper(componentModel = "spring")
 public interface PostMapper {
 
+	ProjectionFactory PROJECTION_FACTORY = new SpelAwareProxyProjectionFactory();
+
 	Post toModel(NewOrUpdatePostRequest newOrUpdatePostRequest);
 
 	void update(NewOrUpdatePostRequest dto, @MappingTarget Post model);
 
-	void update(NewOrUpdatePostResponse dto, @MappingTarget Post model);
-
 	NewOrUpdatePostResponse toDto(Post post);
+
+	/**
+	 * Та же проекция, что возвращает {@code PostRepo.findProjectedById}, но без запроса к БД:
+	 * поля берутся из ответа, собранного по сохраненной публикации и ее автору.
+	 * Проекция опирается на {@link Map}, а не на сущность, поэтому в кэш не попадают
+	 * непроинициализированные связи
+	 */
+	default PostItemView toItemView(NewOrUpdatePostResponse dto) {
+		Map<String, Object> author = new HashMap<>();
+		author.put("id", dto.author().id());
+		author.put("name", dto.author().name());
+		author.put("surname", dto.author().surname());
+		author.put("username", dto.author().username());
+		author.put("userPictureUrl", dto.author().userPictureUrl());
+
+		Map<String, Object> post = new HashMap<>();
+		post.put("id", dto.id());
+		post.put("title", dto.title());
+		post.put("description", dto.description());
+		post.put("createdDate", dto.createdDate());
+		post.put("tags", Set.copyOf(dto.tags()));
+		post.put("content", dto.content());
+		post.put("imageUrl", dto.imageUrl());
+		post.put("author", author);
+		return PROJECTION_FACTORY.createProjection(PostItemView.class, post);
+	}
 }
@@ -3,6 +3,7 @@ package kg.musabaev.megalabnews.model;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
+import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Hibernate;
 import org.springframework.data.annotation.CreatedBy;
 import org.springframework.data.annotation.CreatedDate;
@@ -13,7 +14,11 @@ import java.time.LocalDate;
 import java.util.Objects;
 
 @Entity
-@Table(name = "comments")
+@Table(name = "comments", indexes = {
+		@Index(name = "comments_post_id_parent_comment_id_comment_id_idx", columnList = "post_id, parent_comment_id, comment_id"),
+		@Index(name = "comments_post_id_path_idx", columnList = "post_id, path"),
+		@Index(name = "comments_author_id_comment_id_idx", columnList = "author_id, comment_id")
+})
 @EntityListeners(AuditingEntityListener.class)
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Getter
@@ -24,8 +29,18 @@ import java.util.Objects;
 @Builder
 public class Comment {
 
+	/**
+	 * Длина id в пути: {@code Long.MAX_VALUE} в base36
+	 */
+	public static final int PATH_SEGMENT_LENGTH = 13;
+	/**
+	 * Ограничивает глубину 200 уровнями, чтобы ключ индекса по пути поместился в страницу B-дерева PostgreSQL
+	 */
+	public static final int PATH_MAX_LENGTH = 200 * PATH_SEGMENT_LENGTH;
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "comments_seq")
+	@SequenceGenerator(name = "comments_seq", sequenceName = "comments_seq", allocationSize = 50)
 	@Column(name = "comment_id", nullable = false)
 	Long id;
 
@@ -53,6 +68,15 @@ public class Comment {
 	@JoinColumn(name = "author_id", nullable = false, updatable = false)
 	User author;
 
+	/**
+	 * id всех предков от корневого комментария до родителя, у корневого комментария пустая строка.
+	 * id записываются в base36 с ведущими нулями, поэтому ответы на комментарий —
+	 * это строки в диапазоне {@link #getRepliesPathFrom(String, Long)}..{@link #getRepliesPathTo(String, Long)}
+	 * при любой сортировке строк в БД
+	 */
+	@Column(nullable = false, updatable = false, length = PATH_MAX_LENGTH)
+	String path;
+
 	@Column(nullable = false, length = 2000)
 	String content;
 
@@ -60,6 +84,28 @@ public class Comment {
 	@Column(nullable = false, updatable = false)
 	LocalDate createdDate;
 
+	/**
+	 * @return путь ответов на комментарий {@code id} с путем {@code path}, он же начало диапазона путей всех его потомков
+	 */
+	public static String getRepliesPathFrom(String path, Long id) {
+		return path + toPathSegment(id);
+	}
+
+	/**
+	 * @return конец диапазона путей всех потомков комментария (не включительно)
+	 */
+	public static String getRepliesPathTo(String path, Long id) {
+		return path + toPathSegment(id + 1);
+	}
+
+	public static String toPathSegment(long id) {
+		return StringUtils.leftPad(Long.toString(id, Character.MAX_RADIX), PATH_SEGMENT_LENGTH, '0');
+	}
+
+	public static long parsePathSegment(String segment) {
+		return Long.parseLong(segment, Character.MAX_RADIX);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
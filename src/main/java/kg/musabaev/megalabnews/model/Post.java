@@ -3,20 +3,32 @@ package kg.musabaev.megalabnews.model;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
+import org.hibernate.annotations.Where;
 import org.springframework.data.annotation.CreatedBy;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 import org.springframework.lang.Nullable;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.HashSet;
 import java.util.Set;
 
+/**
+ * Удаленная публикация помечается в {@code deleted_at} и скрывается из всех запросов через {@link Where},
+ * а комментарии, избранное, изображение и саму строку позже удаляет {@link kg.musabaev.megalabnews.purge.TombstonePurger}
+ */
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Post.CACHE_REGION)
+@Where(clause = Post.NOT_DELETED)
 @Table(name = "posts", indexes = {
-		@Index(name = "posts_title_idx", columnList = "title", unique = true)
+		@Index(name = "posts_title_idx", columnList = "title", unique = true),
+		@Index(name = "posts_created_date_post_id_idx", columnList = "createdDate, post_id"),
+		@Index(name = "posts_deleted_at_idx", columnList = "deletedAt")
 })
 @EntityListeners(AuditingEntityListener.class)
 @FieldDefaults(level = AccessLevel.PRIVATE)
@@ -28,8 +40,13 @@ import java.util.Set;
 @AllArgsConstructor
 @Builder
 public class Post {
+	public static final String CACHE_REGION = "posts";
+	public static final String TAGS_CACHE_REGION = "postTags";
+	public static final String NOT_DELETED = "deleted_at IS NULL";
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "posts_seq")
+	@SequenceGenerator(name = "posts_seq", sequenceName = "posts_seq", allocationSize = 50)
 	@Column(name = "post_id", nullable = false)
 	Long id;
 
@@ -57,6 +74,7 @@ public class Post {
 	@CollectionTable(name = "posts_tags", joinColumns = @JoinColumn(name = "post_id"))
 	@Column(name = "tag")
 	@Fetch(FetchMode.SUBSELECT)
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Post.TAGS_CACHE_REGION)
 	@Builder.Default
 	Set<String> tags = new HashSet<>();
 
@@ -68,6 +86,13 @@ public class Post {
 	@Nullable
 	String imageUrl;
 
+	/**
+	 * Момент удаления, записывается только нативным запросом {@code markDeleted...}
+	 */
+	@Column(insertable = false, updatable = false)
+	@Nullable
+	Instant deletedAt;
+
 	/*public Post() {
 	}*/
 }
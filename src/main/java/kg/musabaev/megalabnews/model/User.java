@@ -5,18 +5,31 @@ import jakarta.persistence.*;
 import kg.musabaev.megalabnews.security.Authority;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.Where;
+import org.springframework.lang.Nullable;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-
+/**
+ * Удаленный пользователь, как и {@link Post}, помечается в {@code deleted_at} и удаляется позже
+ */
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.CACHE_REGION)
+@NaturalIdCache(region = User.USERNAME_CACHE_REGION)
+@Where(clause = User.NOT_DELETED)
 @Table(name = "users", indexes = {
-		@Index(name = "users_username_idx", columnList = "username", unique = true)
+		@Index(name = "users_username_idx", columnList = "username", unique = true),
+		@Index(name = "users_deleted_at_idx", columnList = "deletedAt")
 })
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Getter
@@ -27,8 +40,14 @@ import java.util.Set;
 @AllArgsConstructor
 @Builder
 public class User {
+	public static final String CACHE_REGION = "users";
+	public static final String USERNAME_CACHE_REGION = "usersByUsername";
+	public static final String AUTHORITIES_CACHE_REGION = "userAuthorities";
+	public static final String NOT_DELETED = "deleted_at IS NULL";
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+	@SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
 	@Column(name = "user_id", nullable = false)
 	Long id;
 
@@ -36,6 +55,7 @@ public class User {
 
 	String surname;
 
+	@NaturalId(mutable = true)
 	@Column(nullable = false, unique = true)
 	String username;
 
@@ -50,6 +70,7 @@ public class User {
 	@Column(name = "authority", nullable = false)
 	@Enumerated(EnumType.STRING)
 	@Fetch(FetchMode.SUBSELECT)
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.AUTHORITIES_CACHE_REGION)
 	@Singular
 	Set<Authority> authorities = new HashSet<>();
 
@@ -73,4 +94,11 @@ public class User {
 	@Column(length = 2000)
 	@Builder.Default
 	String userPictureUrl = "https://i.pinimg.com/474x/20/0d/72/200d72a18492cf3d7adac8a914ef3520.jpg";
+
+	/**
+	 * Момент удаления, записывается только нативным запросом {@code markDeleted...}
+	 */
+	@Column(insertable = false, updatable = false)
+	@Nullable
+	Instant deletedAt;
 }
@@ -0,0 +1,240 @@
+package kg.musabaev.megalabnews.purge;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import kg.musabaev.megalabnews.cache.CacheInvalidationStats;
+import kg.musabaev.megalabnews.cache.ManagedCacheManager;
+import kg.musabaev.megalabnews.cache.SecondLevelCacheInvalidations;
+import kg.musabaev.megalabnews.config.PurgeProperties;
+import kg.musabaev.megalabnews.model.Comment;
+import kg.musabaev.megalabnews.repository.CommentRepo;
+import kg.musabaev.megalabnews.repository.PostRepo;
+import kg.musabaev.megalabnews.repository.RefreshTokenRepo;
+import kg.musabaev.megalabnews.repository.UserRepo;
+import kg.musabaev.megalabnews.util.Utils;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static kg.musabaev.megalabnews.service.impl.SimpleCommentService.CHILD_COMMENTS_CACHE_NAME;
+import static kg.musabaev.megalabnews.service.impl.SimpleCommentService.COMMENT_TREE_CACHE_NAME;
+import static kg.musabaev.megalabnews.service.impl.SimpleCommentService.ROOT_COMMENTS_CACHE_NAME;
+
+/**
+ * Удаляет публикации и пользователей, помеченные удаленными в {@code deleted_at}.
+ * Каждые {@code interval} выполняет до {@code max-batches-per-run} транзакций,
+ * каждая удаляет не больше {@code batch-size} комментариев или строк избранного,
+ * поэтому не держит долгих блокировок и не раздувает журнал транзакций.
+ * <p>
+ * Публикации очищаются в порядке удаления: комментарии от самых глубоких, избранное,
+ * теги, изображение и сама публикация. Пользователь очищается после всех своих публикаций:
+ * его комментарии вместе с ответами, избранное, права, токены, изображение и сама строка.
+ * Комментарии удаленного пользователя видны, пока не очищены, после очистки сбрасываются кэши
+ * комментариев их публикаций.
+ * Очередь (число еще не очищенных строк) публикуется в метрике {@code purge.backlog}.
+ * <p>
+ * Несколько узлов могут очищать одну строку одновременно: проигравшая транзакция
+ * откатится по внешнему ключу или ничего не удалит, и строка очистится при следующем запуске.
+ */
+@Component
+@Log4j2
+@ConditionalOnExpression("${app.purge.enabled:true} == true")
+@EnableConfigurationProperties(PurgeProperties.class)
+public class TombstonePurger implements MeterBinder {
+
+	private final PostRepo postRepo;
+	private final UserRepo userRepo;
+	private final CommentRepo commentRepo;
+	private final RefreshTokenRepo refreshTokenRepo;
+	private final TransactionTemplate transactionTemplate;
+	private final ManagedCacheManager cacheManager;
+	private final CacheInvalidationStats invalidationStats;
+	private final SecondLevelCacheInvalidations secondLevelCache;
+	private final PurgeProperties properties;
+	private final Path postImageStorage;
+	private final Path userPictureStorage;
+
+	private final AtomicLong postsBacklog = new AtomicLong();
+	private final AtomicLong usersBacklog = new AtomicLong();
+	private ScheduledExecutorService executor;
+
+	public TombstonePurger(
+			PostRepo postRepo,
+			UserRepo userRepo,
+			CommentRepo commentRepo,
+			RefreshTokenRepo refreshTokenRepo,
+			TransactionTemplate transactionTemplate,
+			ManagedCacheManager cacheManager,
+			CacheInvalidationStats invalidationStats,
+			SecondLevelCacheInvalidations secondLevelCache,
+			PurgeProperties properties,
+			@Value("${app.storage.folder-name}") String storageFolderName,
+			@Value("${app.storage.post-image-folder-name}") String postImageFolderName,
+			@Value("${app.storage.user-picture-folder-name}") String userPictureFolderName) {
+		this.postRepo = postRepo;
+		this.userRepo = userRepo;
+		this.commentRepo = commentRepo;
+		this.refreshTokenRepo = refreshTokenRepo;
+		this.transactionTemplate = transactionTemplate;
+		this.cacheManager = cacheManager;
+		this.invalidationStats = invalidationStats;
+		this.secondLevelCache = secondLevelCache;
+		this.properties = properties;
+		this.postImageStorage = Path.of(storageFolderName, postImageFolderName);
+		this.userPictureStorage = Path.of(storageFolderName, userPictureFolderName);
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("purge.backlog", postsBacklog, AtomicLong::get)
+				.description("Удаленные, но еще не очищенные строки")
+				.tag("type", "posts")
+				.register(registry);
+		Gauge.builder("purge.backlog", usersBacklog, AtomicLong::get)
+				.description("Удаленные, но еще не очищенные строки")
+				.tag("type", "users")
+				.register(registry);
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("tombstone-purger-"));
+		long interval = properties.interval().toMillis();
+		executor.scheduleWithFixedDelay(this::purge, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	void stop() {
+		if (executor != null) executor.shutdownNow();
+	}
+
+	/**
+	 * Один запуск очистки
+	 *
+	 * @return число выполненных транзакций
+	 */
+	public int purge() {
+		int batches = 0;
+		Set<Long> postsWithDeletedComments = new HashSet<>();
+		try {
+			while (batches < properties.maxBatchesPerRun()
+					&& Boolean.TRUE.equals(transactionTemplate.execute(status -> purgeBatch(postsWithDeletedComments)))) {
+				batches++;
+				postsWithDeletedComments.forEach(this::evictCommentCaches);
+				postsWithDeletedComments.clear();
+			}
+			postsBacklog.set(postRepo.countDeleted());
+			usersBacklog.set(userRepo.countDeleted());
+		} catch (RuntimeException e) {
+			log.error("Ошибка при очистке удаленных публикаций и пользователей", e);
+		}
+		if (batches > 0)
+			log.debug("Очистка выполнила {} транзакций, осталось публикаций {}, пользователей {}",
+					batches, postsBacklog.get(), usersBacklog.get());
+		return batches;
+	}
+
+	/**
+	 * @param postsWithDeletedComments сюда добавляются неудаленные публикации, у которых удалены комментарии
+	 * @return {@code false}, если очищать нечего
+	 */
+	boolean purgeBatch(Set<Long> postsWithDeletedComments) {
+		Optional<Long> postId = postRepo.findFirstDeletedId();
+		if (postId.isPresent()) {
+			purgePostBatch(postId.get());
+			return true;
+		}
+		Optional<Long> userId = userRepo.findFirstDeletedId();
+		if (userId.isPresent()) {
+			purgeUserBatch(userId.get(), postsWithDeletedComments);
+			return true;
+		}
+		return false;
+	}
+
+	private void purgePostBatch(Long postId) {
+		int limit = properties.batchSize();
+		int deletedComments = commentRepo.deleteAllByIdIn(commentRepo.findDeepestIdsByPostId(postId, limit));
+		if (deletedComments > 0) log.debug("У публикации {} удалено {} комментариев", postId, deletedComments);
+		if (deletedComments == limit) return;
+		if (userRepo.deleteFromFavouritePostsOfAllUsers(postId, limit) == limit) return;
+
+		String imageUrl = postRepo.findDeletedPostImageUrlByPostId(postId);
+		postRepo.deleteTagsByPostId(postId);
+		postRepo.purgeById(postId);
+		deleteFileInStorageIfExists(Utils.getLastPathSegmentOrNull(imageUrl), postImageStorage);
+		log.debug("Публикация {} очищена", postId);
+	}
+
+	private void purgeUserBatch(Long userId, Set<Long> postsWithDeletedComments) {
+		// публикация, созданная уже после удаления пользователя
+		if (postRepo.existsAnyByAuthorId(userId)) {
+			postRepo.markDeletedByAuthorId(userId);
+			secondLevelCache.publishAllPostsChange();
+			return;
+		}
+		Optional<Comment> comment = commentRepo.findFirstByAuthorIdOrderById(userId);
+		if (comment.isPresent()) {
+			purgeCommentBatch(comment.get());
+			postsWithDeletedComments.add(comment.get().getPost().getId());
+			return;
+		}
+		int limit = properties.batchSize();
+		if (userRepo.deleteAllFromFavouritePosts(userId, limit) == limit) return;
+
+		String pictureUrl = userRepo.findDeletedUserPictureByUserId(userId);
+		userRepo.deleteAuthoritiesByUserId(userId);
+		refreshTokenRepo.deleteByOwnerId(userId);
+		userRepo.purgeById(userId);
+		deleteFileInStorageIfExists(Utils.getLastPathSegmentOrNull(pictureUrl), userPictureStorage);
+		log.debug("Пользователь {} очищен", userId);
+	}
+
+	/**
+	 * Удаляет самые глубокие ответы на комментарий, а когда их не останется — и сам комментарий
+	 */
+	private void purgeCommentBatch(Comment comment) {
+		int limit = properties.batchSize();
+		Long postId = comment.getPost().getId();
+		List<Long> repliesId = commentRepo.findDeepestDescendantIds(
+				postId,
+				Comment.getRepliesPathFrom(comment.getPath(), comment.getId()),
+				Comment.getRepliesPathTo(comment.getPath(), comment.getId()),
+				limit);
+		int deleted = commentRepo.deleteAllByIdIn(repliesId);
+		if (repliesId.size() < limit) deleted += commentRepo.deleteAllByIdIn(List.of(comment.getId()));
+		log.debug("Удалено {} комментариев из ветки комментария {} публикации {}", deleted, comment.getId(), postId);
+	}
+
+	private void evictCommentCaches(Long postId) {
+		String source = "TombstonePurger.purge()";
+		for (String cacheName : List.of(ROOT_COMMENTS_CACHE_NAME, CHILD_COMMENTS_CACHE_NAME, COMMENT_TREE_CACHE_NAME))
+			invalidationStats.record(source, cacheName, cacheManager.getManagedCache(cacheName).evictByOwner(postId));
+	}
+
+	private static void deleteFileInStorageIfExists(String filename, Path storage) {
+		Utils.deleteFileFromStorageIfExists(
+				filename,
+				storage,
+				() -> log.debug("Файл {} удален из {}", filename, storage),
+				exception -> log.warn("Произошла ошибка при удалении файла {} из {}", filename, storage, exception));
+	}
+}
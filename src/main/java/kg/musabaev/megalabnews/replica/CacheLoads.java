@@ -0,0 +1,27 @@
+package kg.musabaev.megalabnews.replica;
+
+/**
+ * Отмечает в текущем потоке загрузку значения для кэша: она читает только с реплики,
+ * отставание которой не больше {@code cache-load-max-lag}, иначе с основной БД
+ */
+public final class CacheLoads {
+
+	private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+
+	private CacheLoads() {
+	}
+
+	public static <T, E extends Throwable> T call(PrimaryReads.Action<T, E> action) throws E {
+		if (isActive()) return action.run();
+		ACTIVE.set(Boolean.TRUE);
+		try {
+			return action.run();
+		} finally {
+			ACTIVE.remove();
+		}
+	}
+
+	public static boolean isActive() {
+		return ACTIVE.get() != null;
+	}
+}
@@ -0,0 +1,31 @@
+package kg.musabaev.megalabnews.replica;
+
+/**
+ * Отмечает в текущем потоке код, который должен читать с основной БД даже в read-only транзакции
+ */
+public final class PrimaryReads {
+
+	private static final ThreadLocal<Boolean> REQUIRED = new ThreadLocal<>();
+
+	private PrimaryReads() {
+	}
+
+	public static <T, E extends Throwable> T call(Action<T, E> action) throws E {
+		if (isRequired()) return action.run();
+		REQUIRED.set(Boolean.TRUE);
+		try {
+			return action.run();
+		} finally {
+			REQUIRED.remove();
+		}
+	}
+
+	public static boolean isRequired() {
+		return REQUIRED.get() != null;
+	}
+
+	@FunctionalInterface
+	public interface Action<T, E extends Throwable> {
+		T run() throws E;
+	}
+}
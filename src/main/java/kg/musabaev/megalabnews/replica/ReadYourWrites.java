@@ -0,0 +1,108 @@
+package kg.musabaev.megalabnews.replica;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.lang.Nullable;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.util.WebUtils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Клиенты, которые недавно что-то записали: в течение {@code window} после коммита
+ * они читают с основной БД и видят свои изменения, даже если реплики еще не догнали ее.
+ * <p>
+ * Следующий запрос клиента балансировщик может отправить на другой узел, поэтому отметка
+ * передается с самим клиентом: после коммита в ответ добавляется cookie {@value #COOKIE_NAME}
+ * с моментом окончания окна, и любой узел, получивший ее, читает с основной БД
+ * (момент сравнивается по часам узла, поэтому их расхождение должно быть заметно меньше окна).
+ * Для клиентов, которые не хранят cookie, узел, где сделана запись, дополнительно
+ * помнит пользователя сам.
+ */
+public class ReadYourWrites {
+
+	public static final String COOKIE_NAME = "primary-reads-until";
+
+	private final Duration window;
+	private final LongSupplier currentTimeMillis;
+	private final Cache<String, Boolean> recentWriters;
+
+	public ReadYourWrites(Duration window) {
+		this(window, System::currentTimeMillis);
+	}
+
+	ReadYourWrites(Duration window, LongSupplier currentTimeMillis) {
+		this.window = window;
+		this.currentTimeMillis = currentTimeMillis;
+		this.recentWriters = Caffeine.newBuilder()
+				.expireAfterWrite(window)
+				.ticker(() -> TimeUnit.MILLISECONDS.toNanos(currentTimeMillis.getAsLong()))
+				.build();
+	}
+
+	/**
+	 * Отмечает пользователя и клиента текущего HTTP-запроса, если запись сделана в нем.
+	 * Вызывается после коммита, пока ответ еще не отправлен
+	 *
+	 * @param username {@code null} для анонимного пользователя
+	 */
+	public void recordWrite(@Nullable String username) {
+		if (username != null) recentWriters.put(username, Boolean.TRUE);
+
+		ServletRequestAttributes attributes = getRequestAttributes();
+		if (attributes == null) return;
+		long until = currentTimeMillis.getAsLong() + window.toMillis();
+		// следующие чтения в этом же запросе
+		attributes.getRequest().setAttribute(COOKIE_NAME, until);
+
+		HttpServletResponse response = attributes.getResponse();
+		if (response == null || response.isCommitted()) return;
+		ResponseCookie cookie = ResponseCookie.from(COOKIE_NAME, Long.toString(until))
+				.maxAge(window)
+				.path("/")
+				.httpOnly(true)
+				.sameSite("Lax")
+				.build();
+		response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+	}
+
+	/**
+	 * @param username {@code null} для анонимного пользователя
+	 */
+	public boolean isPinned(@Nullable String username) {
+		if (username != null && recentWriters.getIfPresent(username) != null) return true;
+
+		ServletRequestAttributes attributes = getRequestAttributes();
+		if (attributes == null) return false;
+		Long until = getPinnedUntil(attributes.getRequest());
+		return until != null && until > currentTimeMillis.getAsLong();
+	}
+
+	@Nullable
+	private static Long getPinnedUntil(HttpServletRequest request) {
+		if (request.getAttribute(COOKIE_NAME) instanceof Long until) return until;
+
+		Cookie cookie = WebUtils.getCookie(request, COOKIE_NAME);
+		if (cookie == null) return null;
+		try {
+			return Long.valueOf(cookie.getValue());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	@Nullable
+	private static ServletRequestAttributes getRequestAttributes() {
+		return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+				? attributes
+				: null;
+	}
+}
@@ -0,0 +1,250 @@
+package kg.musabaev.megalabnews.replica;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import kg.musabaev.megalabnews.config.ReplicaProperties;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Направляет read-only транзакции на реплики, а остальные соединения — на основную БД.
+ * Соединение выбирается при его получении, поэтому источник нужно оборачивать в
+ * {@link LazyConnectionDataSourceProxy}: тогда оно берется при первом запросе, когда
+ * признак read-only транзакции уже выставлен.
+ * <p>
+ * Реплики выбираются по кругу из исправных. Каждые {@code health-check-interval} реплики
+ * проверяются, у PostgreSQL заодно сравнивается отставание с {@code max-lag}.
+ * Если исправных реплик нет или реплика не выдала соединение, чтение идет с основной БД.
+ * <p>
+ * С основной БД читают и клиент, который записывал что-то в последние
+ * {@code read-your-writes-window} ({@link ReadYourWrites}), и код внутри {@link PrimaryReads}.
+ * Загрузки значений для кэшей ({@link CacheLoads}) читают только с реплик, отставание которых
+ * при последней проверке не превышало {@code cache-load-max-lag}.
+ */
+@Log4j2
+public class ReplicaRoutingDataSource extends AbstractDataSource implements InitializingBean, DisposableBean, MeterBinder {
+
+	private static final String POSTGRES_LAG_SQL = """
+			SELECT CASE
+			    WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+			    ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp())
+			END""";
+
+	private final DataSource primary;
+	private final List<Replica> replicas;
+	private final ReadYourWrites readYourWrites;
+	private final ReplicaProperties properties;
+
+	/**
+	 * Ключ ресурса транзакции, отмечающего, что запись в ней уже учитывается
+	 */
+	private final Object writeMarker = new Object();
+	private final AtomicInteger next = new AtomicInteger();
+	private final LongAdder primaryConnections = new LongAdder();
+	private final LongAdder replicaConnections = new LongAdder();
+	private final LongAdder fallbacks = new LongAdder();
+	private ScheduledExecutorService executor;
+
+	/**
+	 * @param replicas реплики по именам, имена попадают в логи
+	 */
+	public ReplicaRoutingDataSource(
+			DataSource primary,
+			Map<String, DataSource> replicas,
+			ReadYourWrites readYourWrites,
+			ReplicaProperties properties) {
+		this.primary = primary;
+		this.replicas = replicas.entrySet().stream()
+				.map(replica -> new Replica(replica.getKey(), replica.getValue()))
+				.toList();
+		this.readYourWrites = readYourWrites;
+		this.properties = properties;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (replicas.isEmpty()) {
+			log.warn("Чтение с реплик включено, но реплики не заданы: все запросы идут на основную БД");
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("replica-health-"));
+		long interval = properties.healthCheckInterval().toMillis();
+		executor.scheduleWithFixedDelay(this::checkReplicas, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		if (executor != null) executor.shutdownNow();
+		for (Replica replica : replicas)
+			if (replica.dataSource instanceof AutoCloseable closeable) closeable.close();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("datasource.replicas.healthy", replicas, r -> r.stream().filter(Replica::isHealthy).count())
+				.description("Исправные реплики")
+				.register(registry);
+		FunctionCounter.builder("datasource.routed.connections", primaryConnections, LongAdder::sum)
+				.description("Соединения, выданные основной БД или репликой")
+				.tag("target", "primary")
+				.register(registry);
+		FunctionCounter.builder("datasource.routed.connections", replicaConnections, LongAdder::sum)
+				.description("Соединения, выданные основной БД или репликой")
+				.tag("target", "replica")
+				.register(registry);
+		FunctionCounter.builder("datasource.replica.fallbacks", fallbacks, LongAdder::sum)
+				.description("Read-only транзакции, ушедшие на основную БД из-за недоступности реплик")
+				.register(registry);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		Replica replica = chooseReplica();
+		if (replica != null) {
+			try {
+				Connection connection = replica.dataSource.getConnection();
+				replicaConnections.increment();
+				return connection;
+			} catch (SQLException e) {
+				replica.healthy = false;
+				fallbacks.increment();
+				log.warn("Реплика {} не выдала соединение, чтение идет с основной БД", replica.name, e);
+			}
+		}
+		primaryConnections.increment();
+		return primary.getConnection();
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Учетные данные задаются в настройках основной БД и реплик");
+	}
+
+	/**
+	 * @return реплика для текущей транзакции, либо {@code null}, если нужна основная БД
+	 */
+	@Nullable
+	Replica chooseReplica() {
+		if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			if (TransactionSynchronizationManager.isSynchronizationActive()) recordWriteAfterCommit();
+			return null;
+		}
+		if (replicas.isEmpty() || PrimaryReads.isRequired()) return null;
+		if (readYourWrites.isPinned(getCurrentUsername())) return null;
+
+		long maxLagMillis = CacheLoads.isActive() ? properties.cacheLoadMaxLag().toMillis() : Long.MAX_VALUE;
+		boolean anyHealthy = false;
+		int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+		for (int i = 0; i < replicas.size(); i++) {
+			Replica replica = replicas.get((start + i) % replicas.size());
+			if (!replica.healthy) continue;
+			if (replica.lagMillis <= maxLagMillis) return replica;
+			anyHealthy = true;
+		}
+		if (!anyHealthy) fallbacks.increment();
+		return null;
+	}
+
+	/**
+	 * Транзакция, которая может записывать, отмечает пользователя и клиента после коммита.
+	 * Отметка регистрируется один раз на транзакцию
+	 */
+	private void recordWriteAfterCommit() {
+		if (TransactionSynchronizationManager.hasResource(writeMarker)) return;
+		String username = getCurrentUsername();
+		TransactionSynchronizationManager.bindResource(writeMarker, Boolean.TRUE);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				TransactionSynchronizationManager.unbindResourceIfPossible(writeMarker);
+				if (status == STATUS_COMMITTED) readYourWrites.recordWrite(username);
+			}
+		});
+	}
+
+	@Nullable
+	private static String getCurrentUsername() {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication == null || authentication instanceof AnonymousAuthenticationToken) return null;
+		return authentication.getName();
+	}
+
+	void checkReplicas() {
+		for (Replica replica : replicas) {
+			boolean healthy = isHealthy(replica);
+			if (healthy != replica.healthy)
+				log.info("Реплика {} {}", replica.name, healthy ? "исправна" : "неисправна, чтение идет с остальных");
+			replica.healthy = healthy;
+		}
+	}
+
+	/**
+	 * Заодно запоминает отставание реплики, у других СУБД оно считается нулевым
+	 */
+	private boolean isHealthy(Replica replica) {
+		int timeout = (int) Math.max(1, properties.healthCheckTimeout().toSeconds());
+		try (Connection connection = replica.dataSource.getConnection()) {
+			if (!connection.isValid(timeout)) return false;
+			if (!"PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())) {
+				replica.lagMillis = 0;
+				return true;
+			}
+
+			try (Statement statement = connection.createStatement()) {
+				statement.setQueryTimeout(timeout);
+				try (ResultSet rs = statement.executeQuery(POSTGRES_LAG_SQL)) {
+					double lagSeconds = rs.next() ? rs.getDouble(1) : 0;
+					replica.lagMillis = (long) (lagSeconds * 1000);
+					if (replica.lagMillis <= properties.maxLag().toMillis()) return true;
+					log.warn("Реплика {} отстает на {} с", replica.name, lagSeconds);
+					return false;
+				}
+			}
+		} catch (SQLException | RuntimeException e) {
+			log.debug("Реплика {} не прошла проверку", replica.name, e);
+			return false;
+		}
+	}
+
+	static class Replica {
+		final String name;
+		final DataSource dataSource;
+		volatile boolean healthy;
+		volatile long lagMillis;
+
+		Replica(String name, DataSource dataSource) {
+			this.name = name;
+			this.dataSource = dataSource;
+		}
+
+		boolean isHealthy() {
+			return healthy;
+		}
+	}
+}
@@ -1,11 +1,18 @@
 package kg.musabaev.megalabnews.repository;
 
+import jakarta.persistence.QueryHint;
 import kg.musabaev.megalabnews.model.Comment;
 import kg.musabaev.megalabnews.repository.projection.CommentListView;
+import kg.musabaev.megalabnews.repository.projection.CommentTreeRow;
+import kg.musabaev.megalabnews.repository.projection.ReplyCountRow;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -15,19 +22,181 @@ import java.util.Optional;
 @Repository
 public interface CommentRepo extends JpaRepository<Comment, Long> {
 
+	String SELECT_TREE = """
+			SELECT c.comment_id AS "id", c.parent_comment_id AS "parentId",
+			c.content AS "content", c.created_date AS "createdDate",
+			u.user_id AS "authorId", u.name AS "authorName", u.surname AS "authorSurname",
+			u.username AS "authorUsername", u.user_picture_url AS "authorUserPictureUrl"
+			FROM comments c
+			LEFT JOIN users u ON u.user_id = c.author_id
+			WHERE c.post_id = :postId""";
+	String TREE_ORDER = """
+			 AND LENGTH(c.path) < :maxPathLength
+			ORDER BY LENGTH(c.path), c.comment_id
+			LIMIT :limit""";
+	/**
+	 * Потомки комментария — диапазон по индексу {@code comments_post_id_path_idx},
+	 * см. {@link Comment#getRepliesPathFrom(String, Long)}
+	 */
+	String DESCENDANTS = " AND path >= :pathFrom AND path < :pathTo";
+	/*
+	Ссылки на родителей снимаются перед удалением, т.к. H2 проверяет внешний ключ
+	parent_comment_id для каждой строки, а не в конце запроса, как PostgreSQL
+	*/
+	String DETACH_DESCENDANTS = "UPDATE comments SET parent_comment_id = NULL WHERE post_id = :postId" + DESCENDANTS;
+	String DELETE_DESCENDANTS = "DELETE FROM comments WHERE post_id = :postId" + DESCENDANTS;
+	String DELETE_BY_ID = "DELETE FROM comments WHERE comment_id = :commentId";
+	String DETACH_FROM_PARENTS_BY_POST_ID =
+			"UPDATE comments SET parent_comment_id = NULL WHERE post_id = :postId AND parent_comment_id IS NOT NULL";
+	String DELETE_BY_POST_ID = "DELETE FROM comments WHERE post_id = :postId";
+	/**
+	 * Путь ответа длиннее пути родителя, начинается с него и поэтому больше,
+	 * так что в начале сортировки по убыванию пути каждый комментарий идет после всех своих потомков
+	 */
+	String DEEPEST_FIRST = " ORDER BY path DESC LIMIT :limit";
+	/**
+	 * Число ответов в каждой ветке: первый сегмент пути — id корневого комментария ветки
+	 */
+	String ROOT_PATH_SEGMENT = "SUBSTRING(path, 1, " + Comment.PATH_SEGMENT_LENGTH + ")";
+	String COUNT_REPLIES_BY_ROOT = "SELECT " + ROOT_PATH_SEGMENT + " AS \"rootPathSegment\", COUNT(*) AS \"replies\" " +
+			"FROM comments WHERE post_id = :postId AND path > '' " +
+			"GROUP BY " + ROOT_PATH_SEGMENT + " ORDER BY " + ROOT_PATH_SEGMENT;
+
 	Page<CommentListView> findRootsByPostIdAndParentIsNull(Long postId, Pageable pageable);
 
 	Page<CommentListView> findChildrenByParentIdAndPostId(Long parentId, Long postId, Pageable pageable);
 
+	/**
+	 * Корневые комментарии после комментария {@code afterId}. Читаются по индексу
+	 * {@code comments_post_id_parent_comment_id_comment_id_idx} без OFFSET и запроса количества,
+	 * поэтому {@code pageable} должен быть отсортирован по {@code id}
+	 */
+	Slice<CommentListView> findRootsByPostIdAndParentIsNullAndIdGreaterThan(Long postId, Long afterId, Pageable pageable);
+
+	/**
+	 * Дочерние комментарии после комментария {@code afterId}, см.
+	 * {@link #findRootsByPostIdAndParentIsNullAndIdGreaterThan(Long, Long, Pageable)}
+	 */
+	Slice<CommentListView> findChildrenByParentIdAndPostIdAndIdGreaterThan(
+			Long parentId, Long postId, Long afterId, Pageable pageable);
+
+	/**
+	 * Дерево комментариев публикации одним запросом по уровням
+	 * до пути длиной {@code maxPathLength} (не включительно), не больше {@code limit} строк
+	 */
+	@Query(value = SELECT_TREE + TREE_ORDER, nativeQuery = true)
+	List<CommentTreeRow> findTreeByPostId(
+			@Param("postId") Long postId, @Param("maxPathLength") int maxPathLength, @Param("limit") int limit);
+
+	/**
+	 * Потомки комментария с путями ответов от {@code pathFrom} до {@code pathTo},
+	 * см. {@link #findTreeByPostId(Long, int, int)}
+	 */
+	@Query(value = SELECT_TREE + " AND c.path >= :pathFrom AND c.path < :pathTo" + TREE_ORDER, nativeQuery = true)
+	List<CommentTreeRow> findTreeByPostIdAndPathRange(
+			@Param("postId") Long postId,
+			@Param("pathFrom") String pathFrom,
+			@Param("pathTo") String pathTo,
+			@Param("maxPathLength") int maxPathLength,
+			@Param("limit") int limit);
+
+	@Query(value = COUNT_REPLIES_BY_ROOT, nativeQuery = true)
+	List<ReplyCountRow> countRepliesByRootOfPost(@Param("postId") Long postId);
+
 	boolean existsByIdAndPostId(Long commentId, Long postId);
 
 	Optional<Comment> findByIdAndPostId(Long commentId, Long postId);
 
-	@Query("SELECT c.id FROM Comment c WHERE c.post.id = :postId AND c.parent IS NULL")
-	List<Long> getAllRootCommentId(@Param("postId") Long postId);
+	@Query("SELECT c.path FROM Comment c WHERE c.id = :commentId AND c.post.id = :postId")
+	Optional<String> findPathByIdAndPostId(@Param("commentId") Long commentId, @Param("postId") Long postId);
+
+	@Query(value = DETACH_DESCENDANTS, nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "comments"))
+	int detachDescendants(@Param("postId") Long postId, @Param("pathFrom") String pathFrom, @Param("pathTo") String pathTo);
+
+	@Query(value = DELETE_DESCENDANTS, nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "comments"))
+	int deleteDescendants(@Param("postId") Long postId, @Param("pathFrom") String pathFrom, @Param("pathTo") String pathTo);
+
+	@Query(value = DELETE_BY_ID, nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "comments"))
+	int deleteByIdWithoutLoading(@Param("commentId") Long commentId);
+
+	@Query(value = DETACH_FROM_PARENTS_BY_POST_ID, nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "comments"))
+	int detachFromParentsByPostId(@Param("postId") Long postId);
+
+	@Query(value = DELETE_BY_POST_ID, nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "comments"))
+	int deleteByPostId(@Param("postId") Long postId);
+
+	/**
+	 * Удаляет комментарий вместе с потомками тремя запросами по диапазону путей
+	 *
+	 * @param path путь комментария {@code commentId}
+	 * @return число удаленных комментариев
+	 */
+	default int deleteSubtree(Long postId, Long commentId, String path) {
+		String pathFrom = Comment.getRepliesPathFrom(path, commentId);
+		String pathTo = Comment.getRepliesPathTo(path, commentId);
+		detachDescendants(postId, pathFrom, pathTo);
+		return deleteDescendants(postId, pathFrom, pathTo) + deleteByIdWithoutLoading(commentId);
+	}
+
+	/**
+	 * Удаляет все комментарии публикации двумя запросами
+	 *
+	 * @return число удаленных комментариев
+	 */
+	default int deleteAllOfPost(Long postId) {
+		detachFromParentsByPostId(postId);
+		return deleteByPostId(postId);
+	}
+
+	/**
+	 * Не больше {@code limit} комментариев публикации, см. {@link #DEEPEST_FIRST}
+	 */
+	@Query(value = "SELECT comment_id FROM comments WHERE post_id = :postId" + DEEPEST_FIRST, nativeQuery = true)
+	List<Long> findDeepestIdsByPostId(@Param("postId") Long postId, @Param("limit") int limit);
+
+	/**
+	 * Не больше {@code limit} потомков комментария, см. {@link #DEEPEST_FIRST} и {@link #DESCENDANTS}
+	 */
+	@Query(value = "SELECT comment_id FROM comments WHERE post_id = :postId" + DESCENDANTS + DEEPEST_FIRST, nativeQuery = true)
+	List<Long> findDeepestDescendantIds(
+			@Param("postId") Long postId,
+			@Param("pathFrom") String pathFrom,
+			@Param("pathTo") String pathTo,
+			@Param("limit") int limit);
+
+	Optional<Comment> findFirstByAuthorIdOrderById(Long authorId);
+
+	@Query(value = "UPDATE comments SET parent_comment_id = NULL WHERE comment_id IN :commentsId", nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "comments"))
+	int detachFromParentsByIdIn(@Param("commentsId") List<Long> commentsId);
+
+	@Query(value = "DELETE FROM comments WHERE comment_id IN :commentsId", nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "comments"))
+	int deleteByIdIn(@Param("commentsId") List<Long> commentsId);
 
-	@Query("SELECT c.id FROM Comment c WHERE c.parent.id = :parentId AND c.post.id = :postId")
-	List<Long> getAllChildCommentIdByParentId(@Param("postId") Long postId, @Param("parentId") Long parentId);
+	/**
+	 * Удаляет комментарии, сначала сняв их ссылки на родителей. Ответы на удаляемый комментарий
+	 * должны быть удалены раньше или входить в тот же список, как при выборке по {@link #DEEPEST_FIRST}
+	 *
+	 * @return число удаленных комментариев
+	 */
+	default int deleteAllByIdIn(List<Long> commentsId) {
+		if (commentsId.isEmpty()) return 0;
+		detachFromParentsByIdIn(commentsId);
+		return deleteByIdIn(commentsId);
+	}
 
 	@Query(value = """
 			SELECT u.username
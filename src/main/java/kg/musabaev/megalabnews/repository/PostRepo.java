@@ -1,40 +1,135 @@
 package kg.musabaev.megalabnews.repository;
 
+import jakarta.persistence.QueryHint;
 import kg.musabaev.megalabnews.model.Post;
 import kg.musabaev.megalabnews.repository.projection.PostItemView;
 import kg.musabaev.megalabnews.repository.projection.PostListView;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
+/**
+ * Запросы JPQL не видят удаленные публикации (см. {@link Post}), к ним обращаются только
+ * нативные запросы {@code ...Deleted...} и {@code purge...}, которые нужны для их очистки
+ */
 @Repository
 public interface PostRepo extends JpaRepository<Post, Long> {
 
+	String SELECT_FEED = "SELECT p.id AS id, p.title AS title, p.description AS description, " +
+			"p.createdDate AS createdDate, p.imageUrl AS imageUrl FROM Post p ";
+	String FEED_AFTER = "(p.createdDate < :createdDate OR (p.createdDate = :createdDate AND p.id < :id)) ";
+	String FEED_TAGS_IN = "p.id IN (SELECT tp.id FROM Post tp JOIN tp.tags t WHERE t IN :tags) ";
+	String FEED_ORDER = "ORDER BY p.createdDate DESC, p.id DESC";
+
 	Page<PostListView> findAllProjectedBy(Pageable pageable);
 
 	Page<PostListView> findAllByTagsIn(Set<String> tags, Pageable pageable);
 
-	boolean existsByTitle(String title);
+	/**
+	 * Первая страница ленты. Лента читается по индексу {@code posts_created_date_post_id_idx}
+	 * без OFFSET и запроса количества
+	 */
+	@Query(SELECT_FEED + FEED_ORDER)
+	Slice<PostListView> findFeed(Pageable pageable);
+
+	/**
+	 * Страница ленты после публикации ({@code createdDate}, {@code id})
+	 */
+	@Query(SELECT_FEED + "WHERE " + FEED_AFTER + FEED_ORDER)
+	Slice<PostListView> findFeedAfter(
+			@Param("createdDate") LocalDate createdDate, @Param("id") Long id, Pageable pageable);
+
+	@Query(SELECT_FEED + "WHERE " + FEED_TAGS_IN + FEED_ORDER)
+	Slice<PostListView> findFeedByTagsIn(@Param("tags") Set<String> tags, Pageable pageable);
+
+	@Query(SELECT_FEED + "WHERE " + FEED_TAGS_IN + "AND " + FEED_AFTER + FEED_ORDER)
+	Slice<PostListView> findFeedByTagsInAfter(
+			@Param("tags") Set<String> tags,
+			@Param("createdDate") LocalDate createdDate,
+			@Param("id") Long id,
+			Pageable pageable);
 
-	@Query("SELECT p.imageUrl FROM Post p WHERE p.id = :postId")
-	String findPostImageUrlByPostId(@Param("postId") Long postId);
+	/**
+	 * Учитывает и удаленные публикации: до очистки их название занято уникальным индексом
+	 */
+	@Query(value = "SELECT EXISTS (SELECT 1 FROM posts WHERE title = :title)", nativeQuery = true)
+	boolean existsByTitle(@Param("title") String title);
 
-	@Query("SELECT p.id FROM Post p WHERE p.author.id = :author_id")
-	List<Long> findAllPostsIdByAuthorId(@Param("author_id") Long authorId);
+	/**
+	 * Какие из заголовков уже заняты, учитывая удаленные публикации
+	 */
+	@Query(value = "SELECT title FROM posts WHERE title IN (:titles)", nativeQuery = true)
+	Set<String> findExistingTitles(@Param("titles") Collection<String> titles);
 
-	@EntityGraph(attributePaths = {"author"})
+	@EntityGraph(attributePaths = {"author", "tags"})
 	Optional<PostItemView> findProjectedById(Long postId);
 
 	Page<PostListView> findAllByAuthorId(Long authorId, Pageable pageable);
 
+	@Query("SELECT t FROM Post p JOIN p.tags t WHERE p.id = :postId")
+	Set<String> findTagsByPostId(@Param("postId") Long postId);
+
+	@Query("SELECT DISTINCT t FROM Post p JOIN p.tags t WHERE p.author.id = :authorId")
+	Set<String> findTagsByAuthorId(@Param("authorId") Long authorId);
+
+	@Query("SELECT t FROM Post p JOIN p.tags t GROUP BY t ORDER BY COUNT(p) DESC")
+	List<String> findTopTags(Pageable pageable);
+
+	@Query("SELECT p.id FROM Post p ORDER BY p.createdDate DESC, p.id DESC")
+	List<Long> findRecentPostIds(Pageable pageable);
+
 	@Query(value = "SELECT u.username FROM posts p LEFT JOIN users u ON p.author_id = u.user_id WHERE p.post_id = :postId", nativeQuery = true)
 	String findAuthorUsernameByPostId(@Param("postId") Long postId);
+
+	@Query(value = "UPDATE posts SET deleted_at = CURRENT_TIMESTAMP WHERE post_id = :postId AND deleted_at IS NULL", nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "posts"))
+	int markDeletedById(@Param("postId") Long postId);
+
+	@Query(value = "UPDATE posts SET deleted_at = CURRENT_TIMESTAMP WHERE author_id = :authorId AND deleted_at IS NULL", nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "posts"))
+	int markDeletedByAuthorId(@Param("authorId") Long authorId);
+
+	/**
+	 * Публикация, удаленная раньше остальных
+	 */
+	@Query(value = "SELECT post_id FROM posts WHERE deleted_at IS NOT NULL ORDER BY deleted_at, post_id LIMIT 1", nativeQuery = true)
+	Optional<Long> findFirstDeletedId();
+
+	@Query(value = "SELECT COUNT(*) FROM posts WHERE deleted_at IS NOT NULL", nativeQuery = true)
+	long countDeleted();
+
+	@Query(value = "SELECT image_url FROM posts WHERE post_id = :postId AND deleted_at IS NOT NULL", nativeQuery = true)
+	String findDeletedPostImageUrlByPostId(@Param("postId") Long postId);
+
+	/**
+	 * Учитывает и удаленные публикации
+	 */
+	@Query(value = "SELECT EXISTS (SELECT 1 FROM posts WHERE author_id = :authorId)", nativeQuery = true)
+	boolean existsAnyByAuthorId(@Param("authorId") Long authorId);
+
+	@Query(value = "DELETE FROM posts_tags WHERE post_id = :postId", nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "posts_tags"))
+	int deleteTagsByPostId(@Param("postId") Long postId);
+
+	@Query(value = "DELETE FROM posts WHERE post_id = :postId AND deleted_at IS NOT NULL", nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "posts"))
+	int purgeById(@Param("postId") Long postId);
 }
@@ -0,0 +1,14 @@
+package kg.musabaev.megalabnews.repository;
+
+import kg.musabaev.megalabnews.model.User;
+
+import java.util.Optional;
+
+/**
+ * Поиск пользователя по natural id ({@code username}). В отличие от производного запроса
+ * Spring Data, загрузка идет через кэш natural id и кэш сущностей второго уровня
+ */
+public interface UserNaturalIdRepo {
+
+	Optional<User> findByUsername(String username);
+}
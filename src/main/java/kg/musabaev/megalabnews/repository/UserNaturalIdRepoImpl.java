@@ -0,0 +1,29 @@
+package kg.musabaev.megalabnews.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import kg.musabaev.megalabnews.model.User;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+class UserNaturalIdRepoImpl implements UserNaturalIdRepo {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/**
+	 * Транзакция нужна, чтобы вне ее сессия не закрылась сразу после {@code unwrap}.
+	 * Загрузка по натуральному id не учитывает {@code @Where}, поэтому удаленный
+	 * пользователь отсеивается здесь
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Optional<User> findByUsername(String username) {
+		return entityManager.unwrap(Session.class)
+				.bySimpleNaturalId(User.class)
+				.loadOptional(username)
+				.filter(user -> user.getDeletedAt() == null);
+	}
+}
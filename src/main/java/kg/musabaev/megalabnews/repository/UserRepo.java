@@ -1,27 +1,38 @@
 package kg.musabaev.megalabnews.repository;
 
+import jakarta.persistence.QueryHint;
 import kg.musabaev.megalabnews.model.User;
 import kg.musabaev.megalabnews.repository.projection.PostListView;
 import kg.musabaev.megalabnews.repository.projection.UserItemView;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
 
+/**
+ * У нативных изменяющих запросов указаны пространства (затрагиваемые таблицы):
+ * иначе Hibernate не знает, какие таблицы они затрагивают, и очищает весь кэш второго уровня.
+ * Удаленных пользователей, как и удаленные публикации (см. {@link PostRepo}),
+ * видят только нативные запросы {@code ...Deleted...} и {@code purge...}
+ */
 @Repository
-public interface UserRepo extends JpaRepository<User, Long> {
+public interface UserRepo extends JpaRepository<User, Long>, UserNaturalIdRepo {
 
 	@Query(value = "INSERT INTO favourite_posts_users (user_id, post_id) VALUES (:userId, :postId)", nativeQuery = true)
 	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "favourite_posts_users"))
 	void insertIntoFavouritePosts(@Param("userId") Long userId, @Param("postId") Long postId);
 
 	@Query(value = "DELETE FROM favourite_posts_users WHERE post_id = :postId AND user_id = :userId", nativeQuery = true)
 	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "favourite_posts_users"))
 	void deleteFromFavouritePosts(@Param("userId") Long userId, @Param("postId") Long postId);
 
 	@Query(value = """
@@ -34,22 +45,73 @@ public interface UserRepo extends JpaRepository<User, Long> {
 			FROM posts p
 			JOIN favourite_posts_users fpu
 			ON fpu.post_id = p.post_id AND fpu.user_id = :userId
+			WHERE p.deleted_at IS NULL
 			""", nativeQuery = true)
 	Page<PostListView> findFavouritePostsByUserId(@Param("userId") Long userId, Pageable pageable);
 
-	@Query("SELECT u.userPictureUrl FROM User u WHERE u.id = :userId")
-	String findUserPictureByUserId(@Param("userId") Long userId);
-
 	Optional<UserItemView> findProjectedById(Long userId);
 
-	Optional<User> findByUsername(String username);
+	/**
+	 * Учитывает и удаленных пользователей: до очистки их имя занято уникальным индексом
+	 */
+	@Query(value = "SELECT EXISTS (SELECT 1 FROM users WHERE username = :username)", nativeQuery = true)
+	boolean existsByUsername(@Param("username") String username);
 
-	boolean existsByUsername(String username);
+	@Query(value = "SELECT username FROM users WHERE user_id = :userId", nativeQuery = true)
+	String findUsernameByUserId(@Param("userId") Long userId);
 
-	@Query(value = "DELETE FROM favourite_posts_users WHERE post_id = :postId ", nativeQuery = true)
+	@Query(value = "UPDATE users SET deleted_at = CURRENT_TIMESTAMP WHERE user_id = :userId AND deleted_at IS NULL", nativeQuery = true)
 	@Modifying
-	void deletePostsFromUserFavouritePosts(@Param("postId") Long postId);
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "users"))
+	int markDeletedById(@Param("userId") Long userId);
 
-	@Query(value = "SELECT username FROM users WHERE user_id = :userId", nativeQuery = true)
-	String findUsernameByUserId(@Param("userId") Long userId);
+	/**
+	 * Пользователь, удаленный раньше остальных
+	 */
+	@Query(value = "SELECT user_id FROM users WHERE deleted_at IS NOT NULL ORDER BY deleted_at, user_id LIMIT 1", nativeQuery = true)
+	Optional<Long> findFirstDeletedId();
+
+	@Query(value = "SELECT COUNT(*) FROM users WHERE deleted_at IS NOT NULL", nativeQuery = true)
+	long countDeleted();
+
+	@Query(value = "SELECT user_picture_url FROM users WHERE user_id = :userId AND deleted_at IS NOT NULL", nativeQuery = true)
+	String findDeletedUserPictureByUserId(@Param("userId") Long userId);
+
+	/**
+	 * Удаляет публикацию из избранного не больше чем у {@code limit} пользователей
+	 *
+	 * @return число удаленных строк
+	 */
+	@Query(value = """
+			DELETE FROM favourite_posts_users
+			WHERE post_id = :postId AND user_id IN (
+			    SELECT user_id FROM favourite_posts_users WHERE post_id = :postId LIMIT :limit)
+			""", nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "favourite_posts_users"))
+	int deleteFromFavouritePostsOfAllUsers(@Param("postId") Long postId, @Param("limit") int limit);
+
+	/**
+	 * Удаляет из избранного пользователя не больше {@code limit} публикаций
+	 *
+	 * @return число удаленных строк
+	 */
+	@Query(value = """
+			DELETE FROM favourite_posts_users
+			WHERE user_id = :userId AND post_id IN (
+			    SELECT post_id FROM favourite_posts_users WHERE user_id = :userId LIMIT :limit)
+			""", nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "favourite_posts_users"))
+	int deleteAllFromFavouritePosts(@Param("userId") Long userId, @Param("limit") int limit);
+
+	@Query(value = "DELETE FROM users_authorities WHERE user_id = :userId", nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "users_authorities"))
+	int deleteAuthoritiesByUserId(@Param("userId") Long userId);
+
+	@Query(value = "DELETE FROM users WHERE user_id = :userId AND deleted_at IS NOT NULL", nativeQuery = true)
+	@Modifying
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "users"))
+	int purgeById(@Param("userId") Long userId);
 }
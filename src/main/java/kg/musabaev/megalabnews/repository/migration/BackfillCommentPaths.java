@@ -0,0 +1,128 @@
+package kg.musabaev.megalabnews.repository.migration;
+
+import kg.musabaev.megalabnews.model.Comment;
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import lombok.extern.log4j.Log4j2;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Заполняет {@code comments.path} у существующих комментариев пачками по {@link #BATCH_SIZE},
+ * каждая пачка фиксируется отдельно. Комментарии обходятся по возрастанию id: родитель создается
+ * раньше ответа, поэтому его путь уже записан в предыдущей пачке или вычислен в текущей.
+ * Прерванное заполнение продолжается с первого комментария без пути
+ */
+@Log4j2
+public class BackfillCommentPaths implements CustomTaskChange {
+
+	static final int BATCH_SIZE = 1000;
+
+	private static final String SELECT_BATCH = """
+			SELECT c.comment_id, c.parent_comment_id, p.path
+			FROM comments c
+			LEFT JOIN comments p ON p.comment_id = c.parent_comment_id
+			WHERE c.comment_id > ?
+			ORDER BY c.comment_id
+			LIMIT ?""";
+
+	@Override
+	public void execute(Database database) throws CustomChangeException {
+		Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+		try {
+			long lastId = getFirstIdWithoutPath(connection) - 1;
+			int filled = 0;
+			int batchSize;
+			do {
+				Map<Long, String> paths = new HashMap<>();
+				lastId = selectBatch(connection, lastId, paths);
+				batchSize = paths.size();
+				updateBatch(connection, paths);
+				filled += batchSize;
+			} while (batchSize == BATCH_SIZE);
+			log.info("Пути заполнены у {} комментариев", filled);
+		} catch (SQLException e) {
+			throw new CustomChangeException(e);
+		}
+	}
+
+	private long getFirstIdWithoutPath(Connection connection) throws SQLException {
+		try (var statement = connection.createStatement();
+		     var rs = statement.executeQuery("SELECT MIN(comment_id) FROM comments WHERE path IS NULL")) {
+			rs.next();
+			long id = rs.getLong(1);
+			return rs.wasNull() ? Long.MAX_VALUE : id;
+		}
+	}
+
+	/**
+	 * @return id последнего комментария пачки
+	 */
+	private long selectBatch(Connection connection, long afterId, Map<Long, String> paths)
+			throws SQLException, CustomChangeException {
+		try (PreparedStatement statement = connection.prepareStatement(SELECT_BATCH)) {
+			statement.setLong(1, afterId);
+			statement.setInt(2, BATCH_SIZE);
+			try (ResultSet rs = statement.executeQuery()) {
+				long lastId = afterId;
+				while (rs.next()) {
+					lastId = rs.getLong(1);
+					long parentId = rs.getLong(2);
+					if (rs.wasNull()) {
+						paths.put(lastId, "");
+						continue;
+					}
+					String parentPath = rs.getString(3);
+					if (parentPath == null) parentPath = paths.get(parentId);
+					if (parentPath == null)
+						throw new CustomChangeException("Комментарий " + parentId + " создан позже ответа " + lastId);
+					String path = Comment.getRepliesPathFrom(parentPath, parentId);
+					if (path.length() > Comment.PATH_MAX_LENGTH)
+						throw new CustomChangeException("Комментарий " + lastId + " глубже допустимого");
+					paths.put(lastId, path);
+				}
+				return lastId;
+			}
+		}
+	}
+
+	private void updateBatch(Connection connection, Map<Long, String> paths) throws SQLException {
+		if (paths.isEmpty()) return;
+		try (PreparedStatement statement = connection.prepareStatement("UPDATE comments SET path = ? WHERE comment_id = ?")) {
+			for (var path : paths.entrySet()) {
+				statement.setString(1, path.getValue());
+				statement.setLong(2, path.getKey());
+				statement.addBatch();
+			}
+			statement.executeBatch();
+		}
+		if (!connection.getAutoCommit()) connection.commit();
+	}
+
+	@Override
+	public String getConfirmationMessage() {
+		return "Заполнены пути комментариев";
+	}
+
+	@Override
+	public void setUp() {
+	}
+
+	@Override
+	public void setFileOpener(ResourceAccessor resourceAccessor) {
+	}
+
+	@Override
+	public ValidationErrors validate(Database database) {
+		return new ValidationErrors();
+	}
+}
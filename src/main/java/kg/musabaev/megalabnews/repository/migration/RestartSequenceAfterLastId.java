@@ -0,0 +1,96 @@
+package kg.musabaev.megalabnews.repository.migration;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.core.H2Database;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import lombok.Setter;
+import lombok.extern.log4j.Log4j2;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Переводит последовательность {@code sequenceName} за последний id, выданный автоинкрементом
+ * {@code tableName.columnName}, чтобы id из последовательности не совпали с прежними,
+ * в том числе с id уже удаленных строк. Если позицию автоинкремента узнать не удалось,
+ * последовательность переводится за наибольший id в таблице.
+ * Hibernate резервирует id пачками по {@code incrementBy} (оптимизатор pooled): полученное из
+ * последовательности значение — последний id пачки, поэтому последовательность продолжается
+ * с {@code lastId + incrementBy}. Если id еще не выдавались, последовательность остается с 1
+ */
+@Log4j2
+@Setter
+public class RestartSequenceAfterLastId implements CustomTaskChange {
+
+	private String sequenceName;
+	private String tableName;
+	private String columnName;
+	private Integer incrementBy;
+
+	@Override
+	public void execute(Database database) throws CustomChangeException {
+		if (sequenceName == null || tableName == null || columnName == null || incrementBy == null)
+			throw new CustomChangeException("Не заданы sequenceName, tableName, columnName или incrementBy");
+		Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+		try (var statement = connection.createStatement()) {
+			long lastId = Math.max(
+					queryForLong(connection, "SELECT MAX(" + columnName + ") FROM " + tableName),
+					getLastIdentityValue(database, connection));
+			if (lastId <= 0) return;
+			long restartWith = lastId + incrementBy;
+			statement.execute("ALTER SEQUENCE " + sequenceName + " RESTART WITH " + restartWith);
+			log.info("Последовательность {} продолжится с {}", sequenceName, restartWith);
+		} catch (SQLException e) {
+			throw new CustomChangeException(e);
+		}
+	}
+
+	private long getLastIdentityValue(Database database, Connection connection) throws SQLException {
+		if (database instanceof PostgresDatabase)
+			return queryForLong(connection, "SELECT pg_sequence_last_value(pg_get_serial_sequence(?, ?)::regclass)",
+					tableName, columnName);
+		if (database instanceof H2Database)
+			return queryForLong(connection,
+					"SELECT IDENTITY_BASE - 1 FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = ? AND COLUMN_NAME = ?",
+					tableName.toUpperCase(), columnName.toUpperCase());
+		return 0;
+	}
+
+	/**
+	 * @return первое значение первой строки, 0 вместо {@code NULL} и пустого результата
+	 */
+	private static long queryForLong(Connection connection, String sql, String... params) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			for (int i = 0; i < params.length; i++)
+				statement.setString(i + 1, params[i]);
+			try (ResultSet rs = statement.executeQuery()) {
+				return rs.next() ? rs.getLong(1) : 0;
+			}
+		}
+	}
+
+	@Override
+	public String getConfirmationMessage() {
+		return "Последовательность " + sequenceName + " переведена за id в " + tableName;
+	}
+
+	@Override
+	public void setUp() {
+	}
+
+	@Override
+	public void setFileOpener(ResourceAccessor resourceAccessor) {
+	}
+
+	@Override
+	public ValidationErrors validate(Database database) {
+		return new ValidationErrors();
+	}
+}
@@ -0,0 +1,18 @@
+package kg.musabaev.megalabnews.repository.projection;
+
+import java.time.LocalDate;
+
+/**
+ * Строка плоского обхода дерева комментариев по уровням
+ */
+public interface CommentTreeRow {
+	Long getId();
+	Long getParentId();
+	String getContent();
+	LocalDate getCreatedDate();
+	Long getAuthorId();
+	String getAuthorName();
+	String getAuthorSurname();
+	String getAuthorUsername();
+	String getAuthorUserPictureUrl();
+}
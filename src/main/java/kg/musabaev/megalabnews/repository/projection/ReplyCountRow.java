@@ -0,0 +1,9 @@
+package kg.musabaev.megalabnews.repository.projection;
+
+/**
+ * Число ответов в ветке комментариев
+ */
+public interface ReplyCountRow {
+	String getRootPathSegment();
+	Long getReplies();
+}
@@ -4,4 +4,8 @@ public enum Authority {
 	READ_POST, WRITE_POST,
 	READ_COMMENT, WRITE_COMMENT,
 	READ_USER, WRITE_USER,
+	/**
+	 * Переключение кэшей через {@code /actuator/cachemodes}, при регистрации не выдается
+	 */
+	MANAGE_CACHE,
 }
@@ -20,7 +20,8 @@ import java.time.Instant;
 public class RefreshToken {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "refresh_tokens_seq")
+	@SequenceGenerator(name = "refresh_tokens_seq", sequenceName = "refresh_tokens_seq", allocationSize = 50)
 	@Column(name = "refresh_token_id")
 	Long id;
 
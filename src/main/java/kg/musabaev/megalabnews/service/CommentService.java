@@ -1,5 +1,7 @@
 package kg.musabaev.megalabnews.service;
 
+import kg.musabaev.megalabnews.dto.CommentTree;
+import kg.musabaev.megalabnews.dto.CursorPage;
 import kg.musabaev.megalabnews.dto.NewCommentRequest;
 import kg.musabaev.megalabnews.dto.NewOrUpdateCommentResponse;
 import kg.musabaev.megalabnews.dto.UpdateCommentRequest;
@@ -7,6 +9,8 @@ import kg.musabaev.megalabnews.repository.projection.CommentListView;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.util.Map;
+
 public interface CommentService {
 
 	NewOrUpdateCommentResponse save(Long postId, NewCommentRequest dto);
@@ -15,6 +19,28 @@ public interface CommentService {
 
 	Page<CommentListView> getChildrenByParentId(Long parentCommentId, Long commentId, Pageable pageable);
 
+	/**
+	 * @param cursor курсор из {@link CursorPage#next()}, либо пустая строка для первой страницы
+	 */
+	CursorPage<CommentListView> getRootsByPostIdAfter(Long postId, String cursor, int size);
+
+	/**
+	 * @param cursor курсор из {@link CursorPage#next()}, либо пустая строка для первой страницы
+	 */
+	CursorPage<CommentListView> getChildrenByParentIdAfter(Long postId, Long parentCommentId, String cursor, int size);
+
+	/**
+	 * @param parentCommentId комментарий, поддерево которого возвращается, либо {@code null} для всего дерева публикации
+	 * @param depth           глубина дерева, у ответов на {@code parentCommentId} (или корневых комментариев) глубина 1
+	 * @param limit           наибольшее число комментариев в дереве
+	 */
+	CommentTree getTree(Long postId, Long parentCommentId, int depth, int limit);
+
+	/**
+	 * @return число всех ответов в каждой ветке по id корневого комментария, ветки без ответов не включаются
+	 */
+	Map<Long, Long> getReplyCountsByPostId(Long postId);
+
 	NewOrUpdateCommentResponse update(Long postId, Long commentId, UpdateCommentRequest dto);
 
 	void deleteById(Long postId, Long commentId);
@@ -0,0 +1,13 @@
+package kg.musabaev.megalabnews.service;
+
+import kg.musabaev.megalabnews.dto.PostImportReport;
+
+import java.io.InputStream;
+
+public interface PostImportService {
+
+	/**
+	 * @param ndjson по одному {@link kg.musabaev.megalabnews.dto.NewOrUpdatePostRequest} в строке, UTF-8
+	 */
+	PostImportReport importPosts(InputStream ndjson);
+}
@@ -1,5 +1,6 @@
 package kg.musabaev.megalabnews.service;
 
+import kg.musabaev.megalabnews.dto.CursorPage;
 import kg.musabaev.megalabnews.dto.NewOrUpdatePostRequest;
 import kg.musabaev.megalabnews.dto.NewOrUpdatePostResponse;
 import kg.musabaev.megalabnews.dto.UploadFileResponse;
@@ -18,6 +19,11 @@ public interface PostService {
 
 	Page<PostListView> getAll(Pageable pageable, Set<String> tags);
 
+	/**
+	 * @param cursor курсор из {@link CursorPage#next()}, либо пустая строка для первой страницы
+	 */
+	CursorPage<PostListView> getFeed(String cursor, int size, Set<String> tags);
+
 	PostItemView getById(Long postId);
 
 	void deleteById(Long postId);
@@ -16,6 +16,7 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.context.annotation.Primary;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -28,6 +29,8 @@ import org.springframework.web.server.ResponseStatusException;
 import java.time.Instant;
 import java.util.Set;
 
+import static kg.musabaev.megalabnews.service.impl.SimpleUserService.MISSING_USERS_CACHE_NAME;
+
 @Service
 @RequiredArgsConstructor
 @Primary
@@ -69,6 +72,7 @@ public class SimpleAuthenticationService implements AuthenticationService {
 
 	@Override
 	@Transactional
+	@CacheEvict(value = MISSING_USERS_CACHE_NAME, key = "#result.id()")
 	public RegisterUserResponse register(RegisterUserRequest request) {
 		if (userRepo.existsByUsername(request.username()))
 			throw new ResponseStatusConflictException();
@@ -1,27 +1,46 @@
 package kg.musabaev.megalabnews.service.impl;
 
+import kg.musabaev.megalabnews.cache.NegativeCache;
+import kg.musabaev.megalabnews.dto.CommentCursor;
+import kg.musabaev.megalabnews.dto.CommentTree;
+import kg.musabaev.megalabnews.dto.CursorPage;
 import kg.musabaev.megalabnews.dto.NewCommentRequest;
 import kg.musabaev.megalabnews.dto.NewOrUpdateCommentResponse;
 import kg.musabaev.megalabnews.dto.UpdateCommentRequest;
 import kg.musabaev.megalabnews.exception.CommentNotFoundException;
 import kg.musabaev.megalabnews.exception.PostNotFoundException;
+import kg.musabaev.megalabnews.exception.ResponseStatusBadRequestException;
 import kg.musabaev.megalabnews.mapper.CommentMapper;
 import kg.musabaev.megalabnews.model.Comment;
 import kg.musabaev.megalabnews.model.Post;
 import kg.musabaev.megalabnews.repository.CommentRepo;
 import kg.musabaev.megalabnews.repository.PostRepo;
 import kg.musabaev.megalabnews.repository.projection.CommentListView;
+import kg.musabaev.megalabnews.repository.projection.CommentTreeRow;
+import kg.musabaev.megalabnews.repository.projection.ReplyCountRow;
 import kg.musabaev.megalabnews.service.CommentService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static kg.musabaev.megalabnews.service.impl.SimplePostService.MISSING_POSTS_CACHE_NAME;
 
 @Service
 @RequiredArgsConstructor
@@ -31,29 +50,47 @@ public class SimpleCommentService implements CommentService {
 
 	public static final String CHILD_COMMENTS_CACHE_NAME = "childCommentList";
 	public static final String ROOT_COMMENTS_CACHE_NAME = "rootCommentList";
+	/**
+	 * Ключ — пара (postId, остальные параметры), поэтому дерево сбрасывается
+	 * по postId при любом изменении комментариев публикации
+	 */
+	public static final String COMMENT_TREE_CACHE_NAME = "commentTree";
+	/**
+	 * Ключ — пара (postId, commentId), т.к. комментарий ищется в рамках публикации
+	 */
+	public static final String MISSING_COMMENTS_CACHE_NAME = "missingComments";
 
 	private final CommentRepo commentRepo;
 	private final PostRepo postRepo;
 	private final CommentMapper commentMapper;
+	private final NegativeCache negativeCache;
 
 	@Override
 	@Transactional
+	@CacheEvict(
+			value = MISSING_COMMENTS_CACHE_NAME,
+			key = "T(org.apache.commons.lang3.tuple.Pair).of(#postId, #result.id())")
 	public NewOrUpdateCommentResponse save(Long postId, NewCommentRequest dto) {
 		Post post = getPostReferenceByIdOrElseThrow(postId);
-		Comment parentComment = dto.parentId() != null
-				? getCommentReferenceByIdOrElseThrow(postId, dto.parentId())
-				: null;
+		Comment parentComment = null;
+		String path = "";
+		if (dto.parentId() != null) {
+			path = Comment.getRepliesPathFrom(getCommentPathByIdOrElseThrow(postId, dto.parentId()), dto.parentId());
+			if (path.length() > Comment.PATH_MAX_LENGTH) throw new ResponseStatusBadRequestException();
+			parentComment = commentRepo.getReferenceById(dto.parentId());
+		}
 
 		Comment newComment = commentMapper.toModel(dto);
 		newComment.setParent(parentComment);
 		newComment.setPost(post);
+		newComment.setPath(path);
 
 		return commentMapper.toDto(commentRepo.save(newComment));
 	}
 
 	@Override
 	@Transactional(readOnly = true)
-	@Cacheable(value = ROOT_COMMENTS_CACHE_NAME, keyGenerator = "pairCacheKeyGenerator")
+	@Cacheable(value = ROOT_COMMENTS_CACHE_NAME, keyGenerator = "pairCacheKeyGenerator", sync = true)
 	public Page<CommentListView> getRootsByPostId(Long postId, Pageable pageable) {
 		assertPostExistsByIdOrElseThrow(postId);
 
@@ -62,7 +99,7 @@ public class SimpleCommentService implements CommentService {
 
 	@Override
 	@Transactional(readOnly = true)
-	@Cacheable(value = CHILD_COMMENTS_CACHE_NAME, keyGenerator = "childCommentCacheKeyGenerator")
+	@Cacheable(value = CHILD_COMMENTS_CACHE_NAME, keyGenerator = "childCommentCacheKeyGenerator", sync = true)
 	public Page<CommentListView> getChildrenByParentId(Long postId, Long parentCommentId, Pageable pageable) {
 		assertPostExistsByIdOrElseThrow(postId);
 		assertCommentExistsByIdOrElseThrow(postId, parentCommentId);
@@ -70,6 +107,91 @@ public class SimpleCommentService implements CommentService {
 		return commentRepo.findChildrenByParentIdAndPostId(parentCommentId, postId, pageable);
 	}
 
+	/**
+	 * Страницы по курсору не кэшируются: запрос читает из индекса ровно {@code size + 1} строк
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public CursorPage<CommentListView> getRootsByPostIdAfter(Long postId, String cursor, int size) {
+		Pageable pageable = getCursorPageable(size);
+		CommentCursor after = CommentCursor.decode(cursor);
+		assertPostExistsByIdOrElseThrow(postId);
+
+		return toCursorPage(commentRepo.findRootsByPostIdAndParentIsNullAndIdGreaterThan(postId, after.id(), pageable));
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public CursorPage<CommentListView> getChildrenByParentIdAfter(Long postId, Long parentCommentId, String cursor, int size) {
+		Pageable pageable = getCursorPageable(size);
+		CommentCursor after = CommentCursor.decode(cursor);
+		assertPostExistsByIdOrElseThrow(postId);
+		assertCommentExistsByIdOrElseThrow(postId, parentCommentId);
+
+		return toCursorPage(
+				commentRepo.findChildrenByParentIdAndPostIdAndIdGreaterThan(parentCommentId, postId, after.id(), pageable));
+	}
+
+	/**
+	 * Дерево читается одним запросом по диапазону путей в порядке длины пути, т.е. по уровням,
+	 * поэтому родитель всегда встречается раньше ответов на него. Запрашивается
+	 * {@code limit + 1} строка, чтобы узнать, что дерево обрезано
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	@Cacheable(value = COMMENT_TREE_CACHE_NAME, keyGenerator = "commentTreeCacheKeyGenerator", sync = true)
+	public CommentTree getTree(Long postId, Long parentCommentId, int depth, int limit) {
+		if (depth < 1 || depth > CommentTree.MAX_DEPTH || limit < 1 || limit > CommentTree.MAX_LIMIT)
+			throw new ResponseStatusBadRequestException();
+		assertPostExistsByIdOrElseThrow(postId);
+
+		List<CommentTreeRow> rows;
+		if (parentCommentId == null) {
+			rows = commentRepo.findTreeByPostId(postId, depth * Comment.PATH_SEGMENT_LENGTH, limit + 1);
+		} else {
+			String path = getCommentPathByIdOrElseThrow(postId, parentCommentId);
+			String pathFrom = Comment.getRepliesPathFrom(path, parentCommentId);
+			rows = commentRepo.findTreeByPostIdAndPathRange(
+					postId,
+					pathFrom,
+					Comment.getRepliesPathTo(path, parentCommentId),
+					pathFrom.length() + depth * Comment.PATH_SEGMENT_LENGTH,
+					limit + 1);
+		}
+		boolean truncated = rows.size() > limit;
+
+		List<CommentTree.Node> comments = new ArrayList<>();
+		Map<Long, CommentTree.Node> nodes = new HashMap<>();
+		for (CommentTreeRow row : rows.subList(0, Math.min(rows.size(), limit))) {
+			var node = new CommentTree.Node(
+					row.getId(),
+					new CommentTree.UserInfo(
+							row.getAuthorId(),
+							row.getAuthorName(),
+							row.getAuthorSurname(),
+							row.getAuthorUsername(),
+							row.getAuthorUserPictureUrl()),
+					row.getContent(),
+					row.getCreatedDate(),
+					new ArrayList<>());
+			nodes.put(node.id(), node);
+			if (Objects.equals(row.getParentId(), parentCommentId)) comments.add(node);
+			else nodes.get(row.getParentId()).replies().add(node);
+		}
+		return new CommentTree(comments, truncated);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Map<Long, Long> getReplyCountsByPostId(Long postId) {
+		assertPostExistsByIdOrElseThrow(postId);
+
+		Map<Long, Long> replyCounts = new LinkedHashMap<>();
+		for (ReplyCountRow row : commentRepo.countRepliesByRootOfPost(postId))
+			replyCounts.put(Comment.parsePathSegment(row.getRootPathSegment()), row.getReplies());
+		return replyCounts;
+	}
+
 	@Override
 	@Transactional
 	public NewOrUpdateCommentResponse update(Long postId, Long commentId, UpdateCommentRequest dto) {
@@ -87,10 +209,19 @@ public class SimpleCommentService implements CommentService {
 	@Override
 	@Transactional
 	public void deleteById(Long postId, Long commentId) {
-		assertCommentExistsByIdOrElseThrow(postId, commentId);
-		deleteCommentsRecursively(postId, commentRepo.getAllChildCommentIdByParentId(postId, commentId));
+		commentRepo.deleteSubtree(postId, commentId, getCommentPathByIdOrElseThrow(postId, commentId));
+	}
 
-		commentRepo.deleteById(commentId);
+	private Pageable getCursorPageable(int size) {
+		if (!CursorPage.isValidSize(size)) throw new ResponseStatusBadRequestException();
+		return PageRequest.of(0, size, Sort.by("id"));
+	}
+
+	private CursorPage<CommentListView> toCursorPage(Slice<CommentListView> comments) {
+		String next = comments.hasNext()
+				? new CommentCursor(comments.getContent().get(comments.getNumberOfElements() - 1).getId()).encode()
+				: null;
+		return new CursorPage<>(comments.getContent(), next);
 	}
 
 	private Post getPostReferenceByIdOrElseThrow(Long postId) {
@@ -99,24 +230,28 @@ public class SimpleCommentService implements CommentService {
 	}
 
 	private void assertPostExistsByIdOrElseThrow(Long postId) {
-		if (!postRepo.existsById(postId)) throw new PostNotFoundException();
+		if (negativeCache.isKnownMissing(MISSING_POSTS_CACHE_NAME, postId)) throw new PostNotFoundException();
+		if (!postRepo.existsById(postId)) {
+			negativeCache.markMissing(MISSING_POSTS_CACHE_NAME, postId);
+			throw new PostNotFoundException();
+		}
 	}
 
-	private Comment getCommentReferenceByIdOrElseThrow(Long postId, Long commentId) {
-		assertCommentExistsByIdOrElseThrow(postId, commentId);
-		return commentRepo.getReferenceById(commentId);
+	private String getCommentPathByIdOrElseThrow(Long postId, Long commentId) {
+		Pair<Long, Long> key = Pair.of(postId, commentId);
+		if (negativeCache.isKnownMissing(MISSING_COMMENTS_CACHE_NAME, key)) throw new CommentNotFoundException();
+		return commentRepo.findPathByIdAndPostId(commentId, postId).orElseThrow(() -> {
+			negativeCache.markMissing(MISSING_COMMENTS_CACHE_NAME, key);
+			return new CommentNotFoundException();
+		});
 	}
 
 	private void assertCommentExistsByIdOrElseThrow(Long postId, Long commentId) {
-		if (!commentRepo.existsByIdAndPostId(commentId, postId)) throw new CommentNotFoundException();
-	}
-
-	private void deleteCommentsRecursively(Long postId, List<Long> commentsId) {
-		if (commentsId.isEmpty()) return;
-		for (Long commentId : commentsId) {
-			deleteCommentsRecursively(
-					postId, commentRepo.getAllChildCommentIdByParentId(postId, commentId));
-			commentRepo.deleteById(commentId);
+		Pair<Long, Long> key = Pair.of(postId, commentId);
+		if (negativeCache.isKnownMissing(MISSING_COMMENTS_CACHE_NAME, key)) throw new CommentNotFoundException();
+		if (!commentRepo.existsByIdAndPostId(commentId, postId)) {
+			negativeCache.markMissing(MISSING_COMMENTS_CACHE_NAME, key);
+			throw new CommentNotFoundException();
 		}
 	}
 }
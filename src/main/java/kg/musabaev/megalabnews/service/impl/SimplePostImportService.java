@@ -0,0 +1,229 @@
+package kg.musabaev.megalabnews.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import kg.musabaev.megalabnews.cache.CacheInvalidationStats;
+import kg.musabaev.megalabnews.cache.ManagedCacheManager;
+import kg.musabaev.megalabnews.cache.PostListGenerations;
+import kg.musabaev.megalabnews.dto.NewOrUpdatePostRequest;
+import kg.musabaev.megalabnews.dto.PostImportReport;
+import kg.musabaev.megalabnews.dto.PostImportReport.Line;
+import kg.musabaev.megalabnews.dto.PostImportReport.Status;
+import kg.musabaev.megalabnews.exception.ResponseStatusInternalServerErrorException;
+import kg.musabaev.megalabnews.mapper.PostMapper;
+import kg.musabaev.megalabnews.model.Post;
+import kg.musabaev.megalabnews.repository.PostRepo;
+import kg.musabaev.megalabnews.service.PostImportService;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static kg.musabaev.megalabnews.service.impl.SimplePostService.MISSING_POSTS_CACHE_NAME;
+import static kg.musabaev.megalabnews.service.impl.SimpleUserService.USER_CREATED_POSTS_CACHE_NAME;
+
+/**
+ * Импорт публикаций из NDJSON. Тело читается построчно, поэтому в памяти держится только
+ * текущая пачка из {@code app.post-import.chunk-size} публикаций. На каждую пачку —
+ * один запрос занятых заголовков и одна транзакция, в которой публикации и их теги
+ * вставляются пакетами JDBC (см. {@code hibernate.jdbc.batch_size}). Если пачка не сохранилась
+ * (например, заголовок заняли параллельно), ее публикации сохраняются по одной.
+ * После каждой пачки контекст персистентности очищается: при open-in-view он живет весь запрос
+ * и иначе накопил бы все импортированные публикации.
+ * <p>
+ * Кэши сбрасываются один раз после импорта: поколения лент по всем импортированным тегам,
+ * кэш отсутствующих публикаций и созданные публикации автора.
+ */
+@Service
+@Log4j2
+public class SimplePostImportService implements PostImportService {
+
+	private final ObjectReader requestReader;
+	private final Validator validator;
+	private final PostMapper postMapper;
+	private final PostRepo postRepo;
+	private final EntityManager entityManager;
+	private final TransactionTemplate transactionTemplate;
+	private final PostListGenerations postListGenerations;
+	private final ManagedCacheManager cacheManager;
+	private final CacheInvalidationStats invalidationStats;
+	private final int chunkSize;
+
+	public SimplePostImportService(
+			ObjectMapper objectMapper,
+			Validator validator,
+			PostMapper postMapper,
+			PostRepo postRepo,
+			EntityManager entityManager,
+			TransactionTemplate transactionTemplate,
+			PostListGenerations postListGenerations,
+			ManagedCacheManager cacheManager,
+			CacheInvalidationStats invalidationStats,
+			@Value("${app.post-import.chunk-size}") int chunkSize) {
+		this.requestReader = objectMapper.readerFor(NewOrUpdatePostRequest.class);
+		this.validator = validator;
+		this.postMapper = postMapper;
+		this.postRepo = postRepo;
+		this.entityManager = entityManager;
+		this.transactionTemplate = transactionTemplate;
+		this.postListGenerations = postListGenerations;
+		this.cacheManager = cacheManager;
+		this.invalidationStats = invalidationStats;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public PostImportReport importPosts(InputStream ndjson) {
+		Import result = new Import();
+		List<Row> chunk = new ArrayList<>(chunkSize);
+		try (var reader = new BufferedReader(new InputStreamReader(ndjson, UTF_8))) {
+			int number = 0;
+			String text;
+			while ((text = reader.readLine()) != null) {
+				number++;
+				if (text.isBlank()) continue;
+				Row row = parse(number, text, result);
+				if (row == null) continue;
+				chunk.add(row);
+				if (chunk.size() == chunkSize) {
+					importChunk(chunk, result);
+					chunk.clear();
+				}
+			}
+			importChunk(chunk, result);
+		} catch (IOException e) {
+			throw new ResponseStatusInternalServerErrorException(e);
+		} finally {
+			if (!result.authorsId.isEmpty()) invalidateCaches(result);
+		}
+
+		result.lines.sort(Comparator.comparingInt(Line::line));
+		var report = new PostImportReport(
+				result.count(Status.CREATED),
+				result.count(Status.DUPLICATE),
+				result.count(Status.INVALID),
+				result.count(Status.FAILED),
+				result.lines);
+		log.info("Импорт публикаций: сохранено {}, дубликатов {}, невалидных {}, с ошибкой {}",
+				report.created(), report.duplicates(), report.invalid(), report.failed());
+		return report;
+	}
+
+	/**
+	 * @return строка для сохранения, либо {@code null}, если она невалидна и уже записана в отчет
+	 */
+	private Row parse(int number, String text, Import result) {
+		NewOrUpdatePostRequest request;
+		try {
+			request = requestReader.readValue(text);
+		} catch (JsonProcessingException e) {
+			result.add(number, Status.INVALID, null, List.of("Некорректный JSON: " + e.getOriginalMessage()));
+			return null;
+		}
+		if (request == null) {
+			result.add(number, Status.INVALID, null, List.of("Ожидался объект публикации"));
+			return null;
+		}
+		Set<ConstraintViolation<NewOrUpdatePostRequest>> violations = validator.validate(request);
+		if (!violations.isEmpty()) {
+			result.add(number, Status.INVALID, null, violations.stream()
+					.map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+					.sorted()
+					.toList());
+			return null;
+		}
+		return new Row(number, request);
+	}
+
+	private void importChunk(List<Row> chunk, Import result) {
+		if (chunk.isEmpty()) return;
+		Set<String> titles = new HashSet<>(postRepo.findExistingTitles(chunk.stream().map(Row::title).toList()));
+		List<Row> rows = new ArrayList<>(chunk.size());
+		for (Row row : chunk) {
+			if (titles.add(row.title())) rows.add(row);
+			else result.add(row.number(), Status.DUPLICATE, null, List.of("Публикация с таким title уже существует"));
+		}
+		if (rows.isEmpty()) return;
+
+		try {
+			List<Post> saved = transactionTemplate.execute(status -> postRepo.saveAll(rows.stream()
+					.map(row -> postMapper.toModel(row.request()))
+					.toList()));
+			for (int i = 0; i < rows.size(); i++)
+				result.created(rows.get(i).number(), saved.get(i));
+			log.debug("Импортирована пачка из {} публикаций", rows.size());
+		} catch (DataAccessException | TransactionException e) {
+			log.warn("Не удалось сохранить пачку из {} публикаций, они сохраняются по одной", rows.size(), e);
+			rows.forEach(row -> importOne(row, result));
+		} finally {
+			entityManager.clear();
+		}
+	}
+
+	private void importOne(Row row, Import result) {
+		try {
+			Post saved = transactionTemplate.execute(status -> postRepo.save(postMapper.toModel(row.request())));
+			result.created(row.number(), saved);
+		} catch (DataAccessException | TransactionException e) {
+			result.add(row.number(), Status.FAILED, null, List.of(e.getMostSpecificCause().getMessage()));
+		}
+	}
+
+	private void invalidateCaches(Import result) {
+		postListGenerations.bump(result.createdTags);
+		cacheManager.getManagedCache(MISSING_POSTS_CACHE_NAME).clear();
+
+		String source = "SimplePostImportService.importPosts(..)";
+		for (Long authorId : result.authorsId)
+			invalidationStats.record(
+					source,
+					USER_CREATED_POSTS_CACHE_NAME,
+					cacheManager.getManagedCache(USER_CREATED_POSTS_CACHE_NAME).evictByOwner(authorId));
+	}
+
+	private record Row(int number, NewOrUpdatePostRequest request) {
+		String title() {
+			return request.title();
+		}
+	}
+
+	/**
+	 * Отчет и затронутые импортом теги и авторы
+	 */
+	private static class Import {
+		final List<Line> lines = new ArrayList<>();
+		final Set<String> createdTags = new HashSet<>();
+		final Set<Long> authorsId = new HashSet<>();
+
+		void add(int number, Status status, Long id, List<String> errors) {
+			lines.add(new Line(number, status, id, errors));
+		}
+
+		void created(int number, Post post) {
+			add(number, Status.CREATED, post.getId(), List.of());
+			createdTags.addAll(post.getTags());
+			authorsId.add(post.getAuthor().getId());
+		}
+
+		int count(Status status) {
+			return (int) lines.stream().filter(line -> line.status() == status).count();
+		}
+	}
+}
@@ -1,17 +1,20 @@
 package kg.musabaev.megalabnews.service.impl;
 
 import jakarta.annotation.PostConstruct;
+import kg.musabaev.megalabnews.cache.NegativeCache;
+import kg.musabaev.megalabnews.cache.PostListGenerations;
 import kg.musabaev.megalabnews.controller.PostController;
+import kg.musabaev.megalabnews.dto.CursorPage;
 import kg.musabaev.megalabnews.dto.NewOrUpdatePostRequest;
 import kg.musabaev.megalabnews.dto.NewOrUpdatePostResponse;
+import kg.musabaev.megalabnews.dto.PostFeedCursor;
 import kg.musabaev.megalabnews.dto.UploadFileResponse;
 import kg.musabaev.megalabnews.exception.PostNotFoundException;
+import kg.musabaev.megalabnews.exception.ResponseStatusBadRequestException;
 import kg.musabaev.megalabnews.exception.ResponseStatusConflictException;
 import kg.musabaev.megalabnews.mapper.PostMapper;
 import kg.musabaev.megalabnews.model.Post;
-import kg.musabaev.megalabnews.repository.CommentRepo;
 import kg.musabaev.megalabnews.repository.PostRepo;
-import kg.musabaev.megalabnews.repository.UserRepo;
 import kg.musabaev.megalabnews.repository.projection.PostItemView;
 import kg.musabaev.megalabnews.repository.projection.PostListView;
 import kg.musabaev.megalabnews.service.PostService;
@@ -26,12 +29,15 @@ import org.springframework.cache.annotation.Caching;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -48,11 +54,12 @@ public class SimplePostService implements PostService {
 	public static final String POST_LIST_CACHE_NAME = "postList";
 	public static final String POST_ITEM_CACHE_NAME = "postItem";
 	public static final String POST_IMAGE_CACHE_NAME = "postImage";
+	public static final String MISSING_POSTS_CACHE_NAME = "missingPosts";
 
 	private final PostMapper postMapper;
 	private final PostRepo postRepo;
-	private final UserRepo userRepo;
-	private final CommentRepo commentRepo;
+	private final PostListGenerations postListGenerations;
+	private final NegativeCache negativeCache;
 
 	@Value("${app.storage.folder-name}")
 	private String storageFolderName;
@@ -68,48 +75,82 @@ public class SimplePostService implements PostService {
 	@Override
 	@Transactional
 	@Caching(evict = {
-			@CacheEvict(value = POST_LIST_CACHE_NAME, allEntries = true),
-			@CacheEvict(value = POST_ITEM_CACHE_NAME, key = "#result.id()")})
+			@CacheEvict(value = POST_ITEM_CACHE_NAME, key = "#result.id()"),
+			@CacheEvict(value = MISSING_POSTS_CACHE_NAME, key = "#result.id()")})
 	public NewOrUpdatePostResponse save(NewOrUpdatePostRequest newOrUpdatePostRequest) {
 		if (postRepo.existsByTitle(newOrUpdatePostRequest.title()))
 			throw new ResponseStatusConflictException();
 		Post newPost = postMapper.toModel(newOrUpdatePostRequest);
+		postListGenerations.bump(newPost.getTags());
 
 		return postMapper.toDto(postRepo.save(newPost));
 	}
 
+	/**
+	 * Ключ кэша зависит от поколений {@link PostListGenerations},
+	 * поэтому при изменении публикаций кэш не сбрасывается целиком
+	 */
 	@Override
 	@Transactional(readOnly = true)
-	@Cacheable(POST_LIST_CACHE_NAME)
+	@Cacheable(value = POST_LIST_CACHE_NAME, keyGenerator = "postListCacheKeyGenerator", sync = true)
 	public Page<PostListView> getAll(Pageable pageable, Set<String> tags) {
 		if (tags == null || tags.isEmpty())
 			return postRepo.findAllProjectedBy(pageable);
 		return postRepo.findAllByTagsIn(tags, pageable);
 	}
 
+	/**
+	 * Лента не кэшируется: запрос по курсору читает из индекса ровно {@code size + 1} строк
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public CursorPage<PostListView> getFeed(String cursor, int size, Set<String> tags) {
+		if (!CursorPage.isValidSize(size)) throw new ResponseStatusBadRequestException();
+		Pageable pageable = PageRequest.ofSize(size);
+		boolean filtered = tags != null && !tags.isEmpty();
+
+		Slice<PostListView> feed;
+		if (cursor.isEmpty()) {
+			feed = filtered ? postRepo.findFeedByTagsIn(tags, pageable) : postRepo.findFeed(pageable);
+		} else {
+			PostFeedCursor after = PostFeedCursor.decode(cursor);
+			feed = filtered
+					? postRepo.findFeedByTagsInAfter(tags, after.createdDate(), after.id(), pageable)
+					: postRepo.findFeedAfter(after.createdDate(), after.id(), pageable);
+		}
+
+		String next = null;
+		if (feed.hasNext()) {
+			PostListView last = feed.getContent().get(feed.getNumberOfElements() - 1);
+			next = new PostFeedCursor(last.getCreatedDate(), last.getId()).encode();
+		}
+		return new CursorPage<>(feed.getContent(), next);
+	}
+
 	@Override
 	@Transactional(readOnly = true)
-	@Cacheable(POST_ITEM_CACHE_NAME)
+	@Cacheable(value = POST_ITEM_CACHE_NAME, sync = true)
 	public PostItemView getById(Long postId) {
-		return postRepo.findProjectedById(postId).orElseThrow(PostNotFoundException::new);
+		if (negativeCache.isKnownMissing(MISSING_POSTS_CACHE_NAME, postId)) throw new PostNotFoundException();
+
+		return postRepo.findProjectedById(postId).orElseThrow(() -> {
+			negativeCache.markMissing(MISSING_POSTS_CACHE_NAME, postId);
+			return new PostNotFoundException();
+		});
 	}
 
 	@Override
 	@Transactional
 	@Caching(evict = {
 			@CacheEvict(POST_ITEM_CACHE_NAME),
-			@CacheEvict(cacheNames = POST_LIST_CACHE_NAME, allEntries = true),
 			@CacheEvict(cacheNames = POST_IMAGE_CACHE_NAME, allEntries = true),
 			@CacheEvict(cacheNames = USER_CREATED_POSTS_CACHE_NAME, allEntries = true),
 			@CacheEvict(cacheNames = USER_FAVOURITE_POSTS_CACHE_NAME, allEntries = true)})
 	public void deleteById(Long postId) {
 		assertPostExistsByIdOrElseThrow(postId);
-		deleteImageInStorageIfExists(
-				getLastPathSegmentOrNull(postRepo.findPostImageUrlByPostId(postId)));
-		deleteCommentsRecursively(postId, commentRepo.getAllRootCommentId(postId));
-		userRepo.deletePostsFromUserFavouritePosts(postId);
+		postListGenerations.bump(postRepo.findTagsByPostId(postId));
 
-		postRepo.deleteById(postId);
+		postRepo.markDeletedById(postId);
 	}
 
 	/**
@@ -117,9 +158,7 @@ public class SimplePostService implements PostService {
 	 */
 	@Override
 	@Transactional
-	@Caching(evict = {
-			@CacheEvict(cacheNames = POST_LIST_CACHE_NAME, allEntries = true),
-			@CacheEvict(cacheNames = POST_IMAGE_CACHE_NAME, allEntries = true)})
+	@CacheEvict(cacheNames = POST_IMAGE_CACHE_NAME, allEntries = true)
 	public NewOrUpdatePostResponse update(Long postId, NewOrUpdatePostRequest dto) {
 		return postRepo.findById(postId).map(post -> {
 			if (postRepo.existsByTitle(dto.title())) throw new ResponseStatusConflictException();
@@ -130,6 +169,10 @@ public class SimplePostService implements PostService {
 			if (postImageFilename != null && !imageFilename.equals(postImageFilename))
 				deleteImageInStorageIfExists(postImageFilename);
 
+			Set<String> affectedTags = new HashSet<>(post.getTags());
+			affectedTags.addAll(dto.tags());
+			postListGenerations.bump(affectedTags);
+
 			postMapper.update(dto, post);
 
 			return postMapper.toDto(postRepo.save(post));
@@ -161,15 +204,10 @@ public class SimplePostService implements PostService {
 	}
 
 	private void assertPostExistsByIdOrElseThrow(Long postId) {
-		if (!postRepo.existsById(postId)) throw new PostNotFoundException();
-	}
-
-	private void deleteCommentsRecursively(Long postId, List<Long> commentsId) {
-		if (commentsId.isEmpty()) return;
-		for (Long commentId : commentsId) {
-			deleteCommentsRecursively(
-					postId, commentRepo.getAllChildCommentIdByParentId(postId, commentId));
-			commentRepo.deleteById(commentId);
+		if (negativeCache.isKnownMissing(MISSING_POSTS_CACHE_NAME, postId)) throw new PostNotFoundException();
+		if (!postRepo.existsById(postId)) {
+			negativeCache.markMissing(MISSING_POSTS_CACHE_NAME, postId);
+			throw new PostNotFoundException();
 		}
 	}
 }
@@ -1,6 +1,8 @@
 package kg.musabaev.megalabnews.service.impl;
 
 import jakarta.annotation.PostConstruct;
+import kg.musabaev.megalabnews.cache.NegativeCache;
+import kg.musabaev.megalabnews.cache.PostListGenerations;
 import kg.musabaev.megalabnews.controller.UserController;
 import kg.musabaev.megalabnews.dto.AddToFavouritePostsRequest;
 import kg.musabaev.megalabnews.dto.UpdateUserRequest;
@@ -34,6 +36,8 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.nio.file.Path;
 
+import static kg.musabaev.megalabnews.service.impl.SimplePostService.MISSING_POSTS_CACHE_NAME;
+import static kg.musabaev.megalabnews.service.impl.SimplePostService.POST_ITEM_CACHE_NAME;
 
 @Service
 @RequiredArgsConstructor
@@ -46,11 +50,14 @@ public class SimpleUserService implements UserService {
 	public static final String USER_FAVOURITE_POSTS_CACHE_NAME = "userFavouritePosts";
 	public static final String USER_CREATED_POSTS_CACHE_NAME = "userCreatedPosts";
 	public static final String USER_PICTURE_CACHE_NAME = "userPicture";
+	public static final String MISSING_USERS_CACHE_NAME = "missingUsers";
 
 	private final UserRepo userRepo;
 	private final UserMapper userMapper;
 	private final PostRepo postRepo;
 	private final RefreshTokenRepo refreshTokenRepo;
+	private final PostListGenerations postListGenerations;
+	private final NegativeCache negativeCache;
 
 	@Value("${app.storage.folder-name}")
 	private String storageFolderName;
@@ -64,9 +71,14 @@ public class SimpleUserService implements UserService {
 	}
 
 	@Override
-	@Cacheable(USER_ITEM_CACHE_NAME)
+	@Cacheable(value = USER_ITEM_CACHE_NAME, sync = true)
 	public UserItemView getById(Long userId) {
-		return userRepo.findProjectedById(userId).orElseThrow(UserNotFoundException::new);
+		if (negativeCache.isKnownMissing(MISSING_USERS_CACHE_NAME, userId)) throw new UserNotFoundException();
+
+		return userRepo.findProjectedById(userId).orElseThrow(() -> {
+			negativeCache.markMissing(MISSING_USERS_CACHE_NAME, userId);
+			return new UserNotFoundException();
+		});
 	}
 
 	@Override
@@ -144,31 +156,34 @@ public class SimpleUserService implements UserService {
 	@Transactional
 	@Caching(evict = {
 			@CacheEvict(USER_ITEM_CACHE_NAME),
-			@CacheEvict(USER_ITEM_BY_USERNAME_CACHE_NAME),
-			@CacheEvict(cacheNames = USER_PICTURE_CACHE_NAME, allEntries = true)})
+			// удаленный пользователь до очистки остается в таблице, поэтому его имя еще можно найти
+			@CacheEvict(cacheNames = USER_ITEM_BY_USERNAME_CACHE_NAME, key = "@userRepo.findUsernameByUserId(#userId)"),
+			@CacheEvict(cacheNames = USER_PICTURE_CACHE_NAME, allEntries = true),
+			@CacheEvict(cacheNames = POST_ITEM_CACHE_NAME, allEntries = true),
+			@CacheEvict(cacheNames = USER_FAVOURITE_POSTS_CACHE_NAME, allEntries = true)})
 	public void deleteById(Long userId) {
 		assertUserExistsByIdOrElseThrow(userId);
 
-		postRepo.findAllPostsIdByAuthorId(userId).forEach(postRepo::deleteById);
-		deleteImageInStorageIfExists(Utils.getLastPathSegmentOrNull(userRepo.findUserPictureByUserId(userId)));
+		postListGenerations.bump(postRepo.findTagsByAuthorId(userId));
+		postRepo.markDeletedByAuthorId(userId);
 		refreshTokenRepo.deleteByOwnerId(userId);
 
-		userRepo.deleteById(userId);
-	}
-
-	private void deleteImageInStorageIfExists(String filename) {
-		Utils.deleteFileFromStorageIfExists(
-				filename,
-				storage,
-				() -> log.debug("Изображение пользователя с названием {} удален", filename),
-				exception -> log.warn("Произошла ошибка при удалении изображения пользователя", exception));
+		userRepo.markDeletedById(userId);
 	}
 
 	private void assertUserExistsByIdOrElseThrow(Long userId) {
-		if (!userRepo.existsById(userId)) throw new UserNotFoundException();
+		if (negativeCache.isKnownMissing(MISSING_USERS_CACHE_NAME, userId)) throw new UserNotFoundException();
+		if (!userRepo.existsById(userId)) {
+			negativeCache.markMissing(MISSING_USERS_CACHE_NAME, userId);
+			throw new UserNotFoundException();
+		}
 	}
 
 	private void assertPostExistsByIdOrElseThrow(Long postId) {
-		if (!postRepo.existsById(postId)) throw new PostNotFoundException();
+		if (negativeCache.isKnownMissing(MISSING_POSTS_CACHE_NAME, postId)) throw new PostNotFoundException();
+		if (!postRepo.existsById(postId)) {
+			negativeCache.markMissing(MISSING_POSTS_CACHE_NAME, postId);
+			throw new PostNotFoundException();
+		}
 	}
 }
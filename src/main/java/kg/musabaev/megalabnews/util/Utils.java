@@ -13,6 +13,8 @@ import org.springframework.http.MediaType;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.MvcUriComponentsBuilder;
@@ -103,6 +105,23 @@ public class Utils {
 		return authenticatedPrincipal.getUsername().equals(actualUserUsername);
 	}
 
+	/**
+	 * Выполняет действие после коммита текущей транзакции,
+	 * либо сразу, если транзакции нет
+	 */
+	public static void runAfterCommit(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
+	}
+
 	/**
 	 * Итерируется по checks и когда находит true,
 	 * метод заканчивает свое выполнение
@@ -131,6 +150,10 @@ public class Utils {
 		return ifExceptionEqualsOrElseLog(e, PostNotFoundException.class, runnable);
 	}
 
+	public static boolean ifRequestParamsNotValid(Exception e, Runnable runnable) {
+		return ifExceptionEqualsOrElseLog(e, ResponseStatusBadRequestException.class, runnable);
+	}
+
 	public static boolean ifUserNotFound(Exception e, Runnable runnable) {
 		return ifExceptionEqualsOrElseLog(e, UserNotFoundException.class, runnable);
 	}
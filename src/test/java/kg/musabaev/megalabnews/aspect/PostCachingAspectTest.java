@@ -0,0 +1,116 @@
+package kg.musabaev.megalabnews.aspect;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import kg.musabaev.megalabnews.cache.CacheInvalidation;
+import kg.musabaev.megalabnews.cache.CacheInvalidationStats;
+import kg.musabaev.megalabnews.cache.ManagedCache;
+import kg.musabaev.megalabnews.cache.ManagedCacheManager;
+import kg.musabaev.megalabnews.cache.SecondLevelCacheInvalidations;
+import kg.musabaev.megalabnews.dto.NewOrUpdatePostResponse;
+import kg.musabaev.megalabnews.mapper.PostMapper;
+import kg.musabaev.megalabnews.repository.projection.PostItemView;
+import kg.musabaev.megalabnews.service.impl.SimplePostService;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.aspectj.lang.JoinPoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class PostCachingAspectTest {
+
+	@Mock
+	ManagedCacheManager cacheManager;
+	@Mock
+	CacheInvalidationStats invalidationStats;
+	@Mock
+	SecondLevelCacheInvalidations secondLevelCache;
+	@Mock
+	JoinPoint joinPoint;
+	@Spy
+	PostMapper mapper = Mappers.getMapper(PostMapper.class);
+
+	@InjectMocks
+	PostCachingAspect aspect;
+
+	final List<CacheInvalidation> published = new ArrayList<>();
+	final ManagedCache cache = ManagedCache.create(
+			SimplePostService.POST_ITEM_CACHE_NAME,
+			Caffeine.newBuilder(),
+			ManagedCache.Settings.builder().publisher(published::add).build());
+
+	@BeforeEach
+	void setUp() {
+		when(joinPoint.getArgs()).thenReturn(new Object[]{1L});
+		lenient().when(cacheManager.getManagedCache(SimplePostService.POST_ITEM_CACHE_NAME)).thenReturn(cache);
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.clearSynchronization();
+	}
+
+	@Test
+	void shouldPutUpdatedPostItemView() {
+		aspect.updateCachePostItem(joinPoint, getResponse());
+
+		PostItemView cached = (PostItemView) cache.get(1L).get();
+		assertThat(cached.getTitle()).isEqualTo("new title");
+		assertThat(cached.getTags()).containsExactlyInAnyOrder("a", "b");
+		assertThat(cached.getAuthor().getUsername()).isEqualTo("username");
+	}
+
+	@Test
+	void shouldUpdateCacheOnlyAfterCommit() {
+		TransactionSynchronizationManager.initSynchronization();
+
+		aspect.updateCachePostItem(joinPoint, getResponse());
+
+		assertThat(cache.get(1L)).isNull();
+		TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+		assertThat(cache.get(1L)).isNotNull();
+	}
+
+	@Test
+	void shouldPublishEvictBeforeCommit() {
+		TransactionSynchronizationManager.initSynchronization();
+
+		aspect.updateCachePostItem(joinPoint, getResponse());
+
+		assertThat(published).containsExactly(CacheInvalidation.evict(SimplePostService.POST_ITEM_CACHE_NAME, 1L));
+	}
+
+	@Test
+	void shouldPublishPostChangeToSecondLevelCacheOfOtherNodes() {
+		aspect.publishPostChangeOnUpdatingOrDeleting(joinPoint);
+
+		verify(secondLevelCache).publishPostChange(1L);
+	}
+
+	private NewOrUpdatePostResponse getResponse() {
+		return new NewOrUpdatePostResponse(
+				1L, "new title", "description", LocalDate.now(), Set.of("a", "b"), "content", null,
+				new NewOrUpdatePostResponse.UserInfo(2L, "name", "surname", "username", null));
+	}
+}
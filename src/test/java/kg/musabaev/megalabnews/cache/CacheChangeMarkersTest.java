@@ -0,0 +1,80 @@
+package kg.musabaev.megalabnews.cache;
+
+import kg.musabaev.megalabnews.config.CacheProperties;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class CacheChangeMarkersTest {
+
+	static final Duration MAX_AGE = Duration.ofHours(1);
+	static final Duration COMMIT_LAG = Duration.ofMinutes(1);
+
+	JdbcTemplate jdbc;
+	CacheChangeMarkers markers;
+
+	@BeforeEach
+	void setUp() {
+		jdbc = new JdbcTemplate(new DriverManagerDataSource(
+				"jdbc:h2:mem:markers-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+		jdbc.execute("CREATE TABLE cache_change_markers (" +
+				"marker_id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+				"cache_name VARCHAR(64) NOT NULL, " +
+				"cache_key VARCHAR(255), " +
+				"changed_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL)");
+		var snapshot = new CacheProperties.Snapshot(true, null, null, MAX_AGE, COMMIT_LAG, null);
+		markers = new CacheChangeMarkers(jdbc, new CacheProperties(null, null, null, null, null, null, null, snapshot));
+	}
+
+	@Test
+	void shouldKeepOnlyMarkersYoungerThanMaxAgeAndCommitLag_whenPruned() {
+		Instant now = markers.now();
+		insertMarker(now.minus(MAX_AGE).minus(COMMIT_LAG).minusSeconds(1));
+		insertMarker(now.minus(MAX_AGE));
+		markers.publish(CacheInvalidation.evict("postItem", 1L));
+
+		markers.pruneExpired();
+
+		assertThat(countMarkers()).isEqualTo(2);
+		assertThat(markers.since(now.minus(MAX_AGE).minus(COMMIT_LAG))).hasSize(2);
+	}
+
+	@Test
+	void shouldStayBounded_whenNodeIsNeverStopped() {
+		Instant now = markers.now();
+		// журнал за сутки работы узла, по изменению в минуту
+		for (int minutes = 0; minutes < 24 * 60; minutes++)
+			insertMarker(now.minus(Duration.ofMinutes(minutes)).minusSeconds(30));
+
+		markers.pruneExpired();
+
+		assertThat(countMarkers()).isEqualTo(MAX_AGE.plus(COMMIT_LAG).toMinutes());
+	}
+
+	@Test
+	void shouldIgnoreCachesNotInSnapshot() {
+		markers.publish(CacheInvalidation.evict("postImage", "image.png"));
+
+		assertThat(countMarkers()).isZero();
+	}
+
+	private void insertMarker(Instant changedAt) {
+		jdbc.update("INSERT INTO cache_change_markers (cache_name, cache_key, changed_at) VALUES (?, ?, ?)",
+				"postItem", "L1", Timestamp.from(changedAt));
+	}
+
+	private long countMarkers() {
+		return jdbc.queryForObject("SELECT COUNT(*) FROM cache_change_markers", Long.class);
+	}
+}
@@ -0,0 +1,70 @@
+package kg.musabaev.megalabnews.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class CacheHeapBudgetTest {
+
+	static final String VALUE = "x".repeat(1000);
+
+	ManagedCache posts;
+	ManagedCache users;
+	CacheHeapBudget budget;
+
+	@BeforeEach
+	void setUp() {
+		var caches = new ManagedCache[2];
+		budget = new CacheHeapBudget(5 * ObjectSizeEstimator.weigh(1L, VALUE), () -> List.of(caches));
+		posts = caches[0] = createCache("postItem");
+		users = caches[1] = createCache("userItem");
+	}
+
+	@Test
+	void shouldWeighValuesBySize() {
+		posts.put(1L, "small");
+		long small = posts.weightedSize().orElseThrow();
+		posts.put(2L, VALUE);
+
+		assertThat(posts.weightedSize().orElseThrow() - small).isGreaterThan(1000);
+		assertThat(posts.estimatedBytes(1)).isEqualTo(posts.weightedSize().orElseThrow());
+	}
+
+	@Test
+	void shouldEvictColdestEntriesOfHeaviestCache_whenBudgetExceeded() {
+		for (long id = 1; id <= 4; id++) posts.put(id, VALUE);
+		users.put(1L, VALUE);
+		users.put(2L, VALUE);
+
+		assertThat(budget.usedBytes()).isLessThanOrEqualTo(budget.getLimit());
+		assertThat(posts.get(1L)).isNull();
+		assertThat(posts.get(4L)).isNotNull();
+		assertThat(users.getNativeCache().estimatedSize()).isEqualTo(2);
+		assertThat(posts.budgetEvictionCount()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldKeepEntries_whenWithinBudget() {
+		for (long id = 1; id <= 5; id++) posts.put(id, VALUE);
+
+		assertThat(posts.getNativeCache().estimatedSize()).isEqualTo(5);
+		assertThat(posts.budgetEvictionCount()).isZero();
+	}
+
+	private ManagedCache createCache(String name) {
+		return ManagedCache.create(
+				name,
+				Caffeine.newBuilder()
+						.maximumWeight(1024 * 1024)
+						.weigher(ObjectSizeEstimator::weigh)
+						.executor(Runnable::run),
+				ManagedCache.Settings.builder().afterWrite(budget::enforce).build());
+	}
+}
@@ -0,0 +1,76 @@
+package kg.musabaev.megalabnews.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Сравнивает инвалидацию кэша {@code rootCommentList} по postId:
+ * полный проход по кэшу через {@code removeIf} и удаление по индексу {@link ManagedCache}.
+ * В кэше на каждую публикацию приходится {@link #PAGES_PER_POST} страниц комментариев,
+ * после удаления страницы кладутся обратно, чтобы размер кэша не менялся между итерациями.
+ * <p>
+ * Запуск:
+ * <pre>
+ * ./mvnw test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main CacheInvalidationBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheInvalidationBenchmark {
+
+	static final int PAGES_PER_POST = 10;
+
+	@Param({"1000", "10000", "100000"})
+	int cacheSize;
+
+	ManagedCache cache;
+	long postsCount;
+	long nextPostId;
+
+	@Setup
+	public void setUp() {
+		Function<Object, Collection<?>> keyOwners = key -> List.of(((Pair<?, ?>) key).getLeft());
+		cache = ManagedCache.create("rootCommentList", Caffeine.newBuilder(), keyOwners);
+		postsCount = cacheSize / PAGES_PER_POST;
+		for (long postId = 0; postId < postsCount; postId++) fillPost(postId);
+	}
+
+	@Benchmark
+	public int evictByOwner() {
+		long postId = nextPostId();
+		int removed = cache.evictByOwner(postId);
+		fillPost(postId);
+		return removed;
+	}
+
+	@Benchmark
+	public boolean scanAndRemoveIf() {
+		long postId = nextPostId();
+		boolean removed = cache.getNativeCache().asMap().keySet()
+				.removeIf(key -> ((Pair<?, ?>) key).getLeft().equals(postId));
+		fillPost(postId);
+		return removed;
+	}
+
+	private long nextPostId() {
+		nextPostId = (nextPostId + 1) % postsCount;
+		return nextPostId;
+	}
+
+	private void fillPost(long postId) {
+		for (int page = 0; page < PAGES_PER_POST; page++)
+			cache.put(Pair.of(postId, PageRequest.of(page, 10)), List.of());
+	}
+}
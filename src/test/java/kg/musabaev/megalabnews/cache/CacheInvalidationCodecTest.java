@@ -0,0 +1,56 @@
+package kg.musabaev.megalabnews.cache;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheInvalidationCodecTest {
+
+	@Test
+	void shouldDecodeEncodedInvalidations() {
+		var invalidations = List.of(
+				CacheInvalidation.evict("postItem", 42L),
+				CacheInvalidation.evict("userItemByUsername", "эльдияр с пробелом\n"),
+				CacheInvalidation.evictByOwner("childCommentList", Pair.of(1L, 10L)),
+				CacheInvalidation.clear("postImage"),
+				CacheInvalidation.postListGeneration(List.of("новости", "a b")),
+				CacheInvalidation.postListGeneration(List.of()));
+
+		List<String> payloads = CacheInvalidationCodec.encode("node", invalidations, 8000);
+
+		assertThat(payloads).hasSize(1);
+		var batch = CacheInvalidationCodec.decode(payloads.get(0));
+		assertThat(batch.nodeId()).isEqualTo("node");
+		assertThat(batch.invalidations()).isEqualTo(invalidations);
+	}
+
+	@Test
+	void shouldReplaceEvictWithClear_whenKeyNotSupported() {
+		var invalidation = CacheInvalidation.evict("postList", PageRequest.of(0, 10));
+
+		var batch = CacheInvalidationCodec.decode(
+				CacheInvalidationCodec.encode("node", List.of(invalidation), 8000).get(0));
+
+		assertThat(batch.invalidations()).containsExactly(CacheInvalidation.clear("postList"));
+	}
+
+	@Test
+	void shouldSplitIntoPayloadsNotLongerThanLimit() {
+		var invalidations = LongStream.range(0, 1000)
+				.mapToObj(id -> CacheInvalidation.evict("postItem", id))
+				.toList();
+
+		List<String> payloads = CacheInvalidationCodec.encode("node", invalidations, 500);
+
+		assertThat(payloads).hasSizeGreaterThan(1).allMatch(payload -> payload.length() <= 500);
+		assertThat(payloads.stream()
+				.flatMap(payload -> CacheInvalidationCodec.decode(payload).invalidations().stream())
+				.toList())
+				.isEqualTo(invalidations);
+	}
+}
@@ -0,0 +1,119 @@
+package kg.musabaev.megalabnews.cache;
+
+import kg.musabaev.megalabnews.config.CacheProperties;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Кэши включаются и выключаются, пока потоки читают, загружают, обновляют
+ * и инвалидируют значения так же, как это делают сервисы и аспекты.
+ * Значение каждого ключа однозначно определяется ключом, поэтому любое
+ * другое значение, прочитанное из кэша, означает ошибку переключения
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class CacheModeSwitchLoadTest {
+
+	static final Duration DURATION = Duration.ofSeconds(1);
+	static final int THREADS = 8;
+	static final List<String> CACHE_NAMES = List.of("postItem", "rootCommentList");
+
+	final Function<Object, Collection<?>> pairLeft = key -> List.of(((Pair<?, ?>) key).getLeft());
+	final AtomicLong operations = new AtomicLong();
+
+	ManagedCacheManager cacheManager;
+	ExecutorService executor;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		var properties = new CacheProperties(null, null, null, null, null, null, null, null);
+		cacheManager = new ManagedCacheManager(
+				properties, Map.of("rootCommentList", pairLeft), Map.of(), mock(ObjectProvider.class));
+		cacheManager.afterPropertiesSet();
+		executor = Executors.newFixedThreadPool(THREADS + 1);
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+		cacheManager.destroy();
+	}
+
+	@Test
+	void shouldServeOnlyCorrectValues_whenModeSwitchedUnderTraffic() throws Exception {
+		long deadline = System.nanoTime() + DURATION.toNanos();
+		List<Future<?>> workers = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++)
+			workers.add(executor.submit(() -> {
+				while (System.nanoTime() < deadline) work();
+				return null;
+			}));
+		Future<?> switcher = executor.submit(() -> {
+			while (System.nanoTime() < deadline) switchModes();
+			return null;
+		});
+
+		for (Future<?> worker : workers)
+			worker.get(DURATION.toSeconds() + 10, TimeUnit.SECONDS);
+		switcher.get(10, TimeUnit.SECONDS);
+
+		cacheManager.setEnabled(true);
+		for (String name : CACHE_NAMES)
+			cacheManager.getManagedCache(name).getNativeCache().asMap()
+					.forEach((key, value) -> assertThat(value).isEqualTo(valueOf(key)));
+		assertThat(operations.get()).isPositive();
+	}
+
+	private void work() {
+		var random = ThreadLocalRandom.current();
+		ManagedCache cache = cacheManager.getManagedCache(CACHE_NAMES.get(random.nextInt(CACHE_NAMES.size())));
+		long id = random.nextLong(20);
+		Object key = cache.getName().equals("postItem") ? id : Pair.of(id, random.nextInt(3));
+
+		switch (random.nextInt(6)) {
+			case 0 -> cache.evict(key);
+			case 1 -> cache.evictByOwner(id);
+			case 2 -> cache.update(key, valueOf(key));
+			case 3 -> {
+				var cached = cache.get(key);
+				if (cached != null) assertThat(cached.get()).isEqualTo(valueOf(key));
+			}
+			default -> assertThat(cache.<Object>get(key, () -> valueOf(key))).isEqualTo(valueOf(key));
+		}
+		operations.incrementAndGet();
+	}
+
+	private void switchModes() throws InterruptedException {
+		var random = ThreadLocalRandom.current();
+		if (random.nextBoolean())
+			cacheManager.setEnabled(random.nextBoolean());
+		else
+			cacheManager.setEnabled(CACHE_NAMES.get(random.nextInt(CACHE_NAMES.size())), random.nextBoolean());
+		Thread.sleep(random.nextInt(3));
+	}
+
+	private static String valueOf(Object key) {
+		return "value of " + key;
+	}
+}
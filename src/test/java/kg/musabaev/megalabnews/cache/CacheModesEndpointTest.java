@@ -0,0 +1,77 @@
+package kg.musabaev.megalabnews.cache;
+
+import kg.musabaev.megalabnews.security.Authority;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.cache-enabled=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class CacheModesEndpointTest {
+
+	@Autowired
+	MockMvc mvc;
+	@Autowired
+	ManagedCacheManager cacheManager;
+
+	@AfterEach
+	void tearDown() {
+		cacheManager.setEnabled(true);
+	}
+
+	@Test
+	void shouldRejectAnonymousWrite() throws Exception {
+		mvc.perform(post("/actuator/cachemodes")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"enabled\": false}"))
+				.andExpect(status().isUnauthorized());
+		mvc.perform(post("/actuator/cachemodes/postItem")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"enabled\": false}"))
+				.andExpect(status().isUnauthorized());
+
+		assertThat(cacheManager.getModes()).doesNotContainValue(false);
+	}
+
+	@Test
+	void shouldRejectWrite_whenUserCannotManageCaches() throws Exception {
+		mvc.perform(post("/actuator/cachemodes")
+						.with(user("user").authorities(Authority.WRITE_POST::name))
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"enabled\": false}"))
+				.andExpect(status().isForbidden());
+
+		assertThat(cacheManager.getModes()).doesNotContainValue(false);
+	}
+
+	@Test
+	void shouldSwitchCache_whenUserCanManageCaches() throws Exception {
+		mvc.perform(post("/actuator/cachemodes/postItem")
+						.with(user("admin").authorities(Authority.MANAGE_CACHE::name))
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"enabled\": false}"))
+				.andExpect(status().isOk());
+
+		assertThat(cacheManager.getModes()).containsEntry("postItem", false);
+	}
+
+	@Test
+	void shouldLeaveOtherActuatorEndpointsOpen() throws Exception {
+		mvc.perform(get("/actuator/health")).andExpect(status().isOk());
+	}
+}
@@ -0,0 +1,91 @@
+package kg.musabaev.megalabnews.cache;
+
+import kg.musabaev.megalabnews.repository.projection.PostItemView;
+import kg.musabaev.megalabnews.repository.projection.PostListView;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class CacheSnapshotCodecTest {
+
+	final SpelAwareProxyProjectionFactory projectionFactory = new SpelAwareProxyProjectionFactory();
+
+	@Test
+	void shouldDecodeEncodedProjectionsAndPages() {
+		var pageable = PageRequest.of(1, 10, Sort.by(Sort.Order.desc("createdDate").ignoreCase(), Sort.Order.asc("id")));
+		var postListKey = new PostListCacheKeyGenerator.PostListKey(List.of("a", "б"), List.of(), pageable);
+		Page<PostListView> postList = new PageImpl<>(List.of(getPostListView(1L), getPostListView(2L)), pageable, 42);
+		PostItemView postItem = getPostItemView();
+
+		var decoded = roundTrip(Map.of(
+				"postItem", Map.of(1L, postItem),
+				"postList", Map.of(postListKey, postList)));
+
+		PostItemView decodedItem = (PostItemView) decoded.get("postItem").get(1L);
+		assertThat(decodedItem.getTitle()).isEqualTo("title");
+		assertThat(decodedItem.getCreatedDate()).isEqualTo(LocalDate.of(2023, 1, 2));
+		assertThat(decodedItem.getTags()).containsExactlyInAnyOrder("Спорт", "Наука");
+		assertThat(decodedItem.getImageUrl()).isNull();
+		assertThat(decodedItem.getAuthor().getUsername()).isEqualTo("eld");
+
+		@SuppressWarnings("unchecked")
+		var decodedList = (Page<PostListView>) decoded.get("postList").get(postListKey);
+		assertThat(decodedList.getPageable()).isEqualTo(pageable);
+		assertThat(decodedList.getTotalElements()).isEqualTo(42);
+		assertThat(decodedList.getContent()).extracting(PostListView::getId).containsExactly(1L, 2L);
+	}
+
+	@Test
+	void shouldSkipEntries_whenTypeNotSupported() {
+		var decoded = roundTrip(Map.of("postItem", Map.of(1L, "post", 2L, new Object())));
+
+		assertThat(decoded.get("postItem")).containsOnlyKeys(1L);
+	}
+
+	@Test
+	void shouldRejectForeignFile() {
+		assertThatIllegalArgumentException().isThrownBy(() -> CacheSnapshotCodec.decode(ByteBuffer.wrap(new byte[]{1, 2})));
+	}
+
+	private Map<String, Map<Object, Object>> roundTrip(Map<String, Map<Object, Object>> caches) {
+		var takenAt = Instant.ofEpochMilli(1000);
+		byte[] bytes = CacheSnapshotCodec.encode(new CacheSnapshotCodec.Snapshot(takenAt, caches));
+
+		var snapshot = CacheSnapshotCodec.decode(ByteBuffer.wrap(bytes));
+
+		assertThat(snapshot.takenAt()).isEqualTo(takenAt);
+		return snapshot.caches();
+	}
+
+	private PostListView getPostListView(Long id) {
+		Map<String, Object> post = new HashMap<>();
+		post.put("id", id);
+		post.put("title", "title " + id);
+		post.put("createdDate", LocalDate.of(2023, 1, 2));
+		return projectionFactory.createProjection(PostListView.class, post);
+	}
+
+	private PostItemView getPostItemView() {
+		Map<String, Object> post = new HashMap<>();
+		post.put("id", 1L);
+		post.put("title", "title");
+		post.put("createdDate", LocalDate.of(2023, 1, 2));
+		post.put("tags", Set.of("Спорт", "Наука"));
+		post.put("author", Map.of("id", 1L, "username", "eld"));
+		return projectionFactory.createProjection(PostItemView.class, post);
+	}
+}
@@ -0,0 +1,135 @@
+package kg.musabaev.megalabnews.cache;
+
+import kg.musabaev.megalabnews.config.CacheProperties;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.PageRequest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class CacheSnapshotsTest {
+
+	final Instant takenAt = Instant.parse("2023-01-02T10:00:00Z");
+
+	@Mock
+	CacheChangeMarkers changeMarkers;
+	@Mock
+	ObjectProvider<CacheInvalidationPublisher> publisherProvider;
+	@TempDir
+	Path dir;
+
+	CacheProperties properties;
+	PostListGenerations generations;
+	PostListCacheKeyGenerator keyGenerator;
+
+	@BeforeEach
+	void setUp() {
+		var snapshot = new CacheProperties.Snapshot(
+				true, dir.resolve("snapshot.bin"), null, Duration.ofHours(1), Duration.ofMinutes(1), null);
+		properties = new CacheProperties(null, null, null, null, null, null, null, snapshot);
+	}
+
+	@Test
+	void shouldRestoreEntries_exceptChangedAfterSnapshot() {
+		var oldNode = newNode();
+		oldNode.cacheManager.getManagedCache("postItem").put(1L, "post 1");
+		oldNode.cacheManager.getManagedCache("postItem").put(2L, "post 2");
+		oldNode.cacheManager.getManagedCache("postImage").put("image.png", "bytes");
+		when(changeMarkers.now()).thenReturn(takenAt, takenAt.plusSeconds(10));
+		oldNode.snapshots.save();
+
+		when(changeMarkers.since(takenAt.minus(Duration.ofMinutes(1))))
+				.thenReturn(List.of(new CacheChangeMarkers.Marker("postItem", 2L)));
+		var newNode = newNode();
+		newNode.snapshots.load();
+
+		assertThat(newNode.cacheManager.getManagedCache("postItem").get(1L).get()).isEqualTo("post 1");
+		assertThat(newNode.cacheManager.getManagedCache("postItem").get(2L)).isNull();
+		assertThat(newNode.cacheManager.getCacheNames()).doesNotContain("postImage");
+		assertThat(properties.snapshot().path()).doesNotExist();
+	}
+
+	@Test
+	void shouldRestoreOnlyCurrentPostListPages_underNewGenerations() {
+		var oldNode = newNode();
+		var pageable = PageRequest.of(0, 10);
+		Object outdatedKey = oldNode.keyGenerator.generate(null, null, pageable, Set.of("a"));
+		oldNode.cacheManager.getManagedCache("postList").put(outdatedKey, "outdated");
+		oldNode.generations.bump(Set.of("a"));
+		oldNode.cacheManager.getManagedCache("postList").put(
+				oldNode.keyGenerator.generate(null, null, pageable, Set.of("a")), "current");
+		when(changeMarkers.now()).thenReturn(takenAt, takenAt);
+		oldNode.snapshots.save();
+
+		var newNode = newNode();
+		newNode.snapshots.load();
+
+		Object newKey = newNode.keyGenerator.generate(null, null, pageable, Set.of("a"));
+		assertThat(newKey).isEqualTo(outdatedKey);
+		assertThat(newNode.cacheManager.getManagedCache("postList").get(newKey).get()).isEqualTo("current");
+	}
+
+	@Test
+	void shouldDiscardWholeCache_whenChangedAfterSnapshot() {
+		var oldNode = newNode();
+		oldNode.cacheManager.getManagedCache("userItem").put(1L, "user");
+		when(changeMarkers.now()).thenReturn(takenAt, takenAt);
+		oldNode.snapshots.save();
+
+		when(changeMarkers.since(any())).thenReturn(List.of(new CacheChangeMarkers.Marker("userItem", null)));
+		var newNode = newNode();
+		newNode.snapshots.load();
+
+		assertThat(newNode.cacheManager.getManagedCache("userItem").get(1L)).isNull();
+	}
+
+	@Test
+	void shouldDiscardSnapshot_whenOlderThanMaxAge() {
+		var oldNode = newNode();
+		oldNode.cacheManager.getManagedCache("postItem").put(1L, "post");
+		when(changeMarkers.now()).thenReturn(takenAt, takenAt.plus(Duration.ofHours(2)));
+		oldNode.snapshots.save();
+
+		var newNode = newNode();
+		newNode.snapshots.load();
+
+		assertThat(newNode.cacheManager.getManagedCache("postItem").get(1L)).isNull();
+		assertThat(properties.snapshot().path()).doesNotExist();
+	}
+
+	private Node newNode() {
+		var cacheManager = new ManagedCacheManager(properties, Map.of(), Map.of(), publisherProvider);
+		cacheManager.afterPropertiesSet();
+		var generations = new PostListGenerations(publisherProvider);
+		return new Node(
+				cacheManager,
+				generations,
+				new PostListCacheKeyGenerator(generations),
+				new CacheSnapshots(cacheManager, generations, changeMarkers, properties));
+	}
+
+	private record Node(
+			ManagedCacheManager cacheManager,
+			PostListGenerations generations,
+			PostListCacheKeyGenerator keyGenerator,
+			CacheSnapshots snapshots) {
+	}
+}
@@ -0,0 +1,87 @@
+package kg.musabaev.megalabnews.cache;
+
+import kg.musabaev.megalabnews.config.CacheProperties;
+import kg.musabaev.megalabnews.exception.PostNotFoundException;
+import kg.musabaev.megalabnews.repository.PostRepo;
+import kg.musabaev.megalabnews.service.PostService;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class CacheWarmerTest {
+
+	@Mock
+	PostService postService;
+	@Mock
+	PostRepo postRepo;
+
+	CacheWarmer warmer;
+
+	@BeforeEach
+	void setUp() {
+		var warmUp = new CacheProperties.WarmUp(true, 2, 10, 2, 3, 2, Duration.ofSeconds(5));
+		warmer = new CacheWarmer(postService, postRepo, new CacheProperties(null, null, null, null, warmUp, null, null, null));
+	}
+
+	@Test
+	void shouldWarmUpPagesTagsAndRecentPosts_thenReportUp() {
+		when(postRepo.findTopTags(PageRequest.of(0, 2))).thenReturn(List.of("a", "b"));
+		when(postRepo.findRecentPostIds(PageRequest.of(0, 3))).thenReturn(List.of(3L, 2L, 1L));
+		when(postService.getById(any())).then(i -> {
+			if (i.getArgument(0).equals(2L)) throw new PostNotFoundException();
+			return null;
+		});
+
+		assertThat(warmer.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+		warmer.warmUp();
+		awaitUp();
+
+		for (int page = 0; page < 2; page++) {
+			verify(postService).getAll(PageRequest.of(page, 10), null);
+			verify(postService).getAll(PageRequest.of(page, 10), Set.of("a"));
+			verify(postService).getAll(PageRequest.of(page, 10), Set.of("b"));
+		}
+		verify(postService, times(3)).getById(any());
+		assertThat(warmer.health().getDetails())
+				.containsEntry("completed", 9)
+				.containsEntry("failed", 1)
+				.containsEntry("total", 9);
+	}
+
+	@Test
+	void shouldWarmNothingAndReportUp_whenDatabaseUnavailable() {
+		when(postRepo.findTopTags(any())).thenThrow(new CannotCreateTransactionException("connection refused"));
+
+		warmer.warmUp();
+
+		assertThat(warmer.health().getStatus()).isEqualTo(Status.UP);
+		assertThat(warmer.health().getDetails())
+				.containsEntry("completed", 0)
+				.containsEntry("failed", 1)
+				.containsEntry("total", 0);
+		verifyNoInteractions(postService);
+	}
+
+	private void awaitUp() {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (warmer.health().getStatus() != Status.UP && System.nanoTime() < deadline) Thread.onSpinWait();
+		assertThat(warmer.health().getStatus()).isEqualTo(Status.UP);
+	}
+}
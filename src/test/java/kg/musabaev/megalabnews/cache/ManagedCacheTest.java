@@ -0,0 +1,324 @@
+package kg.musabaev.megalabnews.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class ManagedCacheTest {
+
+	final Function<Object, Collection<?>> childCommentOwners = key -> {
+		var triple = (Triple<?, ?, ?>) key;
+		return List.of(triple.getLeft(), Pair.of(triple.getLeft(), triple.getMiddle()));
+	};
+
+	final ManagedCache.Settings singleFlight = ManagedCache.Settings.builder().singleFlight(true).build();
+	final List<Runnable> refreshTasks = new ArrayList<>();
+	final AtomicLong nanos = new AtomicLong();
+
+	ManagedCache cache;
+
+	@BeforeEach
+	void setUp() {
+		cache = ManagedCache.create("childCommentList", Caffeine.newBuilder(), childCommentOwners);
+	}
+
+	@Test
+	void shouldEvictOnlyKeysOfOwner() {
+		cache.put(Triple.of(1L, 10L, PageRequest.of(0, 10)), "a");
+		cache.put(Triple.of(1L, 10L, PageRequest.of(1, 10)), "b");
+		cache.put(Triple.of(1L, 11L, PageRequest.of(0, 10)), "c");
+		cache.put(Triple.of(2L, 20L, PageRequest.of(0, 10)), "d");
+
+		int removed = cache.evictByOwner(Pair.of(1L, 10L));
+
+		assertThat(removed).isEqualTo(2);
+		assertThat(cache.getNativeCache().asMap()).hasSize(2);
+		assertThat(cache.get(Triple.of(1L, 11L, PageRequest.of(0, 10)))).isNotNull();
+		assertThat(cache.indexedKeysCount(1L)).isEqualTo(1);
+	}
+
+	@Test
+	void shouldEvictAllKeysOfPost() {
+		cache.put(Triple.of(1L, 10L, PageRequest.of(0, 10)), "a");
+		cache.put(Triple.of(1L, 11L, PageRequest.of(0, 10)), "b");
+		cache.put(Triple.of(2L, 20L, PageRequest.of(0, 10)), "c");
+
+		int removed = cache.evictByOwner(1L);
+
+		assertThat(removed).isEqualTo(2);
+		assertThat(cache.indexedKeysCount(Pair.of(1L, 10L))).isZero();
+		assertThat(cache.indexedKeysCount(Pair.of(1L, 11L))).isZero();
+		assertThat(cache.indexedKeysCount(2L)).isEqualTo(1);
+	}
+
+	@Test
+	void shouldIndexValuesLoadedThroughValueLoader() {
+		var key = Triple.of(1L, 10L, PageRequest.of(0, 10));
+
+		cache.get(key, () -> "loaded");
+
+		assertThat(cache.evictByOwner(1L)).isEqualTo(1);
+		assertThat(cache.get(key)).isNull();
+	}
+
+	@Test
+	void shouldRemoveKeyFromIndex_whenEvictedByKey() {
+		var key = Triple.of(1L, 10L, PageRequest.of(0, 10));
+		cache.put(key, "a");
+
+		cache.evict(key);
+
+		assertThat(cache.indexedKeysCount(1L)).isZero();
+		assertThat(cache.indexedKeysCount(Pair.of(1L, 10L))).isZero();
+	}
+
+	@Test
+	void shouldRemoveKeyFromIndex_whenEvictedBySize() {
+		cache = ManagedCache.create(
+				"childCommentList",
+				Caffeine.newBuilder().maximumSize(1).executor(Runnable::run),
+				childCommentOwners);
+
+		cache.put(Triple.of(1L, 10L, PageRequest.of(0, 10)), "a");
+		cache.put(Triple.of(2L, 20L, PageRequest.of(0, 10)), "b");
+		cache.getNativeCache().cleanUp();
+
+		assertThat(cache.getNativeCache().estimatedSize()).isEqualTo(1);
+		assertThat(cache.indexedKeysCount(1L) + cache.indexedKeysCount(2L)).isEqualTo(1);
+	}
+
+	@Test
+	void shouldClearIndex_whenCacheCleared() {
+		cache.put(Triple.of(1L, 10L, PageRequest.of(0, 10)), "a");
+
+		cache.clear();
+
+		assertThat(cache.indexedKeysCount(1L)).isZero();
+		assertThat(cache.evictByOwner(1L)).isZero();
+	}
+
+	@Test
+	void shouldNotKeepValue_whenEvictedByOwnerWhilePutIndexesIt() throws Exception {
+		var key = Triple.of(1L, 10L, PageRequest.of(0, 10));
+		var indexing = new CountDownLatch(1);
+		var release = new CountDownLatch(1);
+		var blocked = new AtomicBoolean();
+		cache = ManagedCache.create("childCommentList", Caffeine.newBuilder(), k -> {
+			if (blocked.compareAndSet(false, true)) {
+				indexing.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return childCommentOwners.apply(k);
+		});
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> put = executor.submit(() -> cache.put(key, "stale"));
+			indexing.await();
+
+			cache.evictByOwner(1L);
+			// значение, видимое до инвалидации, не должно пережить ее
+			assertThat(cache.get(key)).isNull();
+
+			release.countDown();
+			put.get(5, TimeUnit.SECONDS);
+			assertThat(cache.evictByOwner(1L)).isEqualTo(1);
+			assertThat(cache.get(key)).isNull();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void shouldLoadOnce_whenConcurrentMisses() throws Exception {
+		cache = ManagedCache.create("postItem", Caffeine.newBuilder(), singleFlight);
+		int threads = 8;
+		var loads = new AtomicInteger();
+		var release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < threads; i++)
+				results.add(executor.submit(() -> cache.get(1L, () -> {
+					loads.incrementAndGet();
+					release.await();
+					return "loaded";
+				})));
+			while (cache.coalescedCount() < threads - 1) Thread.onSpinWait();
+			release.countDown();
+
+			for (Future<String> result : results) assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("loaded");
+			assertThat(loads).hasValue(1);
+			assertThat(cache.get(1L).get()).isEqualTo("loaded");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void shouldRethrowLoaderException_toWaiters() throws Exception {
+		cache = ManagedCache.create("postItem", Caffeine.newBuilder(), singleFlight);
+		var loading = new CountDownLatch(1);
+		var release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<Object> leader = executor.submit(() -> cache.get(1L, () -> {
+				loading.countDown();
+				release.await();
+				throw new IllegalStateException("db is down");
+			}));
+			loading.await();
+			Future<Object> waiter = executor.submit(() -> cache.get(1L, () -> "never"));
+			while (cache.coalescedCount() < 1) Thread.onSpinWait();
+			release.countDown();
+
+			assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS))
+					.hasCauseInstanceOf(Cache.ValueRetrievalException.class)
+					.hasRootCauseInstanceOf(IllegalStateException.class);
+			assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS))
+					.hasCauseInstanceOf(Cache.ValueRetrievalException.class)
+					.hasRootCauseInstanceOf(IllegalStateException.class);
+			assertThat(cache.get(1L)).isNull();
+			assertThat(cache.<Object>get(1L, () -> "retried")).isEqualTo("retried");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void shouldServeStaleValueAndReloadInBackground_whenEvicted() {
+		cache = ManagedCache.create("postItem", Caffeine.newBuilder(), ManagedCache.Settings.builder()
+				.staleGrace(Duration.ofMinutes(1))
+				.refreshExecutor(refreshTasks::add)
+				.build());
+		cache.get(1L, () -> "old");
+
+		cache.evict(1L);
+
+		assertThat(cache.<Object>get(1L, () -> "new")).isEqualTo("old");
+		assertThat(cache.get(1L)).isNull();
+		refreshTasks.forEach(Runnable::run);
+		assertThat(cache.get(1L).get()).isEqualTo("new");
+		assertThat(cache.staleHitCount()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldNotServeStaleValue_whenReloadFailed() {
+		cache = ManagedCache.create("postItem", Caffeine.newBuilder(), ManagedCache.Settings.builder()
+				.staleGrace(Duration.ofMinutes(1))
+				.refreshExecutor(Runnable::run)
+				.build());
+		cache.get(1L, () -> "old");
+		cache.evict(1L);
+
+		assertThat(cache.<Object>get(1L, () -> {
+			throw new IllegalStateException("post deleted");
+		})).isEqualTo("old");
+
+		assertThatThrownBy(() -> cache.get(1L, () -> {
+			throw new IllegalStateException("post deleted");
+		})).hasCauseInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void shouldRefreshAgingValueInBackground() {
+		cache = ManagedCache.create(
+				"postList",
+				Caffeine.newBuilder().expireAfterWrite(Duration.ofMinutes(5)).ticker(nanos::get),
+				ManagedCache.Settings.builder()
+						.refreshAfter(Duration.ofMinutes(4))
+						.refreshExecutor(refreshTasks::add)
+						.build());
+		cache.get(1L, () -> "old");
+
+		nanos.addAndGet(Duration.ofMinutes(3).toNanos());
+		assertThat(cache.<Object>get(1L, () -> "new")).isEqualTo("old");
+		assertThat(refreshTasks).isEmpty();
+
+		nanos.addAndGet(Duration.ofMinutes(1).toNanos());
+		assertThat(cache.<Object>get(1L, () -> "new")).isEqualTo("old");
+		assertThat(cache.<Object>get(1L, () -> "new")).isEqualTo("old");
+		assertThat(refreshTasks).hasSize(1);
+
+		refreshTasks.forEach(Runnable::run);
+		assertThat(cache.<Object>get(1L, () -> "newer")).isEqualTo("new");
+		assertThat(cache.refreshCount()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldRecordHitsMissesAndLoads() {
+		cache = ManagedCache.create("postItem", Caffeine.newBuilder(), singleFlight);
+
+		cache.get(1L, () -> "loaded");
+		cache.get(1L, () -> "loaded");
+		assertThatThrownBy(() -> cache.get(2L, () -> {
+			throw new IllegalStateException();
+		}));
+
+		var stats = cache.getNativeCache().stats();
+		assertThat(stats.hitCount()).isEqualTo(1);
+		assertThat(stats.missCount()).isEqualTo(2);
+		assertThat(stats.loadSuccessCount()).isEqualTo(1);
+		assertThat(stats.loadFailureCount()).isEqualTo(1);
+		assertThat(stats.totalLoadTime()).isPositive();
+	}
+
+	@Test
+	void shouldLoadEveryTimeAndStoreNothing_whenDisabled() {
+		cache = ManagedCache.create("postItem", Caffeine.newBuilder(), ManagedCache.Settings.builder()
+				.staleGrace(Duration.ofMinutes(1))
+				.refreshExecutor(refreshTasks::add)
+				.build());
+		cache.put(1L, "cached");
+		var loads = new AtomicInteger();
+
+		cache.setEnabled(false);
+		cache.put(2L, "ignored");
+		cache.update(3L, "ignored");
+
+		assertThat(cache.get(1L, () -> "loaded " + loads.incrementAndGet())).isEqualTo("loaded 1");
+		assertThat(cache.get(1L, () -> "loaded " + loads.incrementAndGet())).isEqualTo("loaded 2");
+		assertThat(cache.get(2L)).isNull();
+		assertThat(cache.getNativeCache().asMap()).isEmpty();
+	}
+
+	@Test
+	void shouldStartEmpty_whenEnabledAgain() {
+		cache.put(Triple.of(1L, 10L, PageRequest.of(0, 10)), "a");
+
+		cache.setEnabled(false);
+		cache.setEnabled(true);
+
+		assertThat(cache.get(Triple.of(1L, 10L, PageRequest.of(0, 10)))).isNull();
+		assertThat(cache.indexedKeysCount(1L)).isZero();
+		cache.put(Triple.of(1L, 10L, PageRequest.of(0, 10)), "b");
+		assertThat(cache.evictByOwner(1L)).isEqualTo(1);
+	}
+}
@@ -0,0 +1,55 @@
+package kg.musabaev.megalabnews.cache;
+
+import kg.musabaev.megalabnews.model.Post;
+import kg.musabaev.megalabnews.repository.projection.PostItemView;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ObjectSizeEstimatorTest {
+
+	final SpelAwareProxyProjectionFactory projectionFactory = new SpelAwareProxyProjectionFactory();
+
+	@Test
+	void shouldGrowWithContent() {
+		long small = ObjectSizeEstimator.estimate(getPost("c"));
+		long large = ObjectSizeEstimator.estimate(getPost("c".repeat(10_000)));
+
+		assertThat(large - small).isBetween(9_900L, 10_100L);
+	}
+
+	@Test
+	void shouldCountSharedObjectsOnce() {
+		String content = "c".repeat(10_000);
+		long one = ObjectSizeEstimator.estimate(List.of(content));
+		long twice = ObjectSizeEstimator.estimate(List.of(content, content));
+
+		assertThat(twice - one).isLessThan(100);
+	}
+
+	@Test
+	void shouldEstimateProjectionByItsTarget() {
+		Post post = getPost("c".repeat(10_000));
+		PostItemView projection = projectionFactory.createProjection(PostItemView.class, post);
+
+		long page = ObjectSizeEstimator.estimate(new PageImpl<>(List.of(projection)));
+
+		assertThat(page).isGreaterThan(ObjectSizeEstimator.estimate(post));
+		assertThat(page).isLessThan(ObjectSizeEstimator.estimate(post) + 1_000);
+	}
+
+	private Post getPost(String content) {
+		return Post.builder()
+				.id(1L)
+				.title("title")
+				.description("description")
+				.content(content)
+				.tags(Set.of("a", "b"))
+				.build();
+	}
+}
@@ -0,0 +1,233 @@
+package kg.musabaev.megalabnews.cache;
+
+import jakarta.persistence.EntityManagerFactory;
+import kg.musabaev.megalabnews.config.CacheProperties;
+import kg.musabaev.megalabnews.model.Post;
+import kg.musabaev.megalabnews.model.User;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class PgNotifyCacheInvalidationBusTest {
+
+	@Mock
+	JdbcTemplate jdbcTemplate;
+	@Mock
+	ObjectProvider<CacheInvalidationPublisher> publisherProvider;
+	@Mock
+	ObjectProvider<CacheInvalidationPublisher> anotherNodePublisherProvider;
+	@Mock
+	EntityManagerFactory entityManagerFactory;
+	@Mock
+	SessionFactory sessionFactory;
+	@Mock
+	Cache secondLevelCache;
+
+	ManagedCacheManager cacheManager;
+	PostListGenerations postListGenerations;
+	PgNotifyCacheInvalidationBus bus;
+
+	/**
+	 * Узел, на котором выполняются изменения
+	 */
+	ManagedCacheManager anotherCacheManager;
+	PostListGenerations anotherPostListGenerations;
+	SecondLevelCacheInvalidations anotherSecondLevelCache;
+	PgNotifyCacheInvalidationBus anotherBus;
+
+	@BeforeEach
+	void setUp() {
+		var properties = new CacheProperties(null, null, new CacheProperties.Bus(true, null, null, null), null, null, null, null, null);
+		cacheManager = new ManagedCacheManager(properties, Map.of(), Map.of(), publisherProvider);
+		cacheManager.afterPropertiesSet();
+		postListGenerations = new PostListGenerations(publisherProvider);
+		bus = new PgNotifyCacheInvalidationBus(
+				cacheManager,
+				postListGenerations,
+				new SecondLevelCacheInvalidations(entityManagerFactory, publisherProvider),
+				jdbcTemplate,
+				new DataSourceProperties(),
+				properties.bus());
+
+		anotherCacheManager = new ManagedCacheManager(properties, Map.of(), Map.of(), anotherNodePublisherProvider);
+		anotherCacheManager.afterPropertiesSet();
+		anotherPostListGenerations = new PostListGenerations(anotherNodePublisherProvider);
+		anotherSecondLevelCache = new SecondLevelCacheInvalidations(entityManagerFactory, anotherNodePublisherProvider);
+		anotherBus = new PgNotifyCacheInvalidationBus(
+				anotherCacheManager,
+				anotherPostListGenerations,
+				anotherSecondLevelCache,
+				jdbcTemplate,
+				new DataSourceProperties(),
+				properties.bus());
+		lenient().when(anotherNodePublisherProvider.orderedStream()).thenAnswer(invocation -> Stream.of(anotherBus));
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+			TransactionSynchronizationManager.setActualTransactionActive(false);
+		}
+	}
+
+	@Test
+	void shouldApplyInvalidationsFromAnotherNode() {
+		cacheManager.getManagedCache("postItem").put(1L, "post");
+		cacheManager.getManagedCache("postItem").put(2L, "post");
+
+		bus.receive(String.join("\n", "another-node", "E postItem L1", "G Sa"));
+
+		assertThat(cacheManager.getManagedCache("postItem").get(1L)).isNull();
+		assertThat(cacheManager.getManagedCache("postItem").get(2L)).isNotNull();
+		assertThat(postListGenerations.of("a")).isEqualTo(1);
+		verifyNoInteractions(publisherProvider);
+	}
+
+	@Test
+	void shouldIgnoreOwnInvalidations() {
+		cacheManager.getManagedCache("postItem").put(1L, "post");
+
+		bus.receive(String.join("\n", bus.getNodeId(), "E postItem L1"));
+
+		assertThat(cacheManager.getManagedCache("postItem").get(1L)).isNotNull();
+	}
+
+	@Test
+	void shouldSendImmediately_whenNoTransaction() {
+		bus.publish(CacheInvalidation.evict("postItem", 1L));
+
+		verify(jdbcTemplate).queryForList(
+				"SELECT pg_notify(?, ?)", "cache_invalidation", bus.getNodeId() + "\nE postItem L1");
+	}
+
+	@Test
+	void shouldSendOneBatchBeforeCommit_whenInTransaction() {
+		TransactionSynchronizationManager.initSynchronization();
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+
+		bus.publish(CacheInvalidation.evict("postItem", 1L));
+		bus.publish(CacheInvalidation.evict("postItem", 1L));
+		bus.publish(CacheInvalidation.clear("postImage"));
+		verifyNoInteractions(jdbcTemplate);
+
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		synchronizations.forEach(s -> s.beforeCommit(false));
+		synchronizations.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+		verify(jdbcTemplate, times(1)).queryForList(
+				"SELECT pg_notify(?, ?)", "cache_invalidation", bus.getNodeId() + "\nE postItem L1\nC postImage");
+		assertThat(TransactionSynchronizationManager.hasResource(bus)).isFalse();
+	}
+
+	@Test
+	void shouldEvictEntryOnAnotherNode_whenUpdatedInTransaction() {
+		cacheManager.getManagedCache("postItem").put(1L, "old post");
+		anotherCacheManager.getManagedCache("postItem").put(1L, "old post");
+
+		TransactionSynchronizationManager.initSynchronization();
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+		// как в SimplePostService#update: поколения лент, затем write-through из PostCachingAspect
+		anotherPostListGenerations.bump(Set.of("a"));
+		anotherCacheManager.getManagedCache("postItem").update(1L, "new post");
+		assertThat(anotherCacheManager.getManagedCache("postItem").get(1L).get()).isEqualTo("old post");
+		commit();
+		deliverNotifications();
+
+		assertThat(anotherCacheManager.getManagedCache("postItem").get(1L).get()).isEqualTo("new post");
+		assertThat(cacheManager.getManagedCache("postItem").get(1L)).isNull();
+		assertThat(postListGenerations.of("a")).isEqualTo(1);
+	}
+
+	@Test
+	void shouldEvictDeletedUserOnAnotherNode() {
+		when(entityManagerFactory.unwrap(SessionFactory.class)).thenReturn(sessionFactory);
+		when(sessionFactory.getCache()).thenReturn(secondLevelCache);
+		cacheManager.getManagedCache("userItemByUsername").put("username", "user details");
+
+		TransactionSynchronizationManager.initSynchronization();
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+		// как в SimpleUserService#deleteById: UserCachingAspect внутри транзакции, @CacheEvict после коммита
+		anotherSecondLevelCache.publishUserChange(1L);
+		commit();
+		anotherCacheManager.getManagedCache("userItemByUsername").evict("username");
+		deliverNotifications();
+
+		verify(secondLevelCache).evictEntityData(User.class, 1L);
+		verify(secondLevelCache).evictCollectionData(User.class.getName() + ".authorities", 1L);
+		verify(secondLevelCache).evictNaturalIdData(User.class);
+		assertThat(cacheManager.getManagedCache("userItemByUsername").get("username")).isNull();
+	}
+
+	@Test
+	void shouldEvictUpdatedPostFromSecondLevelCacheOnAnotherNode() {
+		when(entityManagerFactory.unwrap(SessionFactory.class)).thenReturn(sessionFactory);
+		when(sessionFactory.getCache()).thenReturn(secondLevelCache);
+
+		TransactionSynchronizationManager.initSynchronization();
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+		anotherSecondLevelCache.publishPostChange(1L);
+		commit();
+		deliverNotifications();
+
+		verify(secondLevelCache).evictEntityData(Post.class, 1L);
+		verify(secondLevelCache).evictCollectionData(Post.class.getName() + ".tags", 1L);
+		verify(secondLevelCache, never()).evictEntityData(User.class);
+	}
+
+	@Test
+	void shouldClearPostsSecondLevelCacheOnAnotherNode_whenAuthorDeleted() {
+		when(entityManagerFactory.unwrap(SessionFactory.class)).thenReturn(sessionFactory);
+		when(sessionFactory.getCache()).thenReturn(secondLevelCache);
+
+		anotherSecondLevelCache.publishAllPostsChange();
+		deliverNotifications();
+
+		verify(secondLevelCache).evictEntityData(Post.class);
+		verify(secondLevelCache).evictCollectionData(Post.class.getName() + ".tags");
+	}
+
+	private void deliverNotifications() {
+		var payloads = ArgumentCaptor.forClass(String.class);
+		verify(jdbcTemplate, atLeastOnce()).queryForList(eq("SELECT pg_notify(?, ?)"), eq("cache_invalidation"), payloads.capture());
+		payloads.getAllValues().forEach(bus::receive);
+	}
+
+	/**
+	 * Вызывает синхронизации в том же порядке, что и менеджер транзакций при коммите
+	 */
+	private static void commit() {
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		synchronizations.forEach(s -> s.beforeCommit(false));
+		synchronizations.forEach(TransactionSynchronization::beforeCompletion);
+		synchronizations.forEach(TransactionSynchronization::afterCommit);
+		TransactionSynchronizationManager.getSynchronizations()
+				.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+		TransactionSynchronizationManager.clearSynchronization();
+		TransactionSynchronizationManager.setActualTransactionActive(false);
+	}
+}
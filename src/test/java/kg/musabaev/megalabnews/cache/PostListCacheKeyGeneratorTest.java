@@ -0,0 +1,52 @@
+package kg.musabaev.megalabnews.cache;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class PostListCacheKeyGeneratorTest {
+
+	final PageRequest pageable = PageRequest.of(0, 10);
+
+	PostListGenerations generations;
+	PostListCacheKeyGenerator keyGenerator;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		generations = new PostListGenerations(mock(ObjectProvider.class));
+		keyGenerator = new PostListCacheKeyGenerator(generations);
+	}
+
+	@Test
+	void shouldGenerateSameKey_whenTagsInDifferentOrder() {
+		var key1 = keyGenerator.generate(null, null, pageable, new LinkedHashSet<>(List.of("a", "b")));
+		var key2 = keyGenerator.generate(null, null, pageable, new LinkedHashSet<>(List.of("b", "a")));
+
+		assertThat(key1).isEqualTo(key2);
+	}
+
+	@Test
+	void shouldChangeKeyOnlyOfAffectedTags_whenGenerationBumped() {
+		var keyA = keyGenerator.generate(null, null, pageable, Set.of("a"));
+		var keyB = keyGenerator.generate(null, null, pageable, Set.of("b"));
+		var keyAll = keyGenerator.generate(null, null, pageable, Set.of());
+
+		generations.bump(Set.of("a"));
+
+		assertThat(keyGenerator.generate(null, null, pageable, Set.of("a"))).isNotEqualTo(keyA);
+		assertThat(keyGenerator.generate(null, null, pageable, Set.of("b"))).isEqualTo(keyB);
+		assertThat(keyGenerator.generate(null, null, pageable, null)).isNotEqualTo(keyAll);
+	}
+}
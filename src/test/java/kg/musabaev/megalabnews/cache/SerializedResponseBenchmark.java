@@ -0,0 +1,122 @@
+package kg.musabaev.megalabnews.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import kg.musabaev.megalabnews.config.CacheProperties;
+import kg.musabaev.megalabnews.model.Post;
+import kg.musabaev.megalabnews.model.User;
+import kg.musabaev.megalabnews.repository.projection.PostItemView;
+import kg.musabaev.megalabnews.repository.projection.PostListView;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Сравнивает время ответа на попадание в кэш сервиса: текущий путь, где Jackson
+ * сериализует закэшированную проекцию через рефлексию (и при {@code Accept-Encoding: gzip}
+ * она еще и сжимается), и {@link SerializedResponseCache}, который отдает готовые байты.
+ * Замер однопоточный, поэтому среднее время операции — это процессорное время на запрос.
+ * <p>
+ * Запуск:
+ * <pre>
+ * ./mvnw test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main SerializedResponseBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializedResponseBenchmark {
+
+	@Param({"1000", "20000"})
+	int contentLength;
+
+	ObjectMapper objectMapper;
+	SerializedResponseCache responseCache;
+	PostItemView postItem;
+	Page<PostListView> postList;
+
+	@Setup
+	public void setUp() {
+		objectMapper = JsonMapper.builder().findAndAddModules().build();
+		var properties = new CacheProperties(
+				null, null, null, null, null, null, new CacheProperties.Responses(true, null, null), null);
+		var cacheManager = new ManagedCacheManager(properties, Map.of(), Map.of(), new StaticListableBeanFactory()
+				.getBeanProvider(CacheInvalidationPublisher.class));
+		cacheManager.afterPropertiesSet();
+		responseCache = new SerializedResponseCache(objectMapper, cacheManager, properties);
+
+		var projectionFactory = new SpelAwareProxyProjectionFactory();
+		postItem = projectionFactory.createProjection(PostItemView.class, getPost(1L));
+		postList = new PageImpl<>(
+				LongStream.rangeClosed(1, 20)
+						.mapToObj(id -> projectionFactory.createProjection(PostListView.class, getPost(id)))
+						.toList(),
+				PageRequest.of(0, 20), 1000);
+	}
+
+	@Benchmark
+	public byte[] postItemJackson() throws IOException {
+		return objectMapper.writeValueAsBytes(postItem);
+	}
+
+	@Benchmark
+	public byte[] postItemJacksonGzip() throws IOException {
+		return gzip(objectMapper.writeValueAsBytes(postItem));
+	}
+
+	@Benchmark
+	public byte[] postItemSerialized() {
+		return responseCache.get(postItem).json();
+	}
+
+	@Benchmark
+	public byte[] postListJackson() throws IOException {
+		return objectMapper.writeValueAsBytes(postList);
+	}
+
+	@Benchmark
+	public byte[] postListSerialized() {
+		return responseCache.get(postList).json();
+	}
+
+	private Post getPost(long id) {
+		return Post.builder()
+				.id(id)
+				.title("title " + id)
+				.description("description " + id)
+				.content("c".repeat(contentLength))
+				.createdDate(LocalDate.now())
+				.tags(Set.of("Спорт", "Наука"))
+				.author(User.builder()
+						.id(1L)
+						.name("name")
+						.surname("surname")
+						.username("username")
+						.build())
+				.build();
+	}
+
+	private static byte[] gzip(byte[] json) throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		try (var gzip = new GZIPOutputStream(bytes)) {
+			gzip.write(json);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,130 @@
+package kg.musabaev.megalabnews.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import kg.musabaev.megalabnews.config.CacheProperties;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class SerializedResponseCacheTest {
+
+	ObjectMapper objectMapper;
+	ManagedCacheManager cacheManager;
+	SerializedResponseCache responseCache;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		objectMapper = spy(JsonMapper.builder().findAndAddModules().build());
+		var responses = new CacheProperties.Responses(true, null, DataSize.ofBytes(64));
+		var properties = new CacheProperties(null, null, null, null, null, null, responses, null);
+		cacheManager = new ManagedCacheManager(properties, Map.of(), Map.of(), mock(ObjectProvider.class));
+		cacheManager.afterPropertiesSet();
+		responseCache = new SerializedResponseCache(objectMapper, cacheManager, properties);
+	}
+
+	@Test
+	void shouldSerializeOnce_whenSameBodyReturnedAgain() throws Exception {
+		Map<String, String> body = Map.of("title", "hello");
+
+		MockHttpServletResponse first = write(body, null);
+		MockHttpServletResponse second = write(body, null);
+
+		assertThat(second.getContentAsString()).isEqualTo(first.getContentAsString()).isEqualTo("{\"title\":\"hello\"}");
+		assertThat(second.getContentType()).isEqualTo(MediaType.APPLICATION_JSON_VALUE);
+		verify(objectMapper, times(1)).writeValueAsBytes(any());
+	}
+
+	@Test
+	void shouldSerializeAgain_whenBodyReplaced() throws Exception {
+		write(Map.of("title", "old"), null);
+
+		MockHttpServletResponse response = write(Map.of("title", "new"), null);
+
+		assertThat(response.getContentAsString()).isEqualTo("{\"title\":\"new\"}");
+		verify(objectMapper, times(2)).writeValueAsBytes(any());
+	}
+
+	@Test
+	void shouldWriteGzip_whenAccepted() throws Exception {
+		Map<String, String> body = Map.of("content", "c".repeat(1000));
+
+		MockHttpServletResponse gzip = write(body, "deflate, gzip;q=0.8");
+		MockHttpServletResponse plain = write(body, "gzip;q=0");
+
+		assertThat(gzip.getHeader("Content-Encoding")).isEqualTo("gzip");
+		assertThat(gzip.getContentLength()).isLessThan(plain.getContentLength());
+		assertThat(gunzip(gzip.getContentAsByteArray())).isEqualTo(plain.getContentAsByteArray());
+		assertThat(plain.getHeader("Content-Encoding")).isNull();
+	}
+
+	@Test
+	void shouldSerializeEveryTime_whenServiceCacheDisabled() throws Exception {
+		Map<String, String> body = Map.of("title", "hello");
+		cacheManager.getManagedCache("postItem").setEnabled(false);
+
+		var request = new ServletServerHttpRequest(new MockHttpServletRequest());
+		var response = new ServletServerHttpResponse(new MockHttpServletResponse());
+		Object result = responseCache.beforeBodyWrite(
+				body, getReturnType(), MediaType.APPLICATION_JSON, MappingJackson2HttpMessageConverter.class,
+				request, response);
+
+		assertThat(result).isSameAs(body);
+		verify(objectMapper, never()).writeValueAsBytes(any());
+	}
+
+	@CachedResponseBody("postItem")
+	Object getPostItem() {
+		return null;
+	}
+
+	private static MethodParameter getReturnType() throws NoSuchMethodException {
+		return new MethodParameter(SerializedResponseCacheTest.class.getDeclaredMethod("getPostItem"), -1);
+	}
+
+	private MockHttpServletResponse write(Object body, String acceptEncoding) throws Exception {
+		var request = new MockHttpServletRequest();
+		if (acceptEncoding != null) request.addHeader("Accept-Encoding", acceptEncoding);
+		var response = new MockHttpServletResponse();
+		var outputMessage = new ServletServerHttpResponse(response);
+
+		Object result = responseCache.beforeBodyWrite(
+				body, getReturnType(), MediaType.APPLICATION_JSON, MappingJackson2HttpMessageConverter.class,
+				new ServletServerHttpRequest(request), outputMessage);
+		outputMessage.flush();
+
+		assertThat(result).isNull();
+		return response;
+	}
+
+	private static byte[] gunzip(byte[] bytes) throws IOException {
+		try (var gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+			return gzip.readAllBytes();
+		}
+	}
+}
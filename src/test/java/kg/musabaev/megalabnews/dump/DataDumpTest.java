@@ -0,0 +1,132 @@
+package kg.musabaev.megalabnews.dump;
+
+import kg.musabaev.megalabnews.config.DumpProperties;
+import kg.musabaev.megalabnews.model.Comment;
+import liquibase.integration.spring.SpringLiquibase;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class DataDumpTest {
+
+	@TempDir
+	Path tempDir;
+
+	SingleConnectionDataSource source;
+	SingleConnectionDataSource target;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		source = createDatabase("dump-source");
+		target = createDatabase("dump-target");
+
+		var jdbc = new JdbcTemplate(source);
+		jdbc.update("INSERT INTO users (user_id, name, surname, username, password, user_picture_url) VALUES (1, 'n', 's', 'eld', 'hash', 'url')");
+		jdbc.update("INSERT INTO users (user_id, name, surname, username, password, deleted_at) VALUES (2, 'n', 's', 'gone', 'hash', CURRENT_TIMESTAMP)");
+		jdbc.update("INSERT INTO users_authorities (user_id, authority) VALUES (1, 'READ_POST'), (1, 'WRITE_POST')");
+		jdbc.update("INSERT INTO posts (post_id, title, description, content, created_date, author_id) VALUES (1, 'a', 'd', 'c', DATE '2023-01-02', 1)");
+		jdbc.update("INSERT INTO posts (post_id, title, description, content, created_date, author_id, deleted_at) VALUES (2, 'b', 'd', 'c', DATE '2023-01-02', 1, CURRENT_TIMESTAMP)");
+		jdbc.update("INSERT INTO posts (post_id, title, description, content, created_date, author_id) VALUES (3, 'c', 'd', 'c', DATE '2023-01-03', 2)");
+		jdbc.update("INSERT INTO posts_tags (post_id, tag) VALUES (1, 'sport'), (1, 'science'), (2, 'sport')");
+		// ответ с меньшим id, чем у родителя, не должен попасть в файл раньше родителя
+		insertComment(jdbc, 20, 1, null, "", 1);
+		insertComment(jdbc, 10, 1, 20L, Comment.getRepliesPathFrom("", 20L), 2);
+		insertComment(jdbc, 30, 1, 10L, Comment.getRepliesPathFrom(Comment.getRepliesPathFrom("", 20L), 10L), 1);
+		insertComment(jdbc, 40, 2, null, "", 1);
+		jdbc.update("INSERT INTO favourite_posts_users (user_id, post_id) VALUES (1, 1), (1, 2), (2, 3)");
+	}
+
+	@AfterEach
+	void tearDown() {
+		source.destroy();
+		target.destroy();
+	}
+
+	@Test
+	void shouldRestoreExportedLivePosts_withTheirComments() throws Exception {
+		Path file = tempDir.resolve("dump.ndjson.gz");
+
+		DumpStats exported = dataDump(source, false).export(file);
+		DumpStats restored = dataDump(target, false).restore(file);
+
+		assertThat(exported).hasToString(restored.toString());
+		assertThat(restored.getUsers()).isEqualTo(2);
+		assertThat(restored.getPosts()).isEqualTo(2);
+		assertThat(restored.getComments()).isEqualTo(3);
+		assertThat(restored.getFavourites()).isEqualTo(2);
+
+		String posts = "SELECT p.post_id, p.title, p.created_date, p.author_id, t.tag FROM posts p LEFT JOIN posts_tags t ON t.post_id = p.post_id WHERE p.deleted_at IS NULL ORDER BY p.post_id, t.tag";
+		String comments = "SELECT comment_id, post_id, parent_comment_id, path, author_id FROM comments WHERE post_id <> 2 ORDER BY comment_id";
+		String users = "SELECT u.user_id, u.username, u.user_picture_url, u.deleted_at, a.authority FROM users u LEFT JOIN users_authorities a ON a.user_id = u.user_id ORDER BY u.user_id, a.authority";
+		String favourites = "SELECT user_id, post_id FROM favourite_posts_users WHERE post_id <> 2 ORDER BY user_id, post_id";
+		for (String sql : List.of(posts, comments, users, favourites))
+			assertThat(query(target, sql)).isEqualTo(query(source, sql));
+		assertThat(new JdbcTemplate(target).queryForList("SELECT password FROM users", String.class)).containsOnly("");
+	}
+
+	@Test
+	void shouldRestartSequences_afterRestoredIds() throws Exception {
+		Path file = tempDir.resolve("dump.ndjson.gz");
+		dataDump(source, true).export(file);
+
+		dataDump(target, true).restore(file);
+
+		var jdbc = new JdbcTemplate(target);
+		assertThat(jdbc.queryForList("SELECT password FROM users", String.class)).containsOnly("hash");
+		assertThat(jdbc.queryForObject("SELECT NEXT VALUE FOR comments_seq", Long.class)).isEqualTo(30 + 50);
+		assertThat(jdbc.queryForObject("SELECT NEXT VALUE FOR posts_seq", Long.class)).isEqualTo(3 + 50);
+	}
+
+	@Test
+	void shouldRejectRestore_whenDatabaseNotEmpty() throws Exception {
+		Path file = tempDir.resolve("dump.ndjson.gz");
+		dataDump(source, false).export(file);
+
+		assertThatThrownBy(() -> dataDump(source, false).restore(file))
+				.isInstanceOf(IllegalStateException.class);
+		assertThat(new JdbcTemplate(source).queryForObject("SELECT COUNT(*) FROM posts", Long.class)).isEqualTo(3);
+	}
+
+	private static DataDump dataDump(SingleConnectionDataSource dataSource, boolean includePasswords) {
+		return new DataDump(
+				dataSource,
+				new DataSourceTransactionManager(dataSource),
+				Jackson2ObjectMapperBuilder.json().build(),
+				new DumpProperties(null, null, 2, 2, includePasswords));
+	}
+
+	private static SingleConnectionDataSource createDatabase(String name) throws Exception {
+		var dataSource = new SingleConnectionDataSource("jdbc:h2:mem:" + name, "sa", "", true);
+		var liquibase = new SpringLiquibase();
+		liquibase.setDataSource(dataSource);
+		liquibase.setChangeLog("classpath:db/changelog/changelog.yml");
+		liquibase.setResourceLoader(new DefaultResourceLoader());
+		liquibase.afterPropertiesSet();
+		return dataSource;
+	}
+
+	private static void insertComment(JdbcTemplate jdbc, long id, long postId, Long parentId, String path, long authorId) {
+		jdbc.update("INSERT INTO comments (comment_id, post_id, parent_comment_id, path, author_id, content, created_date) VALUES (?, ?, ?, ?, ?, 'text', DATE '2023-01-04')",
+				id, postId, parentId, path, authorId);
+	}
+
+	private static List<Map<String, Object>> query(SingleConnectionDataSource dataSource, String sql) {
+		return new JdbcTemplate(dataSource).queryForList(sql);
+	}
+}
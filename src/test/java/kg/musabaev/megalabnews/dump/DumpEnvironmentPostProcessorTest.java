@@ -0,0 +1,56 @@
+package kg.musabaev.megalabnews.dump;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class DumpEnvironmentPostProcessorTest {
+
+	final DumpEnvironmentPostProcessor postProcessor = new DumpEnvironmentPostProcessor();
+
+	@Test
+	void shouldSwitchOffNodeFeatures_whenExporting() {
+		var environment = getNodeEnvironment().withProperty("app.dump.export", "dump.ndjson.gz");
+
+		postProcessor.postProcessEnvironment(environment, new SpringApplication());
+
+		assertThat(environment.getProperty("server.port")).isEqualTo("-1");
+		assertThat(environment.getProperty("app.cache.snapshot.enabled")).isEqualTo("false");
+		assertThat(environment.getProperty("app.cache.bus.enabled")).isEqualTo("false");
+		assertThat(environment.getProperty("app.cache.warm-up.enabled")).isEqualTo("false");
+		assertThat(environment.getProperty("app.purge.enabled")).isEqualTo("false");
+	}
+
+	@Test
+	void shouldSwitchOffNodeFeatures_whenRestoring() {
+		var environment = getNodeEnvironment().withProperty("app.dump.restore", "dump.ndjson.gz");
+
+		postProcessor.postProcessEnvironment(environment, new SpringApplication());
+
+		assertThat(environment.getProperty("app.cache.snapshot.enabled")).isEqualTo("false");
+	}
+
+	@Test
+	void shouldNotChangeEnvironment_whenRunningAsNode() {
+		var environment = getNodeEnvironment();
+
+		postProcessor.postProcessEnvironment(environment, new SpringApplication());
+
+		assertThat(environment.getPropertySources().contains(DumpEnvironmentPostProcessor.PROPERTY_SOURCE_NAME)).isFalse();
+		assertThat(environment.getProperty("app.cache.snapshot.enabled")).isEqualTo("true");
+	}
+
+	private static MockEnvironment getNodeEnvironment() {
+		return new MockEnvironment()
+				.withProperty("server.port", "8080")
+				.withProperty("app.cache.snapshot.enabled", "true")
+				.withProperty("app.cache.bus.enabled", "true")
+				.withProperty("app.cache.warm-up.enabled", "true")
+				.withProperty("app.purge.enabled", "true");
+	}
+}
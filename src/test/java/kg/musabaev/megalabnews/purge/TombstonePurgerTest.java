@@ -0,0 +1,158 @@
+package kg.musabaev.megalabnews.purge;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kg.musabaev.megalabnews.cache.CacheInvalidationStats;
+import kg.musabaev.megalabnews.cache.ManagedCacheManager;
+import kg.musabaev.megalabnews.cache.SecondLevelCacheInvalidations;
+import kg.musabaev.megalabnews.config.PurgeProperties;
+import kg.musabaev.megalabnews.model.Comment;
+import kg.musabaev.megalabnews.model.Post;
+import kg.musabaev.megalabnews.repository.CommentRepo;
+import kg.musabaev.megalabnews.repository.PostRepo;
+import kg.musabaev.megalabnews.repository.RefreshTokenRepo;
+import kg.musabaev.megalabnews.repository.UserRepo;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class TombstonePurgerTest {
+
+	static final int BATCH_SIZE = 2;
+
+	@Mock
+	PostRepo postRepo;
+	@Mock
+	UserRepo userRepo;
+	@Mock
+	CommentRepo commentRepo;
+	@Mock
+	RefreshTokenRepo refreshTokenRepo;
+	@Mock
+	TransactionTemplate transactionTemplate;
+	@Mock
+	ManagedCacheManager cacheManager;
+	@Mock
+	CacheInvalidationStats invalidationStats;
+	@Mock
+	SecondLevelCacheInvalidations secondLevelCache;
+
+	TombstonePurger purger;
+
+	@BeforeEach
+	void setUp() {
+		purger = new TombstonePurger(
+				postRepo, userRepo, commentRepo, refreshTokenRepo, transactionTemplate, cacheManager, invalidationStats,
+				secondLevelCache, new PurgeProperties(true, Duration.ofSeconds(1), BATCH_SIZE, 3),
+				"storage", "post-image", "user-picture");
+	}
+
+	@Test
+	void shouldDeleteOnlyComments_whenPostHasFullBatchOfComments() {
+		when(postRepo.findFirstDeletedId()).thenReturn(Optional.of(1L));
+		when(commentRepo.findDeepestIdsByPostId(1L, BATCH_SIZE)).thenReturn(List.of(5L, 4L));
+		when(commentRepo.deleteAllByIdIn(List.of(5L, 4L))).thenReturn(2);
+
+		assertThat(purger.purgeBatch(new HashSet<>())).isTrue();
+
+		verify(userRepo, never()).deleteFromFavouritePostsOfAllUsers(anyLong(), anyInt());
+		verify(postRepo, never()).purgeById(any());
+	}
+
+	@Test
+	void shouldPurgePost_whenCommentsAndFavouritesFitInBatch() {
+		when(postRepo.findFirstDeletedId()).thenReturn(Optional.of(1L));
+		when(commentRepo.findDeepestIdsByPostId(1L, BATCH_SIZE)).thenReturn(List.of(4L));
+		when(commentRepo.deleteAllByIdIn(List.of(4L))).thenReturn(1);
+		when(userRepo.deleteFromFavouritePostsOfAllUsers(1L, BATCH_SIZE)).thenReturn(1);
+
+		assertThat(purger.purgeBatch(new HashSet<>())).isTrue();
+
+		verify(postRepo).deleteTagsByPostId(1L);
+		verify(postRepo).purgeById(1L);
+		verify(userRepo, never()).findFirstDeletedId();
+	}
+
+	@Test
+	void shouldMarkPostsDeleted_whenDeletedUserStillHasPosts() {
+		when(postRepo.findFirstDeletedId()).thenReturn(Optional.empty());
+		when(userRepo.findFirstDeletedId()).thenReturn(Optional.of(7L));
+		when(postRepo.existsAnyByAuthorId(7L)).thenReturn(true);
+
+		assertThat(purger.purgeBatch(new HashSet<>())).isTrue();
+
+		verify(postRepo).markDeletedByAuthorId(7L);
+		verify(secondLevelCache).publishAllPostsChange();
+		verify(userRepo, never()).purgeById(any());
+	}
+
+	@Test
+	void shouldDeleteUserCommentWithReplies_whenRepliesFitInBatch() {
+		Comment comment = Comment.builder().id(3L).post(Post.builder().id(1L).build()).path("").build();
+		when(postRepo.findFirstDeletedId()).thenReturn(Optional.empty());
+		when(userRepo.findFirstDeletedId()).thenReturn(Optional.of(7L));
+		when(commentRepo.findFirstByAuthorIdOrderById(7L)).thenReturn(Optional.of(comment));
+		when(commentRepo.findDeepestDescendantIds(
+				1L, Comment.getRepliesPathFrom("", 3L), Comment.getRepliesPathTo("", 3L), BATCH_SIZE))
+				.thenReturn(List.of(9L));
+
+		Set<Long> postsWithDeletedComments = new HashSet<>();
+		assertThat(purger.purgeBatch(postsWithDeletedComments)).isTrue();
+
+		assertThat(postsWithDeletedComments).containsExactly(1L);
+		verify(commentRepo).deleteAllByIdIn(List.of(9L));
+		verify(commentRepo).deleteAllByIdIn(List.of(3L));
+		verify(userRepo, never()).purgeById(any());
+	}
+
+	@Test
+	void shouldPurgeUser_whenNothingReferencesIt() {
+		when(postRepo.findFirstDeletedId()).thenReturn(Optional.empty());
+		when(userRepo.findFirstDeletedId()).thenReturn(Optional.of(7L));
+		when(commentRepo.findFirstByAuthorIdOrderById(7L)).thenReturn(Optional.empty());
+
+		assertThat(purger.purgeBatch(new HashSet<>())).isTrue();
+
+		verify(userRepo).deleteAllFromFavouritePosts(7L, BATCH_SIZE);
+		verify(userRepo).deleteAuthoritiesByUserId(7L);
+		verify(refreshTokenRepo).deleteByOwnerId(7L);
+		verify(userRepo).purgeById(7L);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void shouldStopAfterMaxBatches_thenReportBacklog() {
+		var registry = new SimpleMeterRegistry();
+		purger.bindTo(registry);
+		when(transactionTemplate.execute(any())).then(i -> ((TransactionCallback<Boolean>) i.getArgument(0)).doInTransaction(null));
+		when(postRepo.findFirstDeletedId()).thenReturn(Optional.of(1L));
+		when(commentRepo.findDeepestIdsByPostId(1L, BATCH_SIZE)).thenReturn(List.of(5L, 4L));
+		when(commentRepo.deleteAllByIdIn(List.of(5L, 4L))).thenReturn(2);
+		when(postRepo.countDeleted()).thenReturn(1L);
+		when(userRepo.countDeleted()).thenReturn(4L);
+
+		assertThat(purger.purge()).isEqualTo(3);
+
+		assertThat(registry.get("purge.backlog").tag("type", "posts").gauge().value()).isEqualTo(1);
+		assertThat(registry.get("purge.backlog").tag("type", "users").gauge().value()).isEqualTo(4);
+	}
+}
@@ -0,0 +1,222 @@
+package kg.musabaev.megalabnews.replica;
+
+import kg.musabaev.megalabnews.config.ReplicaProperties;
+import jakarta.servlet.http.Cookie;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class ReplicaRoutingDataSourceTest {
+
+	static final Duration WINDOW = Duration.ofSeconds(10);
+
+	final AtomicLong millis = new AtomicLong();
+
+	DriverManagerDataSource primary;
+	DriverManagerDataSource replica;
+	ReplicaRoutingDataSource routing;
+	JdbcTemplate jdbc;
+	TransactionTemplate readOnlyTransaction;
+	TransactionTemplate transaction;
+
+	@BeforeEach
+	void setUp() {
+		primary = createDatabase("primary");
+		replica = createDatabase("replica");
+		route(replica);
+	}
+
+	@AfterEach
+	void tearDown() {
+		SecurityContextHolder.clearContext();
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Test
+	void shouldReadFromReplica_onlyInReadOnlyTransaction() {
+		routing.checkReplicas();
+
+		assertThat(readOnlyNode()).isEqualTo("replica");
+		assertThat(readWriteNode()).isEqualTo("primary");
+		assertThat(currentNode()).isEqualTo("primary");
+	}
+
+	@Test
+	void shouldReadFromPrimary_untilReplicaChecked() {
+		assertThat(readOnlyNode()).isEqualTo("primary");
+	}
+
+	@Test
+	void shouldFallBackToPrimary_whenReplicaStopsGivingConnections() throws SQLException {
+		DataSource failing = mock(DataSource.class);
+		when(failing.getConnection())
+				.thenAnswer(invocation -> replica.getConnection())
+				.thenThrow(new SQLException("connection refused"));
+		route(failing);
+		routing.checkReplicas();
+
+		assertThat(readOnlyNode()).isEqualTo("primary");
+		assertThat(routing.chooseReplica()).isNull();
+	}
+
+	@Test
+	void shouldPinUserToPrimary_forWindowAfterWrite() {
+		routing.checkReplicas();
+		authenticate("writer");
+		transaction.executeWithoutResult(status -> jdbc.update("UPDATE node SET name = name"));
+
+		assertThat(readOnlyNode()).isEqualTo("primary");
+		authenticate("reader");
+		assertThat(readOnlyNode()).isEqualTo("replica");
+
+		authenticate("writer");
+		millis.addAndGet(WINDOW.plusSeconds(1).toMillis());
+		assertThat(readOnlyNode()).isEqualTo("replica");
+	}
+
+	@Test
+	void shouldPinClientToPrimaryOnAnotherNode_withCookieSetAfterWrite() {
+		routing.checkReplicas();
+		authenticate("writer");
+		var response = new MockHttpServletResponse();
+		bindRequest(new MockHttpServletRequest(), response);
+		transaction.executeWithoutResult(status -> jdbc.update("UPDATE node SET name = name"));
+		Cookie cookie = response.getCookie(ReadYourWrites.COOKIE_NAME);
+		assertThat(cookie).isNotNull();
+		assertThat(cookie.getMaxAge()).isEqualTo(WINDOW.toSeconds());
+
+		// следующий запрос пришел на другой узел, который про запись не знает
+		route(replica);
+		routing.checkReplicas();
+		var request = new MockHttpServletRequest();
+		bindRequest(request, new MockHttpServletResponse());
+		assertThat(readOnlyNode()).isEqualTo("replica");
+
+		request.setCookies(cookie);
+		assertThat(readOnlyNode()).isEqualTo("primary");
+
+		millis.addAndGet(WINDOW.plusSeconds(1).toMillis());
+		assertThat(readOnlyNode()).isEqualTo("replica");
+	}
+
+	@Test
+	void shouldNotPinUser_whenWriteRolledBack() {
+		routing.checkReplicas();
+		authenticate("writer");
+		transaction.executeWithoutResult(status -> {
+			jdbc.update("UPDATE node SET name = name");
+			status.setRollbackOnly();
+		});
+
+		assertThat(readOnlyNode()).isEqualTo("replica");
+	}
+
+	@Test
+	void shouldReadFromPrimary_insidePrimaryReads() {
+		routing.checkReplicas();
+
+		assertThat(PrimaryReads.call(this::readOnlyNode)).isEqualTo("primary");
+		assertThat(PrimaryReads.isRequired()).isFalse();
+	}
+
+	@Test
+	void shouldLoadCacheValueFromReplica_whenReplicaKeepsUp() {
+		routing.checkReplicas();
+
+		assertThat(CacheLoads.call(this::readOnlyNode)).isEqualTo("replica");
+		assertThat(CacheLoads.isActive()).isFalse();
+	}
+
+	@Test
+	void shouldLoadCacheValueFromPrimary_whenReplicaLagsMoreThanCacheLoadMaxLag() throws SQLException {
+		Connection lagging = mock(Connection.class, RETURNS_DEEP_STUBS);
+		when(lagging.isValid(anyInt())).thenReturn(true);
+		when(lagging.getMetaData().getDatabaseProductName()).thenReturn("PostgreSQL");
+		when(lagging.createStatement().executeQuery(anyString()).next()).thenReturn(true);
+		when(lagging.createStatement().executeQuery(anyString()).getDouble(1)).thenReturn(5.0);
+		DataSource laggingReplica = mock(DataSource.class);
+		when(laggingReplica.getConnection())
+				.thenReturn(lagging)
+				.thenAnswer(invocation -> replica.getConnection());
+		route(laggingReplica);
+		routing.checkReplicas();
+
+		assertThat(CacheLoads.call(this::readOnlyNode)).isEqualTo("primary");
+		assertThat(readOnlyNode()).isEqualTo("replica");
+	}
+
+	private void route(DataSource replicaDataSource) {
+		var properties = new ReplicaProperties(true, List.of("replica"), null, null, null, null, null, null, WINDOW, null);
+		routing = new ReplicaRoutingDataSource(
+				primary,
+				Map.of("replica-0", replicaDataSource),
+				new ReadYourWrites(WINDOW, millis::get),
+				properties);
+		DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+		jdbc = new JdbcTemplate(dataSource);
+		var transactionManager = new DataSourceTransactionManager(dataSource);
+		transaction = new TransactionTemplate(transactionManager);
+		readOnlyTransaction = new TransactionTemplate(transactionManager);
+		readOnlyTransaction.setReadOnly(true);
+	}
+
+	private String readOnlyNode() {
+		return readOnlyTransaction.execute(status -> currentNode());
+	}
+
+	private String readWriteNode() {
+		return transaction.execute(status -> currentNode());
+	}
+
+	private String currentNode() {
+		return jdbc.queryForObject("SELECT name FROM node", String.class);
+	}
+
+	private static void bindRequest(MockHttpServletRequest request, MockHttpServletResponse response) {
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+	}
+
+	private static void authenticate(String username) {
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken(username, null, List.of()));
+	}
+
+	private static DriverManagerDataSource createDatabase(String name) {
+		var dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+		var jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("CREATE TABLE node (name VARCHAR(16))");
+		jdbc.update("INSERT INTO node (name) VALUES (?)", name);
+		return dataSource;
+	}
+}
@@ -0,0 +1,135 @@
+package kg.musabaev.megalabnews.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import kg.musabaev.megalabnews.model.Comment;
+import kg.musabaev.megalabnews.model.Post;
+import kg.musabaev.megalabnews.model.User;
+import liquibase.integration.spring.SpringLiquibase;
+import org.h2.tools.Server;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнивает вставку {@link #COMMENTS_COUNT} комментариев через {@link CommentRepo#saveAll}
+ * при генерации id автоинкрементом (как было раньше, Hibernate отключает пакетную вставку)
+ * и последовательностью с пачками по 50, с теми же настройками пакетной вставки, что в application.yml.
+ * Результат — вставленных строк в секунду. H2 запускается TCP-сервером, чтобы каждый запрос,
+ * как и с PostgreSQL, был обращением по сети. Схема создается миграциями Liquibase,
+ * прежняя генерация id задается переопределением из {@code benchmark/comment-identity-orm.xml},
+ * комментарии удаляются перед каждой итерацией.
+ * <p>
+ * Запуск:
+ * <pre>
+ * ./mvnw test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main CommentBatchInsertBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(CommentBatchInsertBenchmark.COMMENTS_COUNT)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=benchmark/logback.xml")
+public class CommentBatchInsertBenchmark {
+
+	static final int COMMENTS_COUNT = 1000;
+	static final long POST_ID = 1L;
+	static final long AUTHOR_ID = 1L;
+
+	@Param({"identity", "sequence"})
+	String idGeneration;
+
+	Server server;
+	SingleConnectionDataSource dataSource;
+	JdbcTemplate jdbcTemplate;
+	LocalContainerEntityManagerFactoryBean entityManagerFactoryBean;
+	EntityManager entityManager;
+	TransactionTemplate transactionTemplate;
+	CommentRepo commentRepo;
+
+	@Setup
+	public void setUp() throws Exception {
+		server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+		dataSource = new SingleConnectionDataSource(
+				"jdbc:h2:tcp://localhost:" + server.getPort() + "/mem:comment-batch-insert", "sa", "", true);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+
+		var liquibase = new SpringLiquibase();
+		liquibase.setDataSource(dataSource);
+		liquibase.setChangeLog("classpath:db/changelog/changelog.yml");
+		liquibase.setResourceLoader(new DefaultResourceLoader());
+		liquibase.afterPropertiesSet();
+
+		jdbcTemplate.update("INSERT INTO users (user_id, name, surname, username, password) VALUES (?, 'n', 's', 'u', 'p')", AUTHOR_ID);
+		jdbcTemplate.update("INSERT INTO posts (post_id, title, description, content, created_date, author_id) " +
+				"VALUES (?, 't', 'd', 'c', CURRENT_DATE, ?)", POST_ID, AUTHOR_ID);
+
+		entityManagerFactoryBean = new LocalContainerEntityManagerFactoryBean();
+		entityManagerFactoryBean.setDataSource(dataSource);
+		entityManagerFactoryBean.setPackagesToScan("kg.musabaev.megalabnews.model");
+		if (idGeneration.equals("identity"))
+			entityManagerFactoryBean.setMappingResources("benchmark/comment-identity-orm.xml");
+		entityManagerFactoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+		entityManagerFactoryBean.setJpaPropertyMap(Map.of(
+				"hibernate.physical_naming_strategy", CamelCaseToUnderscoresNamingStrategy.class.getName(),
+				"hibernate.implicit_naming_strategy", SpringImplicitNamingStrategy.class.getName(),
+				"hibernate.jdbc.batch_size", "50",
+				"hibernate.order_inserts", "true",
+				"hibernate.order_updates", "true"));
+		entityManagerFactoryBean.afterPropertiesSet();
+
+		EntityManagerFactory entityManagerFactory = entityManagerFactoryBean.getObject();
+		entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+		transactionTemplate = new TransactionTemplate(new JpaTransactionManager(entityManagerFactory));
+		commentRepo = new JpaRepositoryFactory(entityManager).getRepository(CommentRepo.class);
+	}
+
+	@Setup(Level.Iteration)
+	public void deleteComments() {
+		jdbcTemplate.update("DELETE FROM comments");
+	}
+
+	@TearDown
+	public void tearDown() {
+		entityManagerFactoryBean.destroy();
+		dataSource.destroy();
+		server.stop();
+	}
+
+	@Benchmark
+	public int saveAll() {
+		return transactionTemplate.execute(status -> {
+			Post post = entityManager.getReference(Post.class, POST_ID);
+			User author = entityManager.getReference(User.class, AUTHOR_ID);
+			LocalDate createdDate = LocalDate.now();
+			List<Comment> comments = new ArrayList<>(COMMENTS_COUNT);
+			for (int i = 0; i < COMMENTS_COUNT; i++)
+				comments.add(Comment.builder()
+						.post(post)
+						.author(author)
+						.path("")
+						.content("comment " + i)
+						.createdDate(createdDate)
+						.build());
+			return commentRepo.saveAll(comments).size();
+		});
+	}
+}
@@ -0,0 +1,128 @@
+package kg.musabaev.megalabnews.repository;
+
+import kg.musabaev.megalabnews.model.Comment;
+import liquibase.integration.spring.SpringLiquibase;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнивает удаление дерева из {@link #COMMENTS_COUNT} комментариев в H2:
+ * прежний обход в глубину (запрос ответов и удаление на каждый комментарий)
+ * и удаление запросами {@link CommentRepo} по диапазону путей поддерева и по публикации.
+ * Схема создается миграциями Liquibase, дерево вставляется заново перед каждым удалением,
+ * у каждого комментария {@link #fanOut} ответов.
+ * <p>
+ * Запуск:
+ * <pre>
+ * ./mvnw test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main CommentDeletionBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CommentDeletionBenchmark {
+
+	static final int COMMENTS_COUNT = 10_000;
+	static final long POST_ID = 1L;
+	static final long ROOT_ID = 1L;
+
+	@Param({"2", "10", "100"})
+	int fanOut;
+
+	SingleConnectionDataSource dataSource;
+	JdbcTemplate jdbcTemplate;
+	NamedParameterJdbcTemplate namedJdbcTemplate;
+
+	@Setup
+	public void setUp() throws Exception {
+		dataSource = new SingleConnectionDataSource("jdbc:h2:mem:comment-deletion", "sa", "", true);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+
+		var liquibase = new SpringLiquibase();
+		liquibase.setDataSource(dataSource);
+		liquibase.setChangeLog("classpath:db/changelog/changelog.yml");
+		liquibase.setResourceLoader(new DefaultResourceLoader());
+		liquibase.afterPropertiesSet();
+
+		jdbcTemplate.update("INSERT INTO users (user_id, name, surname, username, password) VALUES (1, 'n', 's', 'u', 'p')");
+		jdbcTemplate.update("INSERT INTO posts (post_id, title, description, content, created_date, author_id) " +
+				"VALUES (?, 't', 'd', 'c', CURRENT_DATE, 1)", POST_ID);
+	}
+
+	@Setup(Level.Invocation)
+	public void insertTree() {
+		List<Object[]> rows = new ArrayList<>(COMMENTS_COUNT);
+		Date createdDate = Date.valueOf(LocalDate.now());
+		Map<Long, String> paths = new HashMap<>();
+		for (long id = ROOT_ID; id < ROOT_ID + COMMENTS_COUNT; id++) {
+			Long parentId = id == ROOT_ID ? null : ROOT_ID + (id - ROOT_ID - 1) / fanOut;
+			String path = parentId == null ? "" : Comment.getRepliesPathFrom(paths.get(parentId), parentId);
+			paths.put(id, path);
+			rows.add(new Object[]{id, POST_ID, parentId, path, "comment " + id, createdDate});
+		}
+		jdbcTemplate.batchUpdate(
+				"INSERT INTO comments (comment_id, post_id, parent_comment_id, path, author_id, content, created_date) " +
+						"VALUES (?, ?, ?, ?, 1, ?, ?)", rows);
+	}
+
+	@TearDown
+	public void tearDown() {
+		dataSource.destroy();
+	}
+
+	@Benchmark
+	public int perNode() {
+		return deleteRecursively(List.of(ROOT_ID));
+	}
+
+	@Benchmark
+	public int subtree() {
+		var params = Map.of(
+				"postId", POST_ID,
+				"commentId", ROOT_ID,
+				"pathFrom", Comment.getRepliesPathFrom("", ROOT_ID),
+				"pathTo", Comment.getRepliesPathTo("", ROOT_ID));
+		namedJdbcTemplate.update(CommentRepo.DETACH_DESCENDANTS, params);
+		return namedJdbcTemplate.update(CommentRepo.DELETE_DESCENDANTS, params)
+				+ namedJdbcTemplate.update(CommentRepo.DELETE_BY_ID, params);
+	}
+
+	@Benchmark
+	public int allOfPost() {
+		var params = Map.of("postId", POST_ID);
+		namedJdbcTemplate.update(CommentRepo.DETACH_FROM_PARENTS_BY_POST_ID, params);
+		return namedJdbcTemplate.update(CommentRepo.DELETE_BY_POST_ID, params);
+	}
+
+	/**
+	 * Те же запросы, что выполнялись через {@code getAllChildCommentIdByParentId}
+	 * и {@code CrudRepository.deleteById}, который перед удалением загружает сущность
+	 */
+	private int deleteRecursively(List<Long> commentsId) {
+		int deleted = 0;
+		for (Long commentId : commentsId) {
+			deleted += deleteRecursively(jdbcTemplate.queryForList(
+					"SELECT comment_id FROM comments WHERE parent_comment_id = ? AND post_id = ?",
+					Long.class, commentId, POST_ID));
+			jdbcTemplate.queryForMap("SELECT * FROM comments WHERE comment_id = ?", commentId);
+			deleted += jdbcTemplate.update("DELETE FROM comments WHERE comment_id = ?", commentId);
+		}
+		return deleted;
+	}
+}
@@ -1,30 +1,43 @@
 package kg.musabaev.megalabnews.service;
 
+import kg.musabaev.megalabnews.cache.NegativeCache;
+import kg.musabaev.megalabnews.dto.CommentCursor;
+import kg.musabaev.megalabnews.dto.CommentTree;
+import kg.musabaev.megalabnews.dto.CursorPage;
 import kg.musabaev.megalabnews.dto.NewCommentRequest;
 import kg.musabaev.megalabnews.dto.UpdateCommentRequest;
 import kg.musabaev.megalabnews.exception.CommentNotFoundException;
 import kg.musabaev.megalabnews.exception.PostNotFoundException;
+import kg.musabaev.megalabnews.exception.ResponseStatusBadRequestException;
 import kg.musabaev.megalabnews.mapper.CommentMapper;
 import kg.musabaev.megalabnews.model.Comment;
 import kg.musabaev.megalabnews.repository.CommentRepo;
 import kg.musabaev.megalabnews.repository.PostRepo;
 import kg.musabaev.megalabnews.repository.projection.CommentListView;
+import kg.musabaev.megalabnews.repository.projection.CommentTreeRow;
+import kg.musabaev.megalabnews.repository.projection.ReplyCountRow;
 import kg.musabaev.megalabnews.service.impl.SimpleCommentService;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mapstruct.factory.Mappers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.*;
@@ -39,6 +52,8 @@ class CommentServiceTest {
 	CommentRepo commentRepo;
 	@Mock
 	PostRepo postRepo;
+	@Mock
+	NegativeCache negativeCache;
 	@Spy
 	CommentMapper commentMapper = Mappers.getMapper(CommentMapper.class);
 
@@ -71,7 +86,7 @@ class CommentServiceTest {
 
 		when(postRepo.existsById(postId)).thenReturn(false);
 
-		assertThatThrownBy(() -> service.save(postId, any()))
+		assertThatThrownBy(() -> service.save(postId, null))
 				.isInstanceOf(PostNotFoundException.class);
 
 		verify(commentRepo, never()).save(any());
@@ -85,7 +100,7 @@ class CommentServiceTest {
 		var newCommentRequest = getNewCommentRequest(parentCommentId);
 
 		when(postRepo.existsById(postId)).thenReturn(true);
-		when(commentRepo.existsByIdAndPostId(parentCommentId, postId)).thenReturn(true);
+		when(commentRepo.findPathByIdAndPostId(parentCommentId, postId)).thenReturn(Optional.of("00000000000a1"));
 		when(commentRepo.getReferenceById(parentCommentId)).thenReturn(parentComment);
 		when(commentRepo.save(any(Comment.class))).then(i -> i.getArgument(0));
 
@@ -96,7 +111,24 @@ class CommentServiceTest {
 				.comparingOnlyFields("parentId", "content")
 				.isEqualTo(newCommentResponse);
 
-		verify(commentRepo, times(1)).save(any());
+		var savedComment = ArgumentCaptor.forClass(Comment.class);
+		verify(commentRepo, times(1)).save(savedComment.capture());
+		assertThat(savedComment.getValue().getPath()).isEqualTo("00000000000a1" + "000000000000y");
+	}
+
+	@Test
+	void shouldThrowBadRequest_whenReplyTooDeep() {
+		Long postId = 321L;
+		Long parentCommentId = 34L;
+
+		when(postRepo.existsById(postId)).thenReturn(true);
+		when(commentRepo.findPathByIdAndPostId(parentCommentId, postId))
+				.thenReturn(Optional.of("0".repeat(Comment.PATH_MAX_LENGTH)));
+
+		assertThatThrownBy(() -> service.save(postId, getNewCommentRequest(parentCommentId)))
+				.isInstanceOf(ResponseStatusBadRequestException.class);
+
+		verify(commentRepo, never()).save(any());
 	}
 
 	@Test
@@ -106,7 +138,7 @@ class CommentServiceTest {
 		var newCommentRequest = getNewCommentRequest(parentCommentId);
 
 		when(postRepo.existsById(postId)).thenReturn(true);
-		when(commentRepo.existsByIdAndPostId(parentCommentId, postId)).thenReturn(false);
+		when(commentRepo.findPathByIdAndPostId(parentCommentId, postId)).thenReturn(Optional.empty());
 
 		assertThatThrownBy(() -> service.save(postId, newCommentRequest))
 				.isInstanceOf(CommentNotFoundException.class);
@@ -159,7 +191,7 @@ class CommentServiceTest {
 
 		when(postRepo.existsById(postId)).thenReturn(false);
 
-		assertThatThrownBy(() -> service.getChildrenByParentId(postId, anyLong(), Pageable.ofSize(10)))
+		assertThatThrownBy(() -> service.getChildrenByParentId(postId, 1L, Pageable.ofSize(10)))
 				.isInstanceOf(PostNotFoundException.class);
 	}
 
@@ -177,6 +209,113 @@ class CommentServiceTest {
 		verify(commentRepo, never()).findChildrenByParentIdAndPostId(anyLong(), anyLong(), any());
 	}
 
+	@Test
+	void shouldReturnRootCommentsAfterCursorWithNextCursor_whenMoreCommentsExist() {
+		Long postId = 324L;
+		var pageable = PageRequest.of(0, 3, Sort.by("id"));
+
+		when(postRepo.existsById(postId)).thenReturn(true);
+		when(commentRepo.findRootsByPostIdAndParentIsNullAndIdGreaterThan(postId, 7L, pageable))
+				.thenReturn(new SliceImpl<>(getComments().getContent(), pageable, true));
+
+		CursorPage<CommentListView> rootComments =
+				service.getRootsByPostIdAfter(postId, new CommentCursor(7L).encode(), 3);
+
+		assertThat(rootComments.content()).hasSize(3);
+		assertThat(CommentCursor.decode(rootComments.next())).isEqualTo(new CommentCursor(1L));
+	}
+
+	@Test
+	void shouldReturnFirstChildCommentsWithoutNextCursor_whenLastPage() {
+		Long postId = 321L;
+		Long parentCommentId = 32L;
+		var pageable = PageRequest.of(0, 10, Sort.by("id"));
+
+		when(postRepo.existsById(postId)).thenReturn(true);
+		when(commentRepo.existsByIdAndPostId(parentCommentId, postId)).thenReturn(true);
+		when(commentRepo.findChildrenByParentIdAndPostIdAndIdGreaterThan(parentCommentId, postId, 0L, pageable))
+				.thenReturn(new SliceImpl<>(getComments().getContent(), pageable, false));
+
+		CursorPage<CommentListView> childComments = service.getChildrenByParentIdAfter(postId, parentCommentId, "", 10);
+
+		assertThat(childComments.content()).hasSize(3);
+		assertThat(childComments.next()).isNull();
+	}
+
+	@Test
+	void shouldThrowBadRequest_whenCommentCursorCorrupted() {
+		assertThatThrownBy(() -> service.getRootsByPostIdAfter(1L, "-", 10))
+				.isInstanceOf(ResponseStatusBadRequestException.class);
+		assertThatThrownBy(() -> service.getChildrenByParentIdAfter(1L, 2L, "", 101))
+				.isInstanceOf(ResponseStatusBadRequestException.class);
+
+		verifyNoInteractions(commentRepo, postRepo);
+	}
+
+	@Test
+	void shouldAssembleCommentTree_fromRowsOrderedByLevel() {
+		Long postId = 324L;
+
+		when(postRepo.existsById(postId)).thenReturn(true);
+		when(commentRepo.findTreeByPostId(postId, 3 * Comment.PATH_SEGMENT_LENGTH, 11)).thenReturn(List.of(
+				getCommentTreeRow(1L, null),
+				getCommentTreeRow(4L, null),
+				getCommentTreeRow(2L, 1L),
+				getCommentTreeRow(5L, 4L),
+				getCommentTreeRow(6L, 1L),
+				getCommentTreeRow(3L, 2L)));
+
+		CommentTree tree = service.getTree(postId, null, 3, 10);
+
+		assertThat(tree.truncated()).isFalse();
+		assertThat(tree.comments()).extracting(CommentTree.Node::id).containsExactly(1L, 4L);
+		CommentTree.Node first = tree.comments().get(0);
+		assertThat(first.replies()).extracting(CommentTree.Node::id).containsExactly(2L, 6L);
+		assertThat(first.replies().get(0).replies()).extracting(CommentTree.Node::id).containsExactly(3L);
+		assertThat(first.author().username()).isEqualTo("user");
+		assertThat(tree.comments().get(1).replies()).extracting(CommentTree.Node::id).containsExactly(5L);
+	}
+
+	@Test
+	void shouldTruncateCommentSubtree_whenMoreCommentsThanLimit() {
+		Long postId = 321L;
+		Long parentCommentId = 32L;
+
+		when(postRepo.existsById(postId)).thenReturn(true);
+		when(commentRepo.findPathByIdAndPostId(parentCommentId, postId)).thenReturn(Optional.of(""));
+		when(commentRepo.findTreeByPostIdAndPathRange(
+				postId, "000000000000w", "000000000000x", 9 * Comment.PATH_SEGMENT_LENGTH, 3)).thenReturn(List.of(
+				getCommentTreeRow(33L, parentCommentId),
+				getCommentTreeRow(34L, parentCommentId),
+				getCommentTreeRow(35L, 33L)));
+
+		CommentTree tree = service.getTree(postId, parentCommentId, 8, 2);
+
+		assertThat(tree.truncated()).isTrue();
+		assertThat(tree.comments()).extracting(CommentTree.Node::id).containsExactly(33L, 34L);
+		assertThat(tree.comments().get(0).replies()).isEmpty();
+	}
+
+	@Test
+	void shouldThrowBadRequest_whenCommentTreeTooDeep() {
+		assertThatThrownBy(() -> service.getTree(1L, null, CommentTree.MAX_DEPTH + 1, 10))
+				.isInstanceOf(ResponseStatusBadRequestException.class);
+
+		verifyNoInteractions(commentRepo, postRepo);
+	}
+
+	@Test
+	void shouldReturnReplyCounts_byRootCommentId() {
+		Long postId = 324L;
+
+		when(postRepo.existsById(postId)).thenReturn(true);
+		when(commentRepo.countRepliesByRootOfPost(postId)).thenReturn(List.of(
+				getReplyCountRow("0000000000001", 3L),
+				getReplyCountRow("00000000000a1", 1L)));
+
+		assertThat(service.getReplyCountsByPostId(postId)).containsExactly(entry(1L, 3L), entry(361L, 1L));
+	}
+
 	@Test
 	void shouldUpdateComment() {
 		Long postId = 312L;
@@ -201,7 +340,7 @@ class CommentServiceTest {
 
 		when(postRepo.existsById(postId)).thenReturn(false);
 
-		assertThatThrownBy(() -> service.update(postId, commentId, any()))
+		assertThatThrownBy(() -> service.update(postId, commentId, null))
 				.isInstanceOf(PostNotFoundException.class);
 
 		verify(commentRepo, never()).save(any());
@@ -216,7 +355,7 @@ class CommentServiceTest {
 		when(commentRepo.findByIdAndPostId(commentId, postId))
 				.thenReturn(Optional.empty());
 
-		assertThatThrownBy(() -> service.update(postId, commentId, any()))
+		assertThatThrownBy(() -> service.update(postId, commentId, null))
 				.isInstanceOf(CommentNotFoundException.class);
 
 		verify(commentRepo, never()).save(any());
@@ -227,13 +366,13 @@ class CommentServiceTest {
 		Long postId = 12L;
 		Long commentId = 1234L;
 
-		when(commentRepo.existsByIdAndPostId(commentId, postId))
-				.thenReturn(true);
+		when(commentRepo.findPathByIdAndPostId(commentId, postId))
+				.thenReturn(Optional.of("000000000000a"));
 
 		assertThatCode(() -> service.deleteById(postId, commentId))
 				.doesNotThrowAnyException();
 
-		verify(commentRepo, times(1)).deleteById(commentId);
+		verify(commentRepo, times(1)).deleteSubtree(postId, commentId, "000000000000a");
 	}
 
 	@Test
@@ -241,13 +380,13 @@ class CommentServiceTest {
 		Long postId = 12L;
 		Long commentId = 1234L;
 
-		when(commentRepo.existsByIdAndPostId(commentId, postId))
-				.thenReturn(false);
+		when(commentRepo.findPathByIdAndPostId(commentId, postId))
+				.thenReturn(Optional.empty());
 
 		assertThatThrownBy(() -> service.deleteById(postId, commentId))
 				.isInstanceOf(CommentNotFoundException.class);
 
-		verify(commentRepo, never()).deleteById(commentId);
+		verify(commentRepo, never()).deleteSubtree(any(), any(), any());
 	}
 
 	private NewCommentRequest getNewCommentRequest(Long parentId) {
@@ -265,4 +404,19 @@ class CommentServiceTest {
 	private CommentListView createCommentListViewBy(Comment source) {
 		return projectionFactory.createProjection(CommentListView.class, source);
 	}
-}
\ No newline at end of file
+
+	private CommentTreeRow getCommentTreeRow(Long id, Long parentId) {
+		Map<String, Object> row = new HashMap<>();
+		row.put("id", id);
+		row.put("parentId", parentId);
+		row.put("content", "content " + id);
+		row.put("authorId", 1L);
+		row.put("authorUsername", "user");
+		return projectionFactory.createProjection(CommentTreeRow.class, row);
+	}
+
+	private ReplyCountRow getReplyCountRow(String rootPathSegment, Long replies) {
+		return projectionFactory.createProjection(
+				ReplyCountRow.class, Map.of("rootPathSegment", rootPathSegment, "replies", replies));
+	}
+}
@@ -0,0 +1,170 @@
+package kg.musabaev.megalabnews.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.Validation;
+import kg.musabaev.megalabnews.cache.CacheInvalidationStats;
+import kg.musabaev.megalabnews.cache.ManagedCache;
+import kg.musabaev.megalabnews.cache.ManagedCacheManager;
+import kg.musabaev.megalabnews.cache.PostListGenerations;
+import kg.musabaev.megalabnews.dto.PostImportReport;
+import kg.musabaev.megalabnews.dto.PostImportReport.Status;
+import kg.musabaev.megalabnews.mapper.PostMapper;
+import kg.musabaev.megalabnews.model.Post;
+import kg.musabaev.megalabnews.model.User;
+import kg.musabaev.megalabnews.repository.PostRepo;
+import kg.musabaev.megalabnews.service.impl.SimplePostImportService;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static kg.musabaev.megalabnews.service.impl.SimplePostService.MISSING_POSTS_CACHE_NAME;
+import static kg.musabaev.megalabnews.service.impl.SimpleUserService.USER_CREATED_POSTS_CACHE_NAME;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class PostImportServiceTest {
+
+	static final long AUTHOR_ID = 7L;
+
+	@Mock
+	PostRepo postRepo;
+	@Mock
+	EntityManager entityManager;
+	@Mock
+	TransactionTemplate transactionTemplate;
+	@Mock
+	PostListGenerations postListGenerations;
+	@Mock
+	ManagedCacheManager cacheManager;
+	@Mock
+	ManagedCache missingPosts;
+	@Mock
+	ManagedCache createdPosts;
+	@Mock
+	CacheInvalidationStats invalidationStats;
+
+	final AtomicLong ids = new AtomicLong();
+	final Set<String> savedTitles = new HashSet<>();
+
+	PostImportService service;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		service = new SimplePostImportService(
+				new ObjectMapper(),
+				Validation.buildDefaultValidatorFactory().getValidator(),
+				Mappers.getMapper(PostMapper.class),
+				postRepo,
+				entityManager,
+				transactionTemplate,
+				postListGenerations,
+				cacheManager,
+				invalidationStats,
+				2);
+		when(transactionTemplate.execute(any())).then(i -> ((TransactionCallback<Object>) i.getArgument(0)).doInTransaction(null));
+		when(postRepo.saveAll(any())).then(i -> ((List<Post>) i.getArgument(0)).stream().map(this::assignId).toList());
+		when(postRepo.save(any())).then(i -> assignId(i.getArgument(0)));
+		when(postRepo.findExistingTitles(anyCollection())).then(i -> ((Collection<String>) i.getArgument(0)).stream()
+				.filter(savedTitles::contains)
+				.collect(Collectors.toSet()));
+		when(cacheManager.getManagedCache(MISSING_POSTS_CACHE_NAME)).thenReturn(missingPosts);
+		when(cacheManager.getManagedCache(USER_CREATED_POSTS_CACHE_NAME)).thenReturn(createdPosts);
+	}
+
+	@Test
+	void shouldReportEachLine_whenLinesInvalidOrDuplicate() {
+		savedTitles.add("old");
+
+		PostImportReport report = service.importPosts(ndjson(
+				post("a", "sport"),
+				"{not json",
+				"",
+				"{\"title\":\"\",\"description\":\"d\",\"content\":\"c\",\"tags\":[]}",
+				post("old", "sport"),
+				post("b", "science"),
+				post("a", "sport")));
+
+		assertThat(report.lines()).extracting(PostImportReport.Line::line).containsExactly(1, 2, 4, 5, 6, 7);
+		assertThat(report.lines()).extracting(PostImportReport.Line::status).containsExactly(
+				Status.CREATED, Status.INVALID, Status.INVALID, Status.DUPLICATE, Status.CREATED, Status.DUPLICATE);
+		assertThat(report.lines().get(0).id()).isEqualTo(1L);
+		assertThat(report.lines().get(2).errors()).singleElement().asString().startsWith("title");
+		assertThat(report.created()).isEqualTo(2);
+		assertThat(report.duplicates()).isEqualTo(2);
+		assertThat(report.invalid()).isEqualTo(2);
+	}
+
+	@Test
+	void shouldQueryTitlesPerChunk_andInvalidateCachesOnce() {
+		service.importPosts(ndjson(post("a", "sport"), post("b", "science"), post("c", "sport")));
+
+		verify(postRepo, times(2)).findExistingTitles(anyCollection());
+		verify(postRepo, times(2)).saveAll(any());
+		verify(postListGenerations).bump(Set.of("sport", "science"));
+		verify(missingPosts).clear();
+		verify(createdPosts).evictByOwner(AUTHOR_ID);
+		verify(entityManager, times(2)).clear();
+	}
+
+	@Test
+	void shouldSaveOneByOne_whenChunkFails() {
+		doThrow(new DataIntegrityViolationException("duplicate")).when(postRepo).saveAll(any());
+		doThrow(new DataIntegrityViolationException("duplicate b"))
+				.when(postRepo).save(argThat(post -> post.getTitle().equals("b")));
+
+		PostImportReport report = service.importPosts(ndjson(post("a", "sport"), post("b", "sport")));
+
+		assertThat(report.lines()).extracting(PostImportReport.Line::status).containsExactly(Status.CREATED, Status.FAILED);
+		assertThat(report.lines().get(1).errors()).containsExactly("duplicate b");
+		verify(postListGenerations).bump(Set.of("sport"));
+	}
+
+	@Test
+	void shouldNotInvalidateCaches_whenNothingCreated() {
+		PostImportReport report = service.importPosts(ndjson("[]"));
+
+		assertThat(report.invalid()).isEqualTo(1);
+		verifyNoInteractions(postListGenerations, cacheManager);
+	}
+
+	private Post assignId(Post post) {
+		post.setId(ids.incrementAndGet());
+		savedTitles.add(post.getTitle());
+		post.setAuthor(User.builder().id(AUTHOR_ID).build());
+		return post;
+	}
+
+	private static String post(String title, String tag) {
+		return "{\"title\":\"" + title + "\",\"description\":\"d\",\"content\":\"c\",\"tags\":[\"" + tag + "\"]}";
+	}
+
+	private static ByteArrayInputStream ndjson(String... lines) {
+		return new ByteArrayInputStream(String.join("\n", lines).getBytes(UTF_8));
+	}
+}
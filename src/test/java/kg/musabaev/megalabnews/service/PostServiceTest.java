@@ -1,13 +1,16 @@
 package kg.musabaev.megalabnews.service;
 
+import kg.musabaev.megalabnews.cache.NegativeCache;
+import kg.musabaev.megalabnews.cache.PostListGenerations;
+import kg.musabaev.megalabnews.dto.CursorPage;
 import kg.musabaev.megalabnews.dto.NewOrUpdatePostRequest;
+import kg.musabaev.megalabnews.dto.PostFeedCursor;
 import kg.musabaev.megalabnews.exception.PostNotFoundException;
+import kg.musabaev.megalabnews.exception.ResponseStatusBadRequestException;
 import kg.musabaev.megalabnews.exception.ResponseStatusConflictException;
 import kg.musabaev.megalabnews.mapper.PostMapper;
 import kg.musabaev.megalabnews.model.Post;
-import kg.musabaev.megalabnews.repository.CommentRepo;
 import kg.musabaev.megalabnews.repository.PostRepo;
-import kg.musabaev.megalabnews.repository.UserRepo;
 import kg.musabaev.megalabnews.repository.projection.PostItemView;
 import kg.musabaev.megalabnews.repository.projection.PostListView;
 import kg.musabaev.megalabnews.service.impl.SimplePostService;
@@ -23,8 +26,10 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 
+import java.time.LocalDate;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
@@ -42,9 +47,9 @@ class PostServiceTest {
 	@Mock
 	PostRepo postRepo;
 	@Mock
-	CommentRepo commentRepo;
+	PostListGenerations postListGenerations;
 	@Mock
-	UserRepo userRepo;
+	NegativeCache negativeCache;
 	@Spy
 	PostMapper postMapper = Mappers.getMapper(PostMapper.class);
 
@@ -108,6 +113,42 @@ class PostServiceTest {
 		assertThat(posts.getContent()).hasSize(4);
 	}
 
+	@Test
+	void shouldReturnFeedPageWithNextCursor_whenMorePostsExist() {
+		LocalDate createdDate = LocalDate.of(2023, 1, 2);
+		when(postRepo.findFeed(PageRequest.ofSize(2))).thenReturn(new SliceImpl<>(List.of(
+				createPostListViewBy(Post.builder().id(4L).createdDate(createdDate).build()),
+				createPostListViewBy(Post.builder().id(3L).createdDate(createdDate).build())
+		), PageRequest.ofSize(2), true));
+
+		CursorPage<PostListView> feed = service.getFeed("", 2, null);
+
+		assertThat(feed.content()).extracting(PostListView::getId).containsExactly(4L, 3L);
+		assertThat(PostFeedCursor.decode(feed.next())).isEqualTo(new PostFeedCursor(createdDate, 3L));
+	}
+
+	@Test
+	void shouldReturnFeedPageAfterCursorWithoutNext_whenLastPage() {
+		var cursor = new PostFeedCursor(LocalDate.of(2023, 1, 2), 3L);
+		when(postRepo.findFeedByTagsInAfter(Set.of("Спорт"), cursor.createdDate(), cursor.id(), PageRequest.ofSize(10)))
+				.thenReturn(new SliceImpl<>(getFilteredPosts().getContent(), PageRequest.ofSize(10), false));
+
+		CursorPage<PostListView> feed = service.getFeed(cursor.encode(), 10, Set.of("Спорт"));
+
+		assertThat(feed.content()).hasSize(2);
+		assertThat(feed.next()).isNull();
+	}
+
+	@Test
+	void shouldThrowBadRequest_whenFeedCursorCorrupted() {
+		assertThatThrownBy(() -> service.getFeed("not a cursor", 10, null))
+				.isInstanceOf(ResponseStatusBadRequestException.class);
+		assertThatThrownBy(() -> service.getFeed("", 0, null))
+				.isInstanceOf(ResponseStatusBadRequestException.class);
+
+		verifyNoInteractions(postRepo);
+	}
+
 	@Test
 	void shouldReturnPostById() {
 		PostItemView exceptedPost = projectionFactory.createProjection(PostItemView.class, Post.builder()
@@ -129,6 +170,16 @@ class PostServiceTest {
 
 		assertThatThrownBy(() -> service.getById(5L))
 				.isInstanceOf(PostNotFoundException.class);
+		verify(negativeCache).markMissing(SimplePostService.MISSING_POSTS_CACHE_NAME, 5L);
+	}
+
+	@Test
+	void shouldThrowPostNotFoundWithoutQuery_whenPostKnownMissing() {
+		when(negativeCache.isKnownMissing(SimplePostService.MISSING_POSTS_CACHE_NAME, 5L)).thenReturn(true);
+
+		assertThatThrownBy(() -> service.getById(5L))
+				.isInstanceOf(PostNotFoundException.class);
+		verifyNoInteractions(postRepo);
 	}
 
 	@Test
@@ -138,7 +189,8 @@ class PostServiceTest {
 
 		assertThatCode(() -> service.deleteById(id)).doesNotThrowAnyException();
 
-		verify(postRepo, times(1)).deleteById(id);
+		verify(postRepo, times(1)).markDeletedById(id);
+		verify(postRepo, never()).deleteById(id);
 	}
 
 	@Test
@@ -149,7 +201,7 @@ class PostServiceTest {
 		assertThatCode(() -> service.deleteById(id))
 				.isInstanceOf(PostNotFoundException.class);
 
-		verify(postRepo, times(0)).deleteById(id);
+		verify(postRepo, times(0)).markDeletedById(id);
 	}
 
 	@Test
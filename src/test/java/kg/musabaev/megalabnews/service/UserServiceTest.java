@@ -1,5 +1,7 @@
 package kg.musabaev.megalabnews.service;
 
+import kg.musabaev.megalabnews.cache.NegativeCache;
+import kg.musabaev.megalabnews.cache.PostListGenerations;
 import kg.musabaev.megalabnews.dto.AddToFavouritePostsRequest;
 import kg.musabaev.megalabnews.dto.UpdateUserRequest;
 import kg.musabaev.megalabnews.exception.PostNotFoundException;
@@ -46,6 +48,10 @@ public class UserServiceTest {
 	PostRepo postRepo;
 	@Mock
 	RefreshTokenRepo refreshTokenRepo;
+	@Mock
+	PostListGenerations postListGenerations;
+	@Mock
+	NegativeCache negativeCache;
 	@Spy
 	UserMapper userMapper = Mappers.getMapper(UserMapper.class);
 
@@ -189,7 +195,7 @@ public class UserServiceTest {
 
 		when(userRepo.existsById(userId)).thenReturn(false);
 
-		assertThatThrownBy(() -> service.getAllFavouritePostsByUserId(userId, any()))
+		assertThatThrownBy(() -> service.getAllFavouritePostsByUserId(userId, null))
 				.isInstanceOf(UserNotFoundException.class);
 
 		verify(userRepo, never()).findFavouritePostsByUserId(userId, Pageable.ofSize(10));
@@ -216,7 +222,7 @@ public class UserServiceTest {
 
 		when(userRepo.existsById(userId)).thenReturn(false);
 
-		assertThatThrownBy(() -> service.getAllCreatedPostsByUserId(userId, any()))
+		assertThatThrownBy(() -> service.getAllCreatedPostsByUserId(userId, null))
 				.isInstanceOf(UserNotFoundException.class);
 
 		verify(postRepo, never()).findAllByAuthorId(userId, Pageable.ofSize(10));
@@ -277,6 +283,11 @@ public class UserServiceTest {
 
 		assertThatCode(() -> service.deleteById(userId))
 				.doesNotThrowAnyException();
+
+		verify(postRepo, times(1)).markDeletedByAuthorId(userId);
+		verify(refreshTokenRepo, times(1)).deleteByOwnerId(userId);
+		verify(userRepo, times(1)).markDeletedById(userId);
+		verify(userRepo, never()).deleteById(userId);
 	}
 
 	@Test